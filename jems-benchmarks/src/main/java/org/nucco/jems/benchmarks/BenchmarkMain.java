@@ -0,0 +1,41 @@
+package org.nucco.jems.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks. Accepts the usual JMH command line, but writes the
+ * results as JSON to jmh-result.json unless told otherwise, so every run can
+ * be archived and compared with the previous releases.
+ */
+public final class BenchmarkMain
+{
+
+    public static final String RESULT_FILE = "jmh-result.json";
+
+    private BenchmarkMain()
+    {
+    }
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException
+    {
+        CommandLineOptions line = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        if (!line.getResultFormat().hasValue())
+        {
+            builder.resultFormat(ResultFormatType.JSON);
+        }
+        if (!line.getResult().hasValue())
+        {
+            builder.result(RESULT_FILE);
+        }
+        Options options = builder.parent(line).build();
+        new Runner(options).run();
+    }
+
+}
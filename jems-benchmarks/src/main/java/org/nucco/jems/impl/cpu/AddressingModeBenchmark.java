@@ -0,0 +1,72 @@
+package org.nucco.jems.impl.cpu;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the addressing mode helpers, measured through LDA in each of its
+ * modes so the only difference between two runs is the operand resolution.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AddressingModeBenchmark
+{
+
+    public enum Mode6502
+    {
+        IMMEDIATE(0xA9, 0x10),
+        ZERO_PAGE(0xA5, 0x20),
+        ZERO_PAGE_X(0xB5, 0x20),
+        ABSOLUTE(0xAD, 0x00, 0x10),
+        ABSOLUTE_X(0xBD, 0x80, 0x10), // X is 0xFF: crosses a page
+        ABSOLUTE_Y(0xB9, 0x00, 0x10),
+        INDIRECT_X(0xA1, 0x80),
+        INDIRECT_Y(0xB1, 0x80);
+
+        private final int[] body;
+
+        private Mode6502(int... body)
+        {
+            this.body = body;
+        }
+    }
+
+    @Param
+    public Mode6502 mode;
+
+    @Param
+    public MOS6502.Engine engine;
+
+    private MOS6502 cpu;
+
+    @Setup
+    public void setUp()
+    {
+        cpu = Programs.cpu(Programs.repeat(mode.body), engine);
+        cpu.x = 0xFF;
+        cpu.y = 0x01;
+    }
+
+    @Benchmark
+    public MOS6502 step()
+    {
+        cpu.step();
+        return cpu;
+    }
+
+}
@@ -0,0 +1,64 @@
+package org.nucco.jems.impl.cpu;
+
+import java.util.concurrent.TimeUnit;
+
+import org.nucco.jems.impl.memory.RAM;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the N and Z flags handling: the lazy {@link MOS6502#setNZ(short)},
+ * the eager {@link MOS6502#ZNTABLE} lookup it replaced, and the
+ * materialization of the status register by {@link MOS6502#getSr()}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FlagBenchmark
+{
+
+    private static final int MASK = ~(MOS6502.N_FLAG | MOS6502.Z_FLAG);
+
+    private MOS6502 cpu;
+    private short sr;
+    private int value; // walks through every byte, so nothing folds
+
+    @Setup
+    public void setUp()
+    {
+        cpu = new MOS6502(new RAM());
+    }
+
+    @Benchmark
+    public MOS6502 lazy()
+    {
+        cpu.setNZ((short) (value++ & 0xFF));
+        return cpu;
+    }
+
+    @Benchmark
+    public short eager()
+    {
+        sr = (short) ((sr & MASK) | MOS6502.ZNTABLE[value++ & 0xFF]);
+        return sr;
+    }
+
+    @Benchmark
+    public short lazyThenStatus()
+    {
+        cpu.setNZ((short) (value++ & 0xFF));
+        return cpu.getSr();
+    }
+
+}
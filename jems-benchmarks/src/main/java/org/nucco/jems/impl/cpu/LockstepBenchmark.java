@@ -0,0 +1,112 @@
+package org.nucco.jems.impl.cpu;
+
+import java.util.concurrent.TimeUnit;
+
+import org.nucco.jems.impl.memory.RAM;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The checksum program run on many machines holding different data: by the
+ * lanes of a {@link MOS6502Lockstep}, or by as many {@link MOS6502} with the
+ * threaded engine, one after the other. The cycles counter reports the
+ * emulated cycles per second, all machines together.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LockstepBenchmark
+{
+
+    public static final long BUDGET = 10000;
+
+    private static final int CODE = 0x0200; // the code ends before the data
+    private static final int CODE_END = 0x0400;
+
+    @Param({ "16", "256" })
+    public int lanes;
+
+    @Param({ "LOCKSTEP", "SEPARATE" })
+    public String runner;
+
+    private MOS6502Lockstep lockstep;
+    private MOS6502[] cpus;
+
+    @State(Scope.Thread)
+    @AuxCounters
+    public static class Counters
+    {
+        public long cycles;
+    }
+
+    @Setup
+    public void setUp()
+    {
+        RAM program = Programs.checksum();
+        if ("LOCKSTEP".equals(runner))
+        {
+            lockstep = new MOS6502Lockstep(lanes);
+            for (int lane = 0; lane < lanes; lane++)
+            {
+                lockstep.getMemory(lane).writeBlock(0, data(program, lane), 0, RAM.SIZE);
+                lockstep.setPc(lane, Programs.ORIGIN);
+            }
+            lockstep.writeAll(CODE, program.getBytes(), CODE, CODE_END - CODE);
+        }
+        else
+        {
+            cpus = new MOS6502[lanes];
+            for (int lane = 0; lane < lanes; lane++)
+            {
+                RAM memory = new RAM();
+                memory.writeBlock(0, data(program, lane), 0, RAM.SIZE);
+                cpus[lane] = Programs.cpu(memory, MOS6502.Engine.THREADED);
+            }
+        }
+    }
+
+    /*
+     * The program with the checksummed buffer changed for each lane.
+     */
+    private static byte[] data(RAM program, int lane)
+    {
+        byte[] bytes = program.getBytes().clone();
+        for (int i = 0; i < 0x200; i++)
+        {
+            bytes[0x1000 + i] ^= (byte) (lane * 0x35 + i);
+        }
+        return bytes;
+    }
+
+    @Benchmark
+    public long run(Counters counters)
+    {
+        if (lockstep != null)
+        {
+            lockstep.run(BUDGET);
+        }
+        else
+        {
+            for (MOS6502 cpu : cpus)
+            {
+                cpu.run(BUDGET);
+            }
+        }
+        counters.cycles += lanes * BUDGET;
+        return counters.cycles;
+    }
+
+}
@@ -0,0 +1,69 @@
+package org.nucco.jems.impl.cpu;
+
+import java.util.concurrent.TimeUnit;
+
+import org.nucco.jems.api.cpu.CPU;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Whole program throughput on a RAM backed memory, for every execution engine
+ * including the recompiler. The score counts the runs of a fixed budget of
+ * cycles per second; the cycles counter reports the emulated cycles per
+ * second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MOS6502ProgramBenchmark
+{
+
+    public static final long BUDGET = 100000;
+
+    @Param({ "SWITCH", "THREADED", "PREDECODED", "RECOMPILER" })
+    public String engine;
+
+    private CPU cpu;
+
+    @State(Scope.Thread)
+    @AuxCounters
+    public static class Counters
+    {
+        public long cycles;
+    }
+
+    @Setup
+    public void setUp()
+    {
+        if ("RECOMPILER".equals(engine))
+        {
+            cpu = new MOS6502Recompiler(Programs.cpu(Programs.checksum(), MOS6502.Engine.SWITCH));
+        }
+        else
+        {
+            cpu = Programs.cpu(Programs.checksum(), MOS6502.Engine.valueOf(engine));
+        }
+    }
+
+    @Benchmark
+    public long run(Counters counters)
+    {
+        long cycles = cpu.run(BUDGET);
+        counters.cycles += cycles;
+        return cycles;
+    }
+
+}
@@ -0,0 +1,73 @@
+package org.nucco.jems.impl.cpu;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of {@link MOS6502#step()} per opcode family. Each operation is a
+ * single instruction, so the score reads as instructions per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MOS6502StepBenchmark
+{
+
+    public enum Family
+    {
+        LOAD(0xA9, 0x10, 0xA6, 0x20, 0xAC, 0x00, 0x10, 0xBD, 0x00, 0x10),
+        STORE(0x85, 0x20, 0x8E, 0x00, 0x10, 0x84, 0x21, 0x99, 0x00, 0x11),
+        TRANSFER(0xAA, 0xA8, 0x8A, 0x98, 0xBA, 0x9A),
+        STACK(0x48, 0x68, 0x08, 0x28),
+        LOGICAL(0x29, 0xF0, 0x05, 0x20, 0x4D, 0x00, 0x10, 0x24, 0x21),
+        ARITHMETIC(0x18, 0x69, 0x11, 0x38, 0xE5, 0x20, 0xC9, 0x40, 0xE4, 0x21, 0xC0, 0x02),
+        INCREMENT(0xE8, 0x88, 0xE6, 0x20, 0xCE, 0x00, 0x10),
+        SHIFT(0x0A, 0x26, 0x20, 0x4E, 0x00, 0x10, 0x6A),
+        BRANCH(0x18, 0x90, 0x00, 0xD0, 0x00, 0x10, 0x00), // offset 0: both ways fall through
+        FLAG(0x38, 0x18, 0xF8, 0xD8, 0x78, 0x58, 0xB8),
+        JUMP(0x20, Programs.SUBROUTINE & 0xFF, Programs.SUBROUTINE >> 8);
+
+        private final int[] body;
+
+        private Family(int... body)
+        {
+            this.body = body;
+        }
+    }
+
+    @Param
+    public Family family;
+
+    @Param
+    public MOS6502.Engine engine;
+
+    private MOS6502 cpu;
+
+    @Setup
+    public void setUp()
+    {
+        cpu = Programs.cpu(Programs.repeat(family.body), engine);
+    }
+
+    @Benchmark
+    public MOS6502 step()
+    {
+        cpu.step();
+        return cpu;
+    }
+
+}
@@ -0,0 +1,66 @@
+package org.nucco.jems.impl.cpu;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the execution counters on the checksum program, by number of
+ * actions per sample; an interval of 0 runs without counters.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djems.profiling=true")
+public class ProfileBenchmark
+{
+
+    public static final long BUDGET = 100000;
+
+    @Param({ "SWITCH", "PREDECODED" })
+    public String engine;
+
+    @Param({ "0", "1", "64" })
+    public int interval;
+
+    private MOS6502 cpu;
+
+    @State(Scope.Thread)
+    @AuxCounters
+    public static class Counters
+    {
+        public long cycles;
+    }
+
+    @Setup
+    public void setUp()
+    {
+        cpu = Programs.cpu(Programs.checksum(), MOS6502.Engine.valueOf(engine));
+        if (interval > 0)
+        {
+            cpu.setProfile(new MOS6502Profile(interval));
+        }
+    }
+
+    @Benchmark
+    public long run(Counters counters)
+    {
+        long cycles = cpu.run(BUDGET);
+        counters.cycles += cycles;
+        return cycles;
+    }
+
+}
@@ -0,0 +1,123 @@
+package org.nucco.jems.impl.cpu;
+
+import org.nucco.jems.api.memory.Memory;
+import org.nucco.jems.impl.memory.RAM;
+
+/**
+ * Guest programs run by the benchmarks. Every program loops forever, so a
+ * benchmark can step it for as long as the harness asks.
+ */
+final class Programs
+{
+
+    static final int ORIGIN = 0x0200;
+    static final int SUBROUTINE = 0x0F00; // a single RTS for the JSR family
+    static final int LOOP_END = 0x0E00; // the straight line code stops here
+
+    private static final int POINTER = 0x80; // zero page pointer to DATA
+    private static final int DATA = 0x1000; // out of the code, so stores never modify it
+
+    private Programs()
+    {
+    }
+
+    /**
+     * Repeats a body of instructions from the origin, then jumps back to it.
+     * 
+     * @param body
+     *            the bytes of the instructions to repeat
+     * @return the memory holding the program
+     */
+    static RAM repeat(int... body)
+    {
+        RAM ram = new RAM();
+        int address = ORIGIN;
+        while (address + body.length <= LOOP_END)
+        {
+            for (int value : body)
+            {
+                ram.writeByte(address++, (short) value);
+            }
+        }
+        ram.writeByte(address++, (short) 0x4C); // JMP ORIGIN
+        ram.writeByte(address++, (short) (ORIGIN & 0xFF));
+        ram.writeByte(address, (short) (ORIGIN >> 8));
+        ram.writeByte(SUBROUTINE, (short) 0x60); // RTS
+        ram.writeByte(POINTER, (short) (DATA & 0xFF));
+        ram.writeByte(POINTER + 1, (short) (DATA >> 8));
+        return ram;
+    }
+
+    /**
+     * A checksum and copy of a 256 bytes buffer, followed by a decimal
+     * increment of 17 bytes behind a pointer: a mix of indexed loads and
+     * stores, arithmetic, branches and subroutine calls.
+     * 
+     * @return the memory holding the program
+     */
+    static RAM checksum()
+    {
+        RAM ram = new RAM();
+        int[] main = {
+            0xA2, 0x00, //       LDX #$00
+            0xA9, 0x00, //       LDA #$00
+            0x18, //       loop: CLC
+            0x7D, 0x00, 0x10, // ADC $1000,X
+            0x9D, 0x00, 0x20, // STA $2000,X
+            0x5D, 0x00, 0x11, // EOR $1100,X
+            0x2A, //             ROL A
+            0xE8, //             INX
+            0xD0, 0xF2, //       BNE loop
+            0x85, 0x10, //       STA $10
+            0xE6, 0x11, //       INC $11
+            0x20, 0x00, 0x03, // JSR bcd
+            0x4C, 0x00, 0x02 //  JMP $0200
+        };
+        int[] bcd = {
+            0xA0, 0x10, //       LDY #$10
+            0xB1, 0x12, //  inc: LDA ($12),Y
+            0xF8, //             SED
+            0x69, 0x01, //       ADC #$01
+            0xD8, //             CLD
+            0x91, 0x12, //       STA ($12),Y
+            0x88, //             DEY
+            0x10, 0xF5, //       BPL inc
+            0x60 //              RTS
+        };
+        load(ram, ORIGIN, main);
+        load(ram, 0x0300, bcd);
+        ram.writeByte(0x12, (short) 0x00);
+        ram.writeByte(0x13, (short) 0x30);
+        for (int i = 0; i < 0x200; i++)
+        {
+            ram.writeByte(0x1000 + i, (short) ((i * 0x9D + 0x31) & 0xFF));
+        }
+        return ram;
+    }
+
+    /**
+     * Creates a processor starting at the origin.
+     * 
+     * @param memory
+     *            the memory holding the program
+     * @param engine
+     *            the engine executing the program
+     * @return the processor
+     */
+    static MOS6502 cpu(Memory memory, MOS6502.Engine engine)
+    {
+        MOS6502 cpu = new MOS6502(memory);
+        cpu.setEngine(engine);
+        cpu.pc = ORIGIN;
+        return cpu;
+    }
+
+    private static void load(Memory memory, int address, int[] code)
+    {
+        for (int value : code)
+        {
+            memory.writeByte(address++, (short) value);
+        }
+    }
+
+}
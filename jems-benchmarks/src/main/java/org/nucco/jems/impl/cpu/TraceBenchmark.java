@@ -0,0 +1,89 @@
+package org.nucco.jems.impl.cpu;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.TimeUnit;
+
+import org.nucco.jems.impl.trace.TraceRecorder;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the binary instruction trace: the checksum program with and without
+ * a recorder draining to a temporary file.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TraceBenchmark
+{
+
+    public static final long BUDGET = 100000;
+    public static final int RING_RECORDS = 0x10000;
+
+    @Param({ "SWITCH", "PREDECODED" })
+    public String engine;
+
+    @Param({ "false", "true" })
+    public boolean traced;
+
+    private MOS6502 cpu;
+    private File file;
+    private RandomAccessFile output;
+    private TraceRecorder tracer;
+
+    @State(Scope.Thread)
+    @AuxCounters
+    public static class Counters
+    {
+        public long cycles;
+    }
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        cpu = Programs.cpu(Programs.checksum(), MOS6502.Engine.valueOf(engine));
+        if (traced)
+        {
+            file = File.createTempFile("trace", ".bin");
+            output = new RandomAccessFile(file, "rw");
+            tracer = new TraceRecorder(output.getChannel(), MOS6502.TRACE_RECORD_SIZE, RING_RECORDS);
+            cpu.setTracer(tracer);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        if (traced)
+        {
+            tracer.close();
+            output.close();
+            file.delete();
+        }
+    }
+
+    @Benchmark
+    public long run(Counters counters)
+    {
+        long cycles = cpu.run(BUDGET);
+        counters.cycles += cycles;
+        return cycles;
+    }
+
+}
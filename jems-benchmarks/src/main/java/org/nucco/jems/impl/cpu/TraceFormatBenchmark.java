@@ -0,0 +1,80 @@
+package org.nucco.jems.impl.cpu;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Text formatting of binary trace records into a channel discarding the text,
+ * so only the formatting is measured. The score is the records per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TraceFormatBenchmark
+{
+
+    public static final int RECORDS = 0x10000;
+
+    private ByteBuffer records;
+    private TraceFormatter formatter;
+
+    @Setup
+    public void setUp()
+    {
+        Random random = new Random(42);
+        byte[] trace = new byte[RECORDS * MOS6502.TRACE_RECORD_SIZE];
+        random.nextBytes(trace);
+        records = ByteBuffer.wrap(trace).order(ByteOrder.LITTLE_ENDIAN);
+        formatter = new TraceFormatter(new WritableByteChannel()
+        {
+            @Override
+            public boolean isOpen()
+            {
+                return true;
+            }
+
+            @Override
+            public void close()
+            {
+            }
+
+            @Override
+            public int write(ByteBuffer source)
+            {
+                int count = source.remaining();
+                source.position(source.limit());
+                return count;
+            }
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public int format() throws IOException
+    {
+        records.clear();
+        int count = formatter.format(records);
+        formatter.flush();
+        return count;
+    }
+
+}
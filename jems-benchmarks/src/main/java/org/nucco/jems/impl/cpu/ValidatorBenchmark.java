@@ -0,0 +1,76 @@
+package org.nucco.jems.impl.cpu;
+
+import java.util.concurrent.TimeUnit;
+
+import org.nucco.jems.api.cpu.CPU;
+import org.nucco.jems.impl.memory.CopyOnWriteMemory;
+import org.nucco.jems.impl.memory.RAM;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the differential validation of the predecoded engine against the
+ * switch one, by interval of cycles between two checks; an interval of 0
+ * runs the predecoded engine alone on the same memory.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidatorBenchmark
+{
+
+    public static final long BUDGET = 100000;
+
+    @Param({ "0", "1", "1000", "100000" })
+    public long interval;
+
+    private CPU cpu;
+
+    @State(Scope.Thread)
+    @AuxCounters
+    public static class Counters
+    {
+        public long cycles;
+    }
+
+    @Setup
+    public void setUp()
+    {
+        RAM program = Programs.checksum();
+        CopyOnWriteMemory reference = new CopyOnWriteMemory();
+        reference.writeBlock(0, program.getBytes(), 0, RAM.SIZE);
+        CopyOnWriteMemory candidate = reference.fork();
+        MOS6502 engine = Programs.cpu(candidate, MOS6502.Engine.PREDECODED);
+        if (interval == 0)
+        {
+            cpu = engine;
+        }
+        else
+        {
+            cpu = new DifferentialValidator(Programs.cpu(reference, MOS6502.Engine.SWITCH), reference, engine,
+                candidate, interval);
+        }
+    }
+
+    @Benchmark
+    public long run(Counters counters)
+    {
+        long cycles = cpu.run(BUDGET);
+        counters.cycles += cycles;
+        return cycles;
+    }
+
+}
@@ -0,0 +1,427 @@
+package org.nucco.jems.impl.cpu;
+
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import org.nucco.jems.api.memory.BlockMemory;
+
+/**
+ * Guest programs of the macro benchmark. Every workload is loaded at
+ * {@link Programs#ORIGIN}, runs to completion and then spins on a JMP to
+ * itself at its halt address, where its result can be checked.
+ */
+enum Workload
+{
+
+    /**
+     * Counts the primes below 8192 with a sieve of Eratosthenes, on flags
+     * stored from $2000 to $3FFF.
+     */
+    SIEVE(0x026B, new int[] {
+        0xD8,              //         CLD
+        0xA9, 0x00,        //         LDA #$00
+        0x85, 0x04,        //         STA $04
+        0xA9, 0x20,        //         LDA #$20
+        0x85, 0x05,        //         STA $05
+        0xA9, 0x00,        //         LDA #$00
+        0xA0, 0x00,        //         LDY #$00
+        0xA2, 0x20,        //         LDX #$20
+        0x91, 0x04,        // clear:  STA ($04),Y
+        0xC8,              //         INY
+        0xD0, 0xFB,        //         BNE clear
+        0xE6, 0x05,        //         INC $05
+        0xCA,              //         DEX
+        0xD0, 0xF6,        //         BNE clear
+        0x85, 0x08,        //         STA $08
+        0x85, 0x09,        //         STA $09
+        0xA9, 0x02,        //         LDA #$02
+        0x85, 0x06,        //         STA $06
+        0xA9, 0x00,        //         LDA #$00
+        0x85, 0x07,        //         STA $07
+        0xA5, 0x06,        // outer:  LDA $06
+        0x85, 0x00,        //         STA $00
+        0xA5, 0x07,        //         LDA $07
+        0x18,              //         CLC
+        0x69, 0x20,        //         ADC #$20
+        0x85, 0x01,        //         STA $01
+        0xB1, 0x00,        //         LDA ($00),Y
+        0xD0, 0x2B,        //         BNE next
+        0xE6, 0x08,        //         INC $08
+        0xD0, 0x02,        //         BNE mark0
+        0xE6, 0x09,        //         INC $09
+        0xA5, 0x00,        // mark0:  LDA $00
+        0x18,              //         CLC
+        0x65, 0x06,        //         ADC $06
+        0x85, 0x02,        //         STA $02
+        0xA5, 0x01,        //         LDA $01
+        0x65, 0x07,        //         ADC $07
+        0x85, 0x03,        //         STA $03
+        0xC9, 0x40,        // mark:   CMP #$40
+        0xB0, 0x14,        //         BCS next
+        0xA9, 0x01,        //         LDA #$01
+        0x91, 0x02,        //         STA ($02),Y
+        0xA5, 0x02,        //         LDA $02
+        0x18,              //         CLC
+        0x65, 0x06,        //         ADC $06
+        0x85, 0x02,        //         STA $02
+        0xA5, 0x03,        //         LDA $03
+        0x65, 0x07,        //         ADC $07
+        0x85, 0x03,        //         STA $03
+        0x4C, 0x47, 0x02,  //         JMP mark
+        0xE6, 0x06,        // next:   INC $06
+        0xD0, 0x02,        //         BNE test
+        0xE6, 0x07,        //         INC $07
+        0xA5, 0x07,        // test:   LDA $07
+        0xC9, 0x20,        //         CMP #$20
+        0xD0, 0xBA,        //         BNE outer
+        0x4C, 0x6B, 0x02   // halt:   JMP halt
+    })
+    {
+        @Override
+        void check(BlockMemory memory)
+        {
+            expect(memory.readShort(0x08), 1028);
+        }
+    },
+
+    /**
+     * Computes the CRC-32 of the 4KB from $1000 to $1FFF, one bit at a time.
+     */
+    CRC(0x0258, new int[] {
+        0xD8,              //         CLD
+        0xA9, 0xFF,        //         LDA #$FF
+        0x85, 0x10,        //         STA $10
+        0x85, 0x11,        //         STA $11
+        0x85, 0x12,        //         STA $12
+        0x85, 0x13,        //         STA $13
+        0xA9, 0x00,        //         LDA #$00
+        0x85, 0x00,        //         STA $00
+        0xA9, 0x10,        //         LDA #$10
+        0x85, 0x01,        //         STA $01
+        0xA0, 0x00,        //         LDY #$00
+        0xB1, 0x00,        // byte:   LDA ($00),Y
+        0x45, 0x10,        //         EOR $10
+        0x85, 0x10,        //         STA $10
+        0xA2, 0x08,        //         LDX #$08
+        0x46, 0x13,        // bit:    LSR $13
+        0x66, 0x12,        //         ROR $12
+        0x66, 0x11,        //         ROR $11
+        0x66, 0x10,        //         ROR $10
+        0x90, 0x18,        //         BCC next
+        0xA5, 0x13,        //         LDA $13
+        0x49, 0xED,        //         EOR #$ED
+        0x85, 0x13,        //         STA $13
+        0xA5, 0x12,        //         LDA $12
+        0x49, 0xB8,        //         EOR #$B8
+        0x85, 0x12,        //         STA $12
+        0xA5, 0x11,        //         LDA $11
+        0x49, 0x83,        //         EOR #$83
+        0x85, 0x11,        //         STA $11
+        0xA5, 0x10,        //         LDA $10
+        0x49, 0x20,        //         EOR #$20
+        0x85, 0x10,        //         STA $10
+        0xCA,              // next:   DEX
+        0xD0, 0xDB,        //         BNE bit
+        0xC8,              //         INY
+        0xD0, 0xD0,        //         BNE byte
+        0xE6, 0x01,        //         INC $01
+        0xA5, 0x01,        //         LDA $01
+        0xC9, 0x20,        //         CMP #$20
+        0xD0, 0xC8,        //         BNE byte
+        0xA2, 0x03,        //         LDX #$03
+        0xB5, 0x10,        // final:  LDA $10,X
+        0x49, 0xFF,        //         EOR #$FF
+        0x95, 0x10,        //         STA $10,X
+        0xCA,              //         DEX
+        0x10, 0xF7,        //         BPL final
+        0x4C, 0x58, 0x02   // halt:   JMP halt
+    })
+    {
+        @Override
+        void prepare(BlockMemory memory)
+        {
+            random(memory, 0x1000, 0x1000);
+        }
+
+        @Override
+        void check(BlockMemory memory)
+        {
+            CRC32 crc = new CRC32();
+            crc.update(random(0x1000));
+            expect(memory.readShort(0x10) | memory.readShort(0x12) << 16, (int) crc.getValue());
+        }
+    },
+
+    /**
+     * Copies the 8KB from $1000 to $4000 and fills the 8KB from $6000 with
+     * the pass number, four times.
+     */
+    MEMCPY(0x023B, new int[] {
+        0xD8,              //         CLD
+        0xA9, 0x04,        //         LDA #$04
+        0x85, 0x20,        //         STA $20
+        0xA9, 0x00,        // pass:   LDA #$00
+        0x85, 0x00,        //         STA $00
+        0x85, 0x02,        //         STA $02
+        0xA9, 0x10,        //         LDA #$10
+        0x85, 0x01,        //         STA $01
+        0xA9, 0x40,        //         LDA #$40
+        0x85, 0x03,        //         STA $03
+        0xA2, 0x20,        //         LDX #$20
+        0xA0, 0x00,        //         LDY #$00
+        0xB1, 0x00,        // copy:   LDA ($00),Y
+        0x91, 0x02,        //         STA ($02),Y
+        0xC8,              //         INY
+        0xD0, 0xF9,        //         BNE copy
+        0xE6, 0x01,        //         INC $01
+        0xE6, 0x03,        //         INC $03
+        0xCA,              //         DEX
+        0xD0, 0xF2,        //         BNE copy
+        0xA9, 0x60,        //         LDA #$60
+        0x85, 0x03,        //         STA $03
+        0xA2, 0x20,        //         LDX #$20
+        0xA5, 0x20,        //         LDA $20
+        0x91, 0x02,        // fill:   STA ($02),Y
+        0xC8,              //         INY
+        0xD0, 0xFB,        //         BNE fill
+        0xE6, 0x03,        //         INC $03
+        0xCA,              //         DEX
+        0xD0, 0xF6,        //         BNE fill
+        0xC6, 0x20,        //         DEC $20
+        0xD0, 0xCA,        //         BNE pass
+        0x4C, 0x3B, 0x02   // halt:   JMP halt
+    })
+    {
+        @Override
+        void prepare(BlockMemory memory)
+        {
+            random(memory, 0x1000, 0x2000);
+        }
+
+        @Override
+        void check(BlockMemory memory)
+        {
+            byte[] source = random(0x2000);
+            for (int i = 0; i < 0x2000; i++)
+            {
+                expect(memory.readByte(0x4000 + i), source[i] & 0xFF);
+                expect(memory.readByte(0x6000 + i), 1);
+            }
+        }
+    },
+
+    /**
+     * Sums the integers from 1 to 9999 in decimal mode, into 8 BCD digits.
+     */
+    BCD(0x023A, new int[] {
+        0xF8,              //         SED
+        0xA9, 0x00,        //         LDA #$00
+        0x85, 0x10,        //         STA $10
+        0x85, 0x11,        //         STA $11
+        0x85, 0x12,        //         STA $12
+        0x85, 0x13,        //         STA $13
+        0x85, 0x01,        //         STA $01
+        0xA9, 0x01,        //         LDA #$01
+        0x85, 0x00,        //         STA $00
+        0x18,              // loop:   CLC
+        0xA5, 0x10,        //         LDA $10
+        0x65, 0x00,        //         ADC $00
+        0x85, 0x10,        //         STA $10
+        0xA5, 0x11,        //         LDA $11
+        0x65, 0x01,        //         ADC $01
+        0x85, 0x11,        //         STA $11
+        0xA5, 0x12,        //         LDA $12
+        0x69, 0x00,        //         ADC #$00
+        0x85, 0x12,        //         STA $12
+        0xA5, 0x13,        //         LDA $13
+        0x69, 0x00,        //         ADC #$00
+        0x85, 0x13,        //         STA $13
+        0x18,              //         CLC
+        0xA5, 0x00,        //         LDA $00
+        0x69, 0x01,        //         ADC #$01
+        0x85, 0x00,        //         STA $00
+        0xA5, 0x01,        //         LDA $01
+        0x69, 0x00,        //         ADC #$00
+        0x85, 0x01,        //         STA $01
+        0x90, 0xD8,        //         BCC loop
+        0xD8,              //         CLD
+        0x4C, 0x3A, 0x02   // halt:   JMP halt
+    })
+    {
+        @Override
+        void check(BlockMemory memory)
+        {
+            expect(memory.readShort(0x10) | memory.readShort(0x12) << 16, 0x49995000);
+        }
+    },
+
+    /**
+     * Bubble sorts the 256 bytes from $1000 to $10FF.
+     */
+    SORT(0x0228, new int[] {
+        0xD8,              //         CLD
+        0xA9, 0x00,        // outer:  LDA #$00
+        0x85, 0x00,        //         STA $00
+        0xA2, 0x00,        //         LDX #$00
+        0xBD, 0x00, 0x10,  // inner:  LDA $1000,X
+        0xDD, 0x01, 0x10,  //         CMP $1001,X
+        0x90, 0x10,        //         BCC keep
+        0xF0, 0x0E,        //         BEQ keep
+        0xBC, 0x01, 0x10,  //         LDY $1001,X
+        0x9D, 0x01, 0x10,  //         STA $1001,X
+        0x98,              //         TYA
+        0x9D, 0x00, 0x10,  //         STA $1000,X
+        0xA9, 0x01,        //         LDA #$01
+        0x85, 0x00,        //         STA $00
+        0xE8,              // keep:   INX
+        0xE0, 0xFF,        //         CPX #$FF
+        0xD0, 0xE3,        //         BNE inner
+        0xA5, 0x00,        //         LDA $00
+        0xD0, 0xD9,        //         BNE outer
+        0x4C, 0x28, 0x02   // halt:   JMP halt
+    })
+    {
+        @Override
+        void prepare(BlockMemory memory)
+        {
+            random(memory, 0x1000, 0x100);
+        }
+
+        @Override
+        void check(BlockMemory memory)
+        {
+            byte[] values = random(0x100);
+            int[] sorted = new int[values.length];
+            for (int i = 0; i < values.length; i++)
+            {
+                sorted[i] = values[i] & 0xFF;
+            }
+            Arrays.sort(sorted);
+            for (int i = 0; i < sorted.length; i++)
+            {
+                expect(memory.readByte(0x1000 + i), sorted[i]);
+            }
+        }
+    },
+
+    /**
+     * Computes fibonacci(20) with a doubly recursive subroutine, which makes
+     * almost 22000 JSR and RTS.
+     */
+    FIBONACCI(0x020C, new int[] {
+        0xD8,              //         CLD
+        0xA9, 0x00,        //         LDA #$00
+        0x85, 0x10,        //         STA $10
+        0x85, 0x11,        //         STA $11
+        0xA9, 0x14,        //         LDA #$14
+        0x20, 0x0F, 0x02,  //         JSR fib
+        0x4C, 0x0C, 0x02,  // halt:   JMP halt
+        0xC9, 0x02,        // fib:    CMP #$02
+        0xB0, 0x0A,        //         BCS split
+        0x18,              //         CLC
+        0x65, 0x10,        //         ADC $10
+        0x85, 0x10,        //         STA $10
+        0x90, 0x02,        //         BCC leaf
+        0xE6, 0x11,        //         INC $11
+        0x60,              // leaf:   RTS
+        0x48,              // split:  PHA
+        0xE9, 0x01,        //         SBC #$01
+        0x20, 0x0F, 0x02,  //         JSR fib
+        0x68,              //         PLA
+        0x38,              //         SEC
+        0xE9, 0x02,        //         SBC #$02
+        0x20, 0x0F, 0x02,  //         JSR fib
+        0x60               //         RTS
+    })
+    {
+        @Override
+        void check(BlockMemory memory)
+        {
+            expect(memory.readShort(0x10), 6765);
+        }
+    };
+
+    private final int halt;
+    private final int[] code;
+
+    private Workload(int halt, int[] code)
+    {
+        this.halt = halt;
+        this.code = code;
+    }
+
+    /**
+     * @return the address the workload spins at once done
+     */
+    int getHalt()
+    {
+        return halt;
+    }
+
+    /**
+     * Loads the workload and its data.
+     * 
+     * @param memory
+     *            the memory to load
+     */
+    void load(BlockMemory memory)
+    {
+        int address = Programs.ORIGIN;
+        for (int value : code)
+        {
+            memory.writeByte(address++, (short) value);
+        }
+        prepare(memory);
+    }
+
+    /**
+     * Writes the data of the workload.
+     * 
+     * @param memory
+     *            the memory holding the workload
+     */
+    void prepare(BlockMemory memory)
+    {
+    }
+
+    /**
+     * Checks the result of a complete run.
+     * 
+     * @param memory
+     *            the memory holding the workload
+     * @throws IllegalStateException
+     *             if the result is wrong
+     */
+    abstract void check(BlockMemory memory);
+
+    private static void expect(int actual, int expected)
+    {
+        if (actual != expected)
+        {
+            throw new IllegalStateException("Expected " + Integer.toHexString(expected) + " but was "
+                + Integer.toHexString(actual));
+        }
+    }
+
+    private static void random(BlockMemory memory, int address, int length)
+    {
+        byte[] values = random(length);
+        memory.writeBlock(address, values, 0, length);
+    }
+
+    /**
+     * @return the same pseudo random bytes on every call
+     */
+    private static byte[] random(int length)
+    {
+        byte[] values = new byte[length];
+        int seed = 0x6502;
+        for (int i = 0; i < length; i++)
+        {
+            seed = seed * 1103515245 + 12345;
+            values[i] = (byte) (seed >> 16);
+        }
+        return values;
+    }
+
+}
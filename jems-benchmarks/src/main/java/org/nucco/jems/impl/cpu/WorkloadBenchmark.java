@@ -0,0 +1,212 @@
+package org.nucco.jems.impl.cpu;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.nucco.jems.api.cpu.CPU;
+import org.nucco.jems.impl.memory.RAM;
+
+/**
+ * Runs every {@link Workload} to completion on a RAM, with every engine, and
+ * reports the emulated MHz, the host nanoseconds per guest instruction and the
+ * allocation rate. Each engine runs every workload on a single CPU, reloaded
+ * and reset between runs, so that the recompiler compiles the code once in the
+ * warm-up rather than in every measured run. Options:
+ * <ul>
+ * <li>-w count: warm-up runs of each workload and engine (5)</li>
+ * <li>-i count: measured runs of each workload and engine (10)</li>
+ * <li>-e engine,...: engines to run, from SWITCH, THREADED, PREDECODED and
+ * RECOMPILER (all)</li>
+ * <li>-csv: print comma separated values instead of a table</li>
+ * </ul>
+ */
+public final class WorkloadBenchmark
+{
+
+    public static final String RECOMPILER = "RECOMPILER";
+
+    private static final long SLICE = 1000; // cycles run between two halt tests
+    private static final double NANOS_PER_MICRO = 1000.0;
+    private static final double BYTES_PER_MB = 1024.0 * 1024.0;
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private int warmups = 5;
+    private int iterations = 10;
+    private List<String> engines = new ArrayList<String>();
+    private boolean csv;
+
+    private WorkloadBenchmark()
+    {
+    }
+
+    public static void main(String[] args)
+    {
+        WorkloadBenchmark benchmark = new WorkloadBenchmark();
+        for (int i = 0; i < args.length; i++)
+        {
+            if ("-w".equals(args[i]))
+            {
+                benchmark.warmups = Integer.parseInt(args[++i]);
+            }
+            else if ("-i".equals(args[i]))
+            {
+                benchmark.iterations = Integer.parseInt(args[++i]);
+            }
+            else if ("-e".equals(args[i]))
+            {
+                for (String engine : args[++i].split(","))
+                {
+                    benchmark.engines.add(engine.trim().toUpperCase());
+                }
+            }
+            else if ("-csv".equals(args[i]))
+            {
+                benchmark.csv = true;
+            }
+            else
+            {
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (benchmark.engines.isEmpty())
+        {
+            for (MOS6502.Engine engine : MOS6502.Engine.values())
+            {
+                benchmark.engines.add(engine.name());
+            }
+            benchmark.engines.add(RECOMPILER);
+        }
+        benchmark.run();
+    }
+
+    private void run()
+    {
+        if (csv)
+        {
+            System.out.println("workload,engine,instructions,cycles,mhz,ns_per_instruction,alloc_mb_per_s");
+        }
+        else
+        {
+            System.out.println(String.format("%-10s %-11s %12s %12s %9s %10s %12s", "Workload", "Engine",
+                "Instructions", "Cycles", "MHz", "ns/instr", "Alloc MB/s"));
+        }
+        for (Workload workload : Workload.values())
+        {
+            // the switch interpreter counts the instructions, the same on
+            // every engine as the workloads are deterministic
+            RAM ram = new RAM();
+            workload.load(ram);
+            MOS6502 reference = Programs.cpu(ram, MOS6502.Engine.SWITCH);
+            long instructions = 0;
+            while (reference.pc != workload.getHalt())
+            {
+                reference.step();
+                instructions++;
+            }
+            workload.check(ram);
+            long cycles = reference.getCycles();
+
+            for (String engine : engines)
+            {
+                ram = new RAM();
+                MOS6502 cpu;
+                CPU target;
+                if (RECOMPILER.equals(engine))
+                {
+                    cpu = Programs.cpu(ram, MOS6502.Engine.SWITCH);
+                    target = new MOS6502Recompiler(cpu);
+                }
+                else
+                {
+                    cpu = Programs.cpu(ram, MOS6502.Engine.valueOf(engine));
+                    target = cpu;
+                }
+                ByteBuffer reset = ByteBuffer.allocate(cpu.getStateSize());
+                cpu.saveState(reset);
+
+                for (int i = 0; i < warmups; i++)
+                {
+                    measure(workload, ram, cpu, target, reset);
+                }
+                long nanos = 0;
+                long allocated = 0;
+                for (int i = 0; i < iterations; i++)
+                {
+                    long[] sample = measure(workload, ram, cpu, target, reset);
+                    nanos += sample[0];
+                    allocated = allocated < 0 || sample[1] < 0 ? -1 : allocated + sample[1];
+                }
+                report(workload, engine, instructions, cycles, nanos, allocated);
+            }
+        }
+    }
+
+    /**
+     * Runs a workload to completion, after reloading it and resetting the CPU.
+     * The state is loaded into the CPU itself, not through the recompiler
+     * which would discard its blocks: the reloaded code is the same.
+     * 
+     * @param reset
+     *            the state of the CPU before the first run
+     * @return the elapsed nanoseconds and the allocated bytes, -1 when the
+     *         virtual machine cannot tell
+     */
+    private long[] measure(Workload workload, RAM ram, MOS6502 cpu, CPU target, ByteBuffer reset)
+    {
+        workload.load(ram);
+        reset.rewind();
+        cpu.loadState(reset);
+        int halt = workload.getHalt();
+
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        while (cpu.pc != halt)
+        {
+            target.run(SLICE);
+        }
+        long nanos = System.nanoTime() - start;
+        allocated = allocated < 0 ? -1 : allocatedBytes() - allocated;
+
+        workload.check(ram);
+        return new long[] { nanos, allocated };
+    }
+
+    private void report(Workload workload, String engine, long instructions, long cycles, long nanos,
+        long allocated)
+    {
+        double mhz = cycles * iterations * NANOS_PER_MICRO / nanos;
+        double perInstruction = (double) nanos / (instructions * iterations);
+        double allocation = allocated < 0 ? Double.NaN : allocated / BYTES_PER_MB / (nanos / NANOS_PER_SECOND);
+        if (csv)
+        {
+            System.out.println(String.format("%s,%s,%d,%d,%.3f,%.3f,%.3f", workload, engine, instructions,
+                cycles, mhz, perInstruction, allocation));
+        }
+        else
+        {
+            System.out.println(String.format("%-10s %-11s %12d %12d %9.2f %10.3f %12.3f", workload, engine,
+                instructions, cycles, mhz, perInstruction, allocation));
+        }
+    }
+
+    /**
+     * @return the bytes allocated by the current thread, -1 when the virtual
+     *         machine cannot tell
+     */
+    private static long allocatedBytes()
+    {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean)
+        {
+            com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+            if (hotspot.isThreadAllocatedMemorySupported())
+            {
+                return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,110 @@
+package org.nucco.jems.impl.memory;
+
+import java.util.concurrent.TimeUnit;
+
+import org.nucco.jems.api.memory.BlockMemory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the memory bus accesses, on a flat {@link RAM}, on a
+ * {@link PagedMemory} mapping RAM over the whole address space and on a
+ * {@link CopyOnWriteMemory}; and cost of forking a machine, by copying its RAM
+ * or by forking a copy-on-write memory and writing a few pages.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemoryBenchmark
+{
+
+    private static final int BLOCK = 0x100;
+    private static final int FORK_WRITES = 4; // pages touched by a fork
+
+    @Param({ "RAM", "PAGED", "COW" })
+    public String memoryType;
+
+    private BlockMemory memory;
+    private byte[] block = new byte[BLOCK];
+    private CopyOnWriteMemory cow = new CopyOnWriteMemory();
+    private int address; // walks through the address space, so nothing folds
+
+    @Setup
+    public void setUp()
+    {
+        if ("PAGED".equals(memoryType))
+        {
+            PagedMemory paged = new PagedMemory();
+            paged.mapRAM(0, PagedMemory.PAGES, new byte[RAM.SIZE], 0);
+            memory = paged;
+        }
+        else if ("COW".equals(memoryType))
+        {
+            memory = new CopyOnWriteMemory();
+        }
+        else
+        {
+            memory = new RAM();
+        }
+    }
+
+    @Benchmark
+    public short readByte()
+    {
+        return memory.readByte(address++ & 0xFFFF);
+    }
+
+    @Benchmark
+    public BlockMemory writeByte()
+    {
+        memory.writeByte(address & 0xFFFF, (short) address++);
+        return memory;
+    }
+
+    @Benchmark
+    public int readShort()
+    {
+        return memory.readShort(address++ & 0xFFFE);
+    }
+
+    @Benchmark
+    public byte[] readBlock()
+    {
+        memory.readBlock((address++ & 0xFF) << 8, block, 0, BLOCK);
+        return block;
+    }
+
+    @Benchmark
+    public BlockMemory forkByCopy()
+    {
+        RAM copy = new RAM();
+        memory.readBlock(0, copy.getBytes(), 0, RAM.SIZE);
+        copy.writeByte(address++ & 0xFFFF, (short) 1);
+        return copy;
+    }
+
+    @Benchmark
+    public BlockMemory forkCopyOnWrite()
+    {
+        CopyOnWriteMemory fork = cow.fork();
+        for (int i = 0; i < FORK_WRITES; i++)
+        {
+            fork.writeByte(address & 0xFFFF, (short) 1);
+            address += BLOCK + 1;
+        }
+        return fork;
+    }
+
+}
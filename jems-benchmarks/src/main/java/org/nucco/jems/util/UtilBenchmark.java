@@ -0,0 +1,62 @@
+package org.nucco.jems.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the hexadecimal formatting used by the traces and the disassembly.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UtilBenchmark
+{
+
+    private int value; // changes on every call, so nothing folds
+    private final byte[] text = new byte[32];
+
+    @Benchmark
+    public String hexByte()
+    {
+        return Util.hex((byte) value++);
+    }
+
+    @Benchmark
+    public String hexShort()
+    {
+        return Util.hex((short) value++);
+    }
+
+    @Benchmark
+    public String hexInt()
+    {
+        return Util.hex(value++);
+    }
+
+    @Benchmark
+    public byte[] hexIntInBytes()
+    {
+        Util.hex(value++, text, 0);
+        return text;
+    }
+
+    @Benchmark
+    public byte[] decimalInBytes()
+    {
+        Util.decimal(value++ * 1000003L, text, 0);
+        return text;
+    }
+
+}
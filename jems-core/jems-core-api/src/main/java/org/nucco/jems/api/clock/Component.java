@@ -0,0 +1,19 @@
+package org.nucco.jems.api.clock;
+
+/**
+ * A component driven by the global clock but not run along the CPU: its state
+ * is only brought up to date when somebody looks at it.
+ */
+public interface Component
+{
+
+    /**
+     * Run the component up to a cycle of the global clock. A cycle the
+     * component has already reached is ignored.
+     * 
+     * @param cycle
+     *            the cycle to catch up with
+     */
+    void catchUp(long cycle);
+
+}
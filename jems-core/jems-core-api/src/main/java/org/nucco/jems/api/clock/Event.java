@@ -0,0 +1,21 @@
+package org.nucco.jems.api.clock;
+
+/**
+ * Something happening at a given cycle of the global clock: a line of the
+ * video chip, a timer underflow, a sample of the sound chip...
+ */
+public interface Event
+{
+
+    /**
+     * Called once the clock has reached the cycle the event was scheduled at.
+     * The clock may be past it, as the CPU never stops in the middle of an
+     * action: the handler catches up from the given cycle, and may schedule
+     * the event again.
+     * 
+     * @param cycle
+     *            the cycle the event was scheduled at
+     */
+    void fire(long cycle);
+
+}
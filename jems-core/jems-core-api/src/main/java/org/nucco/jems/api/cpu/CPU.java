@@ -9,4 +9,22 @@ public interface CPU
      */
     void step();
 
+    /**
+     * Execute actions until the specified number of cycles has been consumed.
+     * An action is never interrupted, so the last one may overshoot the budget:
+     * the overshoot is the returned value minus the requested cycles.
+     * 
+     * @param cycles
+     *            the cycle budget of the batch
+     * @return the number of cycles actually consumed
+     */
+    long run(long cycles);
+
+    /**
+     * Get the number of cycles consumed since the creation of the CPU.
+     * 
+     * @return the cycle counter
+     */
+    long getCycles();
+
 }
@@ -0,0 +1,32 @@
+package org.nucco.jems.api.cpu;
+
+/**
+ * A CPU with interrupt lines, driven by the devices. The lines are only looked
+ * at between two actions: setting one never polls anything, it marks the
+ * interrupt pending for the CPU to take at the next action boundary.
+ */
+public interface Interruptible
+{
+
+    /**
+     * Set the level of the maskable interrupt request line. The interrupt is
+     * taken at every action boundary where the line is asserted and the CPU
+     * does not mask it, so a device keeps the line asserted until it is
+     * acknowledged. Devices sharing the line combine their requests first.
+     * 
+     * @param asserted
+     *            true to assert the line, false to release it
+     */
+    void setIrq(boolean asserted);
+
+    /**
+     * Set the level of the non maskable interrupt line. The interrupt is
+     * taken once per transition of the line to asserted, whatever the CPU
+     * masks.
+     * 
+     * @param asserted
+     *            true to assert the line, false to release it
+     */
+    void setNmi(boolean asserted);
+
+}
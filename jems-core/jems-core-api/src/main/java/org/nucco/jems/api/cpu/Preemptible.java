@@ -0,0 +1,17 @@
+package org.nucco.jems.api.cpu;
+
+/**
+ * A CPU whose batch of actions can be cut short, for its scheduler to fire an
+ * event scheduled while the batch runs before the end of the batch.
+ */
+public interface Preemptible
+{
+
+    /**
+     * End the running batch after the current action: {@link CPU#run(long)}
+     * returns once the action is over, having consumed less than its budget.
+     * Called outside a batch, the method has no effect on the next one.
+     */
+    void preempt();
+
+}
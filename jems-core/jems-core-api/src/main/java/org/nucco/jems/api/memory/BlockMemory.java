@@ -0,0 +1,108 @@
+package org.nucco.jems.api.memory;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A memory giving word and block accesses on top of the byte ones, for callers
+ * to do in one call what would take one call per byte. Callers test for it
+ * with instanceof and fall back to the byte accesses of {@link Memory}.
+ */
+public interface BlockMemory extends Memory
+{
+
+    /**
+     * Read a little endian 16bits word at the 16bits address specified. The
+     * high byte is read at address + 1, wrapping from 0xFFFF to 0x0000.
+     * 
+     * @param address
+     *            the 16bits address of the low byte
+     * @return the read word
+     */
+    int readShort(int address);
+
+    /**
+     * Read a little endian 16bits word in the zero page. The high byte is read
+     * at address + 1, wrapping from 0xFF to 0x00.
+     * 
+     * @param address
+     *            the 8bits address of the low byte
+     * @return the read word
+     */
+    int readShortZeroPage(int address);
+
+    /**
+     * Read a little endian 16bits word without crossing a page. The high byte
+     * is read at address + 1, wrapping to the start of the same page.
+     * 
+     * @param address
+     *            the 16bits address of the low byte
+     * @return the read word
+     */
+    int readShortPageWrap(int address);
+
+    /**
+     * Read consecutive bytes into an array. Addresses wrap from 0xFFFF to
+     * 0x0000.
+     * 
+     * @param address
+     *            the 16bits address of the first byte
+     * @param destination
+     *            the array where to copy the bytes
+     * @param offset
+     *            the index in the array of the first byte
+     * @param length
+     *            the number of bytes to read
+     */
+    void readBlock(int address, byte[] destination, int offset, int length);
+
+    /**
+     * Write consecutive bytes from an array. Addresses wrap from 0xFFFF to
+     * 0x0000.
+     * 
+     * @param address
+     *            the 16bits address of the first byte
+     * @param source
+     *            the array where to take the bytes
+     * @param offset
+     *            the index in the array of the first byte
+     * @param length
+     *            the number of bytes to write
+     */
+    void writeBlock(int address, byte[] source, int offset, int length);
+
+    /**
+     * Read consecutive bytes into the remaining space of a buffer. Addresses
+     * wrap from 0xFFFF to 0x0000.
+     * 
+     * @param address
+     *            the 16bits address of the first byte
+     * @param destination
+     *            the buffer where to put the bytes
+     */
+    void readBlock(int address, ByteBuffer destination);
+
+    /**
+     * Write the remaining bytes of a buffer. Addresses wrap from 0xFFFF to
+     * 0x0000.
+     * 
+     * @param address
+     *            the 16bits address of the first byte
+     * @param source
+     *            the buffer where to get the bytes
+     */
+    void writeBlock(int address, ByteBuffer source);
+
+    /**
+     * Write the same byte at consecutive addresses. Addresses wrap from 0xFFFF
+     * to 0x0000.
+     * 
+     * @param address
+     *            the 16bits address of the first byte
+     * @param length
+     *            the number of bytes to write
+     * @param value
+     *            the value to write
+     */
+    void fill(int address, int length, short value);
+
+}
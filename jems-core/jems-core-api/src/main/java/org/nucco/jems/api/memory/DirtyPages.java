@@ -0,0 +1,34 @@
+package org.nucco.jems.api.memory;
+
+/**
+ * A memory remembering which of its 256 pages of 256 bytes were written since
+ * the dirty pages were last cleared. Page n is bit n % 64 of word n / 64.
+ */
+public interface DirtyPages
+{
+
+    int DIRTY_WORDS = 4;
+
+    /**
+     * Tell whether a page was written.
+     * 
+     * @param page
+     *            the page number, from 0x00 to 0xFF
+     * @return true if the page was written since the last clear
+     */
+    boolean isDirty(int page);
+
+    /**
+     * Copy the dirty bits of all the pages.
+     * 
+     * @param destination
+     *            an array of at least {@link #DIRTY_WORDS} words
+     */
+    void getDirtyPages(long[] destination);
+
+    /**
+     * Mark every page clean.
+     */
+    void clearDirtyPages();
+
+}
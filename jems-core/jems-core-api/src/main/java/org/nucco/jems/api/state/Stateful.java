@@ -0,0 +1,38 @@
+package org.nucco.jems.api.state;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A component whose state can be saved to and loaded from a buffer, with a
+ * fixed layout and size for a given version of the component.
+ */
+public interface Stateful
+{
+
+    /**
+     * Get the number of bytes of the saved state.
+     * 
+     * @return the size of the state
+     */
+    int getStateSize();
+
+    /**
+     * Put the state at the position of a buffer, and advance it by the state
+     * size.
+     * 
+     * @param buffer
+     *            the buffer where to put the state
+     */
+    void saveState(ByteBuffer buffer);
+
+    /**
+     * Get the state at the position of a buffer, and advance it by the state
+     * size. The memory being usually restored along, anything derived from its
+     * contents is dropped.
+     * 
+     * @param buffer
+     *            the buffer where to get the state
+     */
+    void loadState(ByteBuffer buffer);
+
+}
@@ -0,0 +1,60 @@
+package org.nucco.jems.impl.clock;
+
+import org.nucco.jems.api.clock.Component;
+import org.nucco.jems.api.cpu.CPU;
+import org.nucco.jems.api.memory.Memory;
+import org.nucco.jems.impl.memory.AbstractMemory;
+
+/**
+ * The registers of a component, brought up to the clock of the CPU before
+ * every access. Mapped as the handler of the pages of the registers, the
+ * component is only run when the CPU looks at it.
+ */
+public final class CatchUpMemory extends AbstractMemory
+{
+
+    private final Memory registers;
+    private final Component component;
+    private final CPU clock;
+
+    /**
+     * @param registers
+     *            the registers of the component
+     * @param component
+     *            the component to catch up
+     * @param clock
+     *            the CPU giving the global clock, usually the
+     *            {@link Scheduler}
+     */
+    public CatchUpMemory(Memory registers, Component component, CPU clock)
+    {
+        this.registers = registers;
+        this.component = component;
+        this.clock = clock;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.api.memory.Memory#readByte(int)
+     */
+    @Override
+    public short readByte(int address)
+    {
+        component.catchUp(clock.getCycles());
+        return registers.readByte(address);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.api.memory.Memory#writeByte(int, short)
+     */
+    @Override
+    public void writeByte(int address, short value)
+    {
+        component.catchUp(clock.getCycles());
+        registers.writeByte(address, value);
+    }
+
+}
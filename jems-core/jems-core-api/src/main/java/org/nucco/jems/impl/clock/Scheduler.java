@@ -0,0 +1,268 @@
+package org.nucco.jems.impl.clock;
+
+import java.util.Arrays;
+
+import org.nucco.jems.api.clock.Event;
+import org.nucco.jems.api.cpu.CPU;
+import org.nucco.jems.api.cpu.Preemptible;
+
+/**
+ * Runs a CPU against a queue of timed events, on the global clock of the CPU
+ * cycles. The CPU runs uninterrupted up to the next event, which is fired
+ * once reached; other components catch up lazily when their registers are
+ * touched, see {@link CatchUpMemory}.
+ * <p>
+ * Events are registered once and then referred to by their identifier, the
+ * queue being a binary heap of identifiers ordered by cycle then identifier:
+ * scheduling, moving and cancelling an event never allocates. An event
+ * scheduled while the CPU runs, before the end of its batch, preempts a
+ * {@link Preemptible} CPU so that it fires on time; with other CPUs, it fires
+ * late at the end of the batch.
+ */
+public final class Scheduler implements CPU
+{
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final CPU cpu;
+    private final Preemptible preemptible; // the CPU when it can be preempted, null otherwise
+    private long batchEnd = Long.MIN_VALUE; // end of the running batch, MIN_VALUE between batches
+
+    private Event[] events = new Event[INITIAL_CAPACITY];
+    private long[] times = new long[INITIAL_CAPACITY]; // by identifier
+    private int[] positions = new int[INITIAL_CAPACITY]; // in the heap by identifier, -1 when not scheduled
+    private int[] heap = new int[INITIAL_CAPACITY];
+    private int count; // registered events
+    private int size; // scheduled events
+
+    public Scheduler(CPU cpu)
+    {
+        this.cpu = cpu;
+        this.preemptible = cpu instanceof Preemptible ? (Preemptible) cpu : null;
+    }
+
+    /**
+     * Register an event, not scheduled yet.
+     * 
+     * @param event
+     *            the event
+     * @return the identifier of the event
+     */
+    public int register(Event event)
+    {
+        if (count == events.length)
+        {
+            int capacity = count * 2;
+            events = Arrays.copyOf(events, capacity);
+            times = Arrays.copyOf(times, capacity);
+            positions = Arrays.copyOf(positions, capacity);
+            heap = Arrays.copyOf(heap, capacity);
+        }
+        events[count] = event;
+        positions[count] = -1;
+        return count++;
+    }
+
+    /**
+     * Schedule an event at a cycle, moving it if already scheduled. A cycle
+     * already reached fires the event at the next action boundary. Called
+     * while the CPU runs, the event cuts the batch if it falls before its end.
+     * 
+     * @param id
+     *            the identifier of the event
+     * @param cycle
+     *            the cycle of the global clock
+     */
+    public void schedule(int id, long cycle)
+    {
+        times[id] = cycle;
+        int position = positions[id];
+        if (position < 0)
+        {
+            position = size++;
+            heap[position] = id;
+            positions[id] = position;
+        }
+        up(position);
+        down(positions[id]);
+        if (cycle < batchEnd && preemptible != null)
+        {
+            preemptible.preempt();
+        }
+    }
+
+    /**
+     * Cancel an event, doing nothing if not scheduled.
+     * 
+     * @param id
+     *            the identifier of the event
+     */
+    public void cancel(int id)
+    {
+        int position = positions[id];
+        if (position >= 0)
+        {
+            remove(position);
+        }
+    }
+
+    /**
+     * @param id
+     *            the identifier of the event
+     * @return true if the event is scheduled
+     */
+    public boolean isScheduled(int id)
+    {
+        return positions[id] >= 0;
+    }
+
+    /**
+     * @param id
+     *            the identifier of a scheduled event
+     * @return the cycle the event is scheduled at
+     */
+    public long getTime(int id)
+    {
+        return times[id];
+    }
+
+    /**
+     * @return the cycle of the next event, or {@link Long#MAX_VALUE} if none is
+     *         scheduled
+     */
+    public long getNextTime()
+    {
+        return size > 0 ? times[heap[0]] : Long.MAX_VALUE;
+    }
+
+    /**
+     * @return the CPU run by the scheduler
+     */
+    public CPU getCpu()
+    {
+        return cpu;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.api.cpu.CPU#step()
+     */
+    @Override
+    public void step()
+    {
+        cpu.step();
+        fire();
+    }
+
+    /*
+     * (non-Javadoc) Run the CPU up to the next event, fire it, and so on.
+     * 
+     * @see org.nucco.jems.api.cpu.CPU#run(long)
+     */
+    @Override
+    public long run(long budget)
+    {
+        long start = cpu.getCycles();
+        long end = start + budget;
+        fire();
+        while (cpu.getCycles() < end)
+        {
+            batchEnd = Math.min(end, getNextTime());
+            cpu.run(batchEnd - cpu.getCycles());
+            batchEnd = Long.MIN_VALUE;
+            fire();
+        }
+
+        return cpu.getCycles() - start;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.api.cpu.CPU#getCycles()
+     */
+    @Override
+    public long getCycles()
+    {
+        return cpu.getCycles();
+    }
+
+    /*
+     * Fire every event reached by the clock, in order, including the ones
+     * scheduled again by the handlers.
+     */
+    private void fire()
+    {
+        while (size > 0 && times[heap[0]] <= cpu.getCycles())
+        {
+            int id = heap[0];
+            remove(0);
+            events[id].fire(times[id]);
+        }
+    }
+
+    private void remove(int position)
+    {
+        int id = heap[position];
+        positions[id] = -1;
+        size--;
+        if (position < size)
+        {
+            int moved = heap[size];
+            heap[position] = moved;
+            up(position);
+            down(positions[moved]);
+        }
+    }
+
+    private boolean before(int a, int b)
+    {
+        return times[a] < times[b] || times[a] == times[b] && a < b;
+    }
+
+    private void up(int position)
+    {
+        int id = heap[position];
+        while (position > 0)
+        {
+            int parent = (position - 1) >> 1;
+            if (!before(id, heap[parent]))
+            {
+                break;
+            }
+            heap[position] = heap[parent];
+            positions[heap[position]] = position;
+            position = parent;
+        }
+        heap[position] = id;
+        positions[id] = position;
+    }
+
+    private void down(int position)
+    {
+        int id = heap[position];
+        while (true)
+        {
+            int child = 2 * position + 1;
+            if (child >= size)
+            {
+                break;
+            }
+            if (child + 1 < size && before(heap[child + 1], heap[child]))
+            {
+                child++;
+            }
+            if (!before(heap[child], id))
+            {
+                break;
+            }
+            heap[position] = heap[child];
+            positions[heap[position]] = position;
+            position = child;
+        }
+        heap[position] = id;
+        positions[id] = position;
+    }
+
+}
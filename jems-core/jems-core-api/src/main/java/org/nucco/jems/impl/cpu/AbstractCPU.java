@@ -16,6 +16,37 @@ public abstract class AbstractCPU implements CPU
 
     protected Memory memory;
 
+    protected long cycles;
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.api.cpu.CPU#run(long)
+     */
+    @Override
+    public long run(long budget)
+    {
+        long start = cycles;
+        long end = start + budget;
+        while (cycles < end)
+        {
+            step();
+        }
+
+        return cycles - start;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.api.cpu.CPU#getCycles()
+     */
+    @Override
+    public long getCycles()
+    {
+        return cycles;
+    }
+
     protected void illegal(short opcode, int pc, String cpuName)
     {
         LOG.error(cpuName + ": Illegal opcode: " + Util.hex((byte) opcode) + " at " + Util.hex((short) (pc - 1)));
@@ -0,0 +1,262 @@
+package org.nucco.jems.impl.cpu;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.nucco.jems.api.cpu.CPU;
+import org.nucco.jems.api.memory.DirtyPages;
+import org.nucco.jems.api.memory.Memory;
+import org.nucco.jems.api.state.Stateful;
+import org.nucco.jems.impl.memory.Memories;
+import org.nucco.jems.util.Util;
+
+/**
+ * Runs a candidate CPU side by side with a reference one, each on its own fork
+ * of the same memory, and checks they agree every interval of cycles. A check
+ * compares the saved states of the CPUs, the pages written since the previous
+ * check and the contents of these pages. The first divergence stops both CPUs.
+ * <p>
+ * The candidate runs first, then the reference catches up to the same cycle:
+ * the reference must stop at every action boundary, like the interpreters,
+ * while the candidate may run whole blocks. An interval of one cycle checks
+ * after every action of the candidate; a large interval amortizes the check,
+ * so the validation costs little more than running the reference.
+ * <p>
+ * When the memories track their {@link DirtyPages}, the validator owns their
+ * tracking: nobody else may clear them. The contents are only compared on the
+ * {@link Memories#getBackedPages(Memory, long[]) backed pages} of both
+ * memories, so memory mapped devices are never read by a check.
+ */
+public final class DifferentialValidator implements CPU
+{
+
+    public static final int PAGE_SIZE = 0x100;
+
+    private static final int PAGES = 0x100;
+
+    private final CPU reference;
+    private final Stateful referenceState;
+    private final Memory referenceMemory;
+    private final CPU candidate;
+    private final Stateful candidateState;
+    private final Memory candidateMemory;
+    private final long interval;
+
+    private final ByteBuffer referenceBuffer;
+    private final ByteBuffer candidateBuffer;
+    private final long[] referenceDirty = new long[DirtyPages.DIRTY_WORDS];
+    private final long[] candidateDirty = new long[DirtyPages.DIRTY_WORDS];
+    private final long[] referenceBacked = new long[DirtyPages.DIRTY_WORDS];
+    private final long[] candidateBacked = new long[DirtyPages.DIRTY_WORDS];
+    private final byte[] referencePage = new byte[PAGE_SIZE];
+    private final byte[] candidatePage = new byte[PAGE_SIZE];
+
+    private long checks;
+    private String divergence;
+
+    /**
+     * @param reference
+     *            the CPU trusted, stopping at every action boundary
+     * @param referenceMemory
+     *            the address space of the reference
+     * @param candidate
+     *            the CPU to validate, in the same state as the reference
+     * @param candidateMemory
+     *            the address space of the candidate, a fork of the one of the
+     *            reference
+     * @param interval
+     *            the number of cycles between two checks
+     * @throws IllegalArgumentException
+     *             if the interval is not positive or the states of the CPUs
+     *             are not of the same size
+     */
+    public <R extends CPU & Stateful, C extends CPU & Stateful> DifferentialValidator(R reference,
+        Memory referenceMemory, C candidate, Memory candidateMemory, long interval)
+    {
+        if (interval <= 0)
+        {
+            throw new IllegalArgumentException("Interval of " + interval + " cycles");
+        }
+        if (reference.getStateSize() != candidate.getStateSize())
+        {
+            throw new IllegalArgumentException("States of " + reference.getStateSize() + " and "
+                + candidate.getStateSize() + " bytes");
+        }
+        this.reference = reference;
+        this.referenceState = reference;
+        this.referenceMemory = referenceMemory;
+        this.candidate = candidate;
+        this.candidateState = candidate;
+        this.candidateMemory = candidateMemory;
+        this.interval = interval;
+        this.referenceBuffer = ByteBuffer.allocate(reference.getStateSize());
+        this.candidateBuffer = ByteBuffer.allocate(candidate.getStateSize());
+        clearDirtyPages(referenceMemory);
+        clearDirtyPages(candidateMemory);
+    }
+
+    /*
+     * (non-Javadoc) Run a single action of the candidate, then check.
+     * 
+     * @see org.nucco.jems.api.cpu.CPU#step()
+     */
+    @Override
+    public void step()
+    {
+        if (divergence == null)
+        {
+            candidate.step();
+            check();
+        }
+    }
+
+    /*
+     * (non-Javadoc) Run the candidate an interval, the reference up to it,
+     * check, and so on until the budget is consumed or the CPUs diverge.
+     * 
+     * @see org.nucco.jems.api.cpu.CPU#run(long)
+     */
+    @Override
+    public long run(long budget)
+    {
+        long start = candidate.getCycles();
+        long end = start + budget;
+        while (divergence == null && candidate.getCycles() < end)
+        {
+            candidate.run(Math.min(interval, end - candidate.getCycles()));
+            check();
+        }
+
+        return candidate.getCycles() - start;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.api.cpu.CPU#getCycles()
+     */
+    @Override
+    public long getCycles()
+    {
+        return candidate.getCycles();
+    }
+
+    /**
+     * @return the number of checks passed
+     */
+    public long getChecks()
+    {
+        return checks;
+    }
+
+    /**
+     * @return true if the CPUs diverged, which stops them
+     */
+    public boolean isDiverged()
+    {
+        return divergence != null;
+    }
+
+    /**
+     * @return the description of the first divergence, null if none
+     */
+    public String getDivergence()
+    {
+        return divergence;
+    }
+
+    /*
+     * Bring the reference to the cycle of the candidate and compare them.
+     */
+    private void check()
+    {
+        long cycles = candidate.getCycles();
+        if (reference.getCycles() < cycles)
+        {
+            reference.run(cycles - reference.getCycles());
+        }
+        if (reference.getCycles() != cycles)
+        {
+            divergence = "Reference at cycle " + reference.getCycles() + ", candidate at cycle " + cycles;
+            return;
+        }
+
+        referenceBuffer.clear();
+        referenceState.saveState(referenceBuffer);
+        candidateBuffer.clear();
+        candidateState.saveState(candidateBuffer);
+        byte[] expected = referenceBuffer.array();
+        byte[] actual = candidateBuffer.array();
+        for (int i = 0; i < expected.length; i++)
+        {
+            if (expected[i] != actual[i])
+            {
+                divergence = "At cycle " + cycles + ", state byte " + i + ": reference " + Util.hex(expected[i])
+                    + ", candidate " + Util.hex(actual[i]);
+                return;
+            }
+        }
+
+        collectDirtyPages(referenceMemory, referenceDirty);
+        collectDirtyPages(candidateMemory, candidateDirty);
+        Memories.getBackedPages(referenceMemory, referenceBacked);
+        Memories.getBackedPages(candidateMemory, candidateBacked);
+        for (int p = 0; p < PAGES; p++)
+        {
+            long bit = 1L << p;
+            boolean written = (referenceDirty[p >> 6] & bit) != 0;
+            if (written != ((candidateDirty[p >> 6] & bit) != 0))
+            {
+                divergence = "At cycle " + cycles + ", page " + Util.hex((byte) p) + " written by the "
+                    + (written ? "reference" : "candidate") + " only";
+                return;
+            }
+            boolean backed = (referenceBacked[p >> 6] & candidateBacked[p >> 6] & bit) != 0;
+            if (written && backed && !comparePage(p, cycles))
+            {
+                return;
+            }
+        }
+        clearDirtyPages(referenceMemory);
+        clearDirtyPages(candidateMemory);
+        checks++;
+    }
+
+    private boolean comparePage(int page, long cycles)
+    {
+        int address = page * PAGE_SIZE;
+        Memories.readBlock(referenceMemory, address, referencePage, 0, PAGE_SIZE);
+        Memories.readBlock(candidateMemory, address, candidatePage, 0, PAGE_SIZE);
+        for (int i = 0; i < PAGE_SIZE; i++)
+        {
+            if (referencePage[i] != candidatePage[i])
+            {
+                divergence = "At cycle " + cycles + ", address " + Util.hex((short) (address + i)) + ": reference "
+                    + Util.hex(referencePage[i]) + ", candidate " + Util.hex(candidatePage[i]);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void collectDirtyPages(Memory memory, long[] dirty)
+    {
+        if (memory instanceof DirtyPages)
+        {
+            ((DirtyPages) memory).getDirtyPages(dirty);
+        }
+        else
+        {
+            Arrays.fill(dirty, -1L);
+        }
+    }
+
+    private static void clearDirtyPages(Memory memory)
+    {
+        if (memory instanceof DirtyPages)
+        {
+            ((DirtyPages) memory).clearDirtyPages();
+        }
+    }
+
+}
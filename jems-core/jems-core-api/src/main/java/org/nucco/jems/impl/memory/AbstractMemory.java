@@ -0,0 +1,162 @@
+package org.nucco.jems.impl.memory;
+
+import java.nio.ByteBuffer;
+
+import org.nucco.jems.api.memory.DirtyPages;
+import org.nucco.jems.api.memory.BlockMemory;
+
+/**
+ * Base class of memories: implements the word and block accesses with
+ * {@link #readByte(int)} and {@link #writeByte(int, short)}. Subclasses
+ * override them when they can do better than one call per byte.
+ */
+public abstract class AbstractMemory implements BlockMemory
+{
+
+    protected static final short BYTE_MASK = 0xFF;
+    protected static final int SHORT_MASK = 0xFFFF;
+    protected static final int PAGE_MASK = 0xFF00;
+    protected static final byte SHIFT_8BITS = 8;
+    protected static final byte SHIFT_DIRTY_WORD = 14; // from an address to its word of dirty bits
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.api.memory.BlockMemory#readShort(int)
+     */
+    @Override
+    public int readShort(int address)
+    {
+        return readByte(address) | readByte((address + 1) & SHORT_MASK) << SHIFT_8BITS;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.api.memory.BlockMemory#readShortZeroPage(int)
+     */
+    @Override
+    public int readShortZeroPage(int address)
+    {
+        return readShortPageWrap(address & BYTE_MASK);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.api.memory.BlockMemory#readShortPageWrap(int)
+     */
+    @Override
+    public int readShortPageWrap(int address)
+    {
+        return readByte(address) | readByte((address & PAGE_MASK) | ((address + 1) & BYTE_MASK)) << SHIFT_8BITS;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.api.memory.BlockMemory#readBlock(int, byte[], int, int)
+     */
+    @Override
+    public void readBlock(int address, byte[] destination, int offset, int length)
+    {
+        for (int i = 0; i < length; i++)
+        {
+            destination[offset + i] = (byte) readByte((address + i) & SHORT_MASK);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.api.memory.BlockMemory#writeBlock(int, byte[], int, int)
+     */
+    @Override
+    public void writeBlock(int address, byte[] source, int offset, int length)
+    {
+        for (int i = 0; i < length; i++)
+        {
+            writeByte((address + i) & SHORT_MASK, (short) (source[offset + i] & BYTE_MASK));
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.api.memory.BlockMemory#readBlock(int, java.nio.ByteBuffer)
+     */
+    @Override
+    public void readBlock(int address, ByteBuffer destination)
+    {
+        if (destination.hasArray())
+        {
+            int length = destination.remaining();
+            readBlock(address, destination.array(), destination.arrayOffset() + destination.position(), length);
+            destination.position(destination.position() + length);
+            return;
+        }
+
+        while (destination.hasRemaining())
+        {
+            destination.put((byte) readByte(address & SHORT_MASK));
+            address++;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.api.memory.BlockMemory#writeBlock(int, java.nio.ByteBuffer)
+     */
+    @Override
+    public void writeBlock(int address, ByteBuffer source)
+    {
+        if (source.hasArray())
+        {
+            int length = source.remaining();
+            writeBlock(address, source.array(), source.arrayOffset() + source.position(), length);
+            source.position(source.position() + length);
+            return;
+        }
+
+        while (source.hasRemaining())
+        {
+            writeByte(address & SHORT_MASK, (short) (source.get() & BYTE_MASK));
+            address++;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.api.memory.BlockMemory#fill(int, int, short)
+     */
+    @Override
+    public void fill(int address, int length, short value)
+    {
+        for (int i = 0; i < length; i++)
+        {
+            writeByte((address + i) & SHORT_MASK, value);
+        }
+    }
+
+    /**
+     * Set the dirty bits of the pages holding consecutive addresses.
+     * 
+     * @param dirty
+     *            the dirty bits, as described by {@link DirtyPages}
+     * @param address
+     *            the 16bits address of the first byte
+     * @param length
+     *            the number of bytes, not wrapping from 0xFFFF to 0x0000
+     */
+    protected static void markDirty(long[] dirty, int address, int length)
+    {
+        int last = (address + length - 1) >> SHIFT_8BITS;
+        for (int page = address >> SHIFT_8BITS; page <= last; page++)
+        {
+            dirty[page >> 6] |= 1L << page;
+        }
+    }
+
+}
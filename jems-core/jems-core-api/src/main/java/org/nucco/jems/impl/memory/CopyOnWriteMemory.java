@@ -0,0 +1,265 @@
+package org.nucco.jems.impl.memory;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.nucco.jems.api.memory.DirtyPages;
+
+/**
+ * A 64KB RAM made of 256 pages which can be shared between forks. A fork costs
+ * a table of 256 references; the first write in a shared page, by the parent
+ * or by the fork, copies it. Shared pages are never written, so forks can run
+ * in other threads once handed over to them.
+ */
+public final class CopyOnWriteMemory extends AbstractMemory implements DirtyPages
+{
+
+    public static final int SIZE = 0x10000;
+    public static final int PAGES = 0x100;
+    public static final int PAGE_SIZE = 0x100;
+
+    private static final byte[] ZERO_PAGE = new byte[PAGE_SIZE]; // shared by all, never written
+
+    private final byte[][] pages;
+    private final boolean[] owned = new boolean[PAGES]; // the page belongs to this memory only
+    private final long[] dirty = new long[DIRTY_WORDS];
+    private int copies;
+
+    public CopyOnWriteMemory()
+    {
+        pages = new byte[PAGES][];
+        Arrays.fill(pages, ZERO_PAGE);
+    }
+
+    private CopyOnWriteMemory(byte[][] pages)
+    {
+        this.pages = pages;
+    }
+
+    /**
+     * Create a memory with the same contents, sharing all the pages. The pages
+     * of this memory become shared too.
+     *
+     * @return the fork
+     */
+    public CopyOnWriteMemory fork()
+    {
+        Arrays.fill(owned, false);
+        return new CopyOnWriteMemory(pages.clone());
+    }
+
+    /**
+     * @return the number of pages copied by this memory since its creation
+     */
+    public int getCopiedPages()
+    {
+        return copies;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.nucco.jems.api.memory.Memory#readByte(int)
+     */
+    @Override
+    public short readByte(int address)
+    {
+        return (short) (pages[(address & SHORT_MASK) >> SHIFT_8BITS][address & BYTE_MASK] & BYTE_MASK);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.nucco.jems.api.memory.Memory#writeByte(int, short)
+     */
+    @Override
+    public void writeByte(int address, short value)
+    {
+        writable((address & SHORT_MASK) >> SHIFT_8BITS)[address & BYTE_MASK] = (byte) value;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.nucco.jems.impl.memory.AbstractMemory#readShort(int)
+     */
+    @Override
+    public int readShort(int address)
+    {
+        address &= SHORT_MASK;
+        int low = address & BYTE_MASK;
+        if (low != BYTE_MASK)
+        {
+            byte[] page = pages[address >> SHIFT_8BITS];
+            return (page[low] & BYTE_MASK) | (page[low + 1] & BYTE_MASK) << SHIFT_8BITS;
+        }
+
+        return super.readShort(address);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.nucco.jems.impl.memory.AbstractMemory#readShortPageWrap(int)
+     */
+    @Override
+    public int readShortPageWrap(int address)
+    {
+        address &= SHORT_MASK;
+        byte[] page = pages[address >> SHIFT_8BITS];
+        return (page[address & BYTE_MASK] & BYTE_MASK) | (page[(address + 1) & BYTE_MASK] & BYTE_MASK) << SHIFT_8BITS;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.nucco.jems.impl.memory.AbstractMemory#readBlock(int, byte[],
+     * int, int)
+     */
+    @Override
+    public void readBlock(int address, byte[] destination, int offset, int length)
+    {
+        while (length > 0)
+        {
+            address &= SHORT_MASK;
+            int low = address & BYTE_MASK;
+            int count = Math.min(length, PAGE_SIZE - low);
+            System.arraycopy(pages[address >> SHIFT_8BITS], low, destination, offset, count);
+            address += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.nucco.jems.impl.memory.AbstractMemory#writeBlock(int, byte[],
+     * int, int)
+     */
+    @Override
+    public void writeBlock(int address, byte[] source, int offset, int length)
+    {
+        while (length > 0)
+        {
+            address &= SHORT_MASK;
+            int low = address & BYTE_MASK;
+            int count = Math.min(length, PAGE_SIZE - low);
+            System.arraycopy(source, offset, writable(address >> SHIFT_8BITS), low, count);
+            address += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.nucco.jems.impl.memory.AbstractMemory#readBlock(int,
+     * java.nio.ByteBuffer)
+     */
+    @Override
+    public void readBlock(int address, ByteBuffer destination)
+    {
+        while (destination.hasRemaining())
+        {
+            address &= SHORT_MASK;
+            int low = address & BYTE_MASK;
+            int count = Math.min(destination.remaining(), PAGE_SIZE - low);
+            destination.put(pages[address >> SHIFT_8BITS], low, count);
+            address += count;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.nucco.jems.impl.memory.AbstractMemory#writeBlock(int,
+     * java.nio.ByteBuffer)
+     */
+    @Override
+    public void writeBlock(int address, ByteBuffer source)
+    {
+        while (source.hasRemaining())
+        {
+            address &= SHORT_MASK;
+            int low = address & BYTE_MASK;
+            int count = Math.min(source.remaining(), PAGE_SIZE - low);
+            source.get(writable(address >> SHIFT_8BITS), low, count);
+            address += count;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.nucco.jems.impl.memory.AbstractMemory#fill(int, int, short)
+     */
+    @Override
+    public void fill(int address, int length, short value)
+    {
+        while (length > 0)
+        {
+            address &= SHORT_MASK;
+            int low = address & BYTE_MASK;
+            int count = Math.min(length, PAGE_SIZE - low);
+            Arrays.fill(writable(address >> SHIFT_8BITS), low, low + count, (byte) value);
+            address += count;
+            length -= count;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.nucco.jems.api.memory.DirtyPages#isDirty(int)
+     */
+    @Override
+    public boolean isDirty(int page)
+    {
+        return (dirty[page >> 6] & 1L << page) != 0;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.nucco.jems.api.memory.DirtyPages#getDirtyPages(long[])
+     */
+    @Override
+    public void getDirtyPages(long[] destination)
+    {
+        System.arraycopy(dirty, 0, destination, 0, DIRTY_WORDS);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.nucco.jems.api.memory.DirtyPages#clearDirtyPages()
+     */
+    @Override
+    public void clearDirtyPages()
+    {
+        Arrays.fill(dirty, 0);
+    }
+
+    /*
+     * (non-Javadoc) Get a page to write in, copying it first if shared, and mark
+     * it dirty.
+     *
+     * @param page the page number
+     *
+     * @return the array of the page
+     */
+    private byte[] writable(int page)
+    {
+        dirty[page >> 6] |= 1L << page;
+        if (!owned[page])
+        {
+            pages[page] = pages[page].clone();
+            owned[page] = true;
+            copies++;
+        }
+        return pages[page];
+    }
+
+}
@@ -0,0 +1,134 @@
+package org.nucco.jems.impl.memory;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.nucco.jems.api.memory.BlockMemory;
+import org.nucco.jems.api.memory.DirtyPages;
+import org.nucco.jems.api.memory.Memory;
+
+/**
+ * Block accesses on any {@link Memory}: delegated to a {@link BlockMemory},
+ * done one byte at a time on the others. Addresses wrap from 0xFFFF to 0x0000.
+ */
+public final class Memories
+{
+
+    private static final short BYTE_MASK = 0xFF;
+    private static final int SHORT_MASK = 0xFFFF;
+
+    private Memories()
+    {
+    }
+
+    /**
+     * @see BlockMemory#readBlock(int, byte[], int, int)
+     */
+    public static void readBlock(Memory memory, int address, byte[] destination, int offset, int length)
+    {
+        if (memory instanceof BlockMemory)
+        {
+            ((BlockMemory) memory).readBlock(address, destination, offset, length);
+            return;
+        }
+
+        for (int i = 0; i < length; i++)
+        {
+            destination[offset + i] = (byte) memory.readByte((address + i) & SHORT_MASK);
+        }
+    }
+
+    /**
+     * @see BlockMemory#writeBlock(int, byte[], int, int)
+     */
+    public static void writeBlock(Memory memory, int address, byte[] source, int offset, int length)
+    {
+        if (memory instanceof BlockMemory)
+        {
+            ((BlockMemory) memory).writeBlock(address, source, offset, length);
+            return;
+        }
+
+        for (int i = 0; i < length; i++)
+        {
+            memory.writeByte((address + i) & SHORT_MASK, (short) (source[offset + i] & BYTE_MASK));
+        }
+    }
+
+    /**
+     * @see BlockMemory#readBlock(int, ByteBuffer)
+     */
+    public static void readBlock(Memory memory, int address, ByteBuffer destination)
+    {
+        if (memory instanceof BlockMemory)
+        {
+            ((BlockMemory) memory).readBlock(address, destination);
+            return;
+        }
+
+        while (destination.hasRemaining())
+        {
+            destination.put((byte) memory.readByte(address & SHORT_MASK));
+            address++;
+        }
+    }
+
+    /**
+     * @see BlockMemory#writeBlock(int, ByteBuffer)
+     */
+    public static void writeBlock(Memory memory, int address, ByteBuffer source)
+    {
+        if (memory instanceof BlockMemory)
+        {
+            ((BlockMemory) memory).writeBlock(address, source);
+            return;
+        }
+
+        while (source.hasRemaining())
+        {
+            memory.writeByte(address & SHORT_MASK, (short) (source.get() & BYTE_MASK));
+            address++;
+        }
+    }
+
+    /**
+     * Get the pages of a memory holding plain data, which may be read and
+     * written back without side effects: the array backed pages of a
+     * {@link PagedMemory}, every page of the other memories.
+     * 
+     * @param memory
+     *            the memory
+     * @param destination
+     *            the {@link DirtyPages#DIRTY_WORDS} words where to put the
+     *            bits, page n being bit n % 64 of word n / 64
+     */
+    public static void getBackedPages(Memory memory, long[] destination)
+    {
+        if (memory instanceof PagedMemory)
+        {
+            ((PagedMemory) memory).getBackedPages(destination);
+        }
+        else
+        {
+            Arrays.fill(destination, 0, DirtyPages.DIRTY_WORDS, -1L);
+        }
+    }
+
+    /**
+     * @see BlockMemory#fill(int, int, short)
+     */
+    public static void fill(Memory memory, int address, int length, short value)
+    {
+        if (memory instanceof BlockMemory)
+        {
+            ((BlockMemory) memory).fill(address, length, value);
+            return;
+        }
+
+        for (int i = 0; i < length; i++)
+        {
+            memory.writeByte((address + i) & SHORT_MASK, value);
+        }
+    }
+
+}
@@ -0,0 +1,522 @@
+package org.nucco.jems.impl.memory;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.nucco.jems.api.memory.DirtyPages;
+import org.nucco.jems.api.memory.Memory;
+
+/**
+ * A 64KB address space split in 256 pages of 256 bytes. Reads and writes of
+ * each page are mapped independently, either to a slice of a byte array (RAM,
+ * ROM, mirrors) or to a handler {@link Memory} receiving the full 16bits
+ * address (memory mapped I/O). Remapping a page is a constant time operation.
+ * Unmapped pages read as zero and ignore writes. Any write marks its page of
+ * the address space dirty, whatever the page is mapped to.
+ * Snapshots and the like only copy the {@link #getBackedPages(long[]) backed
+ * pages}, as accessing a handler may have side effects.
+ */
+public final class PagedMemory extends AbstractMemory implements DirtyPages
+{
+
+    public static final int PAGES = 0x100;
+    public static final int PAGE_SIZE = 0x100;
+
+    private static final byte PAGE_SHIFT = 8;
+
+    private static final Memory UNMAPPED = new AbstractMemory()
+    {
+
+        @Override
+        public short readByte(int address)
+        {
+            return 0;
+        }
+
+        @Override
+        public void writeByte(int address, short value)
+        {
+        }
+
+    };
+
+    private final byte[][] readPages = new byte[PAGES][];
+    private final int[] readOffsets = new int[PAGES];
+    private final Memory[] readHandlers = new Memory[PAGES];
+
+    private final byte[][] writePages = new byte[PAGES][];
+    private final int[] writeOffsets = new int[PAGES];
+    private final Memory[] writeHandlers = new Memory[PAGES];
+
+    private final long[] dirty = new long[DIRTY_WORDS];
+
+    public PagedMemory()
+    {
+        unmap(0, PAGES);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.api.memory.Memory#readByte(int)
+     */
+    @Override
+    public short readByte(int address)
+    {
+        int page = (address & SHORT_MASK) >> PAGE_SHIFT;
+        byte[] data = readPages[page];
+        if (data != null)
+        {
+            return (short) (data[readOffsets[page] + (address & BYTE_MASK)] & BYTE_MASK);
+        }
+
+        return readHandlers[page].readByte(address & SHORT_MASK);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.api.memory.Memory#writeByte(int, short)
+     */
+    @Override
+    public void writeByte(int address, short value)
+    {
+        int page = (address & SHORT_MASK) >> PAGE_SHIFT;
+        dirty[page >> 6] |= 1L << page;
+        byte[] data = writePages[page];
+        if (data != null)
+        {
+            data[writeOffsets[page] + (address & BYTE_MASK)] = (byte) value;
+            return;
+        }
+
+        writeHandlers[page].writeByte(address & SHORT_MASK, value);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.impl.memory.AbstractMemory#readShort(int)
+     */
+    @Override
+    public int readShort(int address)
+    {
+        address &= SHORT_MASK;
+        int page = address >> PAGE_SHIFT;
+        int low = address & BYTE_MASK;
+        byte[] data = readPages[page];
+        if (data != null && low != BYTE_MASK)
+        {
+            int index = readOffsets[page] + low;
+            return (data[index] & BYTE_MASK) | (data[index + 1] & BYTE_MASK) << SHIFT_8BITS;
+        }
+
+        return super.readShort(address);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.impl.memory.AbstractMemory#readShortPageWrap(int)
+     */
+    @Override
+    public int readShortPageWrap(int address)
+    {
+        address &= SHORT_MASK;
+        int page = address >> PAGE_SHIFT;
+        byte[] data = readPages[page];
+        if (data != null)
+        {
+            int offset = readOffsets[page];
+            return (data[offset + (address & BYTE_MASK)] & BYTE_MASK)
+                    | (data[offset + ((address + 1) & BYTE_MASK)] & BYTE_MASK) << SHIFT_8BITS;
+        }
+
+        return super.readShortPageWrap(address);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.impl.memory.AbstractMemory#readBlock(int, byte[],
+     * int, int)
+     */
+    @Override
+    public void readBlock(int address, byte[] destination, int offset, int length)
+    {
+        while (length > 0)
+        {
+            address &= SHORT_MASK;
+            int page = address >> PAGE_SHIFT;
+            int low = address & BYTE_MASK;
+            int count = Math.min(length, PAGE_SIZE - low);
+            byte[] data = readPages[page];
+            if (data != null)
+            {
+                System.arraycopy(data, readOffsets[page] + low, destination, offset, count);
+            }
+            else
+            {
+                Memories.readBlock(readHandlers[page], address, destination, offset, count);
+            }
+            address += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.impl.memory.AbstractMemory#writeBlock(int, byte[],
+     * int, int)
+     */
+    @Override
+    public void writeBlock(int address, byte[] source, int offset, int length)
+    {
+        while (length > 0)
+        {
+            address &= SHORT_MASK;
+            int page = address >> PAGE_SHIFT;
+            int low = address & BYTE_MASK;
+            int count = Math.min(length, PAGE_SIZE - low);
+            dirty[page >> 6] |= 1L << page;
+            byte[] data = writePages[page];
+            if (data != null)
+            {
+                System.arraycopy(source, offset, data, writeOffsets[page] + low, count);
+            }
+            else
+            {
+                Memories.writeBlock(writeHandlers[page], address, source, offset, count);
+            }
+            address += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.impl.memory.AbstractMemory#readBlock(int,
+     * java.nio.ByteBuffer)
+     */
+    @Override
+    public void readBlock(int address, ByteBuffer destination)
+    {
+        int limit = destination.limit();
+        while (destination.hasRemaining())
+        {
+            address &= SHORT_MASK;
+            int page = address >> PAGE_SHIFT;
+            int low = address & BYTE_MASK;
+            int count = Math.min(destination.remaining(), PAGE_SIZE - low);
+            byte[] data = readPages[page];
+            if (data != null)
+            {
+                destination.put(data, readOffsets[page] + low, count);
+            }
+            else
+            {
+                destination.limit(destination.position() + count);
+                Memories.readBlock(readHandlers[page], address, destination);
+                destination.limit(limit);
+            }
+            address += count;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.impl.memory.AbstractMemory#writeBlock(int,
+     * java.nio.ByteBuffer)
+     */
+    @Override
+    public void writeBlock(int address, ByteBuffer source)
+    {
+        int limit = source.limit();
+        while (source.hasRemaining())
+        {
+            address &= SHORT_MASK;
+            int page = address >> PAGE_SHIFT;
+            int low = address & BYTE_MASK;
+            int count = Math.min(source.remaining(), PAGE_SIZE - low);
+            dirty[page >> 6] |= 1L << page;
+            byte[] data = writePages[page];
+            if (data != null)
+            {
+                source.get(data, writeOffsets[page] + low, count);
+            }
+            else
+            {
+                source.limit(source.position() + count);
+                Memories.writeBlock(writeHandlers[page], address, source);
+                source.limit(limit);
+            }
+            address += count;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.impl.memory.AbstractMemory#fill(int, int, short)
+     */
+    @Override
+    public void fill(int address, int length, short value)
+    {
+        while (length > 0)
+        {
+            address &= SHORT_MASK;
+            int page = address >> PAGE_SHIFT;
+            int low = address & BYTE_MASK;
+            int count = Math.min(length, PAGE_SIZE - low);
+            dirty[page >> 6] |= 1L << page;
+            byte[] data = writePages[page];
+            if (data != null)
+            {
+                int start = writeOffsets[page] + low;
+                Arrays.fill(data, start, start + count, (byte) value);
+            }
+            else
+            {
+                Memories.fill(writeHandlers[page], address, count, value);
+            }
+            address += count;
+            length -= count;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.api.memory.DirtyPages#isDirty(int)
+     */
+    @Override
+    public boolean isDirty(int page)
+    {
+        return (dirty[page >> 6] & 1L << page) != 0;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.api.memory.DirtyPages#getDirtyPages(long[])
+     */
+    @Override
+    public void getDirtyPages(long[] destination)
+    {
+        System.arraycopy(dirty, 0, destination, 0, DIRTY_WORDS);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.api.memory.DirtyPages#clearDirtyPages()
+     */
+    @Override
+    public void clearDirtyPages()
+    {
+        Arrays.fill(dirty, 0);
+    }
+
+    /**
+     * Get the pages mapped to arrays for both reads and writes, RAM and its
+     * mirrors, as the dirty pages: page n is bit n % 64 of word n / 64. ROM,
+     * unmapped and handler pages are left out, so saving and restoring the
+     * backed pages never reaches a device.
+     * 
+     * @param destination
+     *            the {@link #DIRTY_WORDS} words where to put the bits
+     */
+    public void getBackedPages(long[] destination)
+    {
+        Arrays.fill(destination, 0, DIRTY_WORDS, 0);
+        for (int page = 0; page < PAGES; page++)
+        {
+            if (readPages[page] != null && writePages[page] != null)
+            {
+                destination[page >> 6] |= 1L << page;
+            }
+        }
+    }
+
+    /**
+     * Map the reads of a page to a 256 bytes slice of an array.
+     * 
+     * @param page
+     *            the page number, from 0x00 to 0xFF
+     * @param data
+     *            the backing array
+     * @param offset
+     *            the index in the array of the first byte of the page
+     */
+    public void mapRead(int page, byte[] data, int offset)
+    {
+        checkSlice(data, offset, 1);
+        readPages[page] = data;
+        readOffsets[page] = offset;
+        readHandlers[page] = null;
+    }
+
+    /**
+     * Map the writes of a page to a 256 bytes slice of an array.
+     * 
+     * @param page
+     *            the page number, from 0x00 to 0xFF
+     * @param data
+     *            the backing array
+     * @param offset
+     *            the index in the array of the first byte of the page
+     */
+    public void mapWrite(int page, byte[] data, int offset)
+    {
+        checkSlice(data, offset, 1);
+        writePages[page] = data;
+        writeOffsets[page] = offset;
+        writeHandlers[page] = null;
+    }
+
+    /**
+     * Map the reads of a page to a handler.
+     * 
+     * @param page
+     *            the page number, from 0x00 to 0xFF
+     * @param handler
+     *            the handler, called with the full 16bits address
+     */
+    public void mapRead(int page, Memory handler)
+    {
+        readPages[page] = null;
+        readHandlers[page] = handler;
+    }
+
+    /**
+     * Map the writes of a page to a handler.
+     * 
+     * @param page
+     *            the page number, from 0x00 to 0xFF
+     * @param handler
+     *            the handler, called with the full 16bits address
+     */
+    public void mapWrite(int page, Memory handler)
+    {
+        writePages[page] = null;
+        writeHandlers[page] = handler;
+    }
+
+    /**
+     * Map consecutive pages as RAM on consecutive slices of an array.
+     * 
+     * @param page
+     *            the first page number
+     * @param count
+     *            the number of pages to map
+     * @param data
+     *            the backing array
+     * @param offset
+     *            the index in the array of the first byte of the first page
+     */
+    public void mapRAM(int page, int count, byte[] data, int offset)
+    {
+        checkSlice(data, offset, count);
+        for (int i = 0; i < count; i++)
+        {
+            mapRead(page + i, data, offset + i * PAGE_SIZE);
+            mapWrite(page + i, data, offset + i * PAGE_SIZE);
+        }
+    }
+
+    /**
+     * Map consecutive pages as ROM on consecutive slices of an array. Writes to
+     * these pages are ignored.
+     * 
+     * @param page
+     *            the first page number
+     * @param count
+     *            the number of pages to map
+     * @param data
+     *            the backing array
+     * @param offset
+     *            the index in the array of the first byte of the first page
+     */
+    public void mapROM(int page, int count, byte[] data, int offset)
+    {
+        checkSlice(data, offset, count);
+        for (int i = 0; i < count; i++)
+        {
+            mapRead(page + i, data, offset + i * PAGE_SIZE);
+            mapWrite(page + i, UNMAPPED);
+        }
+    }
+
+    /**
+     * Map reads and writes of consecutive pages to a handler.
+     * 
+     * @param page
+     *            the first page number
+     * @param count
+     *            the number of pages to map
+     * @param handler
+     *            the handler, called with the full 16bits address
+     */
+    public void map(int page, int count, Memory handler)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            mapRead(page + i, handler);
+            mapWrite(page + i, handler);
+        }
+    }
+
+    /**
+     * Make consecutive pages mirror other pages: they share the same slices or
+     * handlers as the source pages at the time of the call.
+     * 
+     * @param page
+     *            the first mirror page number
+     * @param count
+     *            the number of pages to mirror
+     * @param source
+     *            the first source page number
+     */
+    public void mirror(int page, int count, int source)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            int from = source + i;
+            int to = page + i;
+            readPages[to] = readPages[from];
+            readOffsets[to] = readOffsets[from];
+            readHandlers[to] = readHandlers[from];
+            writePages[to] = writePages[from];
+            writeOffsets[to] = writeOffsets[from];
+            writeHandlers[to] = writeHandlers[from];
+        }
+    }
+
+    /**
+     * Unmap consecutive pages: they read as zero and ignore writes.
+     * 
+     * @param page
+     *            the first page number
+     * @param count
+     *            the number of pages to unmap
+     */
+    public void unmap(int page, int count)
+    {
+        map(page, count, UNMAPPED);
+    }
+
+    private static void checkSlice(byte[] data, int offset, int count)
+    {
+        if (offset < 0 || offset + count * PAGE_SIZE > data.length)
+        {
+            throw new IllegalArgumentException("Slice of " + count + " page(s) at " + offset + " out of an array of " + data.length
+                    + " bytes");
+        }
+    }
+
+}
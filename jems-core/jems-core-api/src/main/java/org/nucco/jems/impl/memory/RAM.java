@@ -0,0 +1,223 @@
+package org.nucco.jems.impl.memory;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.nucco.jems.api.memory.DirtyPages;
+import org.nucco.jems.api.memory.Memory;
+
+/**
+ * A plain 64KB random access memory backed by a byte array. CPUs may detect it
+ * and access the array returned by {@link #getBytes()} directly instead of
+ * going through the {@link Memory} interface, as long as they keep the dirty
+ * bits returned by {@link #getDirtyBits()} up to date.
+ */
+public final class RAM extends AbstractMemory implements DirtyPages
+{
+
+    public static final int SIZE = 0x10000;
+
+    private final byte[] bytes = new byte[SIZE];
+    private final long[] dirty = new long[DIRTY_WORDS];
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.api.memory.Memory#readByte(int)
+     */
+    @Override
+    public short readByte(int address)
+    {
+        return (short) (bytes[address & SHORT_MASK] & BYTE_MASK);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.api.memory.Memory#writeByte(int, short)
+     */
+    @Override
+    public void writeByte(int address, short value)
+    {
+        address &= SHORT_MASK;
+        bytes[address] = (byte) value;
+        dirty[address >> SHIFT_DIRTY_WORD] |= 1L << (address >> SHIFT_8BITS);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.impl.memory.AbstractMemory#readShort(int)
+     */
+    @Override
+    public int readShort(int address)
+    {
+        return (bytes[address & SHORT_MASK] & BYTE_MASK) | (bytes[(address + 1) & SHORT_MASK] & BYTE_MASK) << SHIFT_8BITS;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.impl.memory.AbstractMemory#readShortPageWrap(int)
+     */
+    @Override
+    public int readShortPageWrap(int address)
+    {
+        address &= SHORT_MASK;
+        return (bytes[address] & BYTE_MASK) | (bytes[(address & PAGE_MASK) | ((address + 1) & BYTE_MASK)] & BYTE_MASK) << SHIFT_8BITS;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.impl.memory.AbstractMemory#readBlock(int, byte[],
+     * int, int)
+     */
+    @Override
+    public void readBlock(int address, byte[] destination, int offset, int length)
+    {
+        while (length > 0)
+        {
+            address &= SHORT_MASK;
+            int count = Math.min(length, SIZE - address);
+            System.arraycopy(bytes, address, destination, offset, count);
+            address += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.impl.memory.AbstractMemory#writeBlock(int, byte[],
+     * int, int)
+     */
+    @Override
+    public void writeBlock(int address, byte[] source, int offset, int length)
+    {
+        while (length > 0)
+        {
+            address &= SHORT_MASK;
+            int count = Math.min(length, SIZE - address);
+            System.arraycopy(source, offset, bytes, address, count);
+            markDirty(dirty, address, count);
+            address += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.impl.memory.AbstractMemory#readBlock(int,
+     * java.nio.ByteBuffer)
+     */
+    @Override
+    public void readBlock(int address, ByteBuffer destination)
+    {
+        while (destination.hasRemaining())
+        {
+            address &= SHORT_MASK;
+            int count = Math.min(destination.remaining(), SIZE - address);
+            destination.put(bytes, address, count);
+            address += count;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.impl.memory.AbstractMemory#writeBlock(int,
+     * java.nio.ByteBuffer)
+     */
+    @Override
+    public void writeBlock(int address, ByteBuffer source)
+    {
+        while (source.hasRemaining())
+        {
+            address &= SHORT_MASK;
+            int count = Math.min(source.remaining(), SIZE - address);
+            source.get(bytes, address, count);
+            markDirty(dirty, address, count);
+            address += count;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.impl.memory.AbstractMemory#fill(int, int, short)
+     */
+    @Override
+    public void fill(int address, int length, short value)
+    {
+        while (length > 0)
+        {
+            address &= SHORT_MASK;
+            int count = Math.min(length, SIZE - address);
+            Arrays.fill(bytes, address, address + count, (byte) value);
+            markDirty(dirty, address, count);
+            address += count;
+            length -= count;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.api.memory.DirtyPages#isDirty(int)
+     */
+    @Override
+    public boolean isDirty(int page)
+    {
+        return (dirty[page >> 6] & 1L << page) != 0;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.api.memory.DirtyPages#getDirtyPages(long[])
+     */
+    @Override
+    public void getDirtyPages(long[] destination)
+    {
+        System.arraycopy(dirty, 0, destination, 0, DIRTY_WORDS);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.api.memory.DirtyPages#clearDirtyPages()
+     */
+    @Override
+    public void clearDirtyPages()
+    {
+        Arrays.fill(dirty, 0);
+    }
+
+    /**
+     * Get the dirty bits of this memory, to be set by whoever writes in the
+     * array returned by {@link #getBytes()}: address a is in bit (a >> 8) % 64
+     * of word a >> 14.
+     * 
+     * @return the live dirty bits
+     */
+    public long[] getDirtyBits()
+    {
+        return dirty;
+    }
+
+    /**
+     * Get the backing array of this memory. Index is the 16bits address, values
+     * are signed so they must be masked with 0xFF.
+     * 
+     * @return the 64KB backing array
+     */
+    public byte[] getBytes()
+    {
+        return bytes;
+    }
+
+}
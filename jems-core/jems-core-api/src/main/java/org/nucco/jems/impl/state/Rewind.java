@@ -0,0 +1,455 @@
+package org.nucco.jems.impl.state;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.nucco.jems.api.cpu.CPU;
+import org.nucco.jems.api.memory.DirtyPages;
+import org.nucco.jems.api.memory.Memory;
+import org.nucco.jems.api.state.Stateful;
+import org.nucco.jems.impl.memory.Memories;
+
+/**
+ * Runs a CPU while capturing its machine state every interval of cycles, so it
+ * can be stepped back to any captured point. The machine state at the last
+ * capture is kept whole; every older capture is a delta: the state of the CPU
+ * and, for each page written in between, the bytes XOR the ones of the next
+ * capture, run length encoded. Deltas are stored in a ring of a fixed number
+ * of bytes, the oldest being dropped to make room.
+ * <p>
+ * Capturing and rewinding do not allocate. When the memory tracks its
+ * {@link DirtyPages}, a capture only reads the pages written since the
+ * previous one, and this class owns their tracking: nobody else may clear
+ * them.
+ * <p>
+ * Only the {@link Memories#getBackedPages(Memory, long[]) backed pages} of the
+ * memory are captured and rewound: the pages of memory mapped devices are never
+ * read nor written, the devices keeping their own state.
+ */
+public final class Rewind implements CPU
+{
+
+    public static final int PAGE_SIZE = 0x100;
+    public static final int MEMORY_SIZE = 0x10000;
+
+    private static final int PAGES = MEMORY_SIZE / PAGE_SIZE;
+    private static final int LENGTH_SIZE = 4;
+    private static final int BITS_SIZE = DirtyPages.DIRTY_WORDS * 8;
+    private static final int MAX_RUN = 0x80; // longest run of a token
+    private static final int ZERO_RUN = 0x80; // token flag of a run of zeros
+    private static final int BYTE_MASK = 0xFF;
+
+    private final CPU cpu;
+    private final Stateful state;
+    private final Memory memory;
+    private final DirtyPages tracker; // null when the memory does not track its writes
+    private final long interval;
+
+    private final byte[] ring;
+    private int head; // where the next delta goes
+    private int used;
+    private int count;
+
+    private final byte[] current = new byte[MEMORY_SIZE]; // memory at the last capture
+    private final byte[] currentState; // CPU state at the last capture
+    private final ByteBuffer currentBuffer;
+    private final byte[] entry; // the delta being encoded or decoded
+    private final byte[] page = new byte[PAGE_SIZE];
+    private final long[] dirty = new long[DirtyPages.DIRTY_WORDS];
+    private final long[] backed = new long[DirtyPages.DIRTY_WORDS];
+    private long next; // cycle of the next capture
+
+    /**
+     * @param cpu
+     *            the CPU to run, saving and loading its state
+     * @param memory
+     *            the address space of the CPU
+     * @param interval
+     *            the number of cycles between two captures
+     * @param budget
+     *            the number of bytes of the ring of deltas, at least
+     *            {@link #getMaxDeltaSize(Stateful)}
+     * @throws IllegalArgumentException
+     *             if the interval is not positive or a single delta may not
+     *             fit in the budget
+     */
+    public <C extends CPU & Stateful> Rewind(C cpu, Memory memory, long interval, int budget)
+    {
+        this.cpu = cpu;
+        this.state = cpu;
+        this.memory = memory;
+        this.tracker = memory instanceof DirtyPages ? (DirtyPages) memory : null;
+        this.interval = interval;
+
+        if (interval <= 0)
+        {
+            throw new IllegalArgumentException("Interval of " + interval + " cycles");
+        }
+        int maxDeltaSize = getMaxDeltaSize(cpu);
+        if (budget < maxDeltaSize)
+        {
+            throw new IllegalArgumentException("Budget of " + budget + " bytes below the " + maxDeltaSize
+                + " bytes of the largest delta");
+        }
+        this.ring = new byte[budget];
+        this.entry = new byte[maxDeltaSize];
+        this.currentState = new byte[cpu.getStateSize()];
+        this.currentBuffer = ByteBuffer.wrap(currentState);
+
+        Memories.getBackedPages(memory, backed);
+        for (int p = 0; p < PAGES; p++)
+        {
+            if ((backed[p >> 6] & 1L << p) != 0)
+            {
+                Memories.readBlock(memory, p * PAGE_SIZE, current, p * PAGE_SIZE, PAGE_SIZE);
+            }
+        }
+        currentBuffer.clear();
+        state.saveState(currentBuffer);
+        clearDirtyPages();
+        next = cpu.getCycles() + interval;
+    }
+
+    /**
+     * Get the number of bytes of the largest delta of a CPU: every page is
+     * written and encoded as literals, a single unchanged byte not being worth
+     * a run of zeros.
+     * 
+     * @param state
+     *            the state of the CPU
+     * @return the minimal budget
+     */
+    public static int getMaxDeltaSize(Stateful state)
+    {
+        int pageSize = PAGE_SIZE + (PAGE_SIZE + MAX_RUN - 1) / MAX_RUN;
+        return 2 * LENGTH_SIZE + state.getStateSize() + BITS_SIZE + PAGES * pageSize;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.api.cpu.CPU#step()
+     */
+    @Override
+    public void step()
+    {
+        cpu.step();
+        if (cpu.getCycles() >= next)
+        {
+            capture();
+        }
+    }
+
+    /*
+     * (non-Javadoc) Run the CPU until the next capture, capture, and so on.
+     * 
+     * @see org.nucco.jems.api.cpu.CPU#run(long)
+     */
+    @Override
+    public long run(long budget)
+    {
+        long start = cpu.getCycles();
+        long end = start + budget;
+        while (cpu.getCycles() < end)
+        {
+            cpu.run(Math.min(end, next) - cpu.getCycles());
+            if (cpu.getCycles() >= next)
+            {
+                capture();
+            }
+        }
+
+        return cpu.getCycles() - start;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.api.cpu.CPU#getCycles()
+     */
+    @Override
+    public long getCycles()
+    {
+        return cpu.getCycles();
+    }
+
+    /**
+     * @return the number of points older than the last capture the machine can
+     *         be stepped back to
+     */
+    public int getDeltaCount()
+    {
+        return count;
+    }
+
+    /**
+     * @return the number of bytes used in the ring of deltas
+     */
+    public int getUsedBytes()
+    {
+        return used;
+    }
+
+    /**
+     * Capture the machine state now, the next capture being an interval later.
+     */
+    public void capture()
+    {
+        collectDirtyPages();
+        int length = LENGTH_SIZE;
+        System.arraycopy(currentState, 0, entry, length, currentState.length);
+        length += currentState.length;
+        int bits = length;
+        length += BITS_SIZE;
+
+        for (int p = 0; p < PAGES; p++)
+        {
+            if ((dirty[p >> 6] & 1L << p) == 0)
+            {
+                continue;
+            }
+            int address = p * PAGE_SIZE;
+            Memories.readBlock(memory, address, page, 0, PAGE_SIZE);
+            boolean changed = false;
+            for (int i = 0; i < PAGE_SIZE; i++)
+            {
+                byte value = page[i];
+                page[i] ^= current[address + i];
+                current[address + i] = value;
+                changed |= page[i] != 0;
+            }
+            if (changed)
+            {
+                length = encode(page, entry, length);
+            }
+            else
+            {
+                dirty[p >> 6] &= ~(1L << p);
+            }
+        }
+        for (int i = 0; i < DirtyPages.DIRTY_WORDS; i++)
+        {
+            putLong(entry, bits + i * 8, dirty[i]);
+        }
+        length += LENGTH_SIZE;
+        putInt(entry, 0, length);
+        putInt(entry, length - LENGTH_SIZE, length);
+        push(length);
+
+        currentBuffer.clear();
+        state.saveState(currentBuffer);
+        clearDirtyPages();
+        next = cpu.getCycles() + interval;
+    }
+
+    /**
+     * Step the machine back to a captured point, discarding the newer ones.
+     * 
+     * @param steps
+     *            the number of captures to step back before the last one, 0
+     *            going back to the last capture
+     * @return the number of captures actually stepped back, limited by the
+     *         number of deltas
+     */
+    public int rewind(int steps)
+    {
+        steps = Math.min(steps, count);
+        collectDirtyPages(); // pages to restore from the last capture
+        for (int s = 0; s < steps; s++)
+        {
+            pop();
+            int offset = LENGTH_SIZE;
+            System.arraycopy(entry, offset, currentState, 0, currentState.length);
+            offset += currentState.length;
+            int bits = offset;
+            offset += BITS_SIZE;
+            for (int i = 0; i < DirtyPages.DIRTY_WORDS; i++)
+            {
+                long word = getLong(entry, bits + i * 8);
+                dirty[i] |= word;
+                for (int p = i * Long.SIZE; word != 0; p++, word >>>= 1)
+                {
+                    if ((word & 1) != 0)
+                    {
+                        offset = decode(entry, offset, current, p * PAGE_SIZE);
+                    }
+                }
+            }
+        }
+
+        for (int p = 0; p < PAGES; p++)
+        {
+            if ((dirty[p >> 6] & backed[p >> 6] & 1L << p) != 0)
+            {
+                Memories.writeBlock(memory, p * PAGE_SIZE, current, p * PAGE_SIZE, PAGE_SIZE);
+            }
+        }
+        currentBuffer.clear();
+        state.loadState(currentBuffer);
+        clearDirtyPages();
+        next = cpu.getCycles() + interval;
+        return steps;
+    }
+
+    /*
+     * Run length encode a page: a token below 0x80 is followed by token + 1
+     * literal bytes, a token from 0x80 stands for token - 0x7F zeros. Runs of
+     * zeros are at least 2 bytes long, single zeros going with the literals,
+     * so that a page never takes more than its size plus a token per 0x80
+     * bytes.
+     * 
+     * @return the offset after the encoded page
+     */
+    private static int encode(byte[] source, byte[] destination, int offset)
+    {
+        int i = 0;
+        while (i < PAGE_SIZE)
+        {
+            int start = i;
+            if (source[i] == 0 && i + 1 < PAGE_SIZE && source[i + 1] == 0)
+            {
+                while (i < PAGE_SIZE && i - start < MAX_RUN && source[i] == 0)
+                {
+                    i++;
+                }
+                destination[offset++] = (byte) (ZERO_RUN | (i - start - 1));
+            }
+            else
+            {
+                while (i < PAGE_SIZE && i - start < MAX_RUN
+                    && (source[i] != 0 || i + 1 == PAGE_SIZE || source[i + 1] != 0))
+                {
+                    i++;
+                }
+                destination[offset++] = (byte) (i - start - 1);
+                System.arraycopy(source, start, destination, offset, i - start);
+                offset += i - start;
+            }
+        }
+        return offset;
+    }
+
+    /*
+     * XOR an encoded page into a page of the memory copy.
+     * 
+     * @return the offset after the encoded page
+     */
+    private static int decode(byte[] source, int offset, byte[] destination, int address)
+    {
+        int end = address + PAGE_SIZE;
+        while (address < end)
+        {
+            int token = source[offset++] & BYTE_MASK;
+            int run = (token & (ZERO_RUN - 1)) + 1;
+            if ((token & ZERO_RUN) == 0)
+            {
+                for (int i = 0; i < run; i++)
+                {
+                    destination[address + i] ^= source[offset++];
+                }
+            }
+            address += run;
+        }
+        return offset;
+    }
+
+    /*
+     * Append the encoded delta to the ring, dropping the oldest ones until it
+     * fits.
+     */
+    private void push(int length)
+    {
+        while (ring.length - used < length)
+        {
+            int tail = (head - used + ring.length) % ring.length;
+            used -= readInt(tail);
+            count--;
+        }
+        int first = Math.min(length, ring.length - head);
+        System.arraycopy(entry, 0, ring, head, first);
+        System.arraycopy(entry, first, ring, 0, length - first);
+        head = (head + length) % ring.length;
+        used += length;
+        count++;
+    }
+
+    /*
+     * Remove the newest delta from the ring, into the entry.
+     */
+    private void pop()
+    {
+        int length = readInt((head - LENGTH_SIZE + ring.length) % ring.length);
+        int start = (head - length + ring.length) % ring.length;
+        int first = Math.min(length, ring.length - start);
+        System.arraycopy(ring, start, entry, 0, first);
+        System.arraycopy(ring, 0, entry, first, length - first);
+        head = start;
+        used -= length;
+        count--;
+    }
+
+    private int readInt(int offset)
+    {
+        int value = 0;
+        for (int i = 0; i < LENGTH_SIZE; i++)
+        {
+            value = value << 8 | ring[(offset + i) % ring.length] & BYTE_MASK;
+        }
+        return value;
+    }
+
+    private static void putInt(byte[] array, int offset, int value)
+    {
+        for (int i = LENGTH_SIZE - 1; i >= 0; i--, value >>>= 8)
+        {
+            array[offset + i] = (byte) value;
+        }
+    }
+
+    private static void putLong(byte[] array, int offset, long value)
+    {
+        for (int i = 7; i >= 0; i--, value >>>= 8)
+        {
+            array[offset + i] = (byte) value;
+        }
+    }
+
+    private static long getLong(byte[] array, int offset)
+    {
+        long value = 0;
+        for (int i = 0; i < 8; i++)
+        {
+            value = value << 8 | array[offset + i] & BYTE_MASK;
+        }
+        return value;
+    }
+
+    /*
+     * Collect the backed pages written since the last capture or rewind.
+     */
+    private void collectDirtyPages()
+    {
+        if (tracker != null)
+        {
+            tracker.getDirtyPages(dirty);
+        }
+        else
+        {
+            Arrays.fill(dirty, -1L);
+        }
+        Memories.getBackedPages(memory, backed);
+        for (int i = 0; i < DirtyPages.DIRTY_WORDS; i++)
+        {
+            dirty[i] &= backed[i];
+        }
+    }
+
+    private void clearDirtyPages()
+    {
+        if (tracker != null)
+        {
+            tracker.clearDirtyPages();
+        }
+    }
+
+}
@@ -0,0 +1,337 @@
+package org.nucco.jems.impl.state;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import org.nucco.jems.api.memory.DirtyPages;
+import org.nucco.jems.api.memory.Memory;
+import org.nucco.jems.api.state.Stateful;
+import org.nucco.jems.impl.memory.Memories;
+
+/**
+ * Saves and restores a whole machine: the state of its CPU and the 64KB of its
+ * address space. The layout is fixed, in big endian whatever the order of the
+ * buffer:
+ * <ul>
+ * <li>0: magic number, "JEMS"</li>
+ * <li>4: version of the layout</li>
+ * <li>6: size of the CPU state</li>
+ * <li>8: CPU state</li>
+ * <li>8 + CPU state size: the address space, from 0x0000 to 0xFFFF</li>
+ * </ul>
+ * A delta only holds the pages written since the previous snapshot or delta,
+ * when the memory tracks its {@link DirtyPages}, and every page otherwise:
+ * <ul>
+ * <li>0: magic number, "JEMD"</li>
+ * <li>4: version of the layout</li>
+ * <li>6: size of the CPU state</li>
+ * <li>8: CPU state</li>
+ * <li>8 + CPU state size: the 4 words of bits of the saved pages, page n
+ * being bit n % 64 of word n / 64</li>
+ * <li>40 + CPU state size: the saved pages, in ascending order</li>
+ * </ul>
+ * Only the {@link Memories#getBackedPages(Memory, long[]) backed pages} of the
+ * memory are saved and restored: the pages of memory mapped devices are saved
+ * as zeros, left out of the deltas and never written back, the devices keeping
+ * their own state.
+ * <p>
+ * A machine is restored by a snapshot followed by the chain of deltas saved
+ * after it. Saving or restoring marks every page clean, and none of them
+ * allocates, so a snapshot can be restored thousands of times per second.
+ */
+public final class Snapshot
+{
+
+    public static final int MAGIC = 0x4A454D53;
+    public static final int DELTA_MAGIC = 0x4A454D44;
+    public static final short VERSION = 1;
+    public static final int HEADER_SIZE = 8;
+    public static final int MEMORY_SIZE = 0x10000;
+    public static final int PAGE_SIZE = 0x100;
+
+    private static final int PAGES = MEMORY_SIZE / PAGE_SIZE;
+    private static final int BITS_SIZE = DirtyPages.DIRTY_WORDS * 8;
+    private static final byte[] ZEROS = new byte[PAGE_SIZE];
+
+    private final Stateful cpu;
+    private final Memory memory;
+    private final DirtyPages tracker; // null when the memory does not track its writes
+    private final long[] dirty = new long[DirtyPages.DIRTY_WORDS];
+    private final long[] backed = new long[DirtyPages.DIRTY_WORDS];
+
+    public Snapshot(Stateful cpu, Memory memory)
+    {
+        this.cpu = cpu;
+        this.memory = memory;
+        this.tracker = memory instanceof DirtyPages ? (DirtyPages) memory : null;
+    }
+
+    /**
+     * @return the number of bytes of a snapshot
+     */
+    public int getSize()
+    {
+        return HEADER_SIZE + cpu.getStateSize() + MEMORY_SIZE;
+    }
+
+    /**
+     * @return the number of bytes of a delta saved now
+     */
+    public int getDeltaSize()
+    {
+        collectDirtyPages();
+        int pages = 0;
+        for (long word : dirty)
+        {
+            pages += Long.bitCount(word);
+        }
+        return HEADER_SIZE + cpu.getStateSize() + BITS_SIZE + pages * PAGE_SIZE;
+    }
+
+    /**
+     * Put a snapshot at the position of a buffer, and advance it by the
+     * snapshot size.
+     * 
+     * @param buffer
+     *            the buffer where to put the snapshot
+     */
+    public void save(ByteBuffer buffer)
+    {
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        try
+        {
+            saveHeader(buffer, MAGIC);
+            Memories.getBackedPages(memory, backed);
+            for (int page = 0; page < PAGES; page++)
+            {
+                if ((backed[page >> 6] & 1L << page) != 0)
+                {
+                    readMemory(page * PAGE_SIZE, PAGE_SIZE, buffer);
+                }
+                else
+                {
+                    buffer.put(ZEROS);
+                }
+            }
+            clearDirtyPages();
+        }
+        finally
+        {
+            buffer.order(order);
+        }
+    }
+
+    /**
+     * Put a delta at the position of a buffer, and advance it by the delta
+     * size.
+     * 
+     * @param buffer
+     *            the buffer where to put the delta
+     */
+    public void saveDelta(ByteBuffer buffer)
+    {
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        try
+        {
+            saveHeader(buffer, DELTA_MAGIC);
+            collectDirtyPages();
+            for (long word : dirty)
+            {
+                buffer.putLong(word);
+            }
+            for (int page = 0; page < PAGES; page++)
+            {
+                if ((dirty[page >> 6] & 1L << page) != 0)
+                {
+                    readMemory(page * PAGE_SIZE, PAGE_SIZE, buffer);
+                }
+            }
+            clearDirtyPages();
+        }
+        finally
+        {
+            buffer.order(order);
+        }
+    }
+
+    /**
+     * Get a snapshot at the position of a buffer, and advance it by the
+     * snapshot size.
+     * 
+     * @param buffer
+     *            the buffer where to get the snapshot
+     * @throws IllegalArgumentException
+     *             if the buffer does not hold a snapshot of this version and
+     *             CPU
+     */
+    public void restore(ByteBuffer buffer)
+    {
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        try
+        {
+            int start = checkHeader(buffer, MAGIC);
+            int state = start + HEADER_SIZE;
+            buffer.position(state + cpu.getStateSize());
+            Memories.getBackedPages(memory, backed);
+            for (int page = 0; page < PAGES; page++)
+            {
+                if ((backed[page >> 6] & 1L << page) != 0)
+                {
+                    writeMemory(page * PAGE_SIZE, PAGE_SIZE, buffer);
+                }
+                else
+                {
+                    buffer.position(buffer.position() + PAGE_SIZE);
+                }
+            }
+            int end = buffer.position();
+            loadState(buffer, state);
+            buffer.position(end);
+        }
+        finally
+        {
+            buffer.order(order);
+        }
+    }
+
+    /**
+     * Get a delta at the position of a buffer, and advance it by the delta
+     * size. The machine must be in the state the delta was saved from: the
+     * snapshot or delta preceding it was the last one restored.
+     * 
+     * @param buffer
+     *            the buffer where to get the delta
+     * @throws IllegalArgumentException
+     *             if the buffer does not hold a delta of this version and CPU
+     */
+    public void restoreDelta(ByteBuffer buffer)
+    {
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        try
+        {
+            int start = checkHeader(buffer, DELTA_MAGIC);
+            int state = start + HEADER_SIZE;
+            buffer.position(state + cpu.getStateSize());
+            for (int i = 0; i < DirtyPages.DIRTY_WORDS; i++)
+            {
+                dirty[i] = buffer.getLong();
+            }
+            Memories.getBackedPages(memory, backed);
+            for (int page = 0; page < PAGES; page++)
+            {
+                long bit = 1L << page;
+                if ((dirty[page >> 6] & bit) == 0)
+                {
+                    continue;
+                }
+                if ((backed[page >> 6] & bit) != 0)
+                {
+                    writeMemory(page * PAGE_SIZE, PAGE_SIZE, buffer);
+                }
+                else
+                {
+                    buffer.position(buffer.position() + PAGE_SIZE);
+                }
+            }
+            int end = buffer.position();
+            loadState(buffer, state);
+            buffer.position(end);
+        }
+        finally
+        {
+            buffer.order(order);
+        }
+    }
+
+    private void saveHeader(ByteBuffer buffer, int magic)
+    {
+        buffer.putInt(magic);
+        buffer.putShort(VERSION);
+        buffer.putShort((short) cpu.getStateSize());
+        cpu.saveState(buffer);
+    }
+
+    /*
+     * Check the header at the position of a buffer.
+     * 
+     * @return the position of the header
+     */
+    private int checkHeader(ByteBuffer buffer, int magic)
+    {
+        int start = buffer.position();
+        if (buffer.getInt(start) != magic)
+        {
+            throw new IllegalArgumentException(magic == MAGIC ? "Not a snapshot" : "Not a delta");
+        }
+        if (buffer.getShort(start + 4) != VERSION)
+        {
+            throw new IllegalArgumentException("Unsupported snapshot version " + buffer.getShort(start + 4));
+        }
+        if (buffer.getShort(start + 6) != cpu.getStateSize())
+        {
+            throw new IllegalArgumentException("Snapshot of another CPU");
+        }
+        return start;
+    }
+
+    /*
+     * Load the CPU state once the memory is restored, as the CPU drops what
+     * it derived from the memory.
+     */
+    private void loadState(ByteBuffer buffer, int position)
+    {
+        buffer.position(position);
+        cpu.loadState(buffer);
+        clearDirtyPages();
+    }
+
+    private void readMemory(int address, int length, ByteBuffer buffer)
+    {
+        int limit = buffer.limit();
+        buffer.limit(buffer.position() + length);
+        Memories.readBlock(memory, address, buffer);
+        buffer.limit(limit);
+    }
+
+    private void writeMemory(int address, int length, ByteBuffer buffer)
+    {
+        int limit = buffer.limit();
+        buffer.limit(buffer.position() + length);
+        Memories.writeBlock(memory, address, buffer);
+        buffer.limit(limit);
+    }
+
+    /*
+     * Collect the backed pages written since the last save or restore.
+     */
+    private void collectDirtyPages()
+    {
+        if (tracker != null)
+        {
+            tracker.getDirtyPages(dirty);
+        }
+        else
+        {
+            Arrays.fill(dirty, -1L);
+        }
+        Memories.getBackedPages(memory, backed);
+        for (int i = 0; i < DirtyPages.DIRTY_WORDS; i++)
+        {
+            dirty[i] &= backed[i];
+        }
+    }
+
+    private void clearDirtyPages()
+    {
+        if (tracker != null)
+        {
+            tracker.clearDirtyPages();
+        }
+    }
+
+}
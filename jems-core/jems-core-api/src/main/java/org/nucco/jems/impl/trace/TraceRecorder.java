@@ -0,0 +1,216 @@
+package org.nucco.jems.impl.trace;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records fixed size binary records in an off-heap ring, drained to a file by
+ * a background thread. Recording does not allocate nor lock: the emulator
+ * claims the offset of the next record in the ring, puts the record there
+ * with absolute puts in little endian, and commits it. When the ring is full
+ * the emulator waits for the drain, so no record is ever lost.
+ * <p>
+ * A recorder has a single producer: one thread claims and commits the
+ * records.
+ */
+public final class TraceRecorder implements Closeable
+{
+
+    private static final long IDLE_NANOS = 100000; // sleep of the drain thread on an empty ring
+
+    private final FileChannel channel;
+    private final int recordSize;
+    private final int capacity;
+    private final ByteBuffer ring;
+    private final ByteBuffer drain; // view of the ring owned by the drain thread
+    private final Thread thread;
+
+    private final AtomicLong head = new AtomicLong(); // records committed, written by the producer
+    private final AtomicLong tail = new AtomicLong(); // records drained, written by the drain thread
+    private long next; // records claimed, producer side
+    private long free; // records the producer may claim before looking at the tail again
+
+    private volatile boolean closed;
+    private volatile IOException failure;
+
+    /**
+     * Start a recorder writing at the position of a file. The channel is not
+     * closed with the recorder.
+     * 
+     * @param channel
+     *            the file where to drain the records
+     * @param recordSize
+     *            the number of bytes of a record
+     * @param capacity
+     *            the number of records of the ring
+     */
+    public TraceRecorder(FileChannel channel, int recordSize, int capacity)
+    {
+        if (recordSize <= 0 || capacity <= 0)
+        {
+            throw new IllegalArgumentException("Ring of " + capacity + " records of " + recordSize + " bytes");
+        }
+        this.channel = channel;
+        this.recordSize = recordSize;
+        this.capacity = capacity;
+        this.ring = ByteBuffer.allocateDirect(recordSize * capacity).order(ByteOrder.LITTLE_ENDIAN);
+        this.drain = ring.duplicate();
+        this.free = capacity;
+
+        thread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                drain();
+            }
+        }, "jems-trace");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return the ring, for the absolute puts of the records
+     */
+    public ByteBuffer getBuffer()
+    {
+        return ring;
+    }
+
+    /**
+     * @return the number of bytes of a record
+     */
+    public int getRecordSize()
+    {
+        return recordSize;
+    }
+
+    /**
+     * Get the place of the next record, waiting for the drain if the ring is
+     * full.
+     * 
+     * @return the offset of the record in the buffer
+     * @throws IllegalStateException
+     *             if the drain failed or the recorder is closed
+     */
+    public int claim()
+    {
+        if (free == 0)
+        {
+            waitForSpace();
+        }
+        free--;
+        return (int) (next++ % capacity) * recordSize;
+    }
+
+    /**
+     * Publish the records claimed so far to the drain thread.
+     */
+    public void commit()
+    {
+        head.lazySet(next);
+    }
+
+    /**
+     * Wait until every committed record is written to the file.
+     * 
+     * @throws IOException
+     *             if writing the file failed
+     */
+    public void flush() throws IOException
+    {
+        long committed = head.get();
+        while (tail.get() < committed && failure == null && thread.isAlive())
+        {
+            LockSupport.unpark(thread);
+            Thread.yield();
+        }
+        if (failure != null)
+        {
+            throw failure;
+        }
+    }
+
+    /**
+     * Write the committed records and stop the drain thread.
+     * 
+     * @throws IOException
+     *             if writing the file failed
+     */
+    @Override
+    public void close() throws IOException
+    {
+        closed = true;
+        LockSupport.unpark(thread);
+        try
+        {
+            thread.join();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null)
+        {
+            throw failure;
+        }
+    }
+
+    private void waitForSpace()
+    {
+        head.lazySet(next);
+        while ((free = capacity - (next - tail.get())) == 0)
+        {
+            if (failure != null || closed)
+            {
+                throw new IllegalStateException("Trace recorder stopped", failure);
+            }
+            LockSupport.unpark(thread);
+            Thread.yield();
+        }
+    }
+
+    /*
+     * Loop of the drain thread: write the committed records, in at most two
+     * slices of the ring, then release them.
+     */
+    private void drain()
+    {
+        try
+        {
+            while (true)
+            {
+                boolean last = closed;
+                long from = tail.get();
+                long to = head.get();
+                if (from == to)
+                {
+                    if (last)
+                    {
+                        return;
+                    }
+                    LockSupport.parkNanos(IDLE_NANOS);
+                    continue;
+                }
+                int start = (int) (from % capacity);
+                int count = (int) Math.min(to - from, capacity - start);
+                drain.limit((start + count) * recordSize).position(start * recordSize);
+                while (drain.hasRemaining())
+                {
+                    channel.write(drain);
+                }
+                tail.set(from + count);
+            }
+        }
+        catch (IOException e)
+        {
+            failure = e;
+        }
+    }
+
+}
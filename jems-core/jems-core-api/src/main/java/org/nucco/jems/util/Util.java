@@ -5,6 +5,11 @@ public final class Util
 
     protected static final String HEX_CHARS = "0123456789ABCDEF";
 
+    private static final char[] HEX_DIGITS = HEX_CHARS.toCharArray();
+    private static final byte[] HEX_BYTES = HEX_CHARS.getBytes();
+    private static final String[] HEX_STRINGS = new String[0x100]; // every byte, built once
+
+    private static final short BYTE_MASK = 0xFF;
     private static final short FIRST_HEXA = 0xF0;
     private static final short LAST_HEXA = 0x0F;
 
@@ -12,6 +17,17 @@ public final class Util
     private static final byte SHIFT_8BITS = 8;
     private static final byte SHIFT_16BITS = 16;
 
+    private static final byte ZERO = '0';
+    private static final byte MINUS = '-';
+
+    static
+    {
+        for (int i = 0; i < HEX_STRINGS.length; i++)
+        {
+            HEX_STRINGS[i] = new String(new char[] { HEX_DIGITS[i >> SHIFT_4BITS], HEX_DIGITS[i & LAST_HEXA] });
+        }
+    }
+
     private Util()
     {
     }
@@ -25,7 +41,7 @@ public final class Util
      */
     public static String hex(byte value)
     {
-        return "" + HEX_CHARS.charAt((value & FIRST_HEXA) >> SHIFT_4BITS) + HEX_CHARS.charAt(value & LAST_HEXA);
+        return HEX_STRINGS[value & BYTE_MASK];
     }
 
     /**
@@ -37,7 +53,9 @@ public final class Util
      */
     public static String hex(short value)
     {
-        return hex((byte) (value >> SHIFT_8BITS)) + hex((byte) value);
+        char[] chars = new char[4];
+        hex(value, chars, 0);
+        return new String(chars);
     }
 
     /**
@@ -49,7 +67,144 @@ public final class Util
      */
     public static String hex(int value)
     {
-        return hex((short) (value >> SHIFT_16BITS)) + hex((short) value);
+        char[] chars = new char[8];
+        hex(value, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * Writes a byte as 2 Hexadecimal digits in a char array.
+     * 
+     * @param value
+     *            The byte to convert
+     * @param destination
+     *            The array where to write
+     * @param offset
+     *            The index of the first digit
+     * @return The index after the last digit
+     */
+    public static int hex(byte value, char[] destination, int offset)
+    {
+        destination[offset] = HEX_DIGITS[(value & FIRST_HEXA) >> SHIFT_4BITS];
+        destination[offset + 1] = HEX_DIGITS[value & LAST_HEXA];
+        return offset + 2;
+    }
+
+    /**
+     * Writes a short as 4 Hexadecimal digits in a char array.
+     * 
+     * @param value
+     *            The short to convert
+     * @param destination
+     *            The array where to write
+     * @param offset
+     *            The index of the first digit
+     * @return The index after the last digit
+     */
+    public static int hex(short value, char[] destination, int offset)
+    {
+        return hex((byte) value, destination, hex((byte) (value >> SHIFT_8BITS), destination, offset));
+    }
+
+    /**
+     * Writes an int as 8 Hexadecimal digits in a char array.
+     * 
+     * @param value
+     *            The int to convert
+     * @param destination
+     *            The array where to write
+     * @param offset
+     *            The index of the first digit
+     * @return The index after the last digit
+     */
+    public static int hex(int value, char[] destination, int offset)
+    {
+        return hex((short) value, destination, hex((short) (value >> SHIFT_16BITS), destination, offset));
+    }
+
+    /**
+     * Writes a byte as 2 ASCII Hexadecimal digits in a byte array.
+     * 
+     * @param value
+     *            The byte to convert
+     * @param destination
+     *            The array where to write
+     * @param offset
+     *            The index of the first digit
+     * @return The index after the last digit
+     */
+    public static int hex(byte value, byte[] destination, int offset)
+    {
+        destination[offset] = HEX_BYTES[(value & FIRST_HEXA) >> SHIFT_4BITS];
+        destination[offset + 1] = HEX_BYTES[value & LAST_HEXA];
+        return offset + 2;
+    }
+
+    /**
+     * Writes a short as 4 ASCII Hexadecimal digits in a byte array.
+     * 
+     * @param value
+     *            The short to convert
+     * @param destination
+     *            The array where to write
+     * @param offset
+     *            The index of the first digit
+     * @return The index after the last digit
+     */
+    public static int hex(short value, byte[] destination, int offset)
+    {
+        return hex((byte) value, destination, hex((byte) (value >> SHIFT_8BITS), destination, offset));
+    }
+
+    /**
+     * Writes an int as 8 ASCII Hexadecimal digits in a byte array.
+     * 
+     * @param value
+     *            The int to convert
+     * @param destination
+     *            The array where to write
+     * @param offset
+     *            The index of the first digit
+     * @return The index after the last digit
+     */
+    public static int hex(int value, byte[] destination, int offset)
+    {
+        return hex((short) value, destination, hex((short) (value >> SHIFT_16BITS), destination, offset));
+    }
+
+    /**
+     * Writes a long as ASCII decimal digits in a byte array, with no padding.
+     * 
+     * @param value
+     *            The long to convert
+     * @param destination
+     *            The array where to write, with room for 20 bytes
+     * @param offset
+     *            The index of the first character
+     * @return The index after the last digit
+     */
+    public static int decimal(long value, byte[] destination, int offset)
+    {
+        if (value < 0)
+        {
+            destination[offset++] = MINUS;
+        }
+        else
+        {
+            value = -value; // negative values reach Long.MIN_VALUE
+        }
+        int length = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10)
+        {
+            length++;
+        }
+        int end = offset + length;
+        for (int i = end - 1; i >= offset; i--)
+        {
+            destination[i] = (byte) (ZERO - value % 10);
+            value /= 10;
+        }
+        return end;
     }
 
 }
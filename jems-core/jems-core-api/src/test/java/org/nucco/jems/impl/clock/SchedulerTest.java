@@ -0,0 +1,273 @@
+package org.nucco.jems.impl.clock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.nucco.jems.api.clock.Component;
+import org.nucco.jems.api.clock.Event;
+import org.nucco.jems.api.cpu.Preemptible;
+import org.nucco.jems.impl.cpu.AbstractCPU;
+import org.nucco.jems.impl.memory.AbstractMemory;
+import org.nucco.jems.impl.memory.PagedMemory;
+
+public class SchedulerTest
+{
+
+    private static final int STEP_CYCLES = 4;
+    private static final int REGISTER = 0xD000;
+
+    private PagedMemory memory;
+    private Scheduler scheduler;
+    private List<long[]> fired; // identifier, scheduled cycle, clock
+
+    /**
+     * A CPU reading then writing a register at every step.
+     */
+    private static class Machine extends AbstractCPU implements Preemptible
+    {
+        private long end;
+
+        Machine(PagedMemory memory)
+        {
+            this.memory = memory;
+        }
+
+        @Override
+        public void step()
+        {
+            cycles += STEP_CYCLES;
+            memory.writeByte(REGISTER, memory.readByte(REGISTER));
+        }
+
+        @Override
+        public long run(long budget)
+        {
+            long start = cycles;
+            end = start + budget;
+            while (cycles < end)
+            {
+                step();
+            }
+            return cycles - start;
+        }
+
+        @Override
+        public void preempt()
+        {
+            end = cycles;
+        }
+    }
+
+    /**
+     * An event recording when it fires.
+     */
+    private class Recorder implements Event
+    {
+        private final int id;
+
+        Recorder()
+        {
+            this.id = scheduler.register(this);
+        }
+
+        @Override
+        public void fire(long cycle)
+        {
+            fired.add(new long[] { id, cycle, scheduler.getCycles() });
+        }
+    }
+
+    @Before
+    public void setUp()
+    {
+        memory = new PagedMemory();
+        scheduler = new Scheduler(new Machine(memory));
+        fired = new ArrayList<long[]>();
+    }
+
+    @Test
+    public void test_Order()
+    {
+        Recorder late = new Recorder();
+        Recorder first = new Recorder();
+        Recorder second = new Recorder();
+        scheduler.schedule(late.id, 100);
+        scheduler.schedule(second.id, 50);
+        scheduler.schedule(first.id, 50);
+        Assert.assertEquals(50, scheduler.getNextTime());
+
+        Assert.assertEquals(200, scheduler.run(200));
+        Assert.assertEquals(3, fired.size());
+        Assert.assertArrayEquals(new long[] { first.id, 50, 52 }, fired.get(0));
+        Assert.assertArrayEquals(new long[] { second.id, 50, 52 }, fired.get(1));
+        Assert.assertArrayEquals(new long[] { late.id, 100, 100 }, fired.get(2));
+        Assert.assertEquals(Long.MAX_VALUE, scheduler.getNextTime());
+    }
+
+    @Test
+    public void test_Periodic()
+    {
+        final int[] count = new int[1];
+        Event timer = new Event()
+        {
+            private final int id = scheduler.register(this);
+
+            {
+                scheduler.schedule(id, 10);
+            }
+
+            @Override
+            public void fire(long cycle)
+            {
+                count[0]++;
+                scheduler.schedule(id, cycle + 10);
+            }
+        };
+        Assert.assertNotNull(timer);
+
+        scheduler.run(1000);
+        Assert.assertEquals(100, count[0]);
+        Assert.assertEquals(1010, scheduler.getNextTime());
+    }
+
+    @Test
+    public void test_MoveAndCancel()
+    {
+        Recorder moved = new Recorder();
+        Recorder cancelled = new Recorder();
+        scheduler.schedule(moved.id, 20);
+        scheduler.schedule(cancelled.id, 30);
+        scheduler.schedule(moved.id, 60);
+        scheduler.cancel(cancelled.id);
+        scheduler.cancel(cancelled.id);
+        Assert.assertTrue(scheduler.isScheduled(moved.id));
+        Assert.assertFalse(scheduler.isScheduled(cancelled.id));
+        Assert.assertEquals(60, scheduler.getTime(moved.id));
+
+        scheduler.run(100);
+        Assert.assertEquals(1, fired.size());
+        Assert.assertArrayEquals(new long[] { moved.id, 60, 60 }, fired.get(0));
+    }
+
+    @Test
+    public void test_Step()
+    {
+        Recorder event = new Recorder();
+        scheduler.schedule(event.id, 6);
+        scheduler.step();
+        Assert.assertTrue(fired.isEmpty());
+        scheduler.step();
+        Assert.assertArrayEquals(new long[] { event.id, 6, 8 }, fired.get(0));
+    }
+
+    @Test
+    public void test_CatchUp()
+    {
+        final List<Long> cycles = new ArrayList<Long>();
+        Component component = new Component()
+        {
+            @Override
+            public void catchUp(long cycle)
+            {
+                cycles.add(cycle);
+            }
+        };
+        AbstractMemory registers = new AbstractMemory()
+        {
+            @Override
+            public short readByte(int address)
+            {
+                return 0;
+            }
+
+            @Override
+            public void writeByte(int address, short value)
+            {
+            }
+        };
+        memory.mapRead(REGISTER >> 8, new CatchUpMemory(registers, component, scheduler));
+
+        scheduler.run(3 * STEP_CYCLES);
+        Assert.assertEquals(3, cycles.size());
+        Assert.assertEquals(Long.valueOf(STEP_CYCLES), cycles.get(0));
+        Assert.assertEquals(Long.valueOf(3 * STEP_CYCLES), cycles.get(2));
+    }
+
+    @Test
+    public void test_Preempt()
+    {
+        // the write at cycle 40 starts a timer of 10 cycles, in the middle of
+        // a batch running to the end of the budget
+        final Recorder timer = new Recorder();
+        AbstractMemory registers = new AbstractMemory()
+        {
+            @Override
+            public short readByte(int address)
+            {
+                return 0;
+            }
+
+            @Override
+            public void writeByte(int address, short value)
+            {
+                if (scheduler.getCycles() == 40)
+                {
+                    scheduler.schedule(timer.id, 50);
+                }
+            }
+        };
+        memory.mapWrite(REGISTER >> 8, registers);
+
+        Assert.assertEquals(1000000, scheduler.run(1000000));
+        Assert.assertEquals(1, fired.size());
+        Assert.assertArrayEquals(new long[] { timer.id, 50, 52 }, fired.get(0));
+    }
+
+    @Test
+    public void test_Random()
+    {
+        Random random = new Random(42);
+        Recorder[] recorders = new Recorder[200];
+        long[] expected = new long[recorders.length];
+        for (int i = 0; i < recorders.length; i++)
+        {
+            recorders[i] = new Recorder();
+        }
+        for (int i = 0; i < 2000; i++)
+        {
+            int id = random.nextInt(recorders.length);
+            if (random.nextInt(4) == 0)
+            {
+                scheduler.cancel(id);
+                expected[id] = 0;
+            }
+            else
+            {
+                expected[id] = 1 + random.nextInt(10000);
+                scheduler.schedule(id, expected[id]);
+            }
+        }
+
+        scheduler.run(20000);
+        long previous = 0;
+        int count = 0;
+        for (long[] event : fired)
+        {
+            Assert.assertEquals(expected[(int) event[0]], event[1]);
+            Assert.assertTrue(event[1] >= previous);
+            Assert.assertTrue(event[2] >= event[1] && event[2] < event[1] + STEP_CYCLES);
+            previous = event[1];
+            count++;
+        }
+        for (long time : expected)
+        {
+            count -= time != 0 ? 1 : 0;
+        }
+        Assert.assertEquals(0, count);
+    }
+
+}
@@ -0,0 +1,126 @@
+package org.nucco.jems.impl.memory;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CopyOnWriteMemoryTest
+{
+
+    private CopyOnWriteMemory memory;
+
+    @Before
+    public void setUp()
+    {
+        memory = new CopyOnWriteMemory();
+    }
+
+    @Test
+    public void test_readShort()
+    {
+        memory.writeByte(0x12FF, (short) 0x34);
+        memory.writeByte(0x1300, (short) 0x56);
+        memory.writeByte(0x1200, (short) 0x78);
+        memory.writeByte(0x12FE, (short) 0x9A);
+        memory.writeByte(0x0000, (short) 0xBC);
+        memory.writeByte(0xFFFF, (short) 0xDE);
+        Assert.assertEquals(0x349A, memory.readShort(0x12FE));
+        Assert.assertEquals(0x5634, memory.readShort(0x12FF));
+        Assert.assertEquals(0x7834, memory.readShortPageWrap(0x12FF));
+        Assert.assertEquals(0xBCDE, memory.readShort(0xFFFF));
+    }
+
+    @Test
+    public void test_Block_Wrap()
+    {
+        byte[] source = { 1, 2, 3, 4 };
+        memory.writeBlock(0xFFFE, source, 0, 4);
+        Assert.assertEquals(0x01, memory.readByte(0xFFFE));
+        Assert.assertEquals(0x04, memory.readByte(0x0001));
+        byte[] destination = new byte[6];
+        memory.readBlock(0xFFFE, destination, 1, 4);
+        Assert.assertArrayEquals(new byte[] { 0, 1, 2, 3, 4, 0 }, destination);
+    }
+
+    @Test
+    public void test_Block_ByteBuffer()
+    {
+        ByteBuffer source = ByteBuffer.allocate(0x300);
+        for (int i = 0; i < 0x300; i++)
+        {
+            source.put((byte) i);
+        }
+        source.flip();
+        memory.writeBlock(0x0480, source);
+        Assert.assertFalse(source.hasRemaining());
+        Assert.assertEquals(4, memory.getCopiedPages());
+        ByteBuffer destination = ByteBuffer.allocate(0x300);
+        memory.readBlock(0x0480, destination);
+        Assert.assertArrayEquals(source.array(), destination.array());
+    }
+
+    @Test
+    public void test_fill()
+    {
+        memory.fill(0xFFFF, 3, (short) 0xEA);
+        Assert.assertEquals(0xEA, memory.readByte(0xFFFF));
+        Assert.assertEquals(0xEA, memory.readByte(0x0001));
+        Assert.assertEquals(0x00, memory.readByte(0x0002));
+    }
+
+    @Test
+    public void test_Fork()
+    {
+        memory.writeByte(0x1234, (short) 0x56);
+        memory.writeByte(0x2000, (short) 0x78);
+        CopyOnWriteMemory fork = memory.fork();
+        Assert.assertEquals(0x56, fork.readByte(0x1234));
+        Assert.assertEquals(0, fork.getCopiedPages());
+
+        fork.writeByte(0x1235, (short) 0x9A);
+        memory.writeByte(0x2001, (short) 0xBC);
+        Assert.assertEquals(0x00, memory.readByte(0x1235));
+        Assert.assertEquals(0x9A, fork.readByte(0x1235));
+        Assert.assertEquals(0x56, fork.readByte(0x1234));
+        Assert.assertEquals(0xBC, memory.readByte(0x2001));
+        Assert.assertEquals(0x00, fork.readByte(0x2001));
+        Assert.assertEquals(0x78, fork.readByte(0x2000));
+
+        fork.writeByte(0x1236, (short) 0xDE);
+        Assert.assertEquals(1, fork.getCopiedPages());
+        Assert.assertEquals(3, memory.getCopiedPages());
+    }
+
+    @Test
+    public void test_Fork_Of_Fork()
+    {
+        memory.writeByte(0x0300, (short) 0x01);
+        CopyOnWriteMemory first = memory.fork();
+        CopyOnWriteMemory second = first.fork();
+        first.writeByte(0x0300, (short) 0x02);
+        second.writeByte(0x0301, (short) 0x03);
+        Assert.assertEquals(0x01, memory.readByte(0x0300));
+        Assert.assertEquals(0x02, first.readByte(0x0300));
+        Assert.assertEquals(0x01, second.readByte(0x0300));
+        Assert.assertEquals(0x00, first.readByte(0x0301));
+        Assert.assertEquals(0x03, second.readByte(0x0301));
+    }
+
+    @Test
+    public void test_DirtyPages()
+    {
+        memory.writeByte(0x12FF, (short) 0x01);
+        CopyOnWriteMemory fork = memory.fork();
+        Assert.assertTrue(memory.isDirty(0x12));
+        Assert.assertFalse(fork.isDirty(0x12));
+        fork.fill(0xFFFF, 2, (short) 0x02);
+        long[] bits = new long[4];
+        fork.getDirtyPages(bits);
+        Assert.assertArrayEquals(new long[] { 1L, 0, 0, 1L << 63 }, bits);
+        fork.clearDirtyPages();
+        Assert.assertFalse(fork.isDirty(0xFF));
+    }
+
+}
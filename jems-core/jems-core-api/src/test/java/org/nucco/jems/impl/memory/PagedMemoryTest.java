@@ -0,0 +1,182 @@
+package org.nucco.jems.impl.memory;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PagedMemoryTest
+{
+
+    private PagedMemory memory;
+
+    @Before
+    public void setUp()
+    {
+        memory = new PagedMemory();
+    }
+
+    @Test
+    public void test_Unmapped()
+    {
+        memory.writeByte(0x1234, (short) 0xAB);
+        Assert.assertEquals(0x00, memory.readByte(0x1234));
+    }
+
+    @Test
+    public void test_RAM()
+    {
+        byte[] data = new byte[0x0800];
+        memory.mapRAM(0x00, 0x08, data, 0);
+        memory.writeByte(0x0102, (short) 0xAB);
+        Assert.assertEquals(0xAB, memory.readByte(0x0102));
+        Assert.assertEquals((byte) 0xAB, data[0x0102]);
+    }
+
+    @Test
+    public void test_ROM()
+    {
+        byte[] data = new byte[0x1000];
+        data[0x0FFC] = (byte) 0x34;
+        memory.mapROM(0xF0, 0x10, data, 0);
+        memory.writeByte(0xFFFC, (short) 0xAB);
+        Assert.assertEquals(0x34, memory.readByte(0xFFFC));
+    }
+
+    @Test
+    public void test_Mirror()
+    {
+        byte[] data = new byte[0x0800];
+        memory.mapRAM(0x00, 0x08, data, 0);
+        memory.mirror(0x08, 0x08, 0x00);
+        memory.mirror(0x10, 0x10, 0x00);
+        memory.writeByte(0x1801, (short) 0x56);
+        Assert.assertEquals(0x56, memory.readByte(0x0001));
+        Assert.assertEquals(0x56, memory.readByte(0x0801));
+        Assert.assertEquals(0x56, memory.readByte(0x1001));
+    }
+
+    @Test
+    public void test_Handler()
+    {
+        final int[] last = new int[2];
+        memory.map(0x20, 0x01, new AbstractMemory()
+        {
+
+            @Override
+            public short readByte(int address)
+            {
+                return (short) (address & 0xFF);
+            }
+
+            @Override
+            public void writeByte(int address, short value)
+            {
+                last[0] = address;
+                last[1] = value;
+            }
+
+        });
+        Assert.assertEquals(0x07, memory.readByte(0x2007));
+        memory.writeByte(0x2006, (short) 0x3F);
+        Assert.assertEquals(0x2006, last[0]);
+        Assert.assertEquals(0x3F, last[1]);
+    }
+
+    @Test
+    public void test_Remap()
+    {
+        byte[] bank0 = new byte[0x0100];
+        byte[] bank1 = new byte[0x0200];
+        bank0[0x10] = 0x01;
+        bank1[0x0110] = 0x02;
+        memory.mapROM(0x80, 0x01, bank0, 0);
+        Assert.assertEquals(0x01, memory.readByte(0x8010));
+        memory.mapROM(0x80, 0x01, bank1, 0x0100);
+        Assert.assertEquals(0x02, memory.readByte(0x8010));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_SliceOutOfArray()
+    {
+        memory.mapRAM(0x00, 0x02, new byte[0x0100], 0);
+    }
+
+    @Test
+    public void test_readShort_PageCross()
+    {
+        byte[] ram = new byte[0x0100];
+        byte[] rom = new byte[0x0100];
+        ram[0xFF] = 0x34;
+        rom[0x00] = 0x56;
+        memory.mapRAM(0x02, 0x01, ram, 0);
+        memory.mapROM(0x03, 0x01, rom, 0);
+        Assert.assertEquals(0x5634, memory.readShort(0x02FF));
+        Assert.assertEquals(0x0034, memory.readShortPageWrap(0x02FF));
+    }
+
+    @Test
+    public void test_Block_AcrossMappings()
+    {
+        byte[] ram = new byte[0x0100];
+        memory.mapRAM(0x10, 0x01, ram, 0);
+        memory.writeBlock(0x10FE, new byte[] { 1, 2, 3, 4 }, 0, 4);
+        Assert.assertEquals(0x01, ram[0xFE]);
+        Assert.assertEquals(0x02, ram[0xFF]);
+        Assert.assertEquals(0x00, memory.readByte(0x1100));
+        ByteBuffer destination = ByteBuffer.allocateDirect(4);
+        memory.readBlock(0x10FE, destination);
+        destination.flip();
+        Assert.assertEquals(0x01, destination.get());
+        Assert.assertEquals(0x02, destination.get());
+        Assert.assertEquals(0x00, destination.get());
+        Assert.assertEquals(0x00, destination.get());
+    }
+
+    @Test
+    public void test_fill()
+    {
+        byte[] ram = new byte[0x0200];
+        memory.mapRAM(0x00, 0x02, ram, 0);
+        memory.fill(0x00F0, 0x20, (short) 0xFF);
+        Assert.assertEquals(0x00, ram[0xEF]);
+        Assert.assertEquals((byte) 0xFF, ram[0xF0]);
+        Assert.assertEquals((byte) 0xFF, ram[0x10F]);
+        Assert.assertEquals(0x00, ram[0x110]);
+    }
+
+    @Test
+    public void test_DirtyPages()
+    {
+        byte[] data = new byte[0x0800];
+        memory.mapRAM(0x00, 0x08, data, 0);
+        memory.writeByte(0x0102, (short) 0xAB);
+        memory.writeByte(0x8000, (short) 0xAB);
+        memory.writeBlock(0x02FF, new byte[] { 1, 2 }, 0, 2);
+        memory.fill(0xFF00, 1, (short) 0xEA);
+        long[] dirty = new long[4];
+        memory.getDirtyPages(dirty);
+        Assert.assertArrayEquals(new long[] { 0x0E, 0, 1L, 1L << 63 }, dirty);
+
+        memory.clearDirtyPages();
+        Assert.assertFalse(memory.isDirty(0x01));
+        Assert.assertFalse(memory.isDirty(0x80));
+    }
+
+    @Test
+    public void test_BackedPages()
+    {
+        byte[] data = new byte[0x0400];
+        memory.mapRAM(0x00, 0x04, data, 0);
+        memory.mirror(0x40, 0x02, 0x00);
+        memory.mapROM(0x80, 0x01, data, 0);
+        memory.map(0x01, 0x01, new RAM());
+        memory.mapRead(0xC0, data, 0);
+        memory.mapWrite(0xFF, data, 0);
+        long[] backed = new long[4];
+        memory.getBackedPages(backed);
+        Assert.assertArrayEquals(new long[] { 0x0D, 0x03, 0, 0 }, backed);
+    }
+
+}
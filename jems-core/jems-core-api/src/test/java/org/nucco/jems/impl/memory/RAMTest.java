@@ -0,0 +1,93 @@
+package org.nucco.jems.impl.memory;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RAMTest
+{
+
+    private RAM memory;
+
+    @Before
+    public void setUp()
+    {
+        memory = new RAM();
+    }
+
+    @Test
+    public void test_readShort()
+    {
+        memory.writeByte(0x12FF, (short) 0x34);
+        memory.writeByte(0x1300, (short) 0x56);
+        memory.writeByte(0x1200, (short) 0x78);
+        memory.writeByte(0x0000, (short) 0x9A);
+        memory.writeByte(0xFFFF, (short) 0xBC);
+        Assert.assertEquals(0x5634, memory.readShort(0x12FF));
+        Assert.assertEquals(0x7834, memory.readShortPageWrap(0x12FF));
+        Assert.assertEquals(0x9ABC, memory.readShort(0xFFFF));
+    }
+
+    @Test
+    public void test_readShortZeroPage()
+    {
+        memory.writeByte(0x00FF, (short) 0x34);
+        memory.writeByte(0x0100, (short) 0x56);
+        memory.writeByte(0x0000, (short) 0x78);
+        Assert.assertEquals(0x7834, memory.readShortZeroPage(0xFF));
+    }
+
+    @Test
+    public void test_Block_Wrap()
+    {
+        byte[] source = { 1, 2, 3, 4 };
+        memory.writeBlock(0xFFFE, source, 0, 4);
+        Assert.assertEquals(0x01, memory.readByte(0xFFFE));
+        Assert.assertEquals(0x04, memory.readByte(0x0001));
+        byte[] destination = new byte[6];
+        memory.readBlock(0xFFFE, destination, 1, 4);
+        Assert.assertArrayEquals(new byte[] { 0, 1, 2, 3, 4, 0 }, destination);
+    }
+
+    @Test
+    public void test_Block_ByteBuffer()
+    {
+        ByteBuffer source = ByteBuffer.allocateDirect(3);
+        source.put((byte) 7).put((byte) 8).put((byte) 9).flip();
+        memory.writeBlock(0x0400, source);
+        Assert.assertFalse(source.hasRemaining());
+        ByteBuffer destination = ByteBuffer.allocate(3);
+        memory.readBlock(0x0400, destination);
+        Assert.assertArrayEquals(new byte[] { 7, 8, 9 }, destination.array());
+    }
+
+    @Test
+    public void test_fill()
+    {
+        memory.fill(0xFFFF, 3, (short) 0xEA);
+        Assert.assertEquals(0xEA, memory.readByte(0xFFFF));
+        Assert.assertEquals(0xEA, memory.readByte(0x0001));
+        Assert.assertEquals(0x00, memory.readByte(0x0002));
+    }
+
+    @Test
+    public void test_DirtyPages()
+    {
+        Assert.assertFalse(memory.isDirty(0x12));
+        memory.writeByte(0x12FF, (short) 0x01);
+        memory.writeBlock(0xFFFE, new byte[] { 1, 2, 3 }, 0, 3);
+        memory.fill(0x40FF, 2, (short) 0xEA);
+        long[] dirty = new long[4];
+        memory.getDirtyPages(dirty);
+        Assert.assertArrayEquals(new long[] { 1L | 1L << 0x12, 3L, 0, 1L << 63 }, dirty);
+        Assert.assertTrue(memory.isDirty(0x41));
+        Assert.assertFalse(memory.isDirty(0x42));
+
+        memory.clearDirtyPages();
+        Assert.assertFalse(memory.isDirty(0x12));
+        Assert.assertEquals(0, memory.getDirtyBits()[3]);
+    }
+
+}
@@ -0,0 +1,201 @@
+package org.nucco.jems.impl.state;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.nucco.jems.api.cpu.CPU;
+import org.nucco.jems.api.memory.Memory;
+import org.nucco.jems.api.state.Stateful;
+import org.nucco.jems.impl.memory.AbstractMemory;
+import org.nucco.jems.impl.memory.PagedMemory;
+import org.nucco.jems.impl.memory.RAM;
+
+public class RewindTest
+{
+
+    private static final int BUDGET = 0x20000;
+
+    private RAM memory;
+    private Machine machine;
+    private Rewind rewind;
+
+    /**
+     * A CPU writing a byte derived from its cycle counter at an address derived
+     * from it, one byte per cycle.
+     */
+    private static class Machine implements CPU, Stateful
+    {
+        private final Memory memory;
+        private final int stride;
+        private long cycles;
+
+        Machine(Memory memory, int stride)
+        {
+            this.memory = memory;
+            this.stride = stride;
+        }
+
+        @Override
+        public void step()
+        {
+            memory.writeByte((int) (cycles * stride), (short) (cycles + (cycles >> 8) + 1));
+            cycles++;
+        }
+
+        @Override
+        public long run(long budget)
+        {
+            for (long i = 0; i < budget; i++)
+            {
+                step();
+            }
+            return budget;
+        }
+
+        @Override
+        public long getCycles()
+        {
+            return cycles;
+        }
+
+        @Override
+        public int getStateSize()
+        {
+            return 8;
+        }
+
+        @Override
+        public void saveState(ByteBuffer buffer)
+        {
+            buffer.putLong(cycles);
+        }
+
+        @Override
+        public void loadState(ByteBuffer buffer)
+        {
+            cycles = buffer.getLong();
+        }
+    }
+
+    @Before
+    public void setUp()
+    {
+        memory = new RAM();
+        machine = new Machine(memory, 0x31);
+        rewind = new Rewind(machine, memory, 10, BUDGET);
+    }
+
+    /*
+     * The memory of a machine run from the start for a number of cycles.
+     */
+    private byte[] replay(long cycles, int stride)
+    {
+        RAM reference = new RAM();
+        new Machine(reference, stride).run(cycles);
+        return reference.getBytes();
+    }
+
+    @Test
+    public void test_Rewind()
+    {
+        Assert.assertEquals(105, rewind.run(105));
+        Assert.assertEquals(10, rewind.getDeltaCount());
+
+        Assert.assertEquals(3, rewind.rewind(3));
+        Assert.assertEquals(70, machine.getCycles());
+        Assert.assertArrayEquals(replay(70, 0x31), memory.getBytes());
+        Assert.assertEquals(7, rewind.getDeltaCount());
+
+        rewind.run(25);
+        Assert.assertEquals(9, rewind.getDeltaCount());
+        Assert.assertEquals(9, rewind.rewind(100));
+        Assert.assertEquals(0, machine.getCycles());
+        Assert.assertArrayEquals(replay(0, 0x31), memory.getBytes());
+        Assert.assertEquals(0, rewind.getUsedBytes());
+    }
+
+    @Test
+    public void test_Rewind_LastCapture()
+    {
+        rewind.run(37);
+        Assert.assertEquals(0, rewind.rewind(0));
+        Assert.assertEquals(30, machine.getCycles());
+        Assert.assertArrayEquals(replay(30, 0x31), memory.getBytes());
+    }
+
+    @Test
+    public void test_Budget()
+    {
+        // a new page on every cycle: deltas of 10 pages, the oldest dropped
+        machine = new Machine(memory, 0x100);
+        rewind = new Rewind(machine, memory, 10, Rewind.getMaxDeltaSize(machine));
+        rewind.run(10000);
+        Assert.assertTrue(rewind.getUsedBytes() <= Rewind.getMaxDeltaSize(machine));
+        int count = rewind.getDeltaCount();
+        Assert.assertTrue(count > 1 && count < 1000);
+
+        Assert.assertEquals(count, rewind.rewind(count + 1));
+        Assert.assertEquals(10000 - 10 * count, machine.getCycles());
+        Assert.assertArrayEquals(replay(machine.getCycles(), 0x100), memory.getBytes());
+    }
+
+    @Test
+    public void test_Budget_Alternating()
+    {
+        // every even byte written: the XOR alternates changed and unchanged
+        // bytes on every page
+        machine = new Machine(memory, 2);
+        rewind = new Rewind(machine, memory, Rewind.MEMORY_SIZE / 2, 2 * Rewind.getMaxDeltaSize(machine));
+        rewind.run(Rewind.MEMORY_SIZE / 2);
+        Assert.assertEquals(1, rewind.getDeltaCount());
+        Assert.assertTrue(rewind.getUsedBytes() <= Rewind.getMaxDeltaSize(machine));
+
+        Assert.assertEquals(1, rewind.rewind(1));
+        Assert.assertEquals(0, machine.getCycles());
+        Assert.assertArrayEquals(replay(0, 2), memory.getBytes());
+    }
+
+    @Test
+    public void test_Rewind_IOPage()
+    {
+        final int[] accesses = new int[1];
+        PagedMemory bus = new PagedMemory();
+        bus.mapRAM(0x00, PagedMemory.PAGES, new byte[Rewind.MEMORY_SIZE], 0);
+        bus.map(0x01, 0x01, new AbstractMemory()
+        {
+
+            @Override
+            public short readByte(int address)
+            {
+                accesses[0]++;
+                return 0xFF;
+            }
+
+            @Override
+            public void writeByte(int address, short value)
+            {
+                accesses[0]++;
+            }
+
+        });
+        machine = new Machine(bus, 1);
+        rewind = new Rewind(machine, bus, 10, BUDGET);
+        rewind.run(600);
+        Assert.assertEquals(0x100, accesses[0]); // the writes of the machine
+
+        Assert.assertEquals(30, rewind.rewind(30));
+        Assert.assertEquals(300, machine.getCycles());
+        Assert.assertEquals(0x100, accesses[0]);
+        Assert.assertEquals(0x06, bus.readByte(0x0005));
+        Assert.assertEquals(0x00, bus.readByte(0x0250));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_Budget_TooSmall()
+    {
+        new Rewind(machine, memory, 10, Rewind.getMaxDeltaSize(machine) - 1);
+    }
+
+}
@@ -0,0 +1,229 @@
+package org.nucco.jems.impl.state;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.nucco.jems.api.state.Stateful;
+import org.nucco.jems.impl.memory.AbstractMemory;
+import org.nucco.jems.impl.memory.PagedMemory;
+import org.nucco.jems.impl.memory.RAM;
+
+public class SnapshotTest
+{
+
+    private RAM memory;
+    private Register register;
+    private Snapshot snapshot;
+
+    /**
+     * A single 32bits register.
+     */
+    private static class Register implements Stateful
+    {
+        private int value;
+        private int loads;
+
+        @Override
+        public int getStateSize()
+        {
+            return 4;
+        }
+
+        @Override
+        public void saveState(ByteBuffer buffer)
+        {
+            buffer.putInt(value);
+        }
+
+        @Override
+        public void loadState(ByteBuffer buffer)
+        {
+            value = buffer.getInt();
+            loads++;
+        }
+    }
+
+    /**
+     * A memory mapped device counting the accesses it is given.
+     */
+    private static class Device extends AbstractMemory
+    {
+        private final byte[] registers = new byte[0x100];
+        private int accesses;
+
+        @Override
+        public short readByte(int address)
+        {
+            accesses++;
+            return (short) (registers[address & 0xFF] & 0xFF);
+        }
+
+        @Override
+        public void writeByte(int address, short value)
+        {
+            accesses++;
+            registers[address & 0xFF] = (byte) value;
+        }
+    }
+
+    @Before
+    public void setUp()
+    {
+        memory = new RAM();
+        register = new Register();
+        snapshot = new Snapshot(register, memory);
+    }
+
+    @Test
+    public void test_SaveRestore()
+    {
+        memory.writeByte(0x0000, (short) 0x12);
+        memory.writeByte(0xFFFF, (short) 0x34);
+        register.value = 0xCAFEBABE;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(3 + snapshot.getSize());
+        buffer.position(3);
+        snapshot.save(buffer);
+        Assert.assertEquals(3 + Snapshot.HEADER_SIZE + 4 + Snapshot.MEMORY_SIZE, buffer.position());
+
+        memory.fill(0x0000, Snapshot.MEMORY_SIZE, (short) 0x55);
+        register.value = 0;
+        buffer.position(3);
+        snapshot.restore(buffer);
+        Assert.assertEquals(buffer.limit(), buffer.position());
+        Assert.assertEquals(0xCAFEBABE, register.value);
+        Assert.assertEquals(1, register.loads);
+        Assert.assertEquals(0x12, memory.readByte(0x0000));
+        Assert.assertEquals(0x00, memory.readByte(0x8000));
+        Assert.assertEquals(0x34, memory.readByte(0xFFFF));
+    }
+
+    @Test
+    public void test_Layout()
+    {
+        register.value = 0x01020304;
+        memory.writeByte(0x0001, (short) 0xAB);
+        ByteBuffer buffer = ByteBuffer.allocate(snapshot.getSize()).order(ByteOrder.LITTLE_ENDIAN);
+        snapshot.save(buffer);
+        Assert.assertEquals(ByteOrder.LITTLE_ENDIAN, buffer.order());
+        byte[] bytes = buffer.array();
+        Assert.assertEquals('J', bytes[0]);
+        Assert.assertEquals('S', bytes[3]);
+        Assert.assertEquals(Snapshot.VERSION, bytes[5]);
+        Assert.assertEquals(4, bytes[7]);
+        Assert.assertEquals(0x01, bytes[8]);
+        Assert.assertEquals(0x04, bytes[11]);
+        Assert.assertEquals((byte) 0xAB, bytes[13]);
+    }
+
+    @Test
+    public void test_Deltas()
+    {
+        memory.writeByte(0x0000, (short) 0x01);
+        ByteBuffer base = ByteBuffer.allocate(snapshot.getSize());
+        snapshot.save(base);
+        Assert.assertFalse(memory.isDirty(0x00));
+
+        memory.writeByte(0x1234, (short) 0x02);
+        register.value = 1;
+        int size = Snapshot.HEADER_SIZE + 4 + 32 + Snapshot.PAGE_SIZE;
+        Assert.assertEquals(size, snapshot.getDeltaSize());
+        ByteBuffer first = ByteBuffer.allocate(size);
+        snapshot.saveDelta(first);
+        Assert.assertEquals(size, first.position());
+
+        memory.writeByte(0x0000, (short) 0x03);
+        memory.writeByte(0xFFFF, (short) 0x04);
+        register.value = 2;
+        ByteBuffer second = ByteBuffer.allocate(snapshot.getDeltaSize());
+        snapshot.saveDelta(second);
+        Assert.assertEquals(Snapshot.HEADER_SIZE + 4 + 32 + 2 * Snapshot.PAGE_SIZE, second.position());
+
+        memory.fill(0x0000, Snapshot.MEMORY_SIZE, (short) 0x55);
+        base.flip();
+        snapshot.restore(base);
+        Assert.assertEquals(0x01, memory.readByte(0x0000));
+        Assert.assertEquals(0x00, memory.readByte(0x1234));
+        first.flip();
+        snapshot.restoreDelta(first);
+        Assert.assertEquals(1, register.value);
+        Assert.assertEquals(0x02, memory.readByte(0x1234));
+        Assert.assertEquals(0x01, memory.readByte(0x0000));
+        second.flip();
+        snapshot.restoreDelta(second);
+        Assert.assertEquals(2, register.value);
+        Assert.assertEquals(0x03, memory.readByte(0x0000));
+        Assert.assertEquals(0x02, memory.readByte(0x1234));
+        Assert.assertEquals(0x04, memory.readByte(0xFFFF));
+        Assert.assertFalse(second.hasRemaining());
+        Assert.assertFalse(memory.isDirty(0xFF));
+    }
+
+    @Test
+    public void test_SaveRestore_IOPage()
+    {
+        PagedMemory bus = new PagedMemory();
+        bus.mapRAM(0x00, PagedMemory.PAGES, new byte[Snapshot.MEMORY_SIZE], 0);
+        Device device = new Device();
+        bus.map(0xD0, 0x01, device);
+        snapshot = new Snapshot(register, bus);
+        bus.writeByte(0xCFFF, (short) 0x12);
+        bus.writeByte(0xD000, (short) 0x34);
+        ByteBuffer base = ByteBuffer.allocate(snapshot.getSize());
+        snapshot.save(base);
+        Assert.assertEquals(0x00, base.get(Snapshot.HEADER_SIZE + 4 + 0xD000));
+
+        bus.writeByte(0xD001, (short) 0x56);
+        bus.writeByte(0xD100, (short) 0x78);
+        Assert.assertEquals(Snapshot.HEADER_SIZE + 4 + 32 + Snapshot.PAGE_SIZE, snapshot.getDeltaSize());
+        ByteBuffer delta = ByteBuffer.allocate(snapshot.getDeltaSize());
+        snapshot.saveDelta(delta);
+
+        base.flip();
+        snapshot.restore(base);
+        delta.flip();
+        snapshot.restoreDelta(delta);
+        Assert.assertFalse(delta.hasRemaining());
+        Assert.assertEquals(0x12, bus.readByte(0xCFFF));
+        Assert.assertEquals(0x78, bus.readByte(0xD100));
+        Assert.assertEquals(2, device.accesses); // the writes of the test
+        Assert.assertEquals(0x34, device.registers[0x00]);
+        Assert.assertEquals(0x56, device.registers[0x01]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_RestoreDelta_Snapshot()
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(snapshot.getSize());
+        snapshot.save(buffer);
+        buffer.flip();
+        snapshot.restoreDelta(buffer);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_Restore_NotSnapshot()
+    {
+        snapshot.restore(ByteBuffer.allocate(snapshot.getSize()));
+    }
+
+    @Test
+    public void test_Restore_OtherVersion()
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(snapshot.getSize());
+        snapshot.save(buffer);
+        buffer.putShort(4, (short) (Snapshot.VERSION + 1));
+        buffer.flip();
+        try
+        {
+            snapshot.restore(buffer);
+            Assert.fail();
+        }
+        catch (IllegalArgumentException e)
+        {
+            Assert.assertEquals(0, register.loads);
+        }
+    }
+
+}
@@ -0,0 +1,90 @@
+package org.nucco.jems.impl.trace;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TraceRecorderTest
+{
+
+    private File file;
+    private RandomAccessFile output;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        file = File.createTempFile("trace", ".bin");
+        output = new RandomAccessFile(file, "rw");
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        output.close();
+        file.delete();
+    }
+
+    @Test
+    public void test_Wrap() throws IOException
+    {
+        TraceRecorder recorder = new TraceRecorder(output.getChannel(), 12, 5);
+        ByteBuffer ring = recorder.getBuffer();
+        for (int i = 0; i < 1000; i++)
+        {
+            int offset = recorder.claim();
+            ring.putLong(offset, i);
+            ring.putInt(offset + 8, -i);
+            if (i % 7 == 0)
+            {
+                recorder.commit();
+            }
+        }
+        recorder.commit();
+        recorder.flush();
+        Assert.assertEquals(1000 * 12, output.length());
+        recorder.close();
+
+        ByteBuffer trace = ByteBuffer.allocate(1000 * 12).order(ByteOrder.LITTLE_ENDIAN);
+        output.getChannel().read(trace, 0);
+        trace.flip();
+        for (int i = 0; i < 1000; i++)
+        {
+            Assert.assertEquals(i, trace.getLong());
+            Assert.assertEquals(-i, trace.getInt());
+        }
+    }
+
+    @Test
+    public void test_CloseDropsUncommitted() throws IOException
+    {
+        TraceRecorder recorder = new TraceRecorder(output.getChannel(), 8, 16);
+        recorder.getBuffer().putLong(recorder.claim(), 1);
+        recorder.commit();
+        recorder.getBuffer().putLong(recorder.claim(), 2);
+        recorder.close();
+        Assert.assertEquals(8, output.length());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_ClaimWhenClosed() throws IOException
+    {
+        TraceRecorder recorder = new TraceRecorder(output.getChannel(), 8, 1);
+        recorder.claim();
+        recorder.close();
+        recorder.claim();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_EmptyRing()
+    {
+        new TraceRecorder(output.getChannel(), 8, 0);
+    }
+
+}
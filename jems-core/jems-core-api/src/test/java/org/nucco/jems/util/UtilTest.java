@@ -0,0 +1,46 @@
+package org.nucco.jems.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UtilTest
+{
+
+    @Test
+    public void test_Hex()
+    {
+        Assert.assertEquals("0F", Util.hex((byte) 0x0F));
+        Assert.assertEquals("A5", Util.hex((byte) 0xA5));
+        Assert.assertEquals("BEEF", Util.hex((short) 0xBEEF));
+        Assert.assertEquals("0123ABCD", Util.hex(0x0123ABCD));
+    }
+
+    @Test
+    public void test_HexInArrays()
+    {
+        char[] chars = new char[16];
+        Assert.assertEquals(2, Util.hex((byte) 0x7E, chars, 0));
+        Assert.assertEquals(6, Util.hex((short) 0xC5F5, chars, 2));
+        Assert.assertEquals(14, Util.hex(0xDEADBEEF, chars, 6));
+        Assert.assertEquals("7EC5F5DEADBEEF", new String(chars, 0, 14));
+
+        byte[] bytes = new byte[16];
+        Assert.assertEquals(3, Util.hex((byte) 0x7E, bytes, 1));
+        Assert.assertEquals(7, Util.hex((short) 0xC5F5, bytes, 3));
+        Assert.assertEquals(15, Util.hex(0xDEADBEEF, bytes, 7));
+        Assert.assertEquals("7EC5F5DEADBEEF", new String(bytes, 1, 14));
+    }
+
+    @Test
+    public void test_Decimal()
+    {
+        byte[] bytes = new byte[24];
+        long[] values = { 0, 7, 10, 12345, -42, Long.MAX_VALUE, Long.MIN_VALUE };
+        for (long value : values)
+        {
+            int end = Util.decimal(value, bytes, 2);
+            Assert.assertEquals(Long.toString(value), new String(bytes, 2, end - 2));
+        }
+    }
+
+}
@@ -0,0 +1,20 @@
+package org.nucco.jems.impl.cpu;
+
+/**
+ * Defines the class of one compiled block. Each block gets its own loader, so
+ * that the class can be unloaded once the block was invalidated.
+ */
+final class BlockClassLoader extends ClassLoader
+{
+
+    BlockClassLoader(ClassLoader parent)
+    {
+        super(parent);
+    }
+
+    Class<?> define(String name, byte[] code)
+    {
+        return defineClass(name, code, 0, code.length);
+    }
+
+}
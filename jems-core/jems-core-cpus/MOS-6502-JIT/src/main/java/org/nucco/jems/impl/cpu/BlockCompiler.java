@@ -0,0 +1,1015 @@
+package org.nucco.jems.impl.cpu;
+
+import org.nucco.jems.util.Util;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Translates a basic block of MOS-6502 code into a {@link CompiledBlock}
+ * class. A block runs until a jump, a call, a return, an instruction that
+ * can't be translated or the maximum block length. The generated code keeps
+ * the registers in local variables and goes through {@link BlockRuntime} for
+ * memory accesses, bringing the clock of the CPU up to the access first so that
+ * the devices see the same cycle as with the interpreter.
+ */
+final class BlockCompiler implements Opcodes
+{
+
+    static final int MAX_INSTRUCTIONS = 64;
+
+    private static final String BLOCK = "org/nucco/jems/impl/cpu/CompiledBlock";
+    private static final String RUNTIME = "org/nucco/jems/impl/cpu/BlockRuntime";
+    private static final String CPU_TYPE = "Lorg/nucco/jems/impl/cpu/MOS6502;";
+    private static final String BLOCK_TYPE = "L" + BLOCK + ";";
+    private static final String PACKAGE = "org.nucco.jems.impl.cpu.block.";
+
+    private static final int ADDRESSES = 0x10000;
+    private static final int STACK_ADDRESS = 0x0100;
+    private static final int PAGE_MASK = 0xFF00;
+    private static final byte SHIFT_8BITS = 8;
+
+    // Local variables of the generated execute method
+    private static final int THIS = 0;
+    private static final int CPU = 1;
+    private static final int A = 2;
+    private static final int X = 3;
+    private static final int Y = 4;
+    private static final int SP = 5;
+    private static final int SR = 6;
+    private static final int EXTRA = 7; // cycles added by page crossings
+    private static final int ADDRESS = 8;
+    private static final int VALUE = 9;
+    private static final int PC = 10;
+    private static final int START = 11; // cycles of the CPU at the block entry, a long
+
+    private final MOS6502 cpu;
+    private int classes;
+
+    private MethodVisitor mv;
+    private int cycles; // base cycles of the instructions translated so far
+
+    BlockCompiler(MOS6502 cpu)
+    {
+        this.cpu = cpu;
+    }
+
+    /**
+     * Translate the block starting at an address.
+     * 
+     * @param start
+     *            the address of the first instruction
+     * @return the compiled block, or null if the first instruction can't be
+     *         translated
+     */
+    CompiledBlock compile(int start)
+    {
+        int end = scan(start);
+        if (end == start)
+        {
+            return null;
+        }
+
+        String name = PACKAGE + "Block" + Util.hex((short) start) + "_" + classes++;
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(V1_5, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, name.replace('.', '/'), null, BLOCK, null);
+        constructor(writer);
+
+        mv = writer.visitMethod(ACC_PUBLIC, "execute", "(" + CPU_TYPE + ")I", null, null);
+        mv.visitCode();
+        prologue();
+        cycles = 0;
+        int successor = end;
+        int pc = start;
+        short opcode = 0;
+        while (pc < end)
+        {
+            opcode = cpu.read(pc);
+            int length = Instruction.LENGTHS[MOS6502Instructions.TABLE[opcode].mode];
+            int operand = 0;
+            if (length == 2)
+            {
+                operand = cpu.read(pc + 1);
+            }
+            else if (length == 3)
+            {
+                operand = cpu.read(pc + 1) | cpu.read(pc + 2) << SHIFT_8BITS;
+            }
+            pc += length;
+            cycles += MOS6502.CYCLES[opcode];
+            successor = translate(opcode, operand, pc);
+        }
+        if (!isTerminator(opcode))
+        {
+            exit(end);
+        }
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        writer.visitEnd();
+
+        CompiledBlock block = instantiate(name, writer.toByteArray());
+        block.start = start;
+        block.end = end;
+        block.successorPc = successor;
+        return block;
+    }
+
+    /*
+     * (non-Javadoc) Find the end of the block starting at an address.
+     */
+    private int scan(int start)
+    {
+        int pc = start;
+        for (int i = 0; i < MAX_INSTRUCTIONS; i++)
+        {
+            short opcode = cpu.read(pc);
+            if (!isTranslatable(opcode))
+            {
+                break;
+            }
+            int next = pc + Instruction.LENGTHS[MOS6502Instructions.TABLE[opcode].mode];
+            if (next >= ADDRESSES)
+            {
+                break;
+            }
+            pc = next;
+            if (isTerminator(opcode))
+            {
+                break;
+            }
+        }
+
+        return pc;
+    }
+
+    static boolean isTranslatable(short opcode)
+    {
+        return opcode != MOS6502.BRK && opcode != MOS6502.RTI && MOS6502Instructions.isLegal(opcode);
+    }
+
+    static boolean isTerminator(short opcode)
+    {
+        switch (opcode)
+        {
+            case MOS6502.JMP_ABS:
+            case MOS6502.JMP_IND:
+            case MOS6502.JSR:
+            case MOS6502.RTS:
+            case MOS6502.BCC:
+            case MOS6502.BCS:
+            case MOS6502.BEQ:
+            case MOS6502.BMI:
+            case MOS6502.BNE:
+            case MOS6502.BPL:
+            case MOS6502.BVC:
+            case MOS6502.BVS:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /*
+     * (non-Javadoc) Emit the code of one instruction.
+     * 
+     * @return the static address of the next block if the instruction ends the
+     * block, -1 if it is dynamic, the next address otherwise
+     */
+    private int translate(short opcode, int operand, int next)
+    {
+        byte mode = MOS6502Instructions.TABLE[opcode].mode;
+        switch (opcode)
+        {
+            // Load/Store Operations
+            case MOS6502.LDA_IMM:
+            case MOS6502.LDA_ZP:
+            case MOS6502.LDA_ZPX:
+            case MOS6502.LDA_ABS:
+            case MOS6502.LDA_ABX:
+            case MOS6502.LDA_ABY:
+            case MOS6502.LDA_IZX:
+            case MOS6502.LDA_IZY:
+                value(mode, operand);
+                store(A);
+                nz(A);
+                break;
+            case MOS6502.LDX_IMM:
+            case MOS6502.LDX_ZP:
+            case MOS6502.LDX_ZPY:
+            case MOS6502.LDX_ABS:
+            case MOS6502.LDX_ABY:
+                value(mode, operand);
+                store(X);
+                nz(X);
+                break;
+            case MOS6502.LDY_IMM:
+            case MOS6502.LDY_ZP:
+            case MOS6502.LDY_ZPX:
+            case MOS6502.LDY_ABS:
+            case MOS6502.LDY_ABX:
+                value(mode, operand);
+                store(Y);
+                nz(Y);
+                break;
+            case MOS6502.STA_ZP:
+            case MOS6502.STA_ZPX:
+            case MOS6502.STA_ABS:
+            case MOS6502.STA_ABX:
+            case MOS6502.STA_ABY:
+            case MOS6502.STA_IZX:
+            case MOS6502.STA_IZY:
+                address(mode, operand, false);
+                write(A);
+                checkExit(next);
+                break;
+            case MOS6502.STX_ZP:
+            case MOS6502.STX_ZPY:
+            case MOS6502.STX_ABS:
+                address(mode, operand, false);
+                write(X);
+                checkExit(next);
+                break;
+            case MOS6502.STY_ZP:
+            case MOS6502.STY_ZPX:
+            case MOS6502.STY_ABS:
+                address(mode, operand, false);
+                write(Y);
+                checkExit(next);
+                break;
+
+            // Register Transfers
+            case MOS6502.TAX:
+                transfer(A, X, true);
+                break;
+            case MOS6502.TAY:
+                transfer(A, Y, true);
+                break;
+            case MOS6502.TXA:
+                transfer(X, A, true);
+                break;
+            case MOS6502.TYA:
+                transfer(Y, A, true);
+                break;
+
+            // Stack Operations
+            case MOS6502.TSX:
+                transfer(SP, X, true);
+                break;
+            case MOS6502.TXS:
+                transfer(X, SP, false);
+                break;
+            case MOS6502.PHA:
+                push(A);
+                checkExit(next);
+                break;
+            case MOS6502.PHP:
+                load(SR);
+                constant(MOS6502.B_FLAG | MOS6502.UNUSED_FLAG);
+                mv.visitInsn(IOR);
+                store(VALUE);
+                push(VALUE);
+                checkExit(next);
+                break;
+            case MOS6502.PLA:
+                pop(A);
+                nz(A);
+                break;
+            case MOS6502.PLP:
+                pop(SR);
+                break;
+
+            // Logical
+            case MOS6502.AND_IMM:
+            case MOS6502.AND_ZP:
+            case MOS6502.AND_ZPX:
+            case MOS6502.AND_ABS:
+            case MOS6502.AND_ABX:
+            case MOS6502.AND_ABY:
+            case MOS6502.AND_IZX:
+            case MOS6502.AND_IZY:
+                logical(IAND, mode, operand);
+                break;
+            case MOS6502.EOR_IMM:
+            case MOS6502.EOR_ZP:
+            case MOS6502.EOR_ZPX:
+            case MOS6502.EOR_ABS:
+            case MOS6502.EOR_ABX:
+            case MOS6502.EOR_ABY:
+            case MOS6502.EOR_IZX:
+            case MOS6502.EOR_IZY:
+                logical(IXOR, mode, operand);
+                break;
+            case MOS6502.ORA_IMM:
+            case MOS6502.ORA_ZP:
+            case MOS6502.ORA_ZPX:
+            case MOS6502.ORA_ABS:
+            case MOS6502.ORA_ABX:
+            case MOS6502.ORA_ABY:
+            case MOS6502.ORA_IZX:
+            case MOS6502.ORA_IZY:
+                logical(IOR, mode, operand);
+                break;
+            case MOS6502.BIT_ZP:
+            case MOS6502.BIT_ABS:
+                load(SR);
+                load(A);
+                value(mode, operand);
+                mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "bit", "(III)I", false);
+                store(SR);
+                break;
+
+            // Arithmetic
+            case MOS6502.ADC_IMM:
+            case MOS6502.ADC_ZP:
+            case MOS6502.ADC_ZPX:
+            case MOS6502.ADC_ABS:
+            case MOS6502.ADC_ABX:
+            case MOS6502.ADC_ABY:
+            case MOS6502.ADC_IZX:
+            case MOS6502.ADC_IZY:
+                arithmetic("adc", mode, operand);
+                break;
+            case MOS6502.SBC_IMM:
+            case MOS6502.SBC_ZP:
+            case MOS6502.SBC_ZPX:
+            case MOS6502.SBC_ABS:
+            case MOS6502.SBC_ABX:
+            case MOS6502.SBC_ABY:
+            case MOS6502.SBC_IZX:
+            case MOS6502.SBC_IZY:
+                arithmetic("sbc", mode, operand);
+                break;
+            case MOS6502.CMP_IMM:
+            case MOS6502.CMP_ZP:
+            case MOS6502.CMP_ZPX:
+            case MOS6502.CMP_ABS:
+            case MOS6502.CMP_ABX:
+            case MOS6502.CMP_ABY:
+            case MOS6502.CMP_IZX:
+            case MOS6502.CMP_IZY:
+                compare(A, mode, operand);
+                break;
+            case MOS6502.CPX_IMM:
+            case MOS6502.CPX_ZP:
+            case MOS6502.CPX_ABS:
+                compare(X, mode, operand);
+                break;
+            case MOS6502.CPY_IMM:
+            case MOS6502.CPY_ZP:
+            case MOS6502.CPY_ABS:
+                compare(Y, mode, operand);
+                break;
+
+            // Increments & Decrements
+            case MOS6502.INC_ZP:
+            case MOS6502.INC_ZPX:
+            case MOS6502.INC_ABS:
+            case MOS6502.INC_ABX:
+                modify(IADD, mode, operand, next);
+                break;
+            case MOS6502.DEC_ZP:
+            case MOS6502.DEC_ZPX:
+            case MOS6502.DEC_ABS:
+            case MOS6502.DEC_ABX:
+                modify(ISUB, mode, operand, next);
+                break;
+            case MOS6502.INX:
+                increment(X, IADD);
+                break;
+            case MOS6502.INY:
+                increment(Y, IADD);
+                break;
+            case MOS6502.DEX:
+                increment(X, ISUB);
+                break;
+            case MOS6502.DEY:
+                increment(Y, ISUB);
+                break;
+
+            // Shifts
+            case MOS6502.ASL_ACC:
+                shiftAccumulator("asl");
+                break;
+            case MOS6502.ASL_ZP:
+            case MOS6502.ASL_ZPX:
+            case MOS6502.ASL_ABS:
+            case MOS6502.ASL_ABX:
+                shiftMemory("asl", mode, operand, next);
+                break;
+            case MOS6502.LSR_ACC:
+                shiftAccumulator("lsr");
+                break;
+            case MOS6502.LSR_ZP:
+            case MOS6502.LSR_ZPX:
+            case MOS6502.LSR_ABS:
+            case MOS6502.LSR_ABX:
+                shiftMemory("lsr", mode, operand, next);
+                break;
+            case MOS6502.ROL_ACC:
+                shiftAccumulator("rol");
+                break;
+            case MOS6502.ROL_ZP:
+            case MOS6502.ROL_ZPX:
+            case MOS6502.ROL_ABS:
+            case MOS6502.ROL_ABX:
+                shiftMemory("rol", mode, operand, next);
+                break;
+            case MOS6502.ROR_ACC:
+                shiftAccumulator("ror");
+                break;
+            case MOS6502.ROR_ZP:
+            case MOS6502.ROR_ZPX:
+            case MOS6502.ROR_ABS:
+            case MOS6502.ROR_ABX:
+                shiftMemory("ror", mode, operand, next);
+                break;
+
+            // Jumps & Calls
+            case MOS6502.JMP_ABS:
+                exit(operand);
+                return operand;
+            case MOS6502.JMP_IND:
+                address(mode, operand, false);
+                load(ADDRESS);
+                store(PC);
+                exitDynamic();
+                return -1;
+            case MOS6502.JSR:
+                pushConstant(((next - 1) & MOS6502.SHORT_MASK) >> SHIFT_8BITS);
+                pushConstant((next - 1) & MOS6502.BYTE_MASK);
+                exit(operand);
+                return operand;
+            case MOS6502.RTS:
+                mv.visitVarInsn(ALOAD, CPU);
+                constant(STACK_ADDRESS);
+                load(SP);
+                constant(1);
+                mv.visitInsn(IADD);
+                constant(MOS6502.BYTE_MASK);
+                mv.visitInsn(IAND);
+                mv.visitInsn(IADD);
+                clock();
+                mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "readShortPageWrap", "(" + CPU_TYPE + "IJ)I", false);
+                constant(1);
+                mv.visitInsn(IADD);
+                constant(MOS6502.SHORT_MASK);
+                mv.visitInsn(IAND);
+                store(PC);
+                load(SP);
+                constant(2);
+                mv.visitInsn(IADD);
+                constant(MOS6502.BYTE_MASK);
+                mv.visitInsn(IAND);
+                store(SP);
+                exitDynamic();
+                return -1;
+
+            // Branches
+            case MOS6502.BCC:
+                return branch(MOS6502.C_FLAG, false, operand, next);
+            case MOS6502.BCS:
+                return branch(MOS6502.C_FLAG, true, operand, next);
+            case MOS6502.BEQ:
+                return branch(MOS6502.Z_FLAG, true, operand, next);
+            case MOS6502.BMI:
+                return branch(MOS6502.N_FLAG, true, operand, next);
+            case MOS6502.BNE:
+                return branch(MOS6502.Z_FLAG, false, operand, next);
+            case MOS6502.BPL:
+                return branch(MOS6502.N_FLAG, false, operand, next);
+            case MOS6502.BVC:
+                return branch(MOS6502.V_FLAG, false, operand, next);
+            case MOS6502.BVS:
+                return branch(MOS6502.V_FLAG, true, operand, next);
+
+            // Status Flag Changes
+            case MOS6502.CLC:
+                flag(MOS6502.C_FLAG, false);
+                break;
+            case MOS6502.CLD:
+                flag(MOS6502.D_FLAG, false);
+                break;
+            case MOS6502.CLI:
+                flag(MOS6502.I_FLAG, false);
+                break;
+            case MOS6502.CLV:
+                flag(MOS6502.V_FLAG, false);
+                break;
+            case MOS6502.SEC:
+                flag(MOS6502.C_FLAG, true);
+                break;
+            case MOS6502.SED:
+                flag(MOS6502.D_FLAG, true);
+                break;
+            case MOS6502.SEI:
+                flag(MOS6502.I_FLAG, true);
+                break;
+
+            // System Functions
+            case MOS6502.NOP:
+                break;
+
+            default:
+                throw new IllegalStateException("Untranslatable opcode: " + Util.hex((byte) opcode));
+        }
+
+        return next;
+    }
+
+    private void constructor(ClassWriter writer)
+    {
+        MethodVisitor init = writer.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(ALOAD, THIS);
+        init.visitMethodInsn(INVOKESPECIAL, BLOCK, "<init>", "()V", false);
+        init.visitInsn(RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+    }
+
+    /*
+     * (non-Javadoc) Load the registers of the CPU in local variables.
+     */
+    private void prologue()
+    {
+        register("getA", A);
+        register("getX", X);
+        register("getY", Y);
+        register("getSp", SP);
+        register("getSr", SR);
+        constant(0);
+        store(EXTRA);
+        constant(0);
+        store(ADDRESS);
+        constant(0);
+        store(VALUE);
+        constant(0);
+        store(PC);
+        mv.visitVarInsn(ALOAD, CPU);
+        mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "getCycles", "(" + CPU_TYPE + ")J", false);
+        mv.visitVarInsn(LSTORE, START);
+    }
+
+    private void register(String getter, int local)
+    {
+        mv.visitVarInsn(ALOAD, CPU);
+        mv.visitMethodInsn(INVOKESTATIC, RUNTIME, getter, "(" + CPU_TYPE + ")I", false);
+        store(local);
+    }
+
+    /*
+     * (non-Javadoc) Store back the registers and return the cycles consumed,
+     * the next pc being a constant.
+     */
+    private void exit(int pc)
+    {
+        storeRegisters();
+        constant(pc);
+        returnCycles();
+    }
+
+    /*
+     * (non-Javadoc) Store back the registers and return the cycles consumed,
+     * the next pc being in the PC local variable.
+     */
+    private void exitDynamic()
+    {
+        storeRegisters();
+        load(PC);
+        returnCycles();
+    }
+
+    private void storeRegisters()
+    {
+        mv.visitVarInsn(ALOAD, CPU);
+        load(A);
+        load(X);
+        load(Y);
+        load(SP);
+        load(SR);
+    }
+
+    private void returnCycles()
+    {
+        mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "store", "(" + CPU_TYPE + "IIIIII)V", false);
+        constant(cycles);
+        load(EXTRA);
+        mv.visitInsn(IADD);
+        mv.visitInsn(IRETURN);
+    }
+
+    /*
+     * (non-Javadoc) Exit the block if the boolean on the stack is true: the
+     * last write overwrote its code.
+     */
+    private void checkExit(int next)
+    {
+        Label resume = new Label();
+        mv.visitJumpInsn(IFEQ, resume);
+        exit(next);
+        mv.visitLabel(resume);
+    }
+
+    /*
+     * (non-Javadoc) Compute the effective address of the operand in the
+     * ADDRESS local variable, counting the page crossing cycle for reads.
+     */
+    private void address(byte mode, int operand, boolean reads)
+    {
+        switch (mode)
+        {
+            case Instruction.ZERO_PAGE:
+            case Instruction.ABSOLUTE:
+                constant(operand);
+                break;
+            case Instruction.ZERO_PAGE_X:
+                indexed(operand, X, MOS6502.BYTE_MASK);
+                break;
+            case Instruction.ZERO_PAGE_Y:
+                indexed(operand, Y, MOS6502.BYTE_MASK);
+                break;
+            case Instruction.ABSOLUTE_X:
+                if (reads)
+                {
+                    pageCross(operand, X);
+                }
+                indexed(operand, X, MOS6502.SHORT_MASK);
+                break;
+            case Instruction.ABSOLUTE_Y:
+                if (reads)
+                {
+                    pageCross(operand, Y);
+                }
+                indexed(operand, Y, MOS6502.SHORT_MASK);
+                break;
+            case Instruction.INDIRECT:
+                mv.visitVarInsn(ALOAD, CPU);
+                constant(operand);
+                clock();
+                mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "readShortPageWrap", "(" + CPU_TYPE + "IJ)I", false);
+                break;
+            case Instruction.INDIRECT_X:
+                mv.visitVarInsn(ALOAD, CPU);
+                indexed(operand, X, MOS6502.BYTE_MASK);
+                clock();
+                mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "readShortZeroPage", "(" + CPU_TYPE + "IJ)I", false);
+                break;
+            case Instruction.INDIRECT_Y:
+                mv.visitVarInsn(ALOAD, CPU);
+                constant(operand);
+                clock();
+                mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "readShortZeroPage", "(" + CPU_TYPE + "IJ)I", false);
+                store(ADDRESS);
+                if (reads)
+                {
+                    Label same = new Label();
+                    load(ADDRESS);
+                    constant(MOS6502.BYTE_MASK);
+                    mv.visitInsn(IAND);
+                    load(Y);
+                    mv.visitInsn(IADD);
+                    constant(MOS6502.BYTE_MASK);
+                    mv.visitJumpInsn(IF_ICMPLE, same);
+                    mv.visitIincInsn(EXTRA, 1);
+                    mv.visitLabel(same);
+                }
+                load(ADDRESS);
+                load(Y);
+                mv.visitInsn(IADD);
+                constant(MOS6502.SHORT_MASK);
+                mv.visitInsn(IAND);
+                break;
+            default:
+                throw new IllegalStateException("No address for mode " + mode);
+        }
+        store(ADDRESS);
+    }
+
+    private void indexed(int operand, int register, int mask)
+    {
+        constant(operand);
+        load(register);
+        mv.visitInsn(IADD);
+        constant(mask);
+        mv.visitInsn(IAND);
+    }
+
+    private void pageCross(int operand, int register)
+    {
+        Label same = new Label();
+        constant(operand & MOS6502.BYTE_MASK);
+        load(register);
+        mv.visitInsn(IADD);
+        constant(MOS6502.BYTE_MASK);
+        mv.visitJumpInsn(IF_ICMPLE, same);
+        mv.visitIincInsn(EXTRA, 1);
+        mv.visitLabel(same);
+    }
+
+    /*
+     * (non-Javadoc) Push the value of the operand on the operand stack.
+     */
+    private void value(byte mode, int operand)
+    {
+        if (mode == Instruction.IMMEDIATE)
+        {
+            constant(operand);
+            return;
+        }
+        address(mode, operand, true);
+        read();
+    }
+
+    private void read()
+    {
+        mv.visitVarInsn(ALOAD, CPU);
+        load(ADDRESS);
+        clock();
+        mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "read", "(" + CPU_TYPE + "IJ)I", false);
+    }
+
+    /*
+     * (non-Javadoc) Push the clock of the CPU at the access of the instruction
+     * being translated: its base cycles are counted, as the interpreter counts
+     * them before executing it, along with the page crossings so far.
+     */
+    private void clock()
+    {
+        mv.visitVarInsn(LLOAD, START);
+        constant(cycles);
+        load(EXTRA);
+        mv.visitInsn(IADD);
+        mv.visitInsn(I2L);
+        mv.visitInsn(LADD);
+    }
+
+    /*
+     * (non-Javadoc) Write a local variable at ADDRESS, leaving on the stack
+     * whether the block must exit.
+     */
+    private void write(int local)
+    {
+        mv.visitVarInsn(ALOAD, THIS);
+        mv.visitVarInsn(ALOAD, CPU);
+        load(ADDRESS);
+        load(local);
+        clock();
+        mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "write", "(" + BLOCK_TYPE + CPU_TYPE + "IIJ)Z", false);
+    }
+
+    private void nz(int local)
+    {
+        load(SR);
+        load(local);
+        mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "nz", "(II)I", false);
+        store(SR);
+    }
+
+    private void transfer(int from, int to, boolean flags)
+    {
+        load(from);
+        store(to);
+        if (flags)
+        {
+            nz(to);
+        }
+    }
+
+    private void logical(int operation, byte mode, int operand)
+    {
+        load(A);
+        value(mode, operand);
+        mv.visitInsn(operation);
+        store(A);
+        nz(A);
+    }
+
+    /*
+     * (non-Javadoc) ADC or SBC through the runtime tables.
+     */
+    private void arithmetic(String operation, byte mode, int operand)
+    {
+        load(SR);
+        load(A);
+        value(mode, operand);
+        mv.visitMethodInsn(INVOKESTATIC, RUNTIME, operation, "(III)I", false);
+        store(VALUE);
+        load(VALUE);
+        constant(MOS6502.BYTE_MASK);
+        mv.visitInsn(IAND);
+        store(A);
+        status(MOS6502.C_FLAG | MOS6502.V_FLAG | MOS6502.Z_FLAG | MOS6502.N_FLAG);
+    }
+
+    private void compare(int register, byte mode, int operand)
+    {
+        load(SR);
+        load(register);
+        value(mode, operand);
+        mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "compare", "(III)I", false);
+        store(SR);
+    }
+
+    private void shiftAccumulator(String operation)
+    {
+        load(SR);
+        load(A);
+        mv.visitMethodInsn(INVOKESTATIC, RUNTIME, operation, "(II)I", false);
+        store(VALUE);
+        status(MOS6502.C_FLAG | MOS6502.Z_FLAG | MOS6502.N_FLAG);
+        load(VALUE);
+        constant(MOS6502.BYTE_MASK);
+        mv.visitInsn(IAND);
+        store(A);
+    }
+
+    private void shiftMemory(String operation, byte mode, int operand, int next)
+    {
+        address(mode, operand, false);
+        load(SR);
+        read();
+        mv.visitMethodInsn(INVOKESTATIC, RUNTIME, operation, "(II)I", false);
+        store(VALUE);
+        status(MOS6502.C_FLAG | MOS6502.Z_FLAG | MOS6502.N_FLAG);
+        load(VALUE);
+        constant(MOS6502.BYTE_MASK);
+        mv.visitInsn(IAND);
+        store(VALUE);
+        write(VALUE);
+        checkExit(next);
+    }
+
+    /*
+     * (non-Javadoc) Merge the flags of the table entry in VALUE into SR.
+     */
+    private void status(int mask)
+    {
+        load(SR);
+        load(VALUE);
+        constant(mask);
+        mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "status", "(III)I", false);
+        store(SR);
+    }
+
+    /*
+     * (non-Javadoc) End the block on a conditional branch, the target being
+     * the static successor.
+     */
+    private int branch(int flag, boolean set, int operand, int next)
+    {
+        int target = (next + (byte) operand) & MOS6502.SHORT_MASK;
+        Label notTaken = new Label();
+        load(SR);
+        constant(flag);
+        mv.visitInsn(IAND);
+        mv.visitJumpInsn(set ? IFEQ : IFNE, notTaken);
+        int saved = cycles;
+        cycles += (target & PAGE_MASK) != (next & PAGE_MASK) ? 2 : 1;
+        exit(target);
+        cycles = saved;
+        mv.visitLabel(notTaken);
+        exit(next);
+
+        return target;
+    }
+
+    private void flag(int flag, boolean set)
+    {
+        load(SR);
+        if (set)
+        {
+            constant(flag);
+            mv.visitInsn(IOR);
+        }
+        else
+        {
+            constant(~flag);
+            mv.visitInsn(IAND);
+        }
+        store(SR);
+    }
+
+    private void increment(int register, int operation)
+    {
+        load(register);
+        constant(1);
+        mv.visitInsn(operation);
+        constant(MOS6502.BYTE_MASK);
+        mv.visitInsn(IAND);
+        store(register);
+        nz(register);
+    }
+
+    private void modify(int operation, byte mode, int operand, int next)
+    {
+        address(mode, operand, false);
+        read();
+        constant(1);
+        mv.visitInsn(operation);
+        constant(MOS6502.BYTE_MASK);
+        mv.visitInsn(IAND);
+        store(VALUE);
+        nz(VALUE);
+        write(VALUE);
+        checkExit(next);
+    }
+
+    /*
+     * (non-Javadoc) Compute the stack address in ADDRESS and decrement the
+     * stack pointer.
+     */
+    private void stackPush()
+    {
+        constant(STACK_ADDRESS);
+        load(SP);
+        mv.visitInsn(IADD);
+        store(ADDRESS);
+        load(SP);
+        constant(1);
+        mv.visitInsn(ISUB);
+        constant(MOS6502.BYTE_MASK);
+        mv.visitInsn(IAND);
+        store(SP);
+    }
+
+    private void push(int local)
+    {
+        stackPush();
+        write(local);
+    }
+
+    private void pushConstant(int value)
+    {
+        stackPush();
+        constant(value);
+        store(VALUE);
+        write(VALUE);
+        mv.visitInsn(POP);
+    }
+
+    private void pop(int local)
+    {
+        load(SP);
+        constant(1);
+        mv.visitInsn(IADD);
+        constant(MOS6502.BYTE_MASK);
+        mv.visitInsn(IAND);
+        store(SP);
+        mv.visitVarInsn(ALOAD, CPU);
+        constant(STACK_ADDRESS);
+        load(SP);
+        mv.visitInsn(IADD);
+        clock();
+        mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "read", "(" + CPU_TYPE + "IJ)I", false);
+        store(local);
+    }
+
+    private void load(int local)
+    {
+        mv.visitVarInsn(ILOAD, local);
+    }
+
+    private void store(int local)
+    {
+        mv.visitVarInsn(ISTORE, local);
+    }
+
+    private void constant(int value)
+    {
+        if (value >= -1 && value <= 5)
+        {
+            mv.visitInsn(ICONST_0 + value);
+        }
+        else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE)
+        {
+            mv.visitIntInsn(BIPUSH, value);
+        }
+        else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE)
+        {
+            mv.visitIntInsn(SIPUSH, value);
+        }
+        else
+        {
+            mv.visitLdcInsn(Integer.valueOf(value));
+        }
+    }
+
+    private CompiledBlock instantiate(String name, byte[] code)
+    {
+        BlockClassLoader loader = new BlockClassLoader(CompiledBlock.class.getClassLoader());
+        try
+        {
+            return (CompiledBlock) loader.define(name, code).newInstance();
+        }
+        catch (InstantiationException e)
+        {
+            throw new IllegalStateException("Can't instantiate " + name, e);
+        }
+        catch (IllegalAccessException e)
+        {
+            throw new IllegalStateException("Can't instantiate " + name, e);
+        }
+    }
+
+}
@@ -0,0 +1,174 @@
+package org.nucco.jems.impl.cpu;
+
+/**
+ * Entry points called by the generated blocks. They are loaded by their own
+ * class loaders, so they can't reach the package private members of
+ * {@link MOS6502} directly. Not meant to be used by other code.
+ */
+public final class BlockRuntime
+{
+
+    private BlockRuntime()
+    {
+    }
+
+    public static int getA(MOS6502 cpu)
+    {
+        return cpu.a;
+    }
+
+    public static int getX(MOS6502 cpu)
+    {
+        return cpu.x;
+    }
+
+    public static int getY(MOS6502 cpu)
+    {
+        return cpu.y;
+    }
+
+    public static int getSp(MOS6502 cpu)
+    {
+        return cpu.sp;
+    }
+
+    public static int getSr(MOS6502 cpu)
+    {
+        return cpu.getSr();
+    }
+
+    public static long getCycles(MOS6502 cpu)
+    {
+        return cpu.cycles;
+    }
+
+    /**
+     * Store back the registers when a block exits.
+     */
+    public static void store(MOS6502 cpu, int a, int x, int y, int sp, int sr, int pc)
+    {
+        cpu.a = (short) a;
+        cpu.x = (short) x;
+        cpu.y = (short) y;
+        cpu.sp = (short) sp;
+        cpu.setStatus((short) sr);
+        cpu.pc = pc;
+    }
+
+    /**
+     * Read a byte in memory, the clock of the CPU being set to the cycle of the
+     * access first. The same goes for the other accesses.
+     */
+    public static int read(MOS6502 cpu, int address, long cycles)
+    {
+        cpu.cycles = cycles;
+        return cpu.read(address);
+    }
+
+    public static int readShortZeroPage(MOS6502 cpu, int address, long cycles)
+    {
+        cpu.cycles = cycles;
+        return cpu.readShortZeroPage(address);
+    }
+
+    public static int readShortPageWrap(MOS6502 cpu, int address, long cycles)
+    {
+        cpu.cycles = cycles;
+        return cpu.readShortPageWrap(address);
+    }
+
+    /**
+     * Write a byte in memory.
+     * 
+     * @return true if the write overwrote the code of the running block, which
+     *         must then exit
+     */
+    public static boolean write(CompiledBlock block, MOS6502 cpu, int address, int value, long cycles)
+    {
+        cpu.cycles = cycles;
+        cpu.write(address, (short) value);
+        return !block.valid;
+    }
+
+    /**
+     * @return the status register with the negative and zero flags set for
+     *         the value
+     */
+    public static int nz(int sr, int value)
+    {
+        return (sr & ~(MOS6502.Z_FLAG | MOS6502.N_FLAG)) | MOS6502.ZNTABLE[value];
+    }
+
+    /**
+     * @return the status register after a BIT of the accumulator with the
+     *         value
+     */
+    public static int bit(int sr, int a, int value)
+    {
+        sr = (sr & ~(MOS6502.N_FLAG | MOS6502.V_FLAG | MOS6502.Z_FLAG)) | (value & (MOS6502.N_FLAG | MOS6502.V_FLAG));
+        return (a & value) == 0 ? sr | MOS6502.Z_FLAG : sr;
+    }
+
+    /**
+     * @return the entry of the ADC table for the status register, accumulator
+     *         and value
+     */
+    public static int adc(int sr, int a, int value)
+    {
+        return MOS6502Tables.ADC[aluIndex(sr, a, value)];
+    }
+
+    /**
+     * @return the entry of the SBC table for the status register, accumulator
+     *         and value
+     */
+    public static int sbc(int sr, int a, int value)
+    {
+        return MOS6502Tables.SBC[aluIndex(sr, a, value)];
+    }
+
+    private static int aluIndex(int sr, int a, int value)
+    {
+        return (sr & MOS6502.C_FLAG) << 16 | (sr & MOS6502.D_FLAG) << 14 | a << 8 | value;
+    }
+
+    /**
+     * @return the status register after a compare of the register with the
+     *         value
+     */
+    public static int compare(int sr, int register, int value)
+    {
+        int mask = MOS6502.C_FLAG | MOS6502.Z_FLAG | MOS6502.N_FLAG;
+        return (sr & ~mask) | (MOS6502Tables.COMPARE[register << 8 | value] & mask);
+    }
+
+    public static int asl(int sr, int value)
+    {
+        return MOS6502Tables.ASL[(sr & MOS6502.C_FLAG) << 8 | value];
+    }
+
+    public static int lsr(int sr, int value)
+    {
+        return MOS6502Tables.LSR[(sr & MOS6502.C_FLAG) << 8 | value];
+    }
+
+    public static int rol(int sr, int value)
+    {
+        return MOS6502Tables.ROL[(sr & MOS6502.C_FLAG) << 8 | value];
+    }
+
+    public static int ror(int sr, int value)
+    {
+        return MOS6502Tables.ROR[(sr & MOS6502.C_FLAG) << 8 | value];
+    }
+
+    /**
+     * @return the status register with the flags of the mask taken from a
+     *         table entry
+     */
+    public static int status(int sr, int entry, int mask)
+    {
+        return (sr & ~mask) | ((entry >> 8) & mask);
+    }
+
+}
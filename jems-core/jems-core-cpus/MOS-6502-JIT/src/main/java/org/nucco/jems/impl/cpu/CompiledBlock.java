@@ -0,0 +1,33 @@
+package org.nucco.jems.impl.cpu;
+
+/**
+ * A basic block of MOS-6502 code translated to JVM bytecode. Generated
+ * subclasses keep the registers in local variables while the block runs and
+ * store them back in the CPU when it exits.
+ */
+public abstract class CompiledBlock
+{
+
+    int start; // address of the first instruction
+    int end; // address following the last instruction
+    int successorPc = -1; // static address of the next block, -1 if dynamic
+    CompiledBlock successor; // chained next block, if already compiled
+    volatile boolean valid = true; // false once the code was overwritten
+
+    protected CompiledBlock()
+    {
+    }
+
+    /**
+     * Execute the block and leave the CPU registers, pc included, as the
+     * interpreter would have left them. The cycles of the CPU are set at each
+     * memory access to the cycle of the access, and left to the caller at the
+     * exit.
+     * 
+     * @param cpu
+     *            the CPU to act on
+     * @return the number of cycles consumed
+     */
+    public abstract int execute(MOS6502 cpu);
+
+}
@@ -0,0 +1,313 @@
+package org.nucco.jems.impl.cpu;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.nucco.jems.api.cpu.CPU;
+import org.nucco.jems.api.cpu.Interruptible;
+import org.nucco.jems.api.cpu.Preemptible;
+import org.nucco.jems.api.state.Stateful;
+
+/**
+ * Dynamic recompiler for a {@link MOS6502}. The entry points executed more
+ * often than a threshold are translated into JVM bytecode blocks, chained
+ * together by their static successor. Cold code and the instructions the
+ * compiler does not translate are run by the interpreter. A write in the code
+ * of a block invalidates it. Pending interrupts are taken between two blocks,
+ * and a preempted run ends after the running block.
+ */
+public class MOS6502Recompiler implements CPU, Stateful, Interruptible, Preemptible
+{
+
+    private static final int DEFAULT_THRESHOLD = 16;
+    private static final int ADDRESSES = 0x10000;
+    private static final int BACKOFF = 8; // delay factor of the recompilation of self-modifying code
+
+    private final MOS6502 cpu;
+    private final BlockCompiler compiler;
+    private final Watcher watcher = new Watcher();
+    private final CompiledBlock[] blocks = new CompiledBlock[ADDRESSES];
+    private final int[] heat = new int[ADDRESSES];
+    private final List<List<CompiledBlock>> pageBlocks = new ArrayList<List<CompiledBlock>>(CodeWatcher.PAGES);
+    private int threshold = DEFAULT_THRESHOLD;
+    private long compiled;
+    private long invalidated;
+    private long end; // cycle where the current run stops, cut short when preempted
+
+    public MOS6502Recompiler(MOS6502 cpu)
+    {
+        this.cpu = cpu;
+        this.compiler = new BlockCompiler(cpu);
+        for (int i = 0; i < CodeWatcher.PAGES; i++)
+        {
+            pageBlocks.add(new ArrayList<CompiledBlock>());
+        }
+        cpu.codeWatcher = watcher;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.nucco.jems.api.cpu.CPU#step()
+     */
+    @Override
+    public void step()
+    {
+        cpu.step();
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.nucco.jems.api.cpu.CPU#run(long)
+     */
+    @Override
+    public long run(long budget)
+    {
+        if (cpu.getTracer() != null || cpu.getProfile() != null || cpu.getSampler() != null)
+        {
+            return cpu.run(budget); // blocks do not record, count nor sample their actions
+        }
+        long start = cpu.cycles;
+        end = start + budget;
+        CompiledBlock previous = null;
+        while (cpu.cycles < end)
+        {
+            if (cpu.pending != 0 && cpu.interrupt())
+            {
+                previous = null;
+                continue;
+            }
+            int pc = cpu.pc;
+            CompiledBlock block = null;
+            boolean chained = previous != null && previous.successorPc == pc;
+            if (chained)
+            {
+                block = previous.successor;
+            }
+            if (block == null || !block.valid)
+            {
+                block = lookup(pc);
+                if (chained)
+                {
+                    previous.successor = block;
+                }
+            }
+
+            if (block != null)
+            {
+                long entry = cpu.cycles; // the block moves the clock on at its accesses
+                cpu.cycles = entry + block.execute(cpu);
+            }
+            else
+            {
+                cpu.step();
+            }
+            previous = block;
+        }
+
+        return cpu.cycles - start;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.nucco.jems.api.cpu.CPU#getCycles()
+     */
+    @Override
+    public long getCycles()
+    {
+        return cpu.getCycles();
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.nucco.jems.api.state.Stateful#getStateSize()
+     */
+    @Override
+    public int getStateSize()
+    {
+        return cpu.getStateSize();
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.nucco.jems.api.state.Stateful#saveState(java.nio.ByteBuffer)
+     */
+    @Override
+    public void saveState(ByteBuffer buffer)
+    {
+        cpu.saveState(buffer);
+    }
+
+    /*
+     * (non-Javadoc) Discard the compiled blocks too, the restored memory may
+     * hold other code.
+     * @see org.nucco.jems.api.state.Stateful#loadState(java.nio.ByteBuffer)
+     */
+    @Override
+    public void loadState(ByteBuffer buffer)
+    {
+        cpu.loadState(buffer);
+        invalidate();
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.nucco.jems.api.cpu.Interruptible#setIrq(boolean)
+     */
+    @Override
+    public void setIrq(boolean asserted)
+    {
+        cpu.setIrq(asserted);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.nucco.jems.api.cpu.Interruptible#setNmi(boolean)
+     */
+    @Override
+    public void setNmi(boolean asserted)
+    {
+        cpu.setNmi(asserted);
+    }
+
+    /*
+     * (non-Javadoc) Stop the interpreter too, in case it runs the batch.
+     * @see org.nucco.jems.api.cpu.Preemptible#preempt()
+     */
+    @Override
+    public void preempt()
+    {
+        end = cpu.cycles;
+        cpu.preempt();
+    }
+
+    /**
+     * @return the interpreter running the cold code
+     */
+    public MOS6502 getCpu()
+    {
+        return cpu;
+    }
+
+    /**
+     * @param threshold
+     *            number of executions of an entry point before its block is
+     *            compiled
+     */
+    public void setThreshold(int threshold)
+    {
+        this.threshold = threshold;
+    }
+
+    /**
+     * @return the number of blocks compiled so far
+     */
+    public long getCompiledBlocks()
+    {
+        return compiled;
+    }
+
+    /**
+     * @return the number of blocks invalidated so far
+     */
+    public long getInvalidatedBlocks()
+    {
+        return invalidated;
+    }
+
+    /**
+     * Discard all the compiled blocks. To be called when the memory was
+     * modified without going through the CPU.
+     */
+    public void invalidate()
+    {
+        for (int page = 0; page < CodeWatcher.PAGES; page++)
+        {
+            for (CompiledBlock block : pageBlocks.get(page))
+            {
+                discard(block);
+            }
+            pageBlocks.get(page).clear();
+            watcher.pages[page] = false;
+        }
+    }
+
+    private CompiledBlock lookup(int pc)
+    {
+        CompiledBlock block = blocks[pc];
+        if (block == null && ++heat[pc] >= threshold)
+        {
+            heat[pc] = 0;
+            block = compiler.compile(pc);
+            if (block != null)
+            {
+                register(block);
+            }
+        }
+
+        return block;
+    }
+
+    private void register(CompiledBlock block)
+    {
+        blocks[block.start] = block;
+        compiled++;
+        for (int page = block.start >> CodeWatcher.PAGE_SHIFT; page <= (block.end - 1) >> CodeWatcher.PAGE_SHIFT; page++)
+        {
+            pageBlocks.get(page).add(block);
+            watcher.pages[page] = true;
+        }
+    }
+
+    private void discard(CompiledBlock block)
+    {
+        if (block.valid)
+        {
+            block.valid = false;
+            blocks[block.start] = null;
+            heat[block.start] = -threshold * BACKOFF;
+            invalidated++;
+        }
+    }
+
+    /*
+     * (non-Javadoc) Invalidate the blocks holding a written address. A block
+     * spanning two pages is listed in both, its stale entry is dropped when
+     * the other page is written.
+     */
+    private void invalidate(int address)
+    {
+        int page = address >> CodeWatcher.PAGE_SHIFT;
+        List<CompiledBlock> list = pageBlocks.get(page);
+        for (Iterator<CompiledBlock> it = list.iterator(); it.hasNext();)
+        {
+            CompiledBlock block = it.next();
+            if (!block.valid)
+            {
+                it.remove();
+            }
+            else if (address >= block.start && address < block.end)
+            {
+                discard(block);
+                it.remove();
+            }
+        }
+        if (list.isEmpty())
+        {
+            watcher.pages[page] = false;
+        }
+    }
+
+    private final class Watcher extends CodeWatcher
+    {
+
+        @Override
+        void written(int address)
+        {
+            invalidate(address);
+        }
+
+    }
+
+}
@@ -0,0 +1,266 @@
+package org.nucco.jems.impl.cpu;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.nucco.jems.api.clock.Component;
+import org.nucco.jems.api.cpu.CPU;
+import org.nucco.jems.impl.clock.CatchUpMemory;
+import org.nucco.jems.impl.clock.Scheduler;
+import org.nucco.jems.impl.memory.AbstractMemory;
+import org.nucco.jems.impl.memory.CopyOnWriteMemory;
+import org.nucco.jems.impl.memory.PagedMemory;
+import org.nucco.jems.impl.memory.RAM;
+import org.nucco.jems.impl.state.Snapshot;
+
+public class MOS6502RecompilerTest
+{
+
+    private RAM memory;
+    private MOS6502Recompiler recompiler;
+    private RAM reference;
+    private MOS6502 interpreter;
+
+    @Before
+    public void setUp()
+    {
+        memory = new RAM();
+        recompiler = new MOS6502Recompiler(new MOS6502(memory));
+        recompiler.setThreshold(2);
+        reference = new RAM();
+        interpreter = new MOS6502(reference);
+    }
+
+    private void load(int address, int... program)
+    {
+        for (int i = 0; i < program.length; i++)
+        {
+            memory.writeByte(address + i, (short) program[i]);
+            reference.writeByte(address + i, (short) program[i]);
+        }
+    }
+
+    /*
+     * Run the recompiler, then the interpreter for the same number of cycles,
+     * and check they end in the same state.
+     */
+    private void runAndCompare(long budget)
+    {
+        long cycles = recompiler.run(budget);
+        Assert.assertEquals(cycles, interpreter.run(cycles));
+
+        MOS6502 cpu = recompiler.getCpu();
+        Assert.assertEquals(interpreter.getPc(), cpu.getPc());
+        Assert.assertEquals(interpreter.getA(), cpu.getA());
+        Assert.assertEquals(interpreter.getX(), cpu.getX());
+        Assert.assertEquals(interpreter.getY(), cpu.getY());
+        Assert.assertEquals(interpreter.getSp(), cpu.getSp());
+        Assert.assertEquals(interpreter.getSr(), cpu.getSr());
+        Assert.assertEquals(interpreter.getCycles(), recompiler.getCycles());
+        Assert.assertArrayEquals(reference.getBytes(), memory.getBytes());
+    }
+
+    @Test
+    public void test_Loop()
+    {
+        // $0000: INX; LDA $0300,X; EOR #$5A; STA $0400,X; LDY #$F0; LDA ($80),Y;
+        // ORA $81; AND #$7F; BIT $82; PHA; JSR $0040; TXA; TAY; INC $0500,X;
+        // DEC $10; JMP $0000
+        load(0x0000, 0xE8, 0xBD, 0x00, 0x03, 0x49, 0x5A, 0x9D, 0x00, 0x04, 0xA0, 0xF0, 0xB1, 0x80, 0x05, 0x81, 0x29,
+                0x7F, 0x24, 0x82, 0x48, 0x20, 0x40, 0x00, 0x8A, 0xA8, 0xFE, 0x00, 0x05, 0xC6, 0x10, 0x4C, 0x00, 0x00);
+        // $0040: PLA; PLA; PLA; TSX; INY; DEX; STY $11; STX $12; PHA; PHA; PHA; RTS
+        load(0x0040, 0x68, 0x68, 0x68, 0xBA, 0xC8, 0xCA, 0x84, 0x11, 0x86, 0x12, 0x48, 0x48, 0x48, 0x60);
+        load(0x0080, 0x20, 0x03, 0xC0);
+        for (int i = 0; i < 0x100; i++)
+        {
+            load(0x0300 + i, i * 7);
+        }
+
+        runAndCompare(10000);
+        Assert.assertTrue(recompiler.getCompiledBlocks() > 0);
+    }
+
+    @Test
+    public void test_SelfModifyingCode()
+    {
+        // $0000: INC $0004; LDA #$00; STA $0300; JMP $0000
+        load(0x0000, 0xEE, 0x04, 0x00, 0xA9, 0x00, 0x8D, 0x00, 0x03, 0x4C, 0x00, 0x00);
+
+        runAndCompare(1000);
+        Assert.assertTrue(recompiler.getInvalidatedBlocks() > 0);
+    }
+
+    @Test
+    public void test_Fallback()
+    {
+        // $0000: BRK, vector to $0000
+        load(0xFFFE, 0x00, 0x00);
+
+        runAndCompare(100);
+        Assert.assertEquals(0, recompiler.getCompiledBlocks());
+    }
+
+    @Test
+    public void test_Interrupt()
+    {
+        // $0000: CLI; INX; JMP $0001, IRQ handler $0300: INC $10; RTI
+        load(0x0000, 0x58, 0xE8, 0x4C, 0x01, 0x00);
+        load(0x0300, 0xE6, 0x10, 0x40);
+        load(0xFFFE, 0x00, 0x03);
+        recompiler.run(100);
+        Assert.assertEquals(1, recompiler.getCompiledBlocks());
+        Assert.assertEquals(0, memory.readByte(0x10));
+
+        recompiler.setIrq(true);
+        recompiler.run(10);
+        recompiler.setIrq(false);
+        Assert.assertEquals(1, memory.readByte(0x10));
+        Assert.assertEquals(0x01, memory.readByte(0x01FE) | memory.readByte(0x01FF) << 8); // taken between blocks
+        recompiler.run(100);
+        Assert.assertEquals(1, memory.readByte(0x10));
+    }
+
+    @Test
+    public void test_Preempt()
+    {
+        // $0000: INX; STA $D000; JMP $0000, the write preempting
+        final MOS6502Recompiler[] cpu = new MOS6502Recompiler[1];
+        AbstractMemory device = new AbstractMemory()
+        {
+            @Override
+            public short readByte(int address)
+            {
+                return memory.readByte(address);
+            }
+
+            @Override
+            public void writeByte(int address, short value)
+            {
+                memory.writeByte(address, value);
+                if (address == 0xD000)
+                {
+                    cpu[0].preempt();
+                }
+            }
+        };
+        load(0x0000, 0xE8, 0x8D, 0x00, 0xD0, 0x4C, 0x00, 0x00);
+        cpu[0] = new MOS6502Recompiler(new MOS6502(device));
+        cpu[0].setThreshold(2);
+        for (int i = 0; i < 10; i++)
+        {
+            // the run ends after the block writing, a lap or so
+            long cycles = cpu[0].run(1000);
+            Assert.assertTrue(cycles + " cycles", cycles <= 2 * (2 + 4 + 3));
+        }
+        Assert.assertTrue(cpu[0].getCompiledBlocks() > 0);
+    }
+
+    /*
+     * Run a loop writing a register behind a scheduler, on the interpreter or
+     * the recompiler, and list the cycles its component is caught up to.
+     */
+    private static List<Long> catchUps(boolean recompiled)
+    {
+        final List<Long> cycles = new ArrayList<Long>();
+        PagedMemory bus = new PagedMemory();
+        byte[] ram = new byte[0x10000];
+        bus.mapRAM(0x00, 0x100, ram, 0);
+        // $0200: STX $D000; STX $D000; STX $D000; JMP $0200
+        int[] program = { 0x8E, 0x00, 0xD0, 0x8E, 0x00, 0xD0, 0x8E, 0x00, 0xD0, 0x4C, 0x00, 0x02 };
+        for (int i = 0; i < program.length; i++)
+        {
+            ram[0x0200 + i] = (byte) program[i];
+        }
+        MOS6502 interpreter = new MOS6502(bus);
+        interpreter.setPc(0x0200);
+        CPU cpu = interpreter;
+        if (recompiled)
+        {
+            MOS6502Recompiler recompiler = new MOS6502Recompiler(interpreter);
+            recompiler.setThreshold(2);
+            cpu = recompiler;
+        }
+        Scheduler scheduler = new Scheduler(cpu);
+        Component component = new Component()
+        {
+            @Override
+            public void catchUp(long cycle)
+            {
+                cycles.add(cycle);
+            }
+        };
+        bus.map(0xD0, 1, new CatchUpMemory(new RAM(), component, scheduler));
+        scheduler.run(2000);
+        return cycles;
+    }
+
+    @Test
+    public void test_Scheduler()
+    {
+        // the blocks move the clock on before every access, the last one
+        // running past the budget
+        List<Long> expected = catchUps(false);
+        Assert.assertTrue(expected.size() > 100);
+        Assert.assertEquals(expected, catchUps(true).subList(0, expected.size()));
+    }
+
+    @Test
+    public void test_Validator()
+    {
+        // $0000: INX; TXA; EOR #$5A; STA $0300,X; DEC $10; BNE $0000; INC $11; JMP $0000
+        CopyOnWriteMemory original = new CopyOnWriteMemory();
+        original.writeBlock(0x0000, new byte[] { (byte) 0xE8, (byte) 0x8A, 0x49, 0x5A, (byte) 0x9D, 0x00, 0x03,
+            (byte) 0xC6, 0x10, (byte) 0xD0, (byte) 0xF5, (byte) 0xE6, 0x11, 0x4C, 0x00, 0x00 }, 0, 16);
+        CopyOnWriteMemory fork = original.fork();
+        MOS6502Recompiler candidate = new MOS6502Recompiler(new MOS6502(fork));
+        candidate.setThreshold(2);
+        DifferentialValidator validator = new DifferentialValidator(new MOS6502(original), original, candidate, fork, 1);
+
+        validator.run(20000);
+        Assert.assertNull(validator.getDivergence());
+        Assert.assertTrue(candidate.getCompiledBlocks() > 0);
+        Assert.assertTrue(validator.getChecks() > 1000);
+    }
+
+    @Test
+    public void test_Invalidate()
+    {
+        // $0000: LDA #$01; JMP $0000
+        load(0x0000, 0xA9, 0x01, 0x4C, 0x00, 0x00);
+        recompiler.run(100);
+        Assert.assertEquals(1, recompiler.getCompiledBlocks());
+        Assert.assertEquals(0x01, recompiler.getCpu().getA());
+
+        memory.writeByte(0x0001, (short) 0x02);
+        recompiler.invalidate();
+        recompiler.run(100);
+        Assert.assertEquals(1, recompiler.getInvalidatedBlocks());
+        Assert.assertEquals(0x02, recompiler.getCpu().getA());
+    }
+
+    @Test
+    public void test_Snapshot()
+    {
+        // $0000: LDA #$02; JMP $0000, changed into LDA #$01 behind the CPU
+        load(0x0000, 0xA9, 0x02, 0x4C, 0x00, 0x00);
+        Snapshot snapshot = new Snapshot(recompiler, memory);
+        ByteBuffer buffer = ByteBuffer.allocate(snapshot.getSize());
+        snapshot.save(buffer);
+        memory.writeByte(0x0001, (short) 0x01);
+        recompiler.run(100);
+        Assert.assertEquals(1, recompiler.getCompiledBlocks());
+        Assert.assertEquals(0x01, recompiler.getCpu().getA());
+
+        buffer.flip();
+        snapshot.restore(buffer);
+        Assert.assertEquals(0, recompiler.getCycles());
+        recompiler.run(100);
+        Assert.assertEquals(1, recompiler.getInvalidatedBlocks());
+        Assert.assertEquals(0x02, recompiler.getCpu().getA());
+    }
+
+}
@@ -0,0 +1,153 @@
+package org.nucco.jems.impl.cpu;
+
+import java.nio.ByteBuffer;
+
+import org.nucco.jems.api.memory.Memory;
+import org.nucco.jems.impl.memory.Memories;
+
+/**
+ * A program to run by a {@link BatchRunner}: an image loaded in a fresh RAM,
+ * the state the CPU starts from, a budget of cycles and the condition ending
+ * the run before the budget is spent. A job is immutable, so it can be run
+ * any number of times, from any thread.
+ */
+public final class BatchJob
+{
+
+    /**
+     * Tells when a job has reached its end. It is tested between two slices of
+     * cycles of the runner, so it only sees the states of the CPU at these
+     * points: programs usually end in a loop on a single instruction, which
+     * is caught whatever the slice.
+     */
+    public interface HaltCondition
+    {
+
+        /**
+         * @param cpu
+         *            the CPU running the job
+         * @param memory
+         *            the RAM of the job
+         * @return whether the job has ended
+         */
+        boolean isHalted(MOS6502 cpu, Memory memory);
+
+    }
+
+    private final int id;
+    private final byte[] image;
+    private final int origin;
+    private final int pc;
+    private final byte[] state;
+    private final long budget;
+    private final HaltCondition halt;
+
+    /**
+     * @param id
+     *            the identifier of the job, given back with its result
+     * @param image
+     *            the bytes to load in the RAM
+     * @param origin
+     *            the address of the first byte of the image
+     * @param pc
+     *            the address where the run starts, the other registers
+     *            having their reset values
+     * @param budget
+     *            the maximum number of cycles of the run
+     * @param halt
+     *            the condition ending the run, or null to spend the whole
+     *            budget
+     */
+    public BatchJob(int id, byte[] image, int origin, int pc, long budget, HaltCondition halt)
+    {
+        this(id, image, origin, pc, null, budget, halt);
+    }
+
+    /**
+     * @param id
+     *            the identifier of the job, given back with its result
+     * @param image
+     *            the bytes to load in the RAM
+     * @param origin
+     *            the address of the first byte of the image
+     * @param state
+     *            the state the CPU starts from, as saved by
+     *            {@link MOS6502#saveState(ByteBuffer)}
+     * @param budget
+     *            the maximum number of cycles of the run
+     * @param halt
+     *            the condition ending the run, or null to spend the whole
+     *            budget
+     */
+    public BatchJob(int id, byte[] image, int origin, byte[] state, long budget, HaltCondition halt)
+    {
+        this(id, image, origin, 0, state.clone(), budget, halt);
+    }
+
+    private BatchJob(int id, byte[] image, int origin, int pc, byte[] state, long budget, HaltCondition halt)
+    {
+        if (budget <= 0)
+        {
+            throw new IllegalArgumentException("Budget of " + budget + " cycles");
+        }
+        this.id = id;
+        this.image = image.clone();
+        this.origin = origin;
+        this.pc = pc;
+        this.state = state;
+        this.budget = budget;
+        this.halt = halt;
+    }
+
+    /**
+     * Create a condition ending the run when the program counter stays on an
+     * address, as in the infinite loop closing most test programs.
+     * 
+     * @param address
+     *            the address of the final loop
+     * @return the condition
+     */
+    public static HaltCondition haltAt(final int address)
+    {
+        return new HaltCondition()
+        {
+            @Override
+            public boolean isHalted(MOS6502 cpu, Memory memory)
+            {
+                return cpu.getPc() == address;
+            }
+        };
+    }
+
+    public int getId()
+    {
+        return id;
+    }
+
+    public long getBudget()
+    {
+        return budget;
+    }
+
+    /*
+     * (non-Javadoc) Load the image and the entry state in a fresh machine.
+     */
+    void load(MOS6502 cpu, Memory memory)
+    {
+        Memories.writeBlock(memory, origin, image, 0, image.length);
+        if (state != null)
+        {
+            cpu.loadState(ByteBuffer.wrap(state));
+        }
+        else
+        {
+            cpu.setPc(pc);
+        }
+    }
+
+    boolean isHalted(MOS6502 cpu, Memory memory)
+    {
+        return halt != null && halt.isHalted(cpu, memory);
+    }
+
+}
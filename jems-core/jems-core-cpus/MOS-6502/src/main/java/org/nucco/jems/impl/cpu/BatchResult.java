@@ -0,0 +1,94 @@
+package org.nucco.jems.impl.cpu;
+
+import org.nucco.jems.api.memory.Memory;
+
+/**
+ * The end of a {@link BatchJob}: how it ended, the final state of its machine
+ * and what the run cost.
+ */
+public final class BatchResult
+{
+
+    public enum Status
+    {
+        /** the halt condition was met */
+        HALTED,
+        /** the budget of cycles was spent first */
+        TIMEOUT,
+        /** the run threw an exception or an error */
+        FAILED
+    }
+
+    private final BatchJob job;
+    private final Status status;
+    private final byte[] state;
+    private final Memory memory;
+    private final long cycles;
+    private final long nanos;
+    private final Throwable error;
+
+    BatchResult(BatchJob job, Status status, byte[] state, Memory memory, long cycles, long nanos,
+        Throwable error)
+    {
+        this.job = job;
+        this.status = status;
+        this.state = state;
+        this.memory = memory;
+        this.cycles = cycles;
+        this.nanos = nanos;
+        this.error = error;
+    }
+
+    public BatchJob getJob()
+    {
+        return job;
+    }
+
+    public Status getStatus()
+    {
+        return status;
+    }
+
+    /**
+     * @return the final state of the CPU, as saved by
+     *         {@link MOS6502#saveState(java.nio.ByteBuffer)}
+     */
+    public byte[] getState()
+    {
+        return state.clone();
+    }
+
+    /**
+     * @return the RAM of the job, owned by the result once the job is over
+     */
+    public Memory getMemory()
+    {
+        return memory;
+    }
+
+    /**
+     * @return the number of cycles run
+     */
+    public long getCycles()
+    {
+        return cycles;
+    }
+
+    /**
+     * @return the time spent running the job, in nanoseconds
+     */
+    public long getNanos()
+    {
+        return nanos;
+    }
+
+    /**
+     * @return the exception or the error which ended a failed job, null
+     *         otherwise
+     */
+    public Throwable getError()
+    {
+        return error;
+    }
+
+}
@@ -0,0 +1,212 @@
+package org.nucco.jems.impl.cpu;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.nucco.jems.impl.memory.RAM;
+
+/**
+ * Runs batches of independent {@link BatchJob}s on a pool of threads, one per
+ * core by default. Each worker takes the next job of the batch as soon as it
+ * is done with the previous one, so the load balances itself whatever the
+ * length of the jobs. Every job runs on its own CPU and RAM, created by the
+ * worker: the workers share nothing but the job cursor and the queue of
+ * results.
+ * <p>
+ * A job runs by slices of cycles, its halt condition being tested between
+ * two of them, until it halts or its budget is spent.
+ */
+public final class BatchRunner
+{
+
+    public static final long DEFAULT_SLICE = 1000;
+
+    private final int threads;
+    private final MOS6502.Engine engine;
+    private final long slice;
+    private final ExecutorService pool;
+
+    /**
+     * A runner of one thread per core, with the threaded engine.
+     */
+    public BatchRunner()
+    {
+        this(Runtime.getRuntime().availableProcessors(), MOS6502.Engine.THREADED, DEFAULT_SLICE);
+    }
+
+    /**
+     * @param threads
+     *            the number of jobs run at the same time
+     * @param engine
+     *            the engine of the CPUs
+     * @param slice
+     *            the number of cycles run between two tests of the halt
+     *            condition
+     */
+    public BatchRunner(int threads, MOS6502.Engine engine, long slice)
+    {
+        if (threads <= 0 || slice <= 0)
+        {
+            throw new IllegalArgumentException(threads + " threads, slices of " + slice + " cycles");
+        }
+        this.threads = threads;
+        this.engine = engine;
+        this.slice = slice;
+        this.pool = Executors.newFixedThreadPool(threads, new ThreadFactory()
+        {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "jems-batch-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Start running a batch. The results come in the order the jobs end, as
+     * soon as each one ends.
+     * 
+     * @param jobs
+     *            the jobs to run
+     * @return the results, the iterator blocking until the next one is
+     *         available
+     */
+    public Iterator<BatchResult> run(List<BatchJob> jobs)
+    {
+        final List<BatchJob> batch = new ArrayList<BatchJob>(jobs);
+        final AtomicInteger cursor = new AtomicInteger();
+        final BlockingQueue<BatchResult> results = new LinkedBlockingQueue<BatchResult>();
+        int workers = Math.min(threads, batch.size());
+        for (int i = 0; i < workers; i++)
+        {
+            pool.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    for (int job = cursor.getAndIncrement(); job < batch.size(); job = cursor.getAndIncrement())
+                    {
+                        results.add(execute(batch.get(job)));
+                    }
+                }
+            });
+        }
+
+        return new Iterator<BatchResult>()
+        {
+            private int remaining = batch.size();
+
+            @Override
+            public boolean hasNext()
+            {
+                return remaining > 0;
+            }
+
+            @Override
+            public BatchResult next()
+            {
+                if (remaining == 0)
+                {
+                    throw new NoSuchElementException();
+                }
+                try
+                {
+                    BatchResult result = results.take();
+                    remaining--;
+                    return result;
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for a result", e);
+                }
+            }
+
+            @Override
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Run a batch and wait for all its results.
+     * 
+     * @param jobs
+     *            the jobs to run
+     * @return the results, in the order the jobs ended
+     */
+    public List<BatchResult> runAll(List<BatchJob> jobs)
+    {
+        List<BatchResult> results = new ArrayList<BatchResult>(jobs.size());
+        for (Iterator<BatchResult> i = run(jobs); i.hasNext();)
+        {
+            results.add(i.next());
+        }
+        return results;
+    }
+
+    /**
+     * Stop the threads once the batches started are over.
+     */
+    public void shutdown()
+    {
+        pool.shutdown();
+    }
+
+    /*
+     * (non-Javadoc) Run a job on a fresh machine. Errors are caught along with
+     * the exceptions: a worker must give a result for every job, or the
+     * iterator would wait forever.
+     */
+    BatchResult execute(BatchJob job)
+    {
+        RAM memory = new RAM();
+        MOS6502 cpu = new MOS6502(memory);
+        cpu.setEngine(engine);
+        long start = System.nanoTime();
+        long cycles = 0;
+        BatchResult.Status status = BatchResult.Status.HALTED;
+        Throwable error = null;
+        try
+        {
+            job.load(cpu, memory);
+            cycles = cpu.getCycles();
+            long end = cycles + job.getBudget();
+            while (!job.isHalted(cpu, memory))
+            {
+                if (cpu.getCycles() >= end)
+                {
+                    status = BatchResult.Status.TIMEOUT;
+                    break;
+                }
+                cpu.run(Math.min(slice, end - cpu.getCycles()));
+            }
+        }
+        catch (Throwable e)
+        {
+            status = BatchResult.Status.FAILED;
+            error = e;
+        }
+        long nanos = System.nanoTime() - start;
+
+        ByteBuffer state = ByteBuffer.allocate(cpu.getStateSize());
+        cpu.saveState(state);
+        return new BatchResult(job, status, state.array(), memory, cpu.getCycles() - cycles, nanos, error);
+    }
+
+}
@@ -0,0 +1,24 @@
+package org.nucco.jems.impl.cpu;
+
+/**
+ * Observer of the writes made by a {@link MOS6502} in the pages holding code
+ * that was translated or decoded ahead of its execution. Only the writes to the
+ * watched pages are reported, so that the others cost a single test.
+ */
+abstract class CodeWatcher
+{
+
+    static final int PAGES = 0x100;
+    static final byte PAGE_SHIFT = 8;
+
+    final boolean[] pages = new boolean[PAGES];
+
+    /**
+     * Called after the CPU wrote in a watched page.
+     * 
+     * @param address
+     *            the address written
+     */
+    abstract void written(int address);
+
+}
@@ -0,0 +1,109 @@
+package org.nucco.jems.impl.cpu;
+
+import java.util.Arrays;
+
+/**
+ * Instructions decoded once and kept by address: opcode, raw operand, length
+ * and base cycles. An entry is dropped when the CPU writes in one of its bytes,
+ * so self-modifying code is decoded again.
+ */
+final class DecodeCache extends CodeWatcher
+{
+
+    static final short EMPTY = -1;
+
+    private static final int ADDRESSES = 0x10000;
+    private static final int MAX_LENGTH = 3;
+    private static final int ADDRESS_MASK = 0xFFFF;
+
+    final short[] opcodes = new short[ADDRESSES];
+    final int[] operands = new int[ADDRESSES];
+    final byte[] lengths = new byte[ADDRESSES];
+    final byte[] cycles = new byte[ADDRESSES];
+    private final int[] entries = new int[PAGES]; // cached instructions in each page
+
+    long hits;
+    long misses;
+    long invalidations;
+
+    DecodeCache()
+    {
+        Arrays.fill(opcodes, EMPTY);
+    }
+
+    /**
+     * Add a decoded instruction and watch the pages holding it.
+     */
+    void put(int address, short opcode, int operand, int length, int cycles)
+    {
+        opcodes[address] = opcode;
+        operands[address] = operand;
+        lengths[address] = (byte) length;
+        this.cycles[address] = (byte) cycles;
+        misses++;
+
+        int first = address >> PAGE_SHIFT;
+        int last = ((address + length - 1) & ADDRESS_MASK) >> PAGE_SHIFT;
+        watch(first);
+        if (last != first)
+        {
+            watch(last);
+        }
+    }
+
+    /*
+     * (non-Javadoc) Drop the instructions having a byte at the written address.
+     * @see org.nucco.jems.impl.cpu.CodeWatcher#written(int)
+     */
+    @Override
+    void written(int address)
+    {
+        for (int i = 0; i < MAX_LENGTH; i++)
+        {
+            int start = (address - i) & ADDRESS_MASK;
+            if (opcodes[start] != EMPTY && lengths[start] > i)
+            {
+                drop(start);
+            }
+        }
+    }
+
+    /**
+     * Drop all the entries.
+     */
+    void clear()
+    {
+        Arrays.fill(opcodes, EMPTY);
+        Arrays.fill(entries, 0);
+        Arrays.fill(pages, false);
+    }
+
+    private void drop(int address)
+    {
+        opcodes[address] = EMPTY;
+        invalidations++;
+
+        int first = address >> PAGE_SHIFT;
+        int last = ((address + lengths[address] - 1) & ADDRESS_MASK) >> PAGE_SHIFT;
+        unwatch(first);
+        if (last != first)
+        {
+            unwatch(last);
+        }
+    }
+
+    private void watch(int page)
+    {
+        entries[page]++;
+        pages[page] = true;
+    }
+
+    private void unwatch(int page)
+    {
+        if (--entries[page] == 0)
+        {
+            pages[page] = false;
+        }
+    }
+
+}
@@ -0,0 +1,358 @@
+package org.nucco.jems.impl.cpu;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.nucco.jems.util.Util;
+
+/**
+ * Samples the guest code run by a {@link MOS6502}: a background thread asks
+ * for a sample every period, and the CPU takes it at its next action: the pc
+ * and a shadow call stack of the routines entered by JSR, BRK and interrupts.
+ * The CPU maintains the shadow stack, a frame being left once the stack
+ * pointer climbs above the one of its entry, whatever instruction climbed.
+ * <p>
+ * The CPU never waits nor locks: samples go through a ring the background
+ * thread drains, and are dropped when it is full. The background thread folds
+ * them into stacks for flame graphs, in the collapsed format: the routines
+ * from the outermost, separated by ';', then the count.
+ * 
+ * @see MOS6502#setSampler(GuestProfiler)
+ */
+public final class GuestProfiler
+{
+
+    public static final int MAX_DEPTH = 64;
+    public static final int RING_SAMPLES = 1024;
+
+    private static final int SLOT_SIZE = MAX_DEPTH + 2; // pc, depth, entries
+    private static final Pattern ADDRESS = Pattern.compile("(?:\\$|0x|[Cc]:)?([0-9A-Fa-f]{4,6})");
+    private static final Pattern PREFIXED_ADDRESS = Pattern.compile("(?:\\$|0x|[Cc]:)([0-9A-Fa-f]{4,6})");
+    private static final Pattern NAME = Pattern.compile("\\.?([A-Za-z_@][\\w@.]*)");
+
+    // emulation thread
+    private final int[] entries = new int[MAX_DEPTH];
+    private final int[] stackPointers = new int[MAX_DEPTH]; // after the entry
+    private int depth;
+    private long next; // samples written
+    private long free; // samples writable before looking at the tail again
+
+    // shared
+    private final int[] ring = new int[RING_SAMPLES * SLOT_SIZE];
+    private final AtomicLong head = new AtomicLong(); // samples written, by the emulation thread
+    private final AtomicLong tail = new AtomicLong(); // samples folded, by the background thread
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean requested;
+    private volatile boolean stopped;
+
+    // background thread
+    private final long period;
+    private final Map<String, long[]> stacks = new TreeMap<String, long[]>();
+    private final TreeMap<Integer, String> symbols = new TreeMap<Integer, String>();
+    private final StringBuilder key = new StringBuilder();
+    private Thread thread;
+
+    /**
+     * @param periodNanos
+     *            the time between two samples
+     */
+    public GuestProfiler(long periodNanos)
+    {
+        if (periodNanos <= 0)
+        {
+            throw new IllegalArgumentException("Period of " + periodNanos + " ns");
+        }
+        this.period = periodNanos;
+        this.free = RING_SAMPLES;
+    }
+
+    /**
+     * Read the labels of a symbol file, one per line, either as an assembler
+     * defines them ("label = $C000") or as label files list them ("C000
+     * label", "al C:C000 .label", "label $C000"). The form tells the label
+     * from the address: the label is left of '=', and otherwise a hexadecimal
+     * token is only an address in the leading position or with a prefix ("$",
+     * "0x", "C:"), so labels like "dead" are read as labels. Other lines are
+     * ignored. The stacks are then named after the labels, an address without
+     * its own label being named after the closest label before it, plus the
+     * offset.
+     * 
+     * @param input
+     *            the symbol file
+     * @return the number of labels read
+     * @throws IOException
+     *             if reading failed
+     */
+    public int loadSymbols(Reader input) throws IOException
+    {
+        BufferedReader reader = new BufferedReader(input);
+        int count = 0;
+        String line;
+        while ((line = reader.readLine()) != null)
+        {
+            int comment = line.indexOf(';');
+            if (comment >= 0)
+            {
+                line = line.substring(0, comment);
+            }
+            Integer address = null;
+            String name = null;
+            int equals = line.indexOf('=');
+            if (equals >= 0)
+            {
+                name = parseName(line.substring(0, equals).trim());
+                address = parseAddress(line.substring(equals + 1).trim(), ADDRESS);
+            }
+            else
+            {
+                String[] tokens = line.trim().split("\\s+");
+                int first = "al".equals(tokens[0]) ? 1 : 0;
+                if (tokens.length == first + 2)
+                {
+                    address = parseAddress(tokens[first], ADDRESS);
+                    name = parseName(tokens[first + 1]);
+                    if (address == null || name == null)
+                    {
+                        name = parseName(tokens[first]);
+                        address = parseAddress(tokens[first + 1], PREFIXED_ADDRESS);
+                    }
+                }
+            }
+            if (address != null && name != null)
+            {
+                synchronized (stacks)
+                {
+                    symbols.put(address, name);
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Start sampling.
+     */
+    public synchronized void start()
+    {
+        if (thread != null)
+        {
+            return;
+        }
+        stopped = false;
+        thread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                while (!stopped)
+                {
+                    LockSupport.parkNanos(period);
+                    requested = true;
+                    fold();
+                }
+            }
+        }, "jems-sampler");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop sampling, folding the samples taken.
+     */
+    public synchronized void stop()
+    {
+        if (thread == null)
+        {
+            return;
+        }
+        stopped = true;
+        LockSupport.unpark(thread);
+        try
+        {
+            thread.join();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+        requested = false;
+        fold();
+    }
+
+    /**
+     * Ask for a sample at the next action, whatever the period.
+     */
+    public void request()
+    {
+        requested = true;
+    }
+
+    /**
+     * @return the number of samples folded so far
+     */
+    public long getSamples()
+    {
+        return tail.get();
+    }
+
+    /**
+     * @return the number of samples dropped because the ring was full
+     */
+    public long getDropped()
+    {
+        return dropped.get();
+    }
+
+    /**
+     * Write the folded stacks in the collapsed format, one per line, sorted.
+     * 
+     * @param output
+     *            where to write the stacks
+     * @throws IOException
+     *             if writing failed
+     */
+    public void writeCollapsed(Appendable output) throws IOException
+    {
+        fold();
+        synchronized (stacks)
+        {
+            for (Map.Entry<String, long[]> stack : stacks.entrySet())
+            {
+                output.append(stack.getKey()).append(' ').append(Long.toString(stack.getValue()[0])).append('\n');
+            }
+        }
+    }
+
+    /**
+     * Forget the stacks folded so far.
+     */
+    public void clear()
+    {
+        synchronized (stacks)
+        {
+            stacks.clear();
+        }
+    }
+
+    /*
+     * (non-Javadoc) Emulation thread: follow the shadow stack after an
+     * action, and take the sample asked for.
+     */
+    void track(int opcode, int pc, int sp)
+    {
+        while (depth > 0 && stackPointers[depth - 1] < sp)
+        {
+            depth--;
+        }
+        if (opcode == MOS6502.JSR || opcode == MOS6502.BRK)
+        {
+            enter(pc, sp);
+        }
+        if (requested)
+        {
+            requested = false;
+            sample(pc);
+        }
+    }
+
+    /*
+     * (non-Javadoc) Emulation thread: a routine was entered.
+     */
+    void enter(int pc, int sp)
+    {
+        if (depth < MAX_DEPTH)
+        {
+            entries[depth] = pc;
+            stackPointers[depth] = sp;
+            depth++;
+        }
+    }
+
+    /*
+     * Emulation thread: write the sample in the ring, or drop it.
+     */
+    private void sample(int pc)
+    {
+        if (free == 0 && (free = RING_SAMPLES - (next - tail.get())) == 0)
+        {
+            dropped.incrementAndGet();
+            return;
+        }
+        int slot = (int) (next % RING_SAMPLES) * SLOT_SIZE;
+        ring[slot] = pc;
+        ring[slot + 1] = depth;
+        System.arraycopy(entries, 0, ring, slot + 2, depth);
+        free--;
+        head.lazySet(++next);
+    }
+
+    /*
+     * Fold the samples of the ring into the stacks.
+     */
+    private void fold()
+    {
+        synchronized (stacks)
+        {
+            long from = tail.get();
+            long to = head.get();
+            for (long sample = from; sample < to; sample++)
+            {
+                int slot = (int) (sample % RING_SAMPLES) * SLOT_SIZE;
+                key.setLength(0);
+                key.append("6502");
+                for (int i = 0; i < ring[slot + 1]; i++)
+                {
+                    key.append(';');
+                    name(ring[slot + 2 + i]);
+                }
+                key.append(';');
+                name(ring[slot]);
+                String stack = key.toString();
+                long[] count = stacks.get(stack);
+                if (count == null)
+                {
+                    stacks.put(stack, count = new long[1]);
+                }
+                count[0]++;
+            }
+            tail.set(to);
+        }
+    }
+
+    private void name(int address)
+    {
+        Map.Entry<Integer, String> symbol = symbols.floorEntry(address);
+        if (symbol == null)
+        {
+            key.append('$').append(Util.hex((short) address));
+            return;
+        }
+        key.append(symbol.getValue());
+        if (symbol.getKey() != address)
+        {
+            key.append('+').append(address - symbol.getKey());
+        }
+    }
+
+    private static Integer parseAddress(String token, Pattern pattern)
+    {
+        Matcher matcher = pattern.matcher(token);
+        return matcher.matches() ? Integer.valueOf(Integer.parseInt(matcher.group(1), 16) & 0xFFFF) : null;
+    }
+
+    private static String parseName(String token)
+    {
+        Matcher matcher = NAME.matcher(token);
+        return matcher.matches() ? matcher.group(1) : null;
+    }
+
+}
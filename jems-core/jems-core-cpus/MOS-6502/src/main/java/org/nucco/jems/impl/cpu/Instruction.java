@@ -0,0 +1,62 @@
+package org.nucco.jems.impl.cpu;
+
+/**
+ * An action of the table dispatched MOS-6502 engine: an operation composed with
+ * the addressing mode of its operand. The engine fetches and resolves the
+ * operand before executing the instruction: reading instructions receive the
+ * value of the operand, the others its effective address.
+ */
+abstract class Instruction
+{
+
+    // Addressing modes
+    static final byte IMPLIED = 0;
+    static final byte IMMEDIATE = 1;
+    static final byte ZERO_PAGE = 2;
+    static final byte ZERO_PAGE_X = 3;
+    static final byte ZERO_PAGE_Y = 4;
+    static final byte ABSOLUTE = 5;
+    static final byte ABSOLUTE_X = 6;
+    static final byte ABSOLUTE_Y = 7;
+    static final byte INDIRECT = 8;
+    static final byte INDIRECT_X = 9;
+    static final byte INDIRECT_Y = 10;
+    static final byte ACCUMULATOR = 11;
+    static final byte RELATIVE = 12;
+
+    // Length of the instruction, opcode included, for each addressing mode
+    static final byte[] LENGTHS = { 1, 2, 2, 2, 2, 3, 3, 3, 3, 2, 2, 1, 2 };
+
+    final String mnemonic;
+    final byte mode;
+    final boolean reads;
+
+    /**
+     * @param mnemonic
+     *            the assembler name of the operation
+     * @param mode
+     *            the addressing mode of the operand
+     * @param reads
+     *            true if the operation receives the value of its operand
+     *            instead of its address
+     */
+    Instruction(String mnemonic, byte mode, boolean reads)
+    {
+        this.mnemonic = mnemonic;
+        this.mode = mode;
+        this.reads = reads;
+    }
+
+    /**
+     * Execute the operation.
+     * 
+     * @param cpu
+     *            the CPU to act on
+     * @param operand
+     *            the value or the effective address of the operand, the
+     *            offset of relative branches, 0 for implied and accumulator
+     *            instructions
+     */
+    abstract void execute(MOS6502 cpu, int operand);
+
+}
@@ -1,12 +1,21 @@
 package org.nucco.jems.impl.cpu;
 
+import java.nio.ByteBuffer;
+
+import org.nucco.jems.api.cpu.Interruptible;
+import org.nucco.jems.api.cpu.Preemptible;
+import org.nucco.jems.api.memory.BlockMemory;
 import org.nucco.jems.api.memory.Memory;
+import org.nucco.jems.api.state.Stateful;
 import org.nucco.jems.impl.cpu.AbstractCPU;
+import org.nucco.jems.impl.memory.PagedMemory;
+import org.nucco.jems.impl.memory.RAM;
+import org.nucco.jems.impl.trace.TraceRecorder;
 import org.nucco.jems.util.Util;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class MOS6502 extends AbstractCPU
+public class MOS6502 extends AbstractCPU implements Stateful, Interruptible, Preemptible
 {
 
     private static final Logger LOG = LoggerFactory.getLogger(MOS6502.class);
@@ -15,22 +24,22 @@ public class MOS6502 extends AbstractCPU
     // Timings for instructions. This is standard MC6502 T-States.
     // =============================================================
     protected static final byte[] CYCLES = {
-        7, 6, 0, 0, 0, 3, 0, 0, 3, 2, 0, 0, 0, 4, 0, 0, // 00 .. 0F
-        0, 5, 0, 0, 0, 4, 0, 0, 0, 4, 0, 0, 0, 4, 0, 0, // 10 .. 1F
-        6, 6, 0, 0, 3, 3, 0, 0, 4, 2, 0, 0, 4, 4, 0, 0, // 20 .. 2F
-        0, 5, 0, 0, 0, 4, 0, 0, 0, 4, 0, 0, 0, 4, 0, 0, // 30 .. 3F
-        0, 6, 0, 0, 0, 3, 0, 0, 3, 2, 0, 0, 3, 4, 0, 0, // 40 .. 4F
-        0, 5, 0, 0, 0, 4, 0, 0, 0, 4, 0, 0, 0, 4, 0, 0, // 50 .. 5F
-        6, 0, 0, 0, 0, 0, 0, 0, 4, 0, 0, 0, 5, 0, 0, 0, // 60 .. 6F
-        0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, // 70 .. 7F
+        7, 6, 0, 0, 0, 3, 5, 0, 3, 2, 2, 0, 0, 4, 6, 0, // 00 .. 0F
+        2, 5, 0, 0, 0, 4, 6, 0, 2, 4, 0, 0, 0, 4, 7, 0, // 10 .. 1F
+        6, 6, 0, 0, 3, 3, 5, 0, 4, 2, 2, 0, 4, 4, 6, 0, // 20 .. 2F
+        2, 5, 0, 0, 0, 4, 6, 0, 2, 4, 0, 0, 0, 4, 7, 0, // 30 .. 3F
+        6, 6, 0, 0, 0, 3, 5, 0, 3, 2, 2, 0, 3, 4, 6, 0, // 40 .. 4F
+        2, 5, 0, 0, 0, 4, 6, 0, 2, 4, 0, 0, 0, 4, 7, 0, // 50 .. 5F
+        6, 6, 0, 0, 0, 3, 5, 0, 4, 2, 2, 0, 5, 4, 6, 0, // 60 .. 6F
+        2, 5, 0, 0, 0, 4, 6, 0, 2, 4, 0, 0, 0, 4, 7, 0, // 70 .. 7F
         0, 6, 0, 0, 3, 3, 3, 0, 2, 0, 2, 0, 4, 4, 4, 0, // 80 .. 8F
-        0, 6, 0, 0, 4, 4, 4, 0, 2, 5, 2, 0, 0, 5, 0, 0, // 90 .. 9F
+        2, 6, 0, 0, 4, 4, 4, 0, 2, 5, 2, 0, 0, 5, 0, 0, // 90 .. 9F
         2, 6, 2, 0, 3, 3, 3, 0, 2, 2, 2, 0, 4, 4, 4, 0, // A0 .. AF
-        0, 5, 0, 0, 4, 4, 4, 0, 0, 4, 2, 0, 4, 4, 4, 0, // B0 .. BF
-        0, 0, 0, 0, 0, 0, 5, 0, 2, 0, 2, 0, 0, 0, 6, 0, // C0 .. CF
-        0, 0, 0, 0, 0, 0, 6, 0, 0, 0, 0, 0, 0, 0, 7, 0, // D0 .. DF
-        0, 0, 0, 0, 0, 0, 5, 0, 2, 0, 2, 0, 0, 0, 6, 0, // E0 .. EF
-        0, 0, 0, 0, 0, 0, 6, 0, 0, 0, 0, 0, 0, 0, 7, 0  // F0 .. FF
+        2, 5, 0, 0, 4, 4, 4, 0, 2, 4, 2, 0, 4, 4, 4, 0, // B0 .. BF
+        2, 6, 0, 0, 3, 3, 5, 0, 2, 2, 2, 0, 4, 4, 6, 0, // C0 .. CF
+        2, 5, 0, 0, 0, 4, 6, 0, 2, 4, 0, 0, 0, 4, 7, 0, // D0 .. DF
+        2, 6, 0, 0, 3, 3, 5, 0, 2, 2, 2, 0, 4, 4, 6, 0, // E0 .. EF
+        2, 5, 0, 0, 0, 4, 6, 0, 2, 4, 0, 0, 0, 4, 7, 0  // F0 .. FF
     // ,0, 1, 2, 3, 4, 5, 6, 7, 8, 9, A, B, C, D, E, F
     };
 
@@ -40,6 +49,7 @@ public class MOS6502 extends AbstractCPU
     protected static final short I_FLAG = 0x04; // 1: Interrupts disabled
     protected static final short D_FLAG = 0x08; // 1: Decimal mode
     protected static final short B_FLAG = 0x10; // Break [0 on stk after int]
+    protected static final short UNUSED_FLAG = 0x20; // Always 1 on stack
     protected static final short V_FLAG = 0x40; // 1: Overflow occured
     protected static final short N_FLAG = 0x80; // 1: Result is negative
 
@@ -67,25 +77,70 @@ public class MOS6502 extends AbstractCPU
         N_FLAG, N_FLAG, N_FLAG, N_FLAG, N_FLAG, N_FLAG, N_FLAG, N_FLAG, N_FLAG, N_FLAG, N_FLAG, N_FLAG, N_FLAG, N_FLAG, N_FLAG, N_FLAG //
     };
 
+    // cycles, pc, a, x, y, sp, status and pending interrupts
+    public static final int STATE_SIZE = 16;
+
+    // cycles (6 bytes), pc, opcode, 2 operand bytes, a, x, y, sp and status
+    public static final int TRACE_RECORD_SIZE = 16;
+
+    // Counting actions, when set by the jems.profiling system property, see setProfile
+    public static final boolean PROFILING = Boolean.getBoolean("jems.profiling");
+
+    // Pending interrupts
+    static final int IRQ_PENDING = 0x01; // the IRQ line is asserted
+    static final int NMI_PENDING = 0x02; // the NMI line was asserted since the last NMI
+    private static final int NMI_LINE = 0x04; // in the saved state only, the NMI line is asserted
+
     private String cpuName = "MOS-6502";
 
     private static final short DEFAULT_REGISTER_VALUE = 0xFF;
     private static final int DEFAULT_PC_VALUE = 0x0000;
     private static final int BREAK_ADDRRESS = 0xFFFE;
+    private static final int NMI_ADDRESS = 0xFFFA;
+    private static final byte INTERRUPT_CYCLES = 7;
     private static final int STACK_ADDRESS = 0x0100;
     private static final byte SHIFT_8BITS = 8;
+    private static final byte SHIFT_DIRTY_WORD = 14;
+    private static final long TRACE_CYCLES_MASK = 0xFFFFFFFFFFFFL;
     private static final int PAGE_CROSS_TEST = 0xFF00;
-
-    private short a = DEFAULT_REGISTER_VALUE; // accumulator
-    private short x = DEFAULT_REGISTER_VALUE; // x register
-    private short y = DEFAULT_REGISTER_VALUE; // y register
-    private short sp = DEFAULT_REGISTER_VALUE; // stack pointer
-    private short sr = DEFAULT_REGISTER_VALUE; // processor status register
-    private int pc = DEFAULT_PC_VALUE; // program counter
+    private static final byte ILLEGAL_CYCLES = 2;
+
+    short a = DEFAULT_REGISTER_VALUE; // accumulator
+    short x = DEFAULT_REGISTER_VALUE; // x register
+    short y = DEFAULT_REGISTER_VALUE; // y register
+    short sp = DEFAULT_REGISTER_VALUE; // stack pointer
+    short sr = DEFAULT_REGISTER_VALUE; // processor status register, N and Z excepted
+    int zResult = 0; // last result setting Z, the flag is set when it is zero
+    int nResult = N_FLAG; // last result setting N, the flag is bit 7
+    int pc = DEFAULT_PC_VALUE; // program counter
+
+    private final byte[] ram; // backing array when memory is a plain RAM
+    private final long[] dirty; // dirty bits of the pages of the plain RAM
+    private final PagedMemory bus; // page table when memory is a paged bus
+    private final BlockMemory words; // memory when it reads words itself, read a byte at a time otherwise
+
+    private Engine engine = Engine.SWITCH;
+    private Instruction[] instructions; // handler table of the threaded engine
+    private DecodeCache cache; // decoded instructions of the predecoded engine
+    CodeWatcher codeWatcher; // notified of the writes in pages holding code
+
+    int pending; // the interrupts to take, the only field about them the run loops test
+    private boolean nmi; // level of the NMI line
+    private long limit; // cycle where the current batch stops, cut short to take an interrupt
+    private long end; // cycle where the current run stops, cut short when preempted
+
+    private TraceRecorder tracer; // records every action when set
+    private ByteBuffer traceBuffer; // ring of the tracer
+    private MOS6502Profile profile; // counts the actions when set
+    private GuestProfiler sampler; // follows the calls and samples them when set
 
     public MOS6502(Memory memory)
     {
         this.memory = memory;
+        this.ram = memory instanceof RAM ? ((RAM) memory).getBytes() : null;
+        this.dirty = memory instanceof RAM ? ((RAM) memory).getDirtyBits() : null;
+        this.bus = memory instanceof PagedMemory ? (PagedMemory) memory : null;
+        this.words = memory instanceof BlockMemory ? (BlockMemory) memory : null;
     }
 
     /*
@@ -96,7 +151,629 @@ public class MOS6502 extends AbstractCPU
     @Override
     public void step()
     {
-        step(fetch());
+        if (pending != 0 && interrupt())
+        {
+            return;
+        }
+        if (isInstrumented())
+        {
+            instrumented();
+            if (tracer != null)
+            {
+                tracer.commit();
+            }
+        }
+        else
+        {
+            dispatch();
+        }
+    }
+
+    private boolean isInstrumented()
+    {
+        return tracer != null || PROFILING && (profile != null || sampler != null);
+    }
+
+    /*
+     * (non-Javadoc) Trace, count and sample the next action as requested, and
+     * execute it.
+     */
+    private void instrumented()
+    {
+        if (tracer != null)
+        {
+            trace();
+        }
+        if (PROFILING && profile != null && --profile.countdown == 0)
+        {
+            profile.countdown = profile.next();
+            int address = pc;
+            long start = cycles;
+            short opcode = read(address);
+            dispatch();
+            profile.record(address, opcode, cycles - start);
+            if (sampler != null)
+            {
+                sampler.track(opcode, pc, sp);
+            }
+        }
+        else if (PROFILING && sampler != null)
+        {
+            short opcode = read(pc);
+            dispatch();
+            sampler.track(opcode, pc, sp);
+        }
+        else
+        {
+            dispatch();
+        }
+    }
+
+    /*
+     * (non-Javadoc) Execute the next action with the selected engine.
+     */
+    private void dispatch()
+    {
+        if (cache != null)
+        {
+            executeDecoded();
+        }
+        else if (instructions != null)
+        {
+            execute(fetch());
+        }
+        else
+        {
+            step(fetch());
+        }
+    }
+
+    /*
+     * (non-Javadoc) Batch the steps in a single loop, so the limit test is the
+     * only work done between two actions. Pending interrupts are taken between
+     * batches: raising an interrupt the CPU does not mask cuts the current
+     * batch after the action running, preempting the CPU ends the run after
+     * it. Tracing and profiling have their own loop, so they cost nothing to
+     * the others when disabled.
+     * 
+     * @see org.nucco.jems.impl.cpu.AbstractCPU#run(long)
+     */
+    @Override
+    public long run(long budget)
+    {
+        long start = cycles;
+        end = start + budget;
+        while (cycles < end)
+        {
+            if (pending != 0 && interrupt())
+            {
+                continue;
+            }
+            limit = end;
+            if (isInstrumented())
+            {
+                while (cycles < limit)
+                {
+                    instrumented();
+                }
+                if (tracer != null)
+                {
+                    tracer.commit();
+                }
+            }
+            else if (cache != null)
+            {
+                while (cycles < limit)
+                {
+                    executeDecoded();
+                }
+            }
+            else if (instructions != null)
+            {
+                while (cycles < limit)
+                {
+                    execute(fetch());
+                }
+            }
+            else
+            {
+                while (cycles < limit)
+                {
+                    step(fetch());
+                }
+            }
+        }
+
+        return cycles - start;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.api.cpu.Interruptible#setIrq(boolean)
+     */
+    @Override
+    public void setIrq(boolean asserted)
+    {
+        if (asserted)
+        {
+            pending |= IRQ_PENDING;
+            unmasked();
+        }
+        else
+        {
+            pending &= ~IRQ_PENDING;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.api.cpu.Interruptible#setNmi(boolean)
+     */
+    @Override
+    public void setNmi(boolean asserted)
+    {
+        if (asserted && !nmi)
+        {
+            pending |= NMI_PENDING;
+            limit = cycles;
+        }
+        nmi = asserted;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.api.cpu.Preemptible#preempt()
+     */
+    @Override
+    public void preempt()
+    {
+        end = cycles;
+        limit = cycles;
+    }
+
+    /*
+     * (non-Javadoc) Take the pending interrupt the CPU does not mask, NMI
+     * first.
+     * 
+     * @return true if an interrupt was taken
+     */
+    boolean interrupt()
+    {
+        int vector;
+        if ((pending & NMI_PENDING) != 0)
+        {
+            pending &= ~NMI_PENDING;
+            vector = NMI_ADDRESS;
+        }
+        else if ((pending & IRQ_PENDING) != 0 && (sr & I_FLAG) == 0)
+        {
+            vector = BREAK_ADDRRESS;
+        }
+        else
+        {
+            return false;
+        }
+
+        cycles += INTERRUPT_CYCLES;
+        pushShort(pc);
+        push((short) ((getSr() & ~B_FLAG) | UNUSED_FLAG));
+        sr = (short) (sr | I_FLAG);
+        pc = readShort(vector);
+        if (PROFILING && sampler != null)
+        {
+            sampler.enter(pc, sp);
+        }
+        return true;
+    }
+
+    /*
+     * (non-Javadoc) Cut the current batch if an IRQ is pending and the I flag
+     * no longer masks it. To be called whenever the flag may be cleared.
+     */
+    void unmasked()
+    {
+        if ((pending & IRQ_PENDING) != 0 && (sr & I_FLAG) == 0)
+        {
+            limit = cycles;
+        }
+    }
+
+    /**
+     * Select the engine executing the instructions.
+     * 
+     * @param engine
+     *            the engine to use from the next step
+     */
+    public void setEngine(Engine engine)
+    {
+        this.engine = engine;
+        this.instructions = engine != Engine.SWITCH ? MOS6502Instructions.TABLE : null;
+        this.cache = engine == Engine.PREDECODED ? new DecodeCache() : null;
+    }
+
+    public Engine getEngine()
+    {
+        return engine;
+    }
+
+    /**
+     * Record a trace of every action from the next step, in records of
+     * {@link #TRACE_RECORD_SIZE} bytes, in little endian:
+     * <ul>
+     * <li>0: cycles before the action, 48 bits</li>
+     * <li>6: pc</li>
+     * <li>8: opcode and the two bytes after it, whatever the operand size</li>
+     * <li>11: a, x, y, sp and the status register</li>
+     * </ul>
+     * Interrupts taken are not recorded, the next record being the first action
+     * of the handler. The bytes after the opcode are read through the memory,
+     * like the CPU does when it fetches.
+     * 
+     * @param tracer
+     *            the recorder of the trace, null to stop tracing
+     * @throws IllegalArgumentException
+     *             if the records of the recorder are not
+     *             {@link #TRACE_RECORD_SIZE} bytes long
+     */
+    public void setTracer(TraceRecorder tracer)
+    {
+        if (tracer != null && tracer.getRecordSize() != TRACE_RECORD_SIZE)
+        {
+            throw new IllegalArgumentException("Trace records of " + tracer.getRecordSize() + " bytes");
+        }
+        this.tracer = tracer;
+        this.traceBuffer = tracer != null ? tracer.getBuffer() : null;
+    }
+
+    public TraceRecorder getTracer()
+    {
+        return tracer;
+    }
+
+    /**
+     * Count the actions from the next step. Counting is compiled in only when
+     * the jems.profiling system property is true: otherwise {@link #PROFILING}
+     * is false and the JIT drops every test about it.
+     * 
+     * @param profile
+     *            the counters to update, null to stop counting
+     * @throws IllegalStateException
+     *             if profiling is not compiled in
+     */
+    public void setProfile(MOS6502Profile profile)
+    {
+        if (!PROFILING && profile != null)
+        {
+            throw new IllegalStateException("Profiling disabled, see the jems.profiling system property");
+        }
+        this.profile = profile;
+    }
+
+    public MOS6502Profile getProfile()
+    {
+        return profile;
+    }
+
+    /**
+     * Follow the calls and take the samples asked by a guest profiler from
+     * the next step. Like the counters, this is compiled in only when the
+     * jems.profiling system property is true. The shadow call stack of the
+     * profiler starts empty: a CPU already in a routine returns from it
+     * unseen.
+     * 
+     * @param sampler
+     *            the guest profiler, null to stop sampling
+     * @throws IllegalStateException
+     *             if profiling is not compiled in
+     */
+    public void setSampler(GuestProfiler sampler)
+    {
+        if (!PROFILING && sampler != null)
+        {
+            throw new IllegalStateException("Profiling disabled, see the jems.profiling system property");
+        }
+        this.sampler = sampler;
+    }
+
+    public GuestProfiler getSampler()
+    {
+        return sampler;
+    }
+
+    /*
+     * (non-Javadoc) Record the state before the next action, uncommitted.
+     */
+    private void trace()
+    {
+        int offset = tracer.claim();
+        traceBuffer.putLong(offset, traceHead());
+        traceBuffer.putLong(offset + 8, traceState());
+    }
+
+    /*
+     * (non-Javadoc) The first 8 bytes of the trace record of the next action:
+     * cycles and pc.
+     */
+    long traceHead()
+    {
+        return (cycles & TRACE_CYCLES_MASK) | (long) pc << 48;
+    }
+
+    /*
+     * (non-Javadoc) The last 8 bytes of the trace record of the next action:
+     * the instruction bytes and the registers. Only the bytes the instruction
+     * fetches are read, the others are 0: a read may have side effects on a
+     * device.
+     */
+    long traceState()
+    {
+        long state = read(pc);
+        int length = Instruction.LENGTHS[MOS6502Instructions.TABLE[(int) state].mode];
+        if (length > 1)
+        {
+            state |= read((pc + 1) & SHORT_MASK) << 8;
+        }
+        if (length > 2)
+        {
+            state |= read((pc + 2) & SHORT_MASK) << 16;
+        }
+        return state | (long) a << 24 | (long) x << 32 | (long) y << 40 | (long) sp << 48
+            | (long) (getSr() & BYTE_MASK) << 56;
+    }
+
+    /**
+     * Drop the instructions decoded by the predecoded engine. To be called when
+     * the code was modified without going through the CPU.
+     */
+    public void invalidateDecodeCache()
+    {
+        if (cache != null)
+        {
+            cache.clear();
+        }
+    }
+
+    /**
+     * @return the number of instructions run from the decode cache
+     */
+    public long getDecodeCacheHits()
+    {
+        return cache != null ? cache.hits : 0;
+    }
+
+    /**
+     * @return the number of instructions decoded into the cache
+     */
+    public long getDecodeCacheMisses()
+    {
+        return cache != null ? cache.misses : 0;
+    }
+
+    /**
+     * @return the number of cached instructions dropped by writes in their code
+     */
+    public long getDecodeCacheInvalidations()
+    {
+        return cache != null ? cache.invalidations : 0;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.nucco.jems.api.state.Stateful#getStateSize()
+     */
+    @Override
+    public int getStateSize()
+    {
+        return STATE_SIZE;
+    }
+
+    /*
+     * (non-Javadoc) The status register is saved whole, with its N and Z flags
+     * computed, then the pending interrupts and the level of the NMI line.
+     * 
+     * @see org.nucco.jems.api.state.Stateful#saveState(java.nio.ByteBuffer)
+     */
+    @Override
+    public void saveState(ByteBuffer buffer)
+    {
+        buffer.putLong(cycles);
+        buffer.putShort((short) pc);
+        buffer.put((byte) a);
+        buffer.put((byte) x);
+        buffer.put((byte) y);
+        buffer.put((byte) sp);
+        buffer.put((byte) getSr());
+        buffer.put((byte) (pending | (nmi ? NMI_LINE : 0)));
+    }
+
+    /*
+     * (non-Javadoc) Drop the decoded instructions, which may not match the
+     * restored memory.
+     * 
+     * @see org.nucco.jems.api.state.Stateful#loadState(java.nio.ByteBuffer)
+     */
+    @Override
+    public void loadState(ByteBuffer buffer)
+    {
+        cycles = buffer.getLong();
+        pc = buffer.getShort() & SHORT_MASK;
+        a = (short) (buffer.get() & BYTE_MASK);
+        x = (short) (buffer.get() & BYTE_MASK);
+        y = (short) (buffer.get() & BYTE_MASK);
+        sp = (short) (buffer.get() & BYTE_MASK);
+        short status = (short) (buffer.get() & BYTE_MASK);
+        int interrupts = buffer.get();
+        pending = interrupts & (IRQ_PENDING | NMI_PENDING);
+        nmi = (interrupts & NMI_LINE) != 0;
+        setStatus(status);
+        invalidateDecodeCache();
+    }
+
+    /**
+     * Create a CPU in the same state on another memory, running with the same
+     * engine. Along with a {@link org.nucco.jems.impl.memory.CopyOnWriteMemory}
+     * fork, it clones a machine in the cost of the pages it writes afterwards.
+     * 
+     * @param memory
+     *            the memory of the clone, holding the same contents as this
+     *            one
+     * @return the clone
+     */
+    public MOS6502 fork(Memory memory)
+    {
+        MOS6502 clone = new MOS6502(memory);
+        clone.cycles = cycles;
+        clone.a = a;
+        clone.x = x;
+        clone.y = y;
+        clone.sp = sp;
+        clone.sr = sr;
+        clone.zResult = zResult;
+        clone.nResult = nResult;
+        clone.pc = pc;
+        clone.pending = pending;
+        clone.nmi = nmi;
+        clone.setEngine(engine);
+        return clone;
+    }
+
+    /*
+     * (non-Javadoc) Execute the instruction corresponding to the opcode value
+     * through the handler table.
+     * 
+     * @param opcode the instruction to execute
+     */
+    private void execute(short opcode)
+    {
+        Instruction instruction = instructions[opcode];
+        cycles += CYCLES[opcode];
+        instruction.execute(this, resolve(instruction, fetchOperand(instruction.mode)));
+    }
+
+    /*
+     * (non-Javadoc) Execute the instruction at pc from the decode cache,
+     * decoding it first on a miss.
+     */
+    private void executeDecoded()
+    {
+        int address = pc;
+        short opcode = cache.opcodes[address];
+        if (opcode == DecodeCache.EMPTY)
+        {
+            opcode = decode(address);
+        }
+        else
+        {
+            cache.hits++;
+        }
+
+        Instruction instruction = instructions[opcode];
+        pc = (address + cache.lengths[address]) & SHORT_MASK;
+        cycles += cache.cycles[address];
+        instruction.execute(this, resolve(instruction, cache.operands[address]));
+    }
+
+    /*
+     * (non-Javadoc) Decode the instruction at an address into the cache.
+     * 
+     * @param address the address of the opcode
+     * 
+     * @return the opcode
+     */
+    private short decode(int address)
+    {
+        short opcode = read(address);
+        Instruction instruction = instructions[opcode];
+        int length = Instruction.LENGTHS[instruction.mode];
+        int operand = 0;
+        if (length == 2)
+        {
+            operand = read((address + 1) & SHORT_MASK);
+        }
+        else if (length == 3)
+        {
+            operand = readShort((address + 1) & SHORT_MASK);
+        }
+        cache.put(address, opcode, operand, length, CYCLES[opcode]);
+
+        return opcode;
+    }
+
+    /*
+     * (non-Javadoc) Fetch the raw operand of an instruction: nothing, a byte or
+     * a word depending on its addressing mode.
+     * 
+     * @param mode the addressing mode
+     * 
+     * @return the raw operand
+     */
+    private int fetchOperand(byte mode)
+    {
+        switch (Instruction.LENGTHS[mode])
+        {
+            case 1:
+                return 0;
+            case 2:
+                return fetch();
+            default:
+                return fetchShort();
+        }
+    }
+
+    /*
+     * (non-Javadoc) Resolve the raw operand of an instruction according to its
+     * addressing mode.
+     * 
+     * @param instruction the instruction being executed
+     * 
+     * @param operand the raw operand
+     * 
+     * @return the value of the operand for reading instructions, its effective
+     * address for the others
+     */
+    private int resolve(Instruction instruction, int operand)
+    {
+        int address;
+        switch (instruction.mode)
+        {
+            case Instruction.IMPLIED:
+            case Instruction.ACCUMULATOR:
+                return 0;
+            case Instruction.IMMEDIATE:
+            case Instruction.RELATIVE:
+                return operand;
+            case Instruction.ZERO_PAGE:
+            case Instruction.ABSOLUTE:
+                address = operand;
+                break;
+            case Instruction.ZERO_PAGE_X:
+                address = (operand + x) & BYTE_MASK;
+                break;
+            case Instruction.ZERO_PAGE_Y:
+                address = (operand + y) & BYTE_MASK;
+                break;
+            case Instruction.ABSOLUTE_X:
+                address = indexed(operand, x, instruction.reads);
+                break;
+            case Instruction.ABSOLUTE_Y:
+                address = indexed(operand, y, instruction.reads);
+                break;
+            case Instruction.INDIRECT:
+                address = readShortPageWrap(operand);
+                break;
+            case Instruction.INDIRECT_X:
+                address = readShortZeroPage((operand + x) & BYTE_MASK);
+                break;
+            default:
+                address = indexed(readShortZeroPage(operand), y, instruction.reads);
+                break;
+        }
+
+        return instruction.reads ? read(address) : address;
     }
 
     /**
@@ -110,47 +787,45 @@ public class MOS6502 extends AbstractCPU
         int address = 0;
         short value = 0;
 
+        cycles += CYCLES[opcode];
         switch (opcode)
         {
             case BRK:
-                pushShort(pc);
-                push((short) (sr | B_FLAG));
-                sr = (short) (sr | I_FLAG);
-                pc = readShort(BREAK_ADDRRESS);
+                brk();
                 break;
             case ORA_IZX:
-                a |= memory.readByte(indx());
+                a |= read(indx());
                 setNZ(a);
                 break;
             case ORA_ZP:
-                a |= memory.readByte(fetch());
+                a |= read(fetch());
                 setNZ(a);
                 break;
             case PHP:
-                push(sr);
+                push((short) (getSr() | B_FLAG | UNUSED_FLAG));
                 break;
             case ORA_IMM:
                 a |= fetch();
                 setNZ(a);
                 break;
             case ORA_ABS:
-                a |= memory.readByte(fetchShort());
+                a |= read(fetchShort());
                 setNZ(a);
                 break;
             case ORA_IZY:
-                a |= memory.readByte(indyrd());
+                a |= read(indyrd());
                 setNZ(a);
                 break;
             case ORA_ZPX:
-                a |= memory.readByte(fetch() + x) & BYTE_MASK;
+                a |= read((fetch() + x) & BYTE_MASK);
                 setNZ(a);
                 break;
             case ORA_ABY:
-                a |= memory.readByte(absrd(y));
+                a |= read(absrd(y));
                 setNZ(a);
                 break;
             case ORA_ABX:
-                a |= memory.readByte(absrd(x));
+                a |= read(absrd(x));
                 setNZ(a);
                 break;
             case JSR:
@@ -159,52 +834,52 @@ public class MOS6502 extends AbstractCPU
                 pc = address;
                 break;
             case AND_IZX:
-                a &= memory.readByte(indx());
+                a &= read(indx());
                 setNZ(a);
                 break;
             case BIT_ZP:
-                bit(fetch());
+                bit(read(fetch()));
                 break;
             case AND_ZP:
-                a &= memory.readByte(fetch());
+                a &= read(fetch());
                 setNZ(a);
                 break;
             case PLP:
-                sr = pop();
+                setStatus(pop());
                 break;
             case AND_IMM:
                 a &= fetch();
                 setNZ(a);
                 break;
             case BIT_ABS:
-                bit(fetchShort());
+                bit(read(fetchShort()));
                 break;
             case AND_ABS:
-                a &= memory.readByte(fetchShort());
+                a &= read(fetchShort());
                 setNZ(a);
                 break;
             case AND_IZY:
-                a &= memory.readByte(indyrd());
+                a &= read(indyrd());
                 setNZ(a);
                 break;
             case AND_ZPX:
-                a &= memory.readByte((fetch() + x) & BYTE_MASK);
+                a &= read((fetch() + x) & BYTE_MASK);
                 setNZ(a);
                 break;
             case AND_ABY:
-                a &= memory.readByte(absrd(y));
+                a &= read(absrd(y));
                 setNZ(a);
                 break;
             case AND_ABX:
-                a &= memory.readByte(absrd(x));
+                a &= read(absrd(x));
                 setNZ(a);
                 break;
             case EOR_IZX:
-                a ^= memory.readByte(indx());
+                a ^= read(indx());
                 setNZ(a);
                 break;
             case EOR_ZP:
-                a ^= memory.readByte(fetch());
+                a ^= read(fetch());
                 setNZ(a);
                 break;
             case PHA:
@@ -218,23 +893,23 @@ public class MOS6502 extends AbstractCPU
                 pc = fetchShort();
                 break;
             case EOR_ABS:
-                a ^= memory.readByte(fetchShort());
+                a ^= read(fetchShort());
                 setNZ(a);
                 break;
             case EOR_IZY:
-                a ^= memory.readByte(indyrd());
+                a ^= read(indyrd());
                 setNZ(a);
                 break;
             case EOR_ZPX:
-                a ^= memory.readByte((fetch() + x) & BYTE_MASK);
+                a ^= read((fetch() + x) & BYTE_MASK);
                 setNZ(a);
                 break;
             case EOR_ABY:
-                a ^= memory.readByte(absrd(y));
+                a ^= read(absrd(y));
                 setNZ(a);
                 break;
             case EOR_ABX:
-                a ^= memory.readByte(absrd(x));
+                a ^= read(absrd(x));
                 setNZ(a);
                 break;
             case RTS:
@@ -245,20 +920,19 @@ public class MOS6502 extends AbstractCPU
                 setNZ(a);
                 break;
             case JMP_IND:
-                address = fetchShort();
-                pc = memory.readByte(address) | memory.readByte((address + 1) & SHORT_MASK) << SHIFT_8BITS;
+                pc = readShortPageWrap(fetchShort());
                 break;
             case STA_IZX:
-                memory.writeByte(indx(), a);
+                write(indx(), a);
                 break;
             case STY_ZP:
-                memory.writeByte(fetch(), y);
+                write(fetch(), y);
                 break;
             case STA_ZP:
-                memory.writeByte(fetch(), a);
+                write(fetch(), a);
                 break;
             case STX_ZP:
-                memory.writeByte(fetch(), x);
+                write(fetch(), x);
                 break;
             case DEY:
                 y = (short) ((y - 1) & BYTE_MASK);
@@ -269,45 +943,45 @@ public class MOS6502 extends AbstractCPU
                 setNZ(a);
                 break;
             case STY_ABS:
-                memory.writeByte(fetchShort(), y);
+                write(fetchShort(), y);
                 break;
             case STA_ABS:
-                memory.writeByte(fetchShort(), a);
+                write(fetchShort(), a);
                 break;
             case STX_ABS:
-                memory.writeByte(fetchShort(), x);
+                write(fetchShort(), x);
                 break;
             case STA_IZY:
-                memory.writeByte(indywr(), a);
+                write(indywr(), a);
                 break;
             case STY_ZPX:
-                memory.writeByte((fetch() + x) & BYTE_MASK, y);
+                write((fetch() + x) & BYTE_MASK, y);
                 break;
             case STA_ZPX:
-                memory.writeByte((fetch() + x) & BYTE_MASK, a);
+                write((fetch() + x) & BYTE_MASK, a);
                 break;
             case STX_ZPY:
-                memory.writeByte((fetch() + y) & BYTE_MASK, x);
+                write((fetch() + y) & BYTE_MASK, x);
                 break;
             case TYA:
                 a = y;
                 setNZ(a);
                 break;
             case STA_ABY:
-                memory.writeByte((fetchShort() + y) & SHORT_MASK, a);
+                write((fetchShort() + y) & SHORT_MASK, a);
                 break;
             case TXS:
                 sp = x;
                 break;
             case STA_ABX:
-                memory.writeByte((fetchShort() + x) & SHORT_MASK, a);
+                write((fetchShort() + x) & SHORT_MASK, a);
                 break;
             case LDY_IMM:
                 y = fetch();
                 setNZ(y);
                 break;
             case LDA_IZX:
-                a = memory.readByte(indx());
+                a = read(indx());
                 setNZ(a);
                 break;
             case LDX_IMM:
@@ -315,15 +989,15 @@ public class MOS6502 extends AbstractCPU
                 setNZ(x);
                 break;
             case LDY_ZP:
-                y = memory.readByte(fetch());
+                y = read(fetch());
                 setNZ(y);
                 break;
             case LDA_ZP:
-                a = memory.readByte(fetch());
+                a = read(fetch());
                 setNZ(a);
                 break;
             case LDX_ZP:
-                x = memory.readByte(fetch());
+                x = read(fetch());
                 setNZ(x);
                 break;
             case TAY:
@@ -339,133 +1013,459 @@ public class MOS6502 extends AbstractCPU
                 setNZ(x);
                 break;
             case LDY_ABS:
-                y = memory.readByte(fetchShort());
+                y = read(fetchShort());
                 setNZ(y);
                 break;
             case LDA_ABS:
-                a = memory.readByte(fetchShort());
+                a = read(fetchShort());
                 setNZ(a);
                 break;
             case LDX_ABS:
-                x = memory.readByte(fetchShort());
+                x = read(fetchShort());
+                setNZ(x);
+                break;
+            case LDA_IZY:
+                a = read(indyrd());
+                setNZ(a);
+                break;
+            case LDA_ABY:
+                a = read(absrd(y));
+                setNZ(a);
+                break;
+            case TSX:
+                x = sp;
+                setNZ(x);
+                break;
+            case LDY_ABX:
+                y = read(absrd(x));
+                setNZ(y);
+                break;
+            case LDA_ABX:
+                a = read(absrd(x));
+                setNZ(a);
+                break;
+            case LDX_ABY:
+                x = read(absrd(y));
+                setNZ(x);
+                break;
+            case LDY_ZPX:
+                y = read((fetch() + x) & BYTE_MASK);
+                setNZ(y);
+                break;
+            case LDA_ZPX:
+                a = read((fetch() + x) & BYTE_MASK);
+                setNZ(a);
+                break;
+            case LDX_ZPY:
+                x = read((fetch() + y) & BYTE_MASK);
+                setNZ(x);
+                break;
+            case DEC_ZP:
+                address = fetch();
+                value = (short) ((read(address) - 1) & BYTE_MASK);
+                write(address, value);
+                setNZ(value);
+                break;
+            case INY:
+                y = (short) ((y + 1) & BYTE_MASK);
+                setNZ(y);
+                break;
+            case DEX:
+                x = (short) ((x - 1) & BYTE_MASK);
+                setNZ(x);
+                break;
+            case DEC_ABS:
+                address = fetchShort();
+                value = (short) ((read(address) - 1) & BYTE_MASK);
+                write(address, value);
+                setNZ(value);
+                break;
+            case DEC_ZPX:
+                address = (fetch() + x) & BYTE_MASK;
+                value = (short) ((read(address) - 1) & BYTE_MASK);
+                write(address, value);
+                setNZ(value);
+                break;
+            case DEC_ABX:
+                address = (fetchShort() + x) & SHORT_MASK;
+                value = (short) ((read(address) - 1) & BYTE_MASK);
+                write(address, value);
+                setNZ(value);
+                break;
+            case INC_ZP:
+                address = fetch();
+                value = (short) ((read(address) + 1) & BYTE_MASK);
+                write(address, value);
+                setNZ(value);
+                break;
+            case INX:
+                x = (short) ((x + 1) & BYTE_MASK);
                 setNZ(x);
                 break;
-            case LDA_IZY:
-                a = memory.readByte(indyrd());
-                setNZ(a);
+            case NOP:
+                break;
+            case INC_ABS:
+                address = fetchShort();
+                value = (short) ((read(address) + 1) & BYTE_MASK);
+                write(address, value);
+                setNZ(value);
+                break;
+            case INC_ZPX:
+                address = (fetch() + x) & BYTE_MASK;
+                value = (short) ((read(address) + 1) & BYTE_MASK);
+                write(address, value);
+                setNZ(value);
+                break;
+            case INC_ABX:
+                address = (fetchShort() + x) & SHORT_MASK;
+                value = (short) ((read(address) + 1) & BYTE_MASK);
+                write(address, value);
+                setNZ(value);
+                break;
+            case ADC_IMM:
+                adc(fetch());
+                break;
+            case ADC_ZP:
+                adc(read(fetch()));
+                break;
+            case ADC_ZPX:
+                adc(read((fetch() + x) & BYTE_MASK));
+                break;
+            case ADC_ABS:
+                adc(read(fetchShort()));
+                break;
+            case ADC_ABX:
+                adc(read(absrd(x)));
+                break;
+            case ADC_ABY:
+                adc(read(absrd(y)));
+                break;
+            case ADC_IZX:
+                adc(read(indx()));
+                break;
+            case ADC_IZY:
+                adc(read(indyrd()));
+                break;
+            case SBC_IMM:
+                sbc(fetch());
+                break;
+            case SBC_ZP:
+                sbc(read(fetch()));
+                break;
+            case SBC_ZPX:
+                sbc(read((fetch() + x) & BYTE_MASK));
+                break;
+            case SBC_ABS:
+                sbc(read(fetchShort()));
+                break;
+            case SBC_ABX:
+                sbc(read(absrd(x)));
+                break;
+            case SBC_ABY:
+                sbc(read(absrd(y)));
+                break;
+            case SBC_IZX:
+                sbc(read(indx()));
+                break;
+            case SBC_IZY:
+                sbc(read(indyrd()));
+                break;
+            case CMP_IMM:
+                compare(a, fetch());
+                break;
+            case CMP_ZP:
+                compare(a, read(fetch()));
+                break;
+            case CMP_ZPX:
+                compare(a, read((fetch() + x) & BYTE_MASK));
+                break;
+            case CMP_ABS:
+                compare(a, read(fetchShort()));
+                break;
+            case CMP_ABX:
+                compare(a, read(absrd(x)));
+                break;
+            case CMP_ABY:
+                compare(a, read(absrd(y)));
+                break;
+            case CMP_IZX:
+                compare(a, read(indx()));
+                break;
+            case CMP_IZY:
+                compare(a, read(indyrd()));
+                break;
+            case CPX_IMM:
+                compare(x, fetch());
+                break;
+            case CPX_ZP:
+                compare(x, read(fetch()));
+                break;
+            case CPX_ABS:
+                compare(x, read(fetchShort()));
+                break;
+            case CPY_IMM:
+                compare(y, fetch());
+                break;
+            case CPY_ZP:
+                compare(y, read(fetch()));
+                break;
+            case CPY_ABS:
+                compare(y, read(fetchShort()));
+                break;
+            case ASL_ZP:
+                address = fetch();
+                write(address, shift(MOS6502Tables.ASL, read(address)));
+                break;
+            case ASL_ZPX:
+                address = (fetch() + x) & BYTE_MASK;
+                write(address, shift(MOS6502Tables.ASL, read(address)));
+                break;
+            case ASL_ABS:
+                address = fetchShort();
+                write(address, shift(MOS6502Tables.ASL, read(address)));
+                break;
+            case ASL_ABX:
+                address = (fetchShort() + x) & SHORT_MASK;
+                write(address, shift(MOS6502Tables.ASL, read(address)));
+                break;
+            case ASL_ACC:
+                a = shift(MOS6502Tables.ASL, a);
+                break;
+            case LSR_ZP:
+                address = fetch();
+                write(address, shift(MOS6502Tables.LSR, read(address)));
+                break;
+            case LSR_ZPX:
+                address = (fetch() + x) & BYTE_MASK;
+                write(address, shift(MOS6502Tables.LSR, read(address)));
+                break;
+            case LSR_ABS:
+                address = fetchShort();
+                write(address, shift(MOS6502Tables.LSR, read(address)));
+                break;
+            case LSR_ABX:
+                address = (fetchShort() + x) & SHORT_MASK;
+                write(address, shift(MOS6502Tables.LSR, read(address)));
+                break;
+            case LSR_ACC:
+                a = shift(MOS6502Tables.LSR, a);
+                break;
+            case ROL_ZP:
+                address = fetch();
+                write(address, shift(MOS6502Tables.ROL, read(address)));
+                break;
+            case ROL_ZPX:
+                address = (fetch() + x) & BYTE_MASK;
+                write(address, shift(MOS6502Tables.ROL, read(address)));
+                break;
+            case ROL_ABS:
+                address = fetchShort();
+                write(address, shift(MOS6502Tables.ROL, read(address)));
+                break;
+            case ROL_ABX:
+                address = (fetchShort() + x) & SHORT_MASK;
+                write(address, shift(MOS6502Tables.ROL, read(address)));
+                break;
+            case ROL_ACC:
+                a = shift(MOS6502Tables.ROL, a);
                 break;
-            case LDA_ABY:
-                a = memory.readByte(absrd(y));
-                setNZ(a);
+            case ROR_ZP:
+                address = fetch();
+                write(address, shift(MOS6502Tables.ROR, read(address)));
                 break;
-            case TSX:
-                x = sp;
-                setNZ(x);
+            case ROR_ZPX:
+                address = (fetch() + x) & BYTE_MASK;
+                write(address, shift(MOS6502Tables.ROR, read(address)));
                 break;
-            case LDY_ABX:
-                y = memory.readByte(absrd(x));
-                setNZ(y);
+            case ROR_ABS:
+                address = fetchShort();
+                write(address, shift(MOS6502Tables.ROR, read(address)));
                 break;
-            case LDA_ABX:
-                a = memory.readByte(absrd(x));
-                setNZ(a);
+            case ROR_ABX:
+                address = (fetchShort() + x) & SHORT_MASK;
+                write(address, shift(MOS6502Tables.ROR, read(address)));
                 break;
-            case LDX_ABY:
-                x = memory.readByte(absrd(y));
-                setNZ(x);
+            case ROR_ACC:
+                a = shift(MOS6502Tables.ROR, a);
                 break;
-            case LDY_ZPX:
-                y = memory.readByte((fetch() + x) & BYTE_MASK);
-                setNZ(y);
+            case BCC:
+                branch((sr & C_FLAG) == 0, fetch());
                 break;
-            case LDA_ZPX:
-                a = memory.readByte((fetch() + x) & BYTE_MASK);
-                setNZ(a);
+            case BCS:
+                branch((sr & C_FLAG) != 0, fetch());
                 break;
-            case LDX_ZPY:
-                x = memory.readByte((fetch() + y) & BYTE_MASK);
-                setNZ(x);
+            case BEQ:
+                branch(zResult == 0, fetch());
                 break;
-            case DEC_ZP:
-                address = fetch();
-                value = (short) ((memory.readByte(address) - 1) & BYTE_MASK);
-                memory.writeByte(address, value);
-                setNZ(value);
+            case BMI:
+                branch((nResult & N_FLAG) != 0, fetch());
                 break;
-            case INY:
-                y = (short) ((y + 1) & BYTE_MASK);
-                setNZ(y);
+            case BNE:
+                branch(zResult != 0, fetch());
                 break;
-            case DEX:
-                x = (short) ((x - 1) & BYTE_MASK);
-                setNZ(x);
+            case BPL:
+                branch((nResult & N_FLAG) == 0, fetch());
                 break;
-            case DEC_ABS:
-                address = fetchShort();
-                value = (short) ((memory.readByte(address) - 1) & BYTE_MASK);
-                memory.writeByte(address, value);
-                setNZ(value);
+            case BVC:
+                branch((sr & V_FLAG) == 0, fetch());
                 break;
-            case DEC_ZPX:
-                address = (fetch() + x) & BYTE_MASK;
-                value = (short) ((memory.readByte(address) - 1) & BYTE_MASK);
-                memory.writeByte(address, value);
-                setNZ(value);
+            case BVS:
+                branch((sr & V_FLAG) != 0, fetch());
                 break;
-            case DEC_ABX:
-                address = (fetchShort() + x) & SHORT_MASK;
-                value = (short) ((memory.readByte(address) - 1) & BYTE_MASK);
-                memory.writeByte(address, value);
-                setNZ(value);
+            case CLC:
+                sr &= ~C_FLAG;
                 break;
-            case INC_ZP:
-                address = fetch();
-                value = (short) ((memory.readByte(address) + 1) & BYTE_MASK);
-                memory.writeByte(address, value);
-                setNZ(value);
+            case CLD:
+                sr &= ~D_FLAG;
                 break;
-            case INX:
-                x = (short) ((x + 1) & BYTE_MASK);
-                setNZ(x);
+            case CLI:
+                sr &= ~I_FLAG;
+                unmasked();
                 break;
-            case NOP:
+            case CLV:
+                sr &= ~V_FLAG;
                 break;
-            case INC_ABS:
-                address = fetchShort();
-                value = (short) ((memory.readByte(address) + 1) & BYTE_MASK);
-                memory.writeByte(address, value);
-                setNZ(value);
+            case SEC:
+                sr |= C_FLAG;
                 break;
-            case INC_ZPX:
-                address = (fetch() + x) & BYTE_MASK;
-                value = (short) ((memory.readByte(address) + 1) & BYTE_MASK);
-                memory.writeByte(address, value);
-                setNZ(value);
+            case SED:
+                sr |= D_FLAG;
                 break;
-            case INC_ABX:
-                address = (fetchShort() + x) & SHORT_MASK;
-                value = (short) ((memory.readByte(address) + 1) & BYTE_MASK);
-                memory.writeByte(address, value);
-                setNZ(value);
+            case SEI:
+                sr |= I_FLAG;
+                break;
+            case RTI:
+                rti();
                 break;
 
             default:
-                illegal(opcode, pc, cpuName);
+                illegal(opcode);
                 break;
         }
     }
 
+    /*
+     * (non-Javadoc) Push the return address, skipping the padding byte after
+     * the opcode, and the status register with the break flag, then jump to
+     * the address of the break vector.
+     */
+    void brk()
+    {
+        pushShort((pc + 1) & SHORT_MASK);
+        push((short) (getSr() | B_FLAG | UNUSED_FLAG));
+        sr = (short) (sr | I_FLAG);
+        pc = readShort(BREAK_ADDRRESS);
+    }
+
+    /*
+     * (non-Javadoc) Pull the status register and the return address of an
+     * interrupt.
+     */
+    void rti()
+    {
+        setStatus(pop());
+        pc = popShort();
+    }
+
+    /*
+     * (non-Javadoc) Add the offset of a relative branch to pc if the condition
+     * holds, with one more cycle, and another one if the target is in another
+     * page.
+     * 
+     * @param condition the branch condition
+     * 
+     * @param offset the signed offset, as read after the opcode
+     */
+    void branch(boolean condition, int offset)
+    {
+        if (condition)
+        {
+            int target = (pc + (byte) offset) & SHORT_MASK;
+            cycles += (target & PAGE_CROSS_TEST) != (pc & PAGE_CROSS_TEST) ? 2 : 1;
+            pc = target;
+        }
+    }
+
+    /*
+     * (non-Javadoc) Add a value and the carry to the accumulator, in binary or
+     * decimal mode.
+     * 
+     * @param value the value to add
+     */
+    void adc(short value)
+    {
+        int result = MOS6502Tables.ADC[aluIndex(value)];
+        a = (short) (result & BYTE_MASK);
+        setCVNZ(result >> SHIFT_8BITS);
+    }
+
+    /*
+     * (non-Javadoc) Subtract a value and the borrow from the accumulator, in
+     * binary or decimal mode.
+     * 
+     * @param value the value to subtract
+     */
+    void sbc(short value)
+    {
+        int result = MOS6502Tables.SBC[aluIndex(value)];
+        a = (short) (result & BYTE_MASK);
+        setCVNZ(result >> SHIFT_8BITS);
+    }
+
+    private int aluIndex(short value)
+    {
+        return (sr & C_FLAG) << 16 | (sr & D_FLAG) << 14 | a << SHIFT_8BITS | value;
+    }
+
+    /*
+     * (non-Javadoc) Compare a register with a value.
+     * 
+     * @param register the value of the register
+     * 
+     * @param value the value to compare with
+     */
+    void compare(short register, short value)
+    {
+        setCNZ(MOS6502Tables.COMPARE[register << SHIFT_8BITS | value]);
+    }
+
+    /*
+     * (non-Javadoc) Shift or rotate a value through the carry.
+     * 
+     * @param table the table of the operation
+     * 
+     * @param value the value to shift
+     * 
+     * @return the shifted value
+     */
+    short shift(short[] table, short value)
+    {
+        int result = table[(sr & C_FLAG) << SHIFT_8BITS | value];
+        setCNZ(result >> SHIFT_8BITS);
+        return (short) (result & BYTE_MASK);
+    }
+
+    /*
+     * (non-Javadoc) Report an illegal opcode. It consumes cycles anyway so that
+     * run() always moves forward.
+     * 
+     * @param opcode the illegal opcode
+     */
+    void illegal(short opcode)
+    {
+        cycles += ILLEGAL_CYCLES;
+        illegal(opcode, pc, cpuName);
+    }
+
     /*
      * (non-Javadoc) Read byte in memory at the address indicate by the pc
      * register and increment pc by 1.
      * 
      * @return the byte at the pc address in memory
      */
-    private short fetch()
+    short fetch()
     {
-//        LOG.debug(this.toString());
-
-        short result = memory.readByte(pc);
+        short result = read(pc);
         pc = (pc + 1) & SHORT_MASK;
         return result;
     }
@@ -476,9 +1476,11 @@ public class MOS6502 extends AbstractCPU
      * 
      * @return the bytes at the pc and pc + 1 address in memory
      */
-    private int fetchShort()
+    int fetchShort()
     {
-        return fetch() | fetch() << SHIFT_8BITS;
+        int result = readShort(pc);
+        pc = (pc + 2) & SHORT_MASK;
+        return result;
     }
 
     /*
@@ -487,9 +1489,9 @@ public class MOS6502 extends AbstractCPU
      * 
      * @param value the 8bits value to push on the stack
      */
-    private void push(short value)
+    void push(short value)
     {
-        memory.writeByte(STACK_ADDRESS + sp, value);
+        write(STACK_ADDRESS + sp, value);
         sp = (short) ((sp - 1) & BYTE_MASK);
     }
 
@@ -499,7 +1501,7 @@ public class MOS6502 extends AbstractCPU
      * 
      * @param value the 16bits value to push on the stack
      */
-    private void pushShort(int value)
+    void pushShort(int value)
     {
         push((short) (value >> SHIFT_8BITS));
         push((short) value);
@@ -509,31 +1511,73 @@ public class MOS6502 extends AbstractCPU
      * (non-Javadoc) Pop a 8bits value from the stack and increment one the
      * stack register.
      */
-    private short pop()
+    short pop()
     {
-        short value = memory.readByte(STACK_ADDRESS + sp);
         sp = (short) ((sp + 1) & BYTE_MASK);
-        return value;
+        return read(STACK_ADDRESS + sp);
     }
 
     /*
      * (non-Javadoc) Pop a 16bits value from the stack and increment twice the
      * stack register.
      */
-    private int popShort()
+    int popShort()
     {
-        return pop() | pop() << SHIFT_8BITS;
+        int value = readShortPageWrap(STACK_ADDRESS + ((sp + 1) & BYTE_MASK));
+        sp = (short) ((sp + 2) & BYTE_MASK);
+        return value;
     }
 
     /*
      * (non-Javadoc) Set the negative or the zero flag if value is respectively
-     * negative or zero value.
+     * negative or zero value. The flags are only computed when the status
+     * register is read, most results being overwritten before.
      * 
      * @param value the test value
      */
-    private void setNZ(short value)
+    void setNZ(short value)
+    {
+        zResult = value;
+        nResult = value;
+    }
+
+    /*
+     * (non-Javadoc) Replace the whole status register, setting the results the
+     * N and Z flags are computed from.
+     * 
+     * @param value the new status register
+     */
+    void setStatus(short value)
+    {
+        sr = value;
+        zResult = (value & Z_FLAG) == 0 ? 1 : 0;
+        nResult = value & N_FLAG;
+        unmasked();
+    }
+
+    /*
+     * (non-Javadoc) Set the C, Z and N flags from an entry of the ALU tables.
+     * 
+     * @param flags the flags, at their place in the status register
+     */
+    void setCNZ(int flags)
+    {
+        sr = (short) ((sr & ~C_FLAG) | (flags & C_FLAG));
+        zResult = ~flags & Z_FLAG;
+        nResult = flags;
+    }
+
+    /*
+     * (non-Javadoc) Set the C, V, Z and N flags from an entry of the ALU
+     * tables.
+     * 
+     * @param flags the flags, at their place in the status register
+     */
+    void setCVNZ(int flags)
     {
-        sr = (short) ((sr & ~(Z_FLAG | N_FLAG)) | ZNTABLE[value]);
+        sr = (short) ((sr & ~(C_FLAG | V_FLAG)) | (flags & (C_FLAG | V_FLAG)));
+        zResult = ~flags & Z_FLAG;
+        nResult = flags;
     }
 
     /*
@@ -546,11 +1590,27 @@ public class MOS6502 extends AbstractCPU
      */
     private int absrd(short offset)
     {
-        int address = fetchShort();
-        int result = (address + offset) & SHORT_MASK;
-        if ((address & PAGE_CROSS_TEST) != (result & PAGE_CROSS_TEST))
+        return indexed(fetchShort(), offset, true);
+    }
+
+    /*
+     * (non-Javadoc) Add an index to a base address. Add one cycle if page
+     * cross and the instruction reads.
+     * 
+     * @param base the base address
+     * 
+     * @param index the value to add at the address
+     * 
+     * @param reads whether the page cross costs a cycle
+     * 
+     * @return an address
+     */
+    private int indexed(int base, short index, boolean reads)
+    {
+        int result = (base + index) & SHORT_MASK;
+        if (reads && (base & PAGE_CROSS_TEST) != (result & PAGE_CROSS_TEST))
         {
-            // TODO: add one cycle
+            cycles++;
         }
 
         return result;
@@ -564,8 +1624,7 @@ public class MOS6502 extends AbstractCPU
      */
     private int indx()
     {
-        short zp = (short) ((fetch() + x) & BYTE_MASK);
-        return memory.readByte(zp) | (memory.readByte(zp + 1) & BYTE_MASK) << SHIFT_8BITS;
+        return readShortZeroPage((fetch() + x) & BYTE_MASK);
     }
 
     /*
@@ -576,16 +1635,7 @@ public class MOS6502 extends AbstractCPU
      */
     private int indyrd()
     {
-        int zp = fetch();
-        int address = memory.readByte(zp) | memory.readByte((zp + 1) & BYTE_MASK) << SHIFT_8BITS;
-        zp = address & PAGE_CROSS_TEST;
-        address = (address + y) & SHORT_MASK;
-        if ((address & PAGE_CROSS_TEST) != zp)
-        {
-            // TODO: add one cycle
-        }
-
-        return address;
+        return indexed(readShortZeroPage(fetch()), y, true);
     }
 
     /*
@@ -596,26 +1646,160 @@ public class MOS6502 extends AbstractCPU
      */
     private int indywr()
     {
-        int zp = fetch();
-        int address = memory.readByte(zp) | memory.readByte((zp + 1) & BYTE_MASK) << SHIFT_8BITS;
-        address = (address + y) & SHORT_MASK;
+        return (readShortZeroPage(fetch()) + y) & SHORT_MASK;
+    }
+
+    /*
+     * (non-Javadoc) Read a byte in memory. A plain RAM is read directly from its
+     * backing array and a paged bus through its page table, without going
+     * through the Memory interface.
+     * 
+     * @param address the address where to read
+     * 
+     * @return the read byte
+     */
+    short read(int address)
+    {
+        if (ram != null)
+        {
+            return (short) (ram[address] & BYTE_MASK);
+        }
+        if (bus != null)
+        {
+            return bus.readByte(address);
+        }
+
+        return memory.readByte(address);
+    }
+
+    /*
+     * (non-Javadoc) Write a byte in memory. A plain RAM is written directly in
+     * its backing array and a paged bus through its page table, without going
+     * through the Memory interface. The code watcher is told about writes in the
+     * pages it watches, as is the decode cache.
+     * 
+     * @param address the address where to write
+     * 
+     * @param value the value to write
+     */
+    void write(int address, short value)
+    {
+        if (ram != null)
+        {
+            ram[address] = (byte) value;
+            dirty[address >> SHIFT_DIRTY_WORD] |= 1L << (address >> SHIFT_8BITS);
+        }
+        else if (bus != null)
+        {
+            bus.writeByte(address, value);
+        }
+        else
+        {
+            memory.writeByte(address, value);
+        }
 
-        return address;
+        if (cache != null && cache.pages[address >> CodeWatcher.PAGE_SHIFT])
+        {
+            cache.written(address);
+        }
+        if (codeWatcher != null && codeWatcher.pages[address >> CodeWatcher.PAGE_SHIFT])
+        {
+            codeWatcher.written(address);
+        }
     }
 
+    /*
+     * (non-Javadoc) Read a little endian word in memory, the high byte at
+     * address + 1.
+     * 
+     * @param address the address of the low byte
+     * 
+     * @return the read word
+     */
     private int readShort(int address)
     {
-        return memory.readByte(address) | (memory.readByte((address + 1) & SHORT_MASK) << SHIFT_8BITS);
+        if (ram != null)
+        {
+            return (ram[address] & BYTE_MASK) | (ram[(address + 1) & SHORT_MASK] & BYTE_MASK) << SHIFT_8BITS;
+        }
+        if (bus != null)
+        {
+            return bus.readShort(address);
+        }
+
+        if (words != null)
+        {
+            return words.readShort(address);
+        }
+
+        return read(address) | read((address + 1) & SHORT_MASK) << SHIFT_8BITS;
+    }
+
+    /*
+     * (non-Javadoc) Read a little endian word in the zero page, the high byte
+     * wrapping from 0xFF to 0x00.
+     * 
+     * @param address the zero page address of the low byte
+     * 
+     * @return the read word
+     */
+    int readShortZeroPage(int address)
+    {
+        if (ram != null)
+        {
+            return (ram[address] & BYTE_MASK) | (ram[(address + 1) & BYTE_MASK] & BYTE_MASK) << SHIFT_8BITS;
+        }
+        if (bus != null)
+        {
+            return bus.readShortZeroPage(address);
+        }
+
+        if (words != null)
+        {
+            return words.readShortZeroPage(address);
+        }
+
+        return read(address) | read((address + 1) & BYTE_MASK) << SHIFT_8BITS;
     }
 
-    private void bit(int address)
+    /*
+     * (non-Javadoc) Read a little endian word without crossing a page, the
+     * high byte wrapping to the start of the page.
+     * 
+     * @param address the address of the low byte
+     * 
+     * @return the read word
+     */
+    int readShortPageWrap(int address)
     {
-        short value = memory.readByte(address);
-        if ((a & value) == 0)
+        if (ram != null)
         {
-            sr |= Z_FLAG;
+            return (ram[address] & BYTE_MASK) | (ram[(address & PAGE_CROSS_TEST) | ((address + 1) & BYTE_MASK)] & BYTE_MASK) << SHIFT_8BITS;
         }
-        sr |= (value & (N_FLAG | V_FLAG));
+        if (bus != null)
+        {
+            return bus.readShortPageWrap(address);
+        }
+
+        if (words != null)
+        {
+            return words.readShortPageWrap(address);
+        }
+
+        return read(address) | read((address & PAGE_CROSS_TEST) | ((address + 1) & BYTE_MASK)) << SHIFT_8BITS;
+    }
+
+    /*
+     * (non-Javadoc) Test bits of a value with the accumulator: Z is set from
+     * the mask, N and V are copied from the value.
+     * 
+     * @param value the tested value
+     */
+    void bit(short value)
+    {
+        sr = (short) ((sr & ~V_FLAG) | (value & V_FLAG));
+        zResult = a & value;
+        nResult = value;
     }
 
     public short getA()
@@ -638,9 +1822,13 @@ public class MOS6502 extends AbstractCPU
         return sp;
     }
 
+    /**
+     * @return the status register, with the N and Z flags computed from the
+     *         last results
+     */
     public short getSr()
     {
-        return sr;
+        return (short) ((sr & ~(Z_FLAG | N_FLAG)) | (zResult == 0 ? Z_FLAG : 0) | (nResult & N_FLAG));
     }
 
     public int getPc()
@@ -648,6 +1836,17 @@ public class MOS6502 extends AbstractCPU
         return pc;
     }
 
+    /**
+     * Set the address of the next instruction.
+     * 
+     * @param pc
+     *            the 16bits address
+     */
+    public void setPc(int pc)
+    {
+        this.pc = pc & SHORT_MASK;
+    }
+
     /*
      * (non-Javadoc) for unit test only
      */
@@ -685,7 +1884,17 @@ public class MOS6502 extends AbstractCPU
      */
     public void setSR(short sr)
     {
-        this.sr = sr;
+        setStatus(sr);
+    }
+
+    /**
+     * The engines able to execute the instructions: the reference switch
+     * interpreter, the interpreter dispatching through a handler table and the
+     * same one running from a cache of decoded instructions.
+     */
+    public enum Engine
+    {
+        SWITCH, THREADED, PREDECODED
     }
 
     @Override
@@ -697,139 +1906,238 @@ public class MOS6502 extends AbstractCPU
         result.append("\tx register:\t\t" + Util.hex((byte) x) + "\n");
         result.append("\ty register:\t\t" + Util.hex((byte) y) + "\n");
         result.append("\tstack pointer:\t\t" + Util.hex((byte) sp) + "\n");
-        result.append("\tprocessor status:\t" + Util.hex((byte) sr) + "\n");
+        result.append("\tprocessor status:\t" + Util.hex((byte) getSr()) + "\n");
         result.append("\tprogram counter:\t" + Util.hex((short) pc) + "\n");
 
         return result.toString();
     }
 
     // Load/Store Operations
-    private static final short LDA_IMM = 0xA9;
-    private static final short LDA_ZP  = 0xA5;
-    private static final short LDA_ZPX = 0xB5;
-    private static final short LDA_ABS = 0xAD;
-    private static final short LDA_ABX = 0xBD;
-    private static final short LDA_ABY = 0xB9;
-    private static final short LDA_IZX = 0xA1;
-    private static final short LDA_IZY = 0xB1;
-
-    private static final short LDX_IMM = 0xA2;
-    private static final short LDX_ZP  = 0xA6;
-    private static final short LDX_ZPY = 0xB6;
-    private static final short LDX_ABS = 0xAE;
-    private static final short LDX_ABY = 0xBE;
-
-    private static final short LDY_IMM = 0xA0;
-    private static final short LDY_ZP  = 0xA4;
-    private static final short LDY_ZPX = 0xB4;
-    private static final short LDY_ABS = 0xAC;
-    private static final short LDY_ABX = 0xBC;
-
-    private static final short STA_ZP  = 0x85;
-    private static final short STA_ZPX = 0x95;
-    private static final short STA_ABS = 0x8D;
-    private static final short STA_ABX = 0x9D;
-    private static final short STA_ABY = 0x99;
-    private static final short STA_IZX = 0x81;
-    private static final short STA_IZY = 0x91;
-
-    private static final short STX_ZP  = 0x86;
-    private static final short STX_ZPY = 0x96;
-    private static final short STX_ABS = 0x8E;
-
-    private static final short STY_ZP  = 0x84;
-    private static final short STY_ZPX = 0x94;
-    private static final short STY_ABS = 0x8C;
+    static final short LDA_IMM = 0xA9;
+    static final short LDA_ZP  = 0xA5;
+    static final short LDA_ZPX = 0xB5;
+    static final short LDA_ABS = 0xAD;
+    static final short LDA_ABX = 0xBD;
+    static final short LDA_ABY = 0xB9;
+    static final short LDA_IZX = 0xA1;
+    static final short LDA_IZY = 0xB1;
+
+    static final short LDX_IMM = 0xA2;
+    static final short LDX_ZP  = 0xA6;
+    static final short LDX_ZPY = 0xB6;
+    static final short LDX_ABS = 0xAE;
+    static final short LDX_ABY = 0xBE;
+
+    static final short LDY_IMM = 0xA0;
+    static final short LDY_ZP  = 0xA4;
+    static final short LDY_ZPX = 0xB4;
+    static final short LDY_ABS = 0xAC;
+    static final short LDY_ABX = 0xBC;
+
+    static final short STA_ZP  = 0x85;
+    static final short STA_ZPX = 0x95;
+    static final short STA_ABS = 0x8D;
+    static final short STA_ABX = 0x9D;
+    static final short STA_ABY = 0x99;
+    static final short STA_IZX = 0x81;
+    static final short STA_IZY = 0x91;
+
+    static final short STX_ZP  = 0x86;
+    static final short STX_ZPY = 0x96;
+    static final short STX_ABS = 0x8E;
+
+    static final short STY_ZP  = 0x84;
+    static final short STY_ZPX = 0x94;
+    static final short STY_ABS = 0x8C;
 
 
     // Register Transfers
-    private static final short TAX = 0xAA;
+    static final short TAX = 0xAA;
 
-    private static final short TAY = 0xA8;
+    static final short TAY = 0xA8;
 
-    private static final short TXA = 0x8A;
+    static final short TXA = 0x8A;
 
-    private static final short TYA = 0x98;
+    static final short TYA = 0x98;
 
 
     // Stack Operations
-    private static final short TSX = 0xBA;
+    static final short TSX = 0xBA;
 
-    private static final short TXS = 0x9A;
+    static final short TXS = 0x9A;
 
-    private static final short PHA = 0x48;
+    static final short PHA = 0x48;
 
-    private static final short PHP = 0x08;
+    static final short PHP = 0x08;
 
-    private static final short PLA = 0x68;
+    static final short PLA = 0x68;
 
-    private static final short PLP = 0x28;
+    static final short PLP = 0x28;
 
 
     //Logical
-    private static final short AND_IMM = 0x29;
-    private static final short AND_ZP  = 0x25;
-    private static final short AND_ZPX = 0x35;
-    private static final short AND_ABS = 0x2D;
-    private static final short AND_ABX = 0x3D;
-    private static final short AND_ABY = 0x39;
-    private static final short AND_IZX = 0x21;
-    private static final short AND_IZY = 0x31;
-
-    private static final short EOR_IMM = 0x49;
-    private static final short EOR_ZP  = 0x45;
-    private static final short EOR_ZPX = 0x55;
-    private static final short EOR_ABS = 0x4D;
-    private static final short EOR_ABX = 0x5D;
-    private static final short EOR_ABY = 0x59;
-    private static final short EOR_IZX = 0x41;
-    private static final short EOR_IZY = 0x51;
-
-    private static final short ORA_IMM = 0x09;
-    private static final short ORA_ZP  = 0x05;
-    private static final short ORA_ZPX = 0x15;
-    private static final short ORA_ABS = 0x0D;
-    private static final short ORA_ABX = 0x1D;
-    private static final short ORA_ABY = 0x19;
-    private static final short ORA_IZX = 0x01;
-    private static final short ORA_IZY = 0x11;
-
-    private static final short BIT_ZP  = 0x24;
-    private static final short BIT_ABS = 0x2C;
+    static final short AND_IMM = 0x29;
+    static final short AND_ZP  = 0x25;
+    static final short AND_ZPX = 0x35;
+    static final short AND_ABS = 0x2D;
+    static final short AND_ABX = 0x3D;
+    static final short AND_ABY = 0x39;
+    static final short AND_IZX = 0x21;
+    static final short AND_IZY = 0x31;
+
+    static final short EOR_IMM = 0x49;
+    static final short EOR_ZP  = 0x45;
+    static final short EOR_ZPX = 0x55;
+    static final short EOR_ABS = 0x4D;
+    static final short EOR_ABX = 0x5D;
+    static final short EOR_ABY = 0x59;
+    static final short EOR_IZX = 0x41;
+    static final short EOR_IZY = 0x51;
+
+    static final short ORA_IMM = 0x09;
+    static final short ORA_ZP  = 0x05;
+    static final short ORA_ZPX = 0x15;
+    static final short ORA_ABS = 0x0D;
+    static final short ORA_ABX = 0x1D;
+    static final short ORA_ABY = 0x19;
+    static final short ORA_IZX = 0x01;
+    static final short ORA_IZY = 0x11;
+
+    static final short BIT_ZP  = 0x24;
+    static final short BIT_ABS = 0x2C;
+
+
+    // Arithmetic
+    static final short ADC_IMM = 0x69;
+    static final short ADC_ZP  = 0x65;
+    static final short ADC_ZPX = 0x75;
+    static final short ADC_ABS = 0x6D;
+    static final short ADC_ABX = 0x7D;
+    static final short ADC_ABY = 0x79;
+    static final short ADC_IZX = 0x61;
+    static final short ADC_IZY = 0x71;
+
+    static final short SBC_IMM = 0xE9;
+    static final short SBC_ZP  = 0xE5;
+    static final short SBC_ZPX = 0xF5;
+    static final short SBC_ABS = 0xED;
+    static final short SBC_ABX = 0xFD;
+    static final short SBC_ABY = 0xF9;
+    static final short SBC_IZX = 0xE1;
+    static final short SBC_IZY = 0xF1;
+
+    static final short CMP_IMM = 0xC9;
+    static final short CMP_ZP  = 0xC5;
+    static final short CMP_ZPX = 0xD5;
+    static final short CMP_ABS = 0xCD;
+    static final short CMP_ABX = 0xDD;
+    static final short CMP_ABY = 0xD9;
+    static final short CMP_IZX = 0xC1;
+    static final short CMP_IZY = 0xD1;
+
+    static final short CPX_IMM = 0xE0;
+    static final short CPX_ZP  = 0xE4;
+    static final short CPX_ABS = 0xEC;
+
+    static final short CPY_IMM = 0xC0;
+    static final short CPY_ZP  = 0xC4;
+    static final short CPY_ABS = 0xCC;
 
 
     // Increments & Decrements
-    private static final short INC_ZP  = 0xE6;
-    private static final short INC_ZPX = 0xF6;
-    private static final short INC_ABS = 0xEE;
-    private static final short INC_ABX = 0xFE;
+    static final short INC_ZP  = 0xE6;
+    static final short INC_ZPX = 0xF6;
+    static final short INC_ABS = 0xEE;
+    static final short INC_ABX = 0xFE;
+
+    static final short INX = 0xE8;
+
+    static final short INY = 0xC8;
+
+    static final short DEC_ZP  = 0xC6;
+    static final short DEC_ZPX = 0xD6;
+    static final short DEC_ABS = 0xCE;
+    static final short DEC_ABX = 0xDE;
 
-    private static final short INX = 0xE8;
+    static final short DEX = 0xCA;
 
-    private static final short INY = 0xC8;
+    static final short DEY = 0x88;
 
-    private static final short DEC_ZP  = 0xC6;
-    private static final short DEC_ZPX = 0xD6;
-    private static final short DEC_ABS = 0xCE;
-    private static final short DEC_ABX = 0xDE;
 
-    private static final short DEX = 0xCA;
+    // Shifts
+    static final short ASL_ACC = 0x0A;
+    static final short ASL_ZP  = 0x06;
+    static final short ASL_ZPX = 0x16;
+    static final short ASL_ABS = 0x0E;
+    static final short ASL_ABX = 0x1E;
 
-    private static final short DEY = 0x88;
+    static final short LSR_ACC = 0x4A;
+    static final short LSR_ZP  = 0x46;
+    static final short LSR_ZPX = 0x56;
+    static final short LSR_ABS = 0x4E;
+    static final short LSR_ABX = 0x5E;
+
+    static final short ROL_ACC = 0x2A;
+    static final short ROL_ZP  = 0x26;
+    static final short ROL_ZPX = 0x36;
+    static final short ROL_ABS = 0x2E;
+    static final short ROL_ABX = 0x3E;
+
+    static final short ROR_ACC = 0x6A;
+    static final short ROR_ZP  = 0x66;
+    static final short ROR_ZPX = 0x76;
+    static final short ROR_ABS = 0x6E;
+    static final short ROR_ABX = 0x7E;
 
 
     // Jumps & Calls
-    private static final short JMP_ABS = 0x4C;
-    private static final short JMP_IND = 0x6C;
+    static final short JMP_ABS = 0x4C;
+    static final short JMP_IND = 0x6C;
+
+    static final short JSR = 0x20;
+
+    static final short RTS = 0x60;
 
-    private static final short JSR = 0x20;
 
-    private static final short RTS = 0x60;
+    // Branches
+    static final short BCC = 0x90;
+
+    static final short BCS = 0xB0;
+
+    static final short BEQ = 0xF0;
+
+    static final short BMI = 0x30;
+
+    static final short BNE = 0xD0;
+
+    static final short BPL = 0x10;
+
+    static final short BVC = 0x50;
+
+    static final short BVS = 0x70;
+
+
+    // Status Flag Changes
+    static final short CLC = 0x18;
+
+    static final short CLD = 0xD8;
+
+    static final short CLI = 0x58;
+
+    static final short CLV = 0xB8;
+
+    static final short SEC = 0x38;
+
+    static final short SED = 0xF8;
+
+    static final short SEI = 0x78;
 
 
     // System Functions
-    private static final short BRK = 0x00;
+    static final short BRK = 0x00;
+
+    static final short NOP = 0xEA;
 
-    private static final short NOP = 0xEA;
+    static final short RTI = 0x40;
 
 }
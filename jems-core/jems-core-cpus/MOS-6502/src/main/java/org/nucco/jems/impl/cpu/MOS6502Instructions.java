@@ -0,0 +1,1089 @@
+package org.nucco.jems.impl.cpu;
+
+/**
+ * The handler table of the table dispatched MOS-6502 engine, indexed by opcode.
+ * Each entry composes one operation with one addressing mode, so every opcode
+ * is a distinct object that can be profiled on its own.
+ */
+final class MOS6502Instructions
+{
+
+    private static final int OPCODES = 0x100;
+
+    static final Instruction[] TABLE = create();
+
+    private MOS6502Instructions()
+    {
+    }
+
+    /**
+     * @param opcode
+     *            the opcode to test
+     * @return true if the opcode is a documented instruction
+     */
+    static boolean isLegal(short opcode)
+    {
+        return !(TABLE[opcode] instanceof Illegal);
+    }
+
+    private static Instruction[] create()
+    {
+        Instruction[] table = new Instruction[OPCODES];
+        for (short opcode = 0; opcode < OPCODES; opcode++)
+        {
+            table[opcode] = new Illegal(opcode);
+        }
+
+        // Load/Store Operations
+        table[MOS6502.LDA_IMM] = new LDA(Instruction.IMMEDIATE);
+        table[MOS6502.LDA_ZP] = new LDA(Instruction.ZERO_PAGE);
+        table[MOS6502.LDA_ZPX] = new LDA(Instruction.ZERO_PAGE_X);
+        table[MOS6502.LDA_ABS] = new LDA(Instruction.ABSOLUTE);
+        table[MOS6502.LDA_ABX] = new LDA(Instruction.ABSOLUTE_X);
+        table[MOS6502.LDA_ABY] = new LDA(Instruction.ABSOLUTE_Y);
+        table[MOS6502.LDA_IZX] = new LDA(Instruction.INDIRECT_X);
+        table[MOS6502.LDA_IZY] = new LDA(Instruction.INDIRECT_Y);
+
+        table[MOS6502.LDX_IMM] = new LDX(Instruction.IMMEDIATE);
+        table[MOS6502.LDX_ZP] = new LDX(Instruction.ZERO_PAGE);
+        table[MOS6502.LDX_ZPY] = new LDX(Instruction.ZERO_PAGE_Y);
+        table[MOS6502.LDX_ABS] = new LDX(Instruction.ABSOLUTE);
+        table[MOS6502.LDX_ABY] = new LDX(Instruction.ABSOLUTE_Y);
+
+        table[MOS6502.LDY_IMM] = new LDY(Instruction.IMMEDIATE);
+        table[MOS6502.LDY_ZP] = new LDY(Instruction.ZERO_PAGE);
+        table[MOS6502.LDY_ZPX] = new LDY(Instruction.ZERO_PAGE_X);
+        table[MOS6502.LDY_ABS] = new LDY(Instruction.ABSOLUTE);
+        table[MOS6502.LDY_ABX] = new LDY(Instruction.ABSOLUTE_X);
+
+        table[MOS6502.STA_ZP] = new STA(Instruction.ZERO_PAGE);
+        table[MOS6502.STA_ZPX] = new STA(Instruction.ZERO_PAGE_X);
+        table[MOS6502.STA_ABS] = new STA(Instruction.ABSOLUTE);
+        table[MOS6502.STA_ABX] = new STA(Instruction.ABSOLUTE_X);
+        table[MOS6502.STA_ABY] = new STA(Instruction.ABSOLUTE_Y);
+        table[MOS6502.STA_IZX] = new STA(Instruction.INDIRECT_X);
+        table[MOS6502.STA_IZY] = new STA(Instruction.INDIRECT_Y);
+
+        table[MOS6502.STX_ZP] = new STX(Instruction.ZERO_PAGE);
+        table[MOS6502.STX_ZPY] = new STX(Instruction.ZERO_PAGE_Y);
+        table[MOS6502.STX_ABS] = new STX(Instruction.ABSOLUTE);
+
+        table[MOS6502.STY_ZP] = new STY(Instruction.ZERO_PAGE);
+        table[MOS6502.STY_ZPX] = new STY(Instruction.ZERO_PAGE_X);
+        table[MOS6502.STY_ABS] = new STY(Instruction.ABSOLUTE);
+
+        // Register Transfers
+        table[MOS6502.TAX] = new TAX();
+        table[MOS6502.TAY] = new TAY();
+        table[MOS6502.TXA] = new TXA();
+        table[MOS6502.TYA] = new TYA();
+
+        // Stack Operations
+        table[MOS6502.TSX] = new TSX();
+        table[MOS6502.TXS] = new TXS();
+        table[MOS6502.PHA] = new PHA();
+        table[MOS6502.PHP] = new PHP();
+        table[MOS6502.PLA] = new PLA();
+        table[MOS6502.PLP] = new PLP();
+
+        // Logical
+        table[MOS6502.AND_IMM] = new AND(Instruction.IMMEDIATE);
+        table[MOS6502.AND_ZP] = new AND(Instruction.ZERO_PAGE);
+        table[MOS6502.AND_ZPX] = new AND(Instruction.ZERO_PAGE_X);
+        table[MOS6502.AND_ABS] = new AND(Instruction.ABSOLUTE);
+        table[MOS6502.AND_ABX] = new AND(Instruction.ABSOLUTE_X);
+        table[MOS6502.AND_ABY] = new AND(Instruction.ABSOLUTE_Y);
+        table[MOS6502.AND_IZX] = new AND(Instruction.INDIRECT_X);
+        table[MOS6502.AND_IZY] = new AND(Instruction.INDIRECT_Y);
+
+        table[MOS6502.EOR_IMM] = new EOR(Instruction.IMMEDIATE);
+        table[MOS6502.EOR_ZP] = new EOR(Instruction.ZERO_PAGE);
+        table[MOS6502.EOR_ZPX] = new EOR(Instruction.ZERO_PAGE_X);
+        table[MOS6502.EOR_ABS] = new EOR(Instruction.ABSOLUTE);
+        table[MOS6502.EOR_ABX] = new EOR(Instruction.ABSOLUTE_X);
+        table[MOS6502.EOR_ABY] = new EOR(Instruction.ABSOLUTE_Y);
+        table[MOS6502.EOR_IZX] = new EOR(Instruction.INDIRECT_X);
+        table[MOS6502.EOR_IZY] = new EOR(Instruction.INDIRECT_Y);
+
+        table[MOS6502.ORA_IMM] = new ORA(Instruction.IMMEDIATE);
+        table[MOS6502.ORA_ZP] = new ORA(Instruction.ZERO_PAGE);
+        table[MOS6502.ORA_ZPX] = new ORA(Instruction.ZERO_PAGE_X);
+        table[MOS6502.ORA_ABS] = new ORA(Instruction.ABSOLUTE);
+        table[MOS6502.ORA_ABX] = new ORA(Instruction.ABSOLUTE_X);
+        table[MOS6502.ORA_ABY] = new ORA(Instruction.ABSOLUTE_Y);
+        table[MOS6502.ORA_IZX] = new ORA(Instruction.INDIRECT_X);
+        table[MOS6502.ORA_IZY] = new ORA(Instruction.INDIRECT_Y);
+
+        table[MOS6502.BIT_ZP] = new BIT(Instruction.ZERO_PAGE);
+        table[MOS6502.BIT_ABS] = new BIT(Instruction.ABSOLUTE);
+
+        // Arithmetic
+        table[MOS6502.ADC_IMM] = new ADC(Instruction.IMMEDIATE);
+        table[MOS6502.ADC_ZP] = new ADC(Instruction.ZERO_PAGE);
+        table[MOS6502.ADC_ZPX] = new ADC(Instruction.ZERO_PAGE_X);
+        table[MOS6502.ADC_ABS] = new ADC(Instruction.ABSOLUTE);
+        table[MOS6502.ADC_ABX] = new ADC(Instruction.ABSOLUTE_X);
+        table[MOS6502.ADC_ABY] = new ADC(Instruction.ABSOLUTE_Y);
+        table[MOS6502.ADC_IZX] = new ADC(Instruction.INDIRECT_X);
+        table[MOS6502.ADC_IZY] = new ADC(Instruction.INDIRECT_Y);
+
+        table[MOS6502.SBC_IMM] = new SBC(Instruction.IMMEDIATE);
+        table[MOS6502.SBC_ZP] = new SBC(Instruction.ZERO_PAGE);
+        table[MOS6502.SBC_ZPX] = new SBC(Instruction.ZERO_PAGE_X);
+        table[MOS6502.SBC_ABS] = new SBC(Instruction.ABSOLUTE);
+        table[MOS6502.SBC_ABX] = new SBC(Instruction.ABSOLUTE_X);
+        table[MOS6502.SBC_ABY] = new SBC(Instruction.ABSOLUTE_Y);
+        table[MOS6502.SBC_IZX] = new SBC(Instruction.INDIRECT_X);
+        table[MOS6502.SBC_IZY] = new SBC(Instruction.INDIRECT_Y);
+
+        table[MOS6502.CMP_IMM] = new CMP(Instruction.IMMEDIATE);
+        table[MOS6502.CMP_ZP] = new CMP(Instruction.ZERO_PAGE);
+        table[MOS6502.CMP_ZPX] = new CMP(Instruction.ZERO_PAGE_X);
+        table[MOS6502.CMP_ABS] = new CMP(Instruction.ABSOLUTE);
+        table[MOS6502.CMP_ABX] = new CMP(Instruction.ABSOLUTE_X);
+        table[MOS6502.CMP_ABY] = new CMP(Instruction.ABSOLUTE_Y);
+        table[MOS6502.CMP_IZX] = new CMP(Instruction.INDIRECT_X);
+        table[MOS6502.CMP_IZY] = new CMP(Instruction.INDIRECT_Y);
+
+        table[MOS6502.CPX_IMM] = new CPX(Instruction.IMMEDIATE);
+        table[MOS6502.CPX_ZP] = new CPX(Instruction.ZERO_PAGE);
+        table[MOS6502.CPX_ABS] = new CPX(Instruction.ABSOLUTE);
+
+        table[MOS6502.CPY_IMM] = new CPY(Instruction.IMMEDIATE);
+        table[MOS6502.CPY_ZP] = new CPY(Instruction.ZERO_PAGE);
+        table[MOS6502.CPY_ABS] = new CPY(Instruction.ABSOLUTE);
+
+        // Increments & Decrements
+        table[MOS6502.INC_ZP] = new INC(Instruction.ZERO_PAGE);
+        table[MOS6502.INC_ZPX] = new INC(Instruction.ZERO_PAGE_X);
+        table[MOS6502.INC_ABS] = new INC(Instruction.ABSOLUTE);
+        table[MOS6502.INC_ABX] = new INC(Instruction.ABSOLUTE_X);
+
+        table[MOS6502.INX] = new INX();
+        table[MOS6502.INY] = new INY();
+
+        table[MOS6502.DEC_ZP] = new DEC(Instruction.ZERO_PAGE);
+        table[MOS6502.DEC_ZPX] = new DEC(Instruction.ZERO_PAGE_X);
+        table[MOS6502.DEC_ABS] = new DEC(Instruction.ABSOLUTE);
+        table[MOS6502.DEC_ABX] = new DEC(Instruction.ABSOLUTE_X);
+
+        table[MOS6502.DEX] = new DEX();
+        table[MOS6502.DEY] = new DEY();
+
+        // Shifts
+        table[MOS6502.ASL_ACC] = new Shift("ASL", MOS6502Tables.ASL, Instruction.ACCUMULATOR);
+        table[MOS6502.ASL_ZP] = new Shift("ASL", MOS6502Tables.ASL, Instruction.ZERO_PAGE);
+        table[MOS6502.ASL_ZPX] = new Shift("ASL", MOS6502Tables.ASL, Instruction.ZERO_PAGE_X);
+        table[MOS6502.ASL_ABS] = new Shift("ASL", MOS6502Tables.ASL, Instruction.ABSOLUTE);
+        table[MOS6502.ASL_ABX] = new Shift("ASL", MOS6502Tables.ASL, Instruction.ABSOLUTE_X);
+
+        table[MOS6502.LSR_ACC] = new Shift("LSR", MOS6502Tables.LSR, Instruction.ACCUMULATOR);
+        table[MOS6502.LSR_ZP] = new Shift("LSR", MOS6502Tables.LSR, Instruction.ZERO_PAGE);
+        table[MOS6502.LSR_ZPX] = new Shift("LSR", MOS6502Tables.LSR, Instruction.ZERO_PAGE_X);
+        table[MOS6502.LSR_ABS] = new Shift("LSR", MOS6502Tables.LSR, Instruction.ABSOLUTE);
+        table[MOS6502.LSR_ABX] = new Shift("LSR", MOS6502Tables.LSR, Instruction.ABSOLUTE_X);
+
+        table[MOS6502.ROL_ACC] = new Shift("ROL", MOS6502Tables.ROL, Instruction.ACCUMULATOR);
+        table[MOS6502.ROL_ZP] = new Shift("ROL", MOS6502Tables.ROL, Instruction.ZERO_PAGE);
+        table[MOS6502.ROL_ZPX] = new Shift("ROL", MOS6502Tables.ROL, Instruction.ZERO_PAGE_X);
+        table[MOS6502.ROL_ABS] = new Shift("ROL", MOS6502Tables.ROL, Instruction.ABSOLUTE);
+        table[MOS6502.ROL_ABX] = new Shift("ROL", MOS6502Tables.ROL, Instruction.ABSOLUTE_X);
+
+        table[MOS6502.ROR_ACC] = new Shift("ROR", MOS6502Tables.ROR, Instruction.ACCUMULATOR);
+        table[MOS6502.ROR_ZP] = new Shift("ROR", MOS6502Tables.ROR, Instruction.ZERO_PAGE);
+        table[MOS6502.ROR_ZPX] = new Shift("ROR", MOS6502Tables.ROR, Instruction.ZERO_PAGE_X);
+        table[MOS6502.ROR_ABS] = new Shift("ROR", MOS6502Tables.ROR, Instruction.ABSOLUTE);
+        table[MOS6502.ROR_ABX] = new Shift("ROR", MOS6502Tables.ROR, Instruction.ABSOLUTE_X);
+
+        // Jumps & Calls
+        table[MOS6502.JMP_ABS] = new JMP(Instruction.ABSOLUTE);
+        table[MOS6502.JMP_IND] = new JMP(Instruction.INDIRECT);
+        table[MOS6502.JSR] = new JSR();
+        table[MOS6502.RTS] = new RTS();
+
+        // Branches
+        table[MOS6502.BCC] = new BCC();
+        table[MOS6502.BCS] = new BCS();
+        table[MOS6502.BEQ] = new BEQ();
+        table[MOS6502.BMI] = new BMI();
+        table[MOS6502.BNE] = new BNE();
+        table[MOS6502.BPL] = new BPL();
+        table[MOS6502.BVC] = new BVC();
+        table[MOS6502.BVS] = new BVS();
+
+        // Status Flag Changes
+        table[MOS6502.CLC] = new FlagChange("CLC", MOS6502.C_FLAG, false);
+        table[MOS6502.CLD] = new FlagChange("CLD", MOS6502.D_FLAG, false);
+        table[MOS6502.CLI] = new FlagChange("CLI", MOS6502.I_FLAG, false);
+        table[MOS6502.CLV] = new FlagChange("CLV", MOS6502.V_FLAG, false);
+        table[MOS6502.SEC] = new FlagChange("SEC", MOS6502.C_FLAG, true);
+        table[MOS6502.SED] = new FlagChange("SED", MOS6502.D_FLAG, true);
+        table[MOS6502.SEI] = new FlagChange("SEI", MOS6502.I_FLAG, true);
+
+        // System Functions
+        table[MOS6502.BRK] = new BRK();
+        table[MOS6502.NOP] = new NOP();
+        table[MOS6502.RTI] = new RTI();
+
+        return table;
+    }
+
+    // =============================================================
+    // Load/Store Operations
+    // =============================================================
+
+    private static final class LDA extends Instruction
+    {
+
+        LDA(byte mode)
+        {
+            super("LDA", mode, true);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.a = (short) operand;
+            cpu.setNZ(cpu.a);
+        }
+
+    }
+
+    private static final class LDX extends Instruction
+    {
+
+        LDX(byte mode)
+        {
+            super("LDX", mode, true);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.x = (short) operand;
+            cpu.setNZ(cpu.x);
+        }
+
+    }
+
+    private static final class LDY extends Instruction
+    {
+
+        LDY(byte mode)
+        {
+            super("LDY", mode, true);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.y = (short) operand;
+            cpu.setNZ(cpu.y);
+        }
+
+    }
+
+    private static final class STA extends Instruction
+    {
+
+        STA(byte mode)
+        {
+            super("STA", mode, false);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.write(operand, cpu.a);
+        }
+
+    }
+
+    private static final class STX extends Instruction
+    {
+
+        STX(byte mode)
+        {
+            super("STX", mode, false);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.write(operand, cpu.x);
+        }
+
+    }
+
+    private static final class STY extends Instruction
+    {
+
+        STY(byte mode)
+        {
+            super("STY", mode, false);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.write(operand, cpu.y);
+        }
+
+    }
+
+    // =============================================================
+    // Register Transfers
+    // =============================================================
+
+    private static final class TAX extends Instruction
+    {
+
+        TAX()
+        {
+            super("TAX", IMPLIED, false);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.x = cpu.a;
+            cpu.setNZ(cpu.x);
+        }
+
+    }
+
+    private static final class TAY extends Instruction
+    {
+
+        TAY()
+        {
+            super("TAY", IMPLIED, false);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.y = cpu.a;
+            cpu.setNZ(cpu.y);
+        }
+
+    }
+
+    private static final class TXA extends Instruction
+    {
+
+        TXA()
+        {
+            super("TXA", IMPLIED, false);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.a = cpu.x;
+            cpu.setNZ(cpu.a);
+        }
+
+    }
+
+    private static final class TYA extends Instruction
+    {
+
+        TYA()
+        {
+            super("TYA", IMPLIED, false);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.a = cpu.y;
+            cpu.setNZ(cpu.a);
+        }
+
+    }
+
+    // =============================================================
+    // Stack Operations
+    // =============================================================
+
+    private static final class TSX extends Instruction
+    {
+
+        TSX()
+        {
+            super("TSX", IMPLIED, false);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.x = cpu.sp;
+            cpu.setNZ(cpu.x);
+        }
+
+    }
+
+    private static final class TXS extends Instruction
+    {
+
+        TXS()
+        {
+            super("TXS", IMPLIED, false);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.sp = cpu.x;
+        }
+
+    }
+
+    private static final class PHA extends Instruction
+    {
+
+        PHA()
+        {
+            super("PHA", IMPLIED, false);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.push(cpu.a);
+        }
+
+    }
+
+    private static final class PHP extends Instruction
+    {
+
+        PHP()
+        {
+            super("PHP", IMPLIED, false);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.push((short) (cpu.getSr() | MOS6502.B_FLAG | MOS6502.UNUSED_FLAG));
+        }
+
+    }
+
+    private static final class PLA extends Instruction
+    {
+
+        PLA()
+        {
+            super("PLA", IMPLIED, false);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.a = cpu.pop();
+            cpu.setNZ(cpu.a);
+        }
+
+    }
+
+    private static final class PLP extends Instruction
+    {
+
+        PLP()
+        {
+            super("PLP", IMPLIED, false);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.setStatus(cpu.pop());
+        }
+
+    }
+
+    // =============================================================
+    // Logical
+    // =============================================================
+
+    private static final class AND extends Instruction
+    {
+
+        AND(byte mode)
+        {
+            super("AND", mode, true);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.a &= operand;
+            cpu.setNZ(cpu.a);
+        }
+
+    }
+
+    private static final class EOR extends Instruction
+    {
+
+        EOR(byte mode)
+        {
+            super("EOR", mode, true);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.a ^= operand;
+            cpu.setNZ(cpu.a);
+        }
+
+    }
+
+    private static final class ORA extends Instruction
+    {
+
+        ORA(byte mode)
+        {
+            super("ORA", mode, true);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.a |= operand;
+            cpu.setNZ(cpu.a);
+        }
+
+    }
+
+    private static final class BIT extends Instruction
+    {
+
+        BIT(byte mode)
+        {
+            super("BIT", mode, true);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.bit((short) operand);
+        }
+
+    }
+
+    // =============================================================
+    // Arithmetic
+    // =============================================================
+
+    private static final class ADC extends Instruction
+    {
+
+        ADC(byte mode)
+        {
+            super("ADC", mode, true);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.adc((short) operand);
+        }
+
+    }
+
+    private static final class SBC extends Instruction
+    {
+
+        SBC(byte mode)
+        {
+            super("SBC", mode, true);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.sbc((short) operand);
+        }
+
+    }
+
+    private static final class CMP extends Instruction
+    {
+
+        CMP(byte mode)
+        {
+            super("CMP", mode, true);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.compare(cpu.a, (short) operand);
+        }
+
+    }
+
+    private static final class CPX extends Instruction
+    {
+
+        CPX(byte mode)
+        {
+            super("CPX", mode, true);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.compare(cpu.x, (short) operand);
+        }
+
+    }
+
+    private static final class CPY extends Instruction
+    {
+
+        CPY(byte mode)
+        {
+            super("CPY", mode, true);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.compare(cpu.y, (short) operand);
+        }
+
+    }
+
+    // =============================================================
+    // Increments & Decrements
+    // =============================================================
+
+    private static final class INC extends Instruction
+    {
+
+        INC(byte mode)
+        {
+            super("INC", mode, false);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            short value = (short) ((cpu.read(operand) + 1) & MOS6502.BYTE_MASK);
+            cpu.write(operand, value);
+            cpu.setNZ(value);
+        }
+
+    }
+
+    private static final class INX extends Instruction
+    {
+
+        INX()
+        {
+            super("INX", IMPLIED, false);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.x = (short) ((cpu.x + 1) & MOS6502.BYTE_MASK);
+            cpu.setNZ(cpu.x);
+        }
+
+    }
+
+    private static final class INY extends Instruction
+    {
+
+        INY()
+        {
+            super("INY", IMPLIED, false);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.y = (short) ((cpu.y + 1) & MOS6502.BYTE_MASK);
+            cpu.setNZ(cpu.y);
+        }
+
+    }
+
+    private static final class DEC extends Instruction
+    {
+
+        DEC(byte mode)
+        {
+            super("DEC", mode, false);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            short value = (short) ((cpu.read(operand) - 1) & MOS6502.BYTE_MASK);
+            cpu.write(operand, value);
+            cpu.setNZ(value);
+        }
+
+    }
+
+    private static final class DEX extends Instruction
+    {
+
+        DEX()
+        {
+            super("DEX", IMPLIED, false);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.x = (short) ((cpu.x - 1) & MOS6502.BYTE_MASK);
+            cpu.setNZ(cpu.x);
+        }
+
+    }
+
+    private static final class DEY extends Instruction
+    {
+
+        DEY()
+        {
+            super("DEY", IMPLIED, false);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.y = (short) ((cpu.y - 1) & MOS6502.BYTE_MASK);
+            cpu.setNZ(cpu.y);
+        }
+
+    }
+
+    // =============================================================
+    // Shifts
+    // =============================================================
+
+    private static final class Shift extends Instruction
+    {
+
+        private final short[] results;
+
+        Shift(String mnemonic, short[] results, byte mode)
+        {
+            super(mnemonic, mode, false);
+            this.results = results;
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            if (mode == ACCUMULATOR)
+            {
+                cpu.a = cpu.shift(results, cpu.a);
+            }
+            else
+            {
+                cpu.write(operand, cpu.shift(results, cpu.read(operand)));
+            }
+        }
+
+    }
+
+    // =============================================================
+    // Jumps & Calls
+    // =============================================================
+
+    private static final class JMP extends Instruction
+    {
+
+        JMP(byte mode)
+        {
+            super("JMP", mode, false);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.pc = operand;
+        }
+
+    }
+
+    private static final class JSR extends Instruction
+    {
+
+        JSR()
+        {
+            super("JSR", ABSOLUTE, false);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.pushShort((cpu.pc - 1) & MOS6502.SHORT_MASK);
+            cpu.pc = operand;
+        }
+
+    }
+
+    private static final class RTS extends Instruction
+    {
+
+        RTS()
+        {
+            super("RTS", IMPLIED, false);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.pc = (cpu.popShort() + 1) & MOS6502.SHORT_MASK;
+        }
+
+    }
+
+    // =============================================================
+    // Branches
+    // =============================================================
+
+    private static final class BCC extends Instruction
+    {
+
+        BCC()
+        {
+            super("BCC", RELATIVE, false);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.branch((cpu.sr & MOS6502.C_FLAG) == 0, operand);
+        }
+
+    }
+
+    private static final class BCS extends Instruction
+    {
+
+        BCS()
+        {
+            super("BCS", RELATIVE, false);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.branch((cpu.sr & MOS6502.C_FLAG) != 0, operand);
+        }
+
+    }
+
+    private static final class BEQ extends Instruction
+    {
+
+        BEQ()
+        {
+            super("BEQ", RELATIVE, false);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.branch(cpu.zResult == 0, operand);
+        }
+
+    }
+
+    private static final class BMI extends Instruction
+    {
+
+        BMI()
+        {
+            super("BMI", RELATIVE, false);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.branch((cpu.nResult & MOS6502.N_FLAG) != 0, operand);
+        }
+
+    }
+
+    private static final class BNE extends Instruction
+    {
+
+        BNE()
+        {
+            super("BNE", RELATIVE, false);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.branch(cpu.zResult != 0, operand);
+        }
+
+    }
+
+    private static final class BPL extends Instruction
+    {
+
+        BPL()
+        {
+            super("BPL", RELATIVE, false);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.branch((cpu.nResult & MOS6502.N_FLAG) == 0, operand);
+        }
+
+    }
+
+    private static final class BVC extends Instruction
+    {
+
+        BVC()
+        {
+            super("BVC", RELATIVE, false);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.branch((cpu.sr & MOS6502.V_FLAG) == 0, operand);
+        }
+
+    }
+
+    private static final class BVS extends Instruction
+    {
+
+        BVS()
+        {
+            super("BVS", RELATIVE, false);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.branch((cpu.sr & MOS6502.V_FLAG) != 0, operand);
+        }
+
+    }
+
+    // =============================================================
+    // Status Flag Changes
+    // =============================================================
+
+    private static final class FlagChange extends Instruction
+    {
+
+        private final short flag;
+        private final boolean set;
+
+        FlagChange(String mnemonic, short flag, boolean set)
+        {
+            super(mnemonic, IMPLIED, false);
+            this.flag = flag;
+            this.set = set;
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            if (set)
+            {
+                cpu.sr |= flag;
+            }
+            else
+            {
+                cpu.sr &= ~flag;
+                cpu.unmasked();
+            }
+        }
+
+    }
+
+    // =============================================================
+    // System Functions
+    // =============================================================
+
+    private static final class BRK extends Instruction
+    {
+
+        BRK()
+        {
+            super("BRK", IMPLIED, false);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.brk();
+        }
+
+    }
+
+    private static final class NOP extends Instruction
+    {
+
+        NOP()
+        {
+            super("NOP", IMPLIED, false);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+        }
+
+    }
+
+    private static final class RTI extends Instruction
+    {
+
+        RTI()
+        {
+            super("RTI", IMPLIED, false);
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.rti();
+        }
+
+    }
+
+    private static final class Illegal extends Instruction
+    {
+
+        private final short opcode;
+
+        Illegal(short opcode)
+        {
+            super("???", IMPLIED, false);
+            this.opcode = opcode;
+        }
+
+        @Override
+        void execute(MOS6502 cpu, int operand)
+        {
+            cpu.illegal(opcode);
+        }
+
+    }
+
+}
@@ -0,0 +1,1064 @@
+package org.nucco.jems.impl.cpu;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.nucco.jems.api.memory.BlockMemory;
+import org.nucco.jems.impl.memory.AbstractMemory;
+import org.nucco.jems.util.Util;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs many MOS-6502 in lockstep: the registers of the lanes are held in
+ * parallel arrays, and their 64KB memories in a single arena. The lanes whose
+ * program counters agree, and which hold the same opcode there, form a group:
+ * the instruction is decoded once and each step of its execution is a loop
+ * over the lanes of the group. The code written to every lane by
+ * {@link #writeAll(int, byte[], int, int)} is even fetched once, as long as
+ * no lane writes in its pages.
+ * <p>
+ * The group with the lowest program counter runs first, the others waiting
+ * for it to catch up, so the lanes which diverged on a branch merge back
+ * where their paths join. A lane alone on its path is a group of one. The
+ * lanes behave as a {@link MOS6502} with a plain RAM would, cycle for cycle.
+ */
+public final class MOS6502Lockstep
+{
+
+    private static final Logger LOG = LoggerFactory.getLogger(MOS6502Lockstep.class);
+
+    public static final int MEMORY_SIZE = 0x10000;
+    public static final int MAX_LANES = Integer.MAX_VALUE / (MEMORY_SIZE + 0x40);
+
+    private static final short DEFAULT_REGISTER_VALUE = 0xFF;
+    private static final int BYTE_MASK = 0xFF;
+    private static final int SHORT_MASK = 0xFFFF;
+    private static final int PAGE_CROSS_TEST = 0xFF00;
+    private static final byte SHIFT_8BITS = 8;
+    private static final int LANE_STRIDE = MEMORY_SIZE + 0x40; // a cache line apart, so lanes do not share sets
+    private static final int STACK_ADDRESS = 0x0100;
+    private static final int BREAK_ADDRESS = 0xFFFE;
+    private static final byte ILLEGAL_CYCLES = 2;
+    private static final int NO_PC = 0x10000; // above any program counter
+    private static final int PAGES = 0x100;
+
+    // Operations, whatever their addressing mode
+    private static final String[] MNEMONICS = { "???", "ADC", "AND", "ASL", "BCC", "BCS", "BEQ", "BIT", "BMI",
+        "BNE", "BPL", "BRK", "BVC", "BVS", "CLC", "CLD", "CLI", "CLV", "CMP", "CPX", "CPY", "DEC", "DEX", "DEY",
+        "EOR", "INC", "INX", "INY", "JMP", "JSR", "LDA", "LDX", "LDY", "LSR", "NOP", "ORA", "PHA", "PHP", "PLA",
+        "PLP", "ROL", "ROR", "RTI", "RTS", "SBC", "SEC", "SED", "SEI", "STA", "STX", "STY", "TAX", "TAY", "TSX",
+        "TXA", "TXS", "TYA" };
+    private static final int ILLEGAL = 0, ADC = 1, AND = 2, ASL = 3, BCC = 4, BCS = 5, BEQ = 6, BIT = 7, BMI = 8,
+        BNE = 9, BPL = 10, BRK = 11, BVC = 12, BVS = 13, CLC = 14, CLD = 15, CLI = 16, CLV = 17, CMP = 18,
+        CPX = 19, CPY = 20, DEC = 21, DEX = 22, DEY = 23, EOR = 24, INC = 25, INX = 26, INY = 27, JMP = 28,
+        JSR = 29, LDA = 30, LDX = 31, LDY = 32, LSR = 33, NOP = 34, ORA = 35, PHA = 36, PHP = 37, PLA = 38,
+        PLP = 39, ROL = 40, ROR = 41, RTI = 42, RTS = 43, SBC = 44, SEC = 45, SED = 46, SEI = 47, STA = 48,
+        STX = 49, STY = 50, TAX = 51, TAY = 52, TSX = 53, TXA = 54, TXS = 55, TYA = 56;
+
+    private static final byte[] OPERATIONS = new byte[0x100];
+
+    static
+    {
+        for (int opcode = 0; opcode < OPERATIONS.length; opcode++)
+        {
+            OPERATIONS[opcode] = (byte) Arrays.asList(MNEMONICS).indexOf(MOS6502Instructions.TABLE[opcode].mnemonic);
+        }
+    }
+
+    private final int lanes;
+    private final byte[] memory;
+    private final short[] a;
+    private final short[] x;
+    private final short[] y;
+    private final short[] sp;
+    private final short[] sr; // N and Z excepted
+    private final int[] zResult;
+    private final int[] nResult;
+    private final int[] pc;
+    private final long[] cycles;
+    private final long[] ends; // cycle where each lane stops
+    private int halt = NO_PC;
+    private final boolean[] shared = new boolean[PAGES]; // every lane holds the same bytes in the page
+
+    private final int[] group; // lanes executing the current instruction
+    private final int[] operands; // operand of each lane of the group
+    private int waiting; // lowest program counter of the lanes out of the group
+    private long groups;
+    private long steps;
+
+    /**
+     * @param lanes
+     *            the number of CPUs, with their memories zeroed and their
+     *            registers at their reset values
+     */
+    public MOS6502Lockstep(int lanes)
+    {
+        if (lanes <= 0 || lanes > MAX_LANES)
+        {
+            throw new IllegalArgumentException(lanes + " lanes");
+        }
+        this.lanes = lanes;
+        this.memory = new byte[lanes * LANE_STRIDE];
+        this.a = filled(lanes);
+        this.x = filled(lanes);
+        this.y = filled(lanes);
+        this.sp = filled(lanes);
+        this.sr = filled(lanes);
+        this.zResult = new int[lanes];
+        this.nResult = new int[lanes];
+        Arrays.fill(nResult, MOS6502.N_FLAG);
+        this.pc = new int[lanes];
+        this.cycles = new long[lanes];
+        this.ends = new long[lanes];
+        this.group = new int[lanes];
+        this.operands = new int[lanes];
+        Arrays.fill(shared, true);
+    }
+
+    private static short[] filled(int lanes)
+    {
+        short[] registers = new short[lanes];
+        Arrays.fill(registers, DEFAULT_REGISTER_VALUE);
+        return registers;
+    }
+
+    public int getLanes()
+    {
+        return lanes;
+    }
+
+    /**
+     * Set the address where the lanes stop, as the final loop of a program: a
+     * lane reaching it does not run any more, nor spend its cycles.
+     *
+     * @param address
+     *            the 16bits address, or -1 to run every lane until its
+     *            budget is spent
+     */
+    public void setHalt(int address)
+    {
+        this.halt = address < 0 ? NO_PC : address & SHORT_MASK;
+    }
+
+    /**
+     * @param lane
+     *            the index of the CPU
+     * @return whether the lane stopped on the halt address
+     */
+    public boolean isHalted(int lane)
+    {
+        return pc[lane] == halt;
+    }
+
+    /**
+     * Run every lane until it has run a number of cycles, or reached the halt
+     * address.
+     *
+     * @param budget
+     *            the number of cycles of each lane
+     */
+    public void run(long budget)
+    {
+        for (int lane = 0; lane < lanes; lane++)
+        {
+            ends[lane] = cycles[lane] + budget;
+        }
+
+        int size = gather();
+        while (size > 0)
+        {
+            int address = pc[group[0]];
+            boolean same = shared[address >> SHIFT_8BITS] && shared[((address + 2) & SHORT_MASK) >> SHIFT_8BITS];
+            short opcode = read(group[0], address);
+            if (!same && !agree(opcode, size))
+            {
+                size = gather(); // the code differs: split the group
+                continue;
+            }
+
+            execute(opcode, size, same);
+            groups++;
+            steps += size;
+            size = follow(size);
+        }
+    }
+
+    /**
+     * @return the number of instructions decoded for a group of lanes
+     */
+    public long getGroupSteps()
+    {
+        return groups;
+    }
+
+    /**
+     * @return the number of instructions executed by all the lanes
+     */
+    public long getLaneSteps()
+    {
+        return steps;
+    }
+
+    /*
+     * (non-Javadoc) Form the group of the running lanes with the lowest program
+     * counter and the same opcode there.
+     *
+     * @return the size of the group, 0 if every lane is done
+     */
+    private int gather()
+    {
+        int leader = NO_PC;
+        for (int lane = 0; lane < lanes; lane++)
+        {
+            if (cycles[lane] < ends[lane] && pc[lane] < leader && pc[lane] != halt)
+            {
+                leader = pc[lane];
+            }
+        }
+        if (leader == NO_PC)
+        {
+            return 0;
+        }
+
+        int size = 0;
+        int opcode = -1;
+        waiting = NO_PC;
+        for (int lane = 0; lane < lanes; lane++)
+        {
+            int address = pc[lane];
+            if (cycles[lane] >= ends[lane] || address == halt)
+            {
+                continue;
+            }
+            if (address == leader)
+            {
+                short code = read(lane, address);
+                if (opcode < 0)
+                {
+                    opcode = code;
+                }
+                if (code == opcode)
+                {
+                    group[size++] = lane;
+                    continue;
+                }
+            }
+            waiting = Math.min(waiting, address);
+        }
+        return size;
+    }
+
+    /*
+     * (non-Javadoc) Keep the group for the next instruction if its lanes are
+     * still together and ahead of the others, dropping the lanes which are
+     * done.
+     *
+     * @return the size of the next group
+     */
+    private int follow(int size)
+    {
+        int next = NO_PC;
+        int kept = 0;
+        for (int k = 0; k < size; k++)
+        {
+            int lane = group[k];
+            if (cycles[lane] >= ends[lane] || pc[lane] == halt)
+            {
+                continue;
+            }
+            if (next == NO_PC)
+            {
+                next = pc[lane];
+            }
+            else if (pc[lane] != next)
+            {
+                return gather(); // diverged
+            }
+            group[kept++] = lane;
+        }
+
+        return kept > 0 && next < waiting ? kept : gather();
+    }
+
+    private boolean agree(short opcode, int size)
+    {
+        for (int k = 1; k < size; k++)
+        {
+            if (read(group[k], pc[group[k]]) != opcode)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * (non-Javadoc) Execute an instruction on every lane of the group: fetch
+     * and resolve the operands, then apply the operation. When the code is in
+     * pages shared by every lane, the operand is only fetched once.
+     */
+    private void execute(short opcode, int size, boolean same)
+    {
+        Instruction instruction = MOS6502Instructions.TABLE[opcode];
+        int length = Instruction.LENGTHS[instruction.mode];
+        byte cost = MOS6502.CYCLES[opcode];
+        int address = pc[group[0]];
+        int next = (address + length) & SHORT_MASK;
+        if (same)
+        {
+            int operand = fetchOperand(group[0], address, length);
+            for (int k = 0; k < size; k++)
+            {
+                int lane = group[k];
+                operands[k] = operand;
+                pc[lane] = next;
+                cycles[lane] += cost;
+            }
+        }
+        else
+        {
+            for (int k = 0; k < size; k++)
+            {
+                int lane = group[k];
+                operands[k] = fetchOperand(lane, address, length);
+                pc[lane] = next;
+                cycles[lane] += cost;
+            }
+        }
+        resolve(instruction, size);
+        operate(opcode, size);
+    }
+
+    private int fetchOperand(int lane, int address, int length)
+    {
+        switch (length)
+        {
+            case 1:
+                return 0;
+            case 2:
+                return read(lane, (address + 1) & SHORT_MASK);
+            default:
+                return readShort(lane, (address + 1) & SHORT_MASK);
+        }
+    }
+
+    /*
+     * (non-Javadoc) Turn the raw operands into effective addresses, or into
+     * the values there for reading instructions.
+     */
+    private void resolve(Instruction instruction, int size)
+    {
+        switch (instruction.mode)
+        {
+            case Instruction.IMPLIED:
+            case Instruction.ACCUMULATOR:
+            case Instruction.IMMEDIATE:
+            case Instruction.RELATIVE:
+                return;
+            case Instruction.ZERO_PAGE:
+            case Instruction.ABSOLUTE:
+                break;
+            case Instruction.ZERO_PAGE_X:
+                for (int k = 0; k < size; k++)
+                {
+                    operands[k] = (operands[k] + x[group[k]]) & BYTE_MASK;
+                }
+                break;
+            case Instruction.ZERO_PAGE_Y:
+                for (int k = 0; k < size; k++)
+                {
+                    operands[k] = (operands[k] + y[group[k]]) & BYTE_MASK;
+                }
+                break;
+            case Instruction.ABSOLUTE_X:
+                for (int k = 0; k < size; k++)
+                {
+                    operands[k] = indexed(group[k], operands[k], x[group[k]], instruction.reads);
+                }
+                break;
+            case Instruction.ABSOLUTE_Y:
+                for (int k = 0; k < size; k++)
+                {
+                    operands[k] = indexed(group[k], operands[k], y[group[k]], instruction.reads);
+                }
+                break;
+            case Instruction.INDIRECT:
+                for (int k = 0; k < size; k++)
+                {
+                    int address = operands[k];
+                    operands[k] = read(group[k], address) | read(group[k], (address & PAGE_CROSS_TEST)
+                        | ((address + 1) & BYTE_MASK)) << SHIFT_8BITS;
+                }
+                break;
+            case Instruction.INDIRECT_X:
+                for (int k = 0; k < size; k++)
+                {
+                    operands[k] = readShortZeroPage(group[k], (operands[k] + x[group[k]]) & BYTE_MASK);
+                }
+                break;
+            default:
+                for (int k = 0; k < size; k++)
+                {
+                    operands[k] = indexed(group[k], readShortZeroPage(group[k], operands[k]), y[group[k]],
+                        instruction.reads);
+                }
+                break;
+        }
+
+        if (instruction.reads)
+        {
+            for (int k = 0; k < size; k++)
+            {
+                operands[k] = read(group[k], operands[k]);
+            }
+        }
+    }
+
+    /*
+     * (non-Javadoc) Apply the operation of an opcode to every lane of the
+     * group, with their resolved operands.
+     */
+    private void operate(short opcode, int size)
+    {
+        int lane;
+        switch (OPERATIONS[opcode])
+        {
+            case LDA:
+                for (int k = 0; k < size; k++)
+                {
+                    lane = group[k];
+                    a[lane] = (short) operands[k];
+                    setNZ(lane, a[lane]);
+                }
+                break;
+            case LDX:
+                for (int k = 0; k < size; k++)
+                {
+                    lane = group[k];
+                    x[lane] = (short) operands[k];
+                    setNZ(lane, x[lane]);
+                }
+                break;
+            case LDY:
+                for (int k = 0; k < size; k++)
+                {
+                    lane = group[k];
+                    y[lane] = (short) operands[k];
+                    setNZ(lane, y[lane]);
+                }
+                break;
+            case STA:
+                for (int k = 0; k < size; k++)
+                {
+                    write(group[k], operands[k], a[group[k]]);
+                }
+                break;
+            case STX:
+                for (int k = 0; k < size; k++)
+                {
+                    write(group[k], operands[k], x[group[k]]);
+                }
+                break;
+            case STY:
+                for (int k = 0; k < size; k++)
+                {
+                    write(group[k], operands[k], y[group[k]]);
+                }
+                break;
+            case TAX:
+                for (int k = 0; k < size; k++)
+                {
+                    lane = group[k];
+                    x[lane] = a[lane];
+                    setNZ(lane, x[lane]);
+                }
+                break;
+            case TAY:
+                for (int k = 0; k < size; k++)
+                {
+                    lane = group[k];
+                    y[lane] = a[lane];
+                    setNZ(lane, y[lane]);
+                }
+                break;
+            case TXA:
+                for (int k = 0; k < size; k++)
+                {
+                    lane = group[k];
+                    a[lane] = x[lane];
+                    setNZ(lane, a[lane]);
+                }
+                break;
+            case TYA:
+                for (int k = 0; k < size; k++)
+                {
+                    lane = group[k];
+                    a[lane] = y[lane];
+                    setNZ(lane, a[lane]);
+                }
+                break;
+            case TSX:
+                for (int k = 0; k < size; k++)
+                {
+                    lane = group[k];
+                    x[lane] = sp[lane];
+                    setNZ(lane, x[lane]);
+                }
+                break;
+            case TXS:
+                for (int k = 0; k < size; k++)
+                {
+                    lane = group[k];
+                    sp[lane] = x[lane];
+                }
+                break;
+            case PHA:
+                for (int k = 0; k < size; k++)
+                {
+                    push(group[k], a[group[k]]);
+                }
+                break;
+            case PHP:
+                for (int k = 0; k < size; k++)
+                {
+                    push(group[k], (short) (getSr(group[k]) | MOS6502.B_FLAG | MOS6502.UNUSED_FLAG));
+                }
+                break;
+            case PLA:
+                for (int k = 0; k < size; k++)
+                {
+                    lane = group[k];
+                    a[lane] = pop(lane);
+                    setNZ(lane, a[lane]);
+                }
+                break;
+            case PLP:
+                for (int k = 0; k < size; k++)
+                {
+                    setStatus(group[k], pop(group[k]));
+                }
+                break;
+            case AND:
+                for (int k = 0; k < size; k++)
+                {
+                    lane = group[k];
+                    a[lane] &= operands[k];
+                    setNZ(lane, a[lane]);
+                }
+                break;
+            case EOR:
+                for (int k = 0; k < size; k++)
+                {
+                    lane = group[k];
+                    a[lane] ^= operands[k];
+                    setNZ(lane, a[lane]);
+                }
+                break;
+            case ORA:
+                for (int k = 0; k < size; k++)
+                {
+                    lane = group[k];
+                    a[lane] |= operands[k];
+                    setNZ(lane, a[lane]);
+                }
+                break;
+            case BIT:
+                for (int k = 0; k < size; k++)
+                {
+                    lane = group[k];
+                    sr[lane] = (short) ((sr[lane] & ~MOS6502.V_FLAG) | (operands[k] & MOS6502.V_FLAG));
+                    zResult[lane] = a[lane] & operands[k];
+                    nResult[lane] = operands[k];
+                }
+                break;
+            case ADC:
+                arithmetic(MOS6502Tables.ADC, size);
+                break;
+            case SBC:
+                arithmetic(MOS6502Tables.SBC, size);
+                break;
+            case CMP:
+                for (int k = 0; k < size; k++)
+                {
+                    setCNZ(group[k], MOS6502Tables.COMPARE[a[group[k]] << SHIFT_8BITS | operands[k]]);
+                }
+                break;
+            case CPX:
+                for (int k = 0; k < size; k++)
+                {
+                    setCNZ(group[k], MOS6502Tables.COMPARE[x[group[k]] << SHIFT_8BITS | operands[k]]);
+                }
+                break;
+            case CPY:
+                for (int k = 0; k < size; k++)
+                {
+                    setCNZ(group[k], MOS6502Tables.COMPARE[y[group[k]] << SHIFT_8BITS | operands[k]]);
+                }
+                break;
+            case INC:
+                for (int k = 0; k < size; k++)
+                {
+                    lane = group[k];
+                    short value = (short) ((read(lane, operands[k]) + 1) & BYTE_MASK);
+                    write(lane, operands[k], value);
+                    setNZ(lane, value);
+                }
+                break;
+            case DEC:
+                for (int k = 0; k < size; k++)
+                {
+                    lane = group[k];
+                    short value = (short) ((read(lane, operands[k]) - 1) & BYTE_MASK);
+                    write(lane, operands[k], value);
+                    setNZ(lane, value);
+                }
+                break;
+            case INX:
+                for (int k = 0; k < size; k++)
+                {
+                    lane = group[k];
+                    x[lane] = (short) ((x[lane] + 1) & BYTE_MASK);
+                    setNZ(lane, x[lane]);
+                }
+                break;
+            case INY:
+                for (int k = 0; k < size; k++)
+                {
+                    lane = group[k];
+                    y[lane] = (short) ((y[lane] + 1) & BYTE_MASK);
+                    setNZ(lane, y[lane]);
+                }
+                break;
+            case DEX:
+                for (int k = 0; k < size; k++)
+                {
+                    lane = group[k];
+                    x[lane] = (short) ((x[lane] - 1) & BYTE_MASK);
+                    setNZ(lane, x[lane]);
+                }
+                break;
+            case DEY:
+                for (int k = 0; k < size; k++)
+                {
+                    lane = group[k];
+                    y[lane] = (short) ((y[lane] - 1) & BYTE_MASK);
+                    setNZ(lane, y[lane]);
+                }
+                break;
+            case ASL:
+                shift(MOS6502Tables.ASL, opcode, size);
+                break;
+            case LSR:
+                shift(MOS6502Tables.LSR, opcode, size);
+                break;
+            case ROL:
+                shift(MOS6502Tables.ROL, opcode, size);
+                break;
+            case ROR:
+                shift(MOS6502Tables.ROR, opcode, size);
+                break;
+            case JMP:
+                for (int k = 0; k < size; k++)
+                {
+                    pc[group[k]] = operands[k];
+                }
+                break;
+            case JSR:
+                for (int k = 0; k < size; k++)
+                {
+                    lane = group[k];
+                    pushShort(lane, (pc[lane] - 1) & SHORT_MASK);
+                    pc[lane] = operands[k];
+                }
+                break;
+            case RTS:
+                for (int k = 0; k < size; k++)
+                {
+                    lane = group[k];
+                    pc[lane] = (popShort(lane) + 1) & SHORT_MASK;
+                }
+                break;
+            case BCC:
+                for (int k = 0; k < size; k++)
+                {
+                    branch(group[k], (sr[group[k]] & MOS6502.C_FLAG) == 0, operands[k]);
+                }
+                break;
+            case BCS:
+                for (int k = 0; k < size; k++)
+                {
+                    branch(group[k], (sr[group[k]] & MOS6502.C_FLAG) != 0, operands[k]);
+                }
+                break;
+            case BEQ:
+                for (int k = 0; k < size; k++)
+                {
+                    branch(group[k], zResult[group[k]] == 0, operands[k]);
+                }
+                break;
+            case BNE:
+                for (int k = 0; k < size; k++)
+                {
+                    branch(group[k], zResult[group[k]] != 0, operands[k]);
+                }
+                break;
+            case BMI:
+                for (int k = 0; k < size; k++)
+                {
+                    branch(group[k], (nResult[group[k]] & MOS6502.N_FLAG) != 0, operands[k]);
+                }
+                break;
+            case BPL:
+                for (int k = 0; k < size; k++)
+                {
+                    branch(group[k], (nResult[group[k]] & MOS6502.N_FLAG) == 0, operands[k]);
+                }
+                break;
+            case BVC:
+                for (int k = 0; k < size; k++)
+                {
+                    branch(group[k], (sr[group[k]] & MOS6502.V_FLAG) == 0, operands[k]);
+                }
+                break;
+            case BVS:
+                for (int k = 0; k < size; k++)
+                {
+                    branch(group[k], (sr[group[k]] & MOS6502.V_FLAG) != 0, operands[k]);
+                }
+                break;
+            case CLC:
+                flag(MOS6502.C_FLAG, false, size);
+                break;
+            case CLD:
+                flag(MOS6502.D_FLAG, false, size);
+                break;
+            case CLI:
+                flag(MOS6502.I_FLAG, false, size);
+                break;
+            case CLV:
+                flag(MOS6502.V_FLAG, false, size);
+                break;
+            case SEC:
+                flag(MOS6502.C_FLAG, true, size);
+                break;
+            case SED:
+                flag(MOS6502.D_FLAG, true, size);
+                break;
+            case SEI:
+                flag(MOS6502.I_FLAG, true, size);
+                break;
+            case BRK:
+                for (int k = 0; k < size; k++)
+                {
+                    lane = group[k];
+                    pushShort(lane, (pc[lane] + 1) & SHORT_MASK);
+                    push(lane, (short) (getSr(lane) | MOS6502.B_FLAG | MOS6502.UNUSED_FLAG));
+                    sr[lane] |= MOS6502.I_FLAG;
+                    pc[lane] = readShort(lane, BREAK_ADDRESS);
+                }
+                break;
+            case RTI:
+                for (int k = 0; k < size; k++)
+                {
+                    lane = group[k];
+                    setStatus(lane, pop(lane));
+                    pc[lane] = popShort(lane);
+                }
+                break;
+            case NOP:
+                break;
+            default:
+                for (int k = 0; k < size; k++)
+                {
+                    lane = group[k];
+                    cycles[lane] += ILLEGAL_CYCLES;
+                    LOG.error("MOS-6502 lane " + lane + ": Illegal opcode: " + Util.hex((byte) opcode) + " at "
+                        + Util.hex((short) (pc[lane] - 1)));
+                }
+                break;
+        }
+    }
+
+    private void arithmetic(short[] table, int size)
+    {
+        for (int k = 0; k < size; k++)
+        {
+            int lane = group[k];
+            int result = table[(sr[lane] & MOS6502.C_FLAG) << 16 | (sr[lane] & MOS6502.D_FLAG) << 14
+                | a[lane] << SHIFT_8BITS | operands[k]];
+            a[lane] = (short) (result & BYTE_MASK);
+            int flags = result >> SHIFT_8BITS;
+            sr[lane] = (short) ((sr[lane] & ~(MOS6502.C_FLAG | MOS6502.V_FLAG))
+                | (flags & (MOS6502.C_FLAG | MOS6502.V_FLAG)));
+            zResult[lane] = ~flags & MOS6502.Z_FLAG;
+            nResult[lane] = flags;
+        }
+    }
+
+    private void shift(short[] table, short opcode, int size)
+    {
+        boolean accumulator = MOS6502Instructions.TABLE[opcode].mode == Instruction.ACCUMULATOR;
+        for (int k = 0; k < size; k++)
+        {
+            int lane = group[k];
+            short value = accumulator ? a[lane] : read(lane, operands[k]);
+            int result = table[(sr[lane] & MOS6502.C_FLAG) << SHIFT_8BITS | value];
+            setCNZ(lane, result >> SHIFT_8BITS);
+            if (accumulator)
+            {
+                a[lane] = (short) (result & BYTE_MASK);
+            }
+            else
+            {
+                write(lane, operands[k], (short) (result & BYTE_MASK));
+            }
+        }
+    }
+
+    private void flag(short flag, boolean set, int size)
+    {
+        for (int k = 0; k < size; k++)
+        {
+            int lane = group[k];
+            sr[lane] = (short) (set ? sr[lane] | flag : sr[lane] & ~flag);
+        }
+    }
+
+    private void branch(int lane, boolean condition, int offset)
+    {
+        if (condition)
+        {
+            int target = (pc[lane] + (byte) offset) & SHORT_MASK;
+            cycles[lane] += (target & PAGE_CROSS_TEST) != (pc[lane] & PAGE_CROSS_TEST) ? 2 : 1;
+            pc[lane] = target;
+        }
+    }
+
+    private int indexed(int lane, int base, short index, boolean reads)
+    {
+        int result = (base + index) & SHORT_MASK;
+        if (reads && (base & PAGE_CROSS_TEST) != (result & PAGE_CROSS_TEST))
+        {
+            cycles[lane]++;
+        }
+        return result;
+    }
+
+    private short read(int lane, int address)
+    {
+        return (short) (memory[lane * LANE_STRIDE + address] & BYTE_MASK);
+    }
+
+    private int readShort(int lane, int address)
+    {
+        return read(lane, address) | read(lane, (address + 1) & SHORT_MASK) << SHIFT_8BITS;
+    }
+
+    private int readShortZeroPage(int lane, int address)
+    {
+        return read(lane, address) | read(lane, (address + 1) & BYTE_MASK) << SHIFT_8BITS;
+    }
+
+    private void write(int lane, int address, short value)
+    {
+        memory[lane * LANE_STRIDE + address] = (byte) value;
+        shared[address >> SHIFT_8BITS] = false;
+    }
+
+    private void push(int lane, short value)
+    {
+        write(lane, STACK_ADDRESS + sp[lane], value);
+        sp[lane] = (short) ((sp[lane] - 1) & BYTE_MASK);
+    }
+
+    private void pushShort(int lane, int value)
+    {
+        push(lane, (short) (value >> SHIFT_8BITS));
+        push(lane, (short) (value & BYTE_MASK));
+    }
+
+    private short pop(int lane)
+    {
+        sp[lane] = (short) ((sp[lane] + 1) & BYTE_MASK);
+        return read(lane, STACK_ADDRESS + sp[lane]);
+    }
+
+    private int popShort(int lane)
+    {
+        int low = pop(lane);
+        return low | pop(lane) << SHIFT_8BITS;
+    }
+
+    private void setNZ(int lane, short value)
+    {
+        zResult[lane] = value;
+        nResult[lane] = value;
+    }
+
+    private void setCNZ(int lane, int flags)
+    {
+        sr[lane] = (short) ((sr[lane] & ~MOS6502.C_FLAG) | (flags & MOS6502.C_FLAG));
+        zResult[lane] = ~flags & MOS6502.Z_FLAG;
+        nResult[lane] = flags;
+    }
+
+    private void setStatus(int lane, short value)
+    {
+        sr[lane] = value;
+        zResult[lane] = (value & MOS6502.Z_FLAG) == 0 ? 1 : 0;
+        nResult[lane] = value & MOS6502.N_FLAG;
+    }
+
+    /**
+     * Get the memory of a lane, as a view of the arena.
+     *
+     * @param lane
+     *            the index of the CPU
+     * @return the 64KB of the lane
+     */
+    public BlockMemory getMemory(final int lane)
+    {
+        return new AbstractMemory()
+        {
+            private final int base = lane * LANE_STRIDE;
+
+            @Override
+            public short readByte(int address)
+            {
+                return (short) (memory[base + (address & SHORT_MASK)] & BYTE_MASK);
+            }
+
+            @Override
+            public void writeByte(int address, short value)
+            {
+                memory[base + (address & SHORT_MASK)] = (byte) value;
+                shared[(address & SHORT_MASK) >> SHIFT_8BITS] = false;
+            }
+        };
+    }
+
+    /**
+     * Write the same bytes in the memory of every lane, as the code they all
+     * run. Unlike the writes of a single lane, it leaves the pages shared by
+     * every lane shared, so their code is only fetched once per group.
+     *
+     * @param address
+     *            the address of the first byte
+     * @param source
+     *            the array of the bytes
+     * @param offset
+     *            the index of the first byte in the array
+     * @param length
+     *            the number of bytes
+     */
+    public void writeAll(int address, byte[] source, int offset, int length)
+    {
+        for (int lane = 0; lane < lanes; lane++)
+        {
+            int base = lane * LANE_STRIDE;
+            for (int i = 0; i < length; i++)
+            {
+                memory[base + ((address + i) & SHORT_MASK)] = source[offset + i];
+            }
+        }
+    }
+
+    /**
+     * Put the state of a lane in a buffer, with the layout of
+     * {@link MOS6502#saveState(ByteBuffer)}.
+     *
+     * @param lane
+     *            the index of the CPU
+     * @param buffer
+     *            the buffer where to put the state
+     */
+    public void saveState(int lane, ByteBuffer buffer)
+    {
+        buffer.putLong(cycles[lane]);
+        buffer.putShort((short) pc[lane]);
+        buffer.put((byte) a[lane]);
+        buffer.put((byte) x[lane]);
+        buffer.put((byte) y[lane]);
+        buffer.put((byte) sp[lane]);
+        buffer.put((byte) getSr(lane));
+        buffer.put((byte) 0);
+    }
+
+    /**
+     * Get the state of a lane from a buffer, with the layout of
+     * {@link MOS6502#saveState(ByteBuffer)}.
+     *
+     * @param lane
+     *            the index of the CPU
+     * @param buffer
+     *            the buffer where to get the state
+     */
+    public void loadState(int lane, ByteBuffer buffer)
+    {
+        cycles[lane] = buffer.getLong();
+        pc[lane] = buffer.getShort() & SHORT_MASK;
+        a[lane] = (short) (buffer.get() & BYTE_MASK);
+        x[lane] = (short) (buffer.get() & BYTE_MASK);
+        y[lane] = (short) (buffer.get() & BYTE_MASK);
+        sp[lane] = (short) (buffer.get() & BYTE_MASK);
+        setStatus(lane, (short) (buffer.get() & BYTE_MASK));
+        buffer.get();
+    }
+
+    public short getA(int lane)
+    {
+        return a[lane];
+    }
+
+    public short getX(int lane)
+    {
+        return x[lane];
+    }
+
+    public short getY(int lane)
+    {
+        return y[lane];
+    }
+
+    public short getSp(int lane)
+    {
+        return sp[lane];
+    }
+
+    /**
+     * @param lane
+     *            the index of the CPU
+     * @return the status register, with the N and Z flags computed from the
+     *         last results
+     */
+    public short getSr(int lane)
+    {
+        return (short) ((sr[lane] & ~(MOS6502.Z_FLAG | MOS6502.N_FLAG)) | (zResult[lane] == 0 ? MOS6502.Z_FLAG : 0)
+            | (nResult[lane] & MOS6502.N_FLAG));
+    }
+
+    public int getPc(int lane)
+    {
+        return pc[lane];
+    }
+
+    /**
+     * Set the address of the next instruction of a lane.
+     *
+     * @param lane
+     *            the index of the CPU
+     * @param address
+     *            the 16bits address
+     */
+    public void setPc(int lane, int address)
+    {
+        pc[lane] = address & SHORT_MASK;
+    }
+
+    public long getCycles(int lane)
+    {
+        return cycles[lane];
+    }
+
+}
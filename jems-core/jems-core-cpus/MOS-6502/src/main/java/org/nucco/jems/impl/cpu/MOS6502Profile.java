@@ -0,0 +1,207 @@
+package org.nucco.jems.impl.cpu;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.nucco.jems.util.Util;
+
+/**
+ * Execution counters of a {@link MOS6502}: the number of actions and the
+ * cycles they consumed, per opcode and per pc. In sampling mode, only one
+ * action every interval on average is counted: the counts are then samples,
+ * and the report scales them back by the interval. The actions between two
+ * samples vary randomly around the interval, so that a loop of a period
+ * dividing it is not always sampled at the same instruction.
+ * 
+ * @see MOS6502#setProfile(MOS6502Profile)
+ */
+public final class MOS6502Profile
+{
+
+    private static final int OPCODES = 0x100;
+    private static final int ADDRESSES = 0x10000;
+    private static final String HEADER = "%-6s %12s %14s %6s%n";
+    private static final String LINE = "%-6s %12d %14d %6.2f%n";
+
+    private static final int SEED = 0x2545F491;
+
+    final int interval;
+    int countdown; // actions before the next sample
+    private int random = SEED; // xorshift state
+
+    private final long[] opcodeCounts = new long[OPCODES];
+    private final long[] opcodeCycles = new long[OPCODES];
+    private final long[] pcCounts = new long[ADDRESSES];
+    private final long[] pcCycles = new long[ADDRESSES];
+
+    /**
+     * Count every action.
+     */
+    public MOS6502Profile()
+    {
+        this(1);
+    }
+
+    /**
+     * @param interval
+     *            the number of actions per sample, 1 to count every action
+     * @throws IllegalArgumentException
+     *             if the interval is not positive
+     */
+    public MOS6502Profile(int interval)
+    {
+        if (interval <= 0)
+        {
+            throw new IllegalArgumentException("Interval of " + interval + " actions");
+        }
+        this.interval = interval;
+        this.countdown = next();
+    }
+
+    /*
+     * (non-Javadoc) Get the number of actions before the next sample, from 1
+     * to twice the interval - 1, the interval on average.
+     */
+    int next()
+    {
+        random ^= random << 13;
+        random ^= random >>> 17;
+        random ^= random << 5;
+        return 1 + (int) ((random & 0xFFFFFFFFL) % (2L * interval - 1));
+    }
+
+    /*
+     * (non-Javadoc) Count a sampled action.
+     */
+    void record(int pc, int opcode, long cycles)
+    {
+        opcodeCounts[opcode]++;
+        opcodeCycles[opcode] += cycles;
+        pcCounts[pc]++;
+        pcCycles[pc] += cycles;
+    }
+
+    /**
+     * @return the number of actions per sample
+     */
+    public int getInterval()
+    {
+        return interval;
+    }
+
+    public long getOpcodeCount(int opcode)
+    {
+        return opcodeCounts[opcode];
+    }
+
+    public long getOpcodeCycles(int opcode)
+    {
+        return opcodeCycles[opcode];
+    }
+
+    public long getPcCount(int pc)
+    {
+        return pcCounts[pc];
+    }
+
+    public long getPcCycles(int pc)
+    {
+        return pcCycles[pc];
+    }
+
+    /**
+     * @return the number of actions sampled
+     */
+    public long getSamples()
+    {
+        long samples = 0;
+        for (long count : opcodeCounts)
+        {
+            samples += count;
+        }
+        return samples;
+    }
+
+    /**
+     * Reset every counter.
+     */
+    public void clear()
+    {
+        Arrays.fill(opcodeCounts, 0);
+        Arrays.fill(opcodeCycles, 0);
+        Arrays.fill(pcCounts, 0);
+        Arrays.fill(pcCycles, 0);
+        random = SEED;
+        countdown = next();
+    }
+
+    /**
+     * Write the opcodes and the pcs consuming the most cycles, in decreasing
+     * order, one per line: opcode or pc, actions, cycles and share of the
+     * cycles, the actions and cycles being estimated in sampling mode.
+     * 
+     * @param output
+     *            where to write the report
+     * @param top
+     *            the number of opcodes and of pcs to list
+     * @throws IOException
+     *             if writing failed
+     */
+    public void report(Appendable output, int top) throws IOException
+    {
+        long total = 0;
+        for (long cycles : opcodeCycles)
+        {
+            total += cycles;
+        }
+        output.append(String.format(HEADER, "opcode", "actions", "cycles", "%"));
+        for (int opcode : sort(opcodeCycles, top))
+        {
+            String name = Util.hex((byte) opcode) + " " + MOS6502Instructions.TABLE[opcode].mnemonic;
+            line(output, name, opcodeCounts[opcode], opcodeCycles[opcode], total);
+        }
+        output.append(String.format(HEADER, "pc", "actions", "cycles", "%"));
+        for (int pc : sort(pcCycles, top))
+        {
+            line(output, Util.hex((short) pc), pcCounts[pc], pcCycles[pc], total);
+        }
+    }
+
+    private void line(Appendable output, String name, long count, long cycles, long total) throws IOException
+    {
+        output.append(String.format(LINE, name, count * interval, cycles * interval,
+            100.0 * cycles / total));
+    }
+
+    /*
+     * Get the indexes of the greatest non zero values, in decreasing order.
+     */
+    private static Integer[] sort(final long[] values, int top)
+    {
+        int count = 0;
+        for (long value : values)
+        {
+            count += value != 0 ? 1 : 0;
+        }
+        Integer[] indexes = new Integer[count];
+        for (int i = 0, j = 0; i < values.length; i++)
+        {
+            if (values[i] != 0)
+            {
+                indexes[j++] = i;
+            }
+        }
+        Arrays.sort(indexes, new Comparator<Integer>()
+        {
+            @Override
+            public int compare(Integer a, Integer b)
+            {
+                long difference = values[b] - values[a];
+                return difference > 0 ? 1 : difference < 0 ? -1 : a - b;
+            }
+        });
+        return Arrays.copyOf(indexes, Math.min(top, count));
+    }
+
+}
@@ -0,0 +1,172 @@
+package org.nucco.jems.impl.cpu;
+
+/**
+ * Precomputed results of the MOS-6502 arithmetic, compare and shift
+ * operations. Each entry holds the flags the operation sets, at their place in
+ * the status register, above the 8 bits result, so that an operation is a
+ * single load whatever its operands.
+ */
+final class MOS6502Tables
+{
+
+    private static final int VALUES = 0x100;
+    private static final int BYTE_MASK = 0xFF;
+    private static final int LOW_NIBBLE = 0x0F;
+    private static final int HIGH_NIBBLE = 0xF0;
+    private static final byte SHIFT_8BITS = 8;
+    private static final int CARRY_INDEX = 0x10000;
+    private static final int DECIMAL_INDEX = 0x20000;
+
+    /**
+     * Result and C, Z, V, N flags of ADC, indexed by decimal mode, carry,
+     * accumulator and operand: {@code D << 17 | C << 16 | A << 8 | M}.
+     */
+    static final short[] ADC = new short[2 * DECIMAL_INDEX];
+
+    /**
+     * Result and C, Z, V, N flags of SBC, indexed as {@link #ADC}.
+     */
+    static final short[] SBC = new short[2 * DECIMAL_INDEX];
+
+    /**
+     * C, Z, N flags of CMP, CPX and CPY, indexed by register and operand:
+     * {@code R << 8 | M}.
+     */
+    static final byte[] COMPARE = new byte[VALUES * VALUES];
+
+    /**
+     * Result and C, Z, N flags of the shifts and rotations, indexed by carry
+     * and operand: {@code C << 8 | M}.
+     */
+    static final short[] ASL = new short[2 * VALUES];
+    static final short[] LSR = new short[2 * VALUES];
+    static final short[] ROL = new short[2 * VALUES];
+    static final short[] ROR = new short[2 * VALUES];
+
+    static
+    {
+        for (int a = 0; a < VALUES; a++)
+        {
+            for (int m = 0; m < VALUES; m++)
+            {
+                for (int c = 0; c < 2; c++)
+                {
+                    int index = c * CARRY_INDEX | a << SHIFT_8BITS | m;
+                    ADC[index] = adc(a, m, c);
+                    SBC[index] = adc(a, m ^ BYTE_MASK, c);
+                    ADC[DECIMAL_INDEX | index] = adcDecimal(a, m, c);
+                    SBC[DECIMAL_INDEX | index] = sbcDecimal(a, m, c);
+                }
+
+                int difference = a - m;
+                int flags = nz(difference & BYTE_MASK);
+                if (difference >= 0)
+                {
+                    flags |= MOS6502.C_FLAG;
+                }
+                COMPARE[a << SHIFT_8BITS | m] = (byte) flags;
+            }
+        }
+
+        for (int c = 0; c < 2; c++)
+        {
+            for (int m = 0; m < VALUES; m++)
+            {
+                int index = c << SHIFT_8BITS | m;
+                ASL[index] = shift(m << 1, m >> 7);
+                LSR[index] = shift(m >> 1, m & 1);
+                ROL[index] = shift(m << 1 | c, m >> 7);
+                ROR[index] = shift(m >> 1 | c << 7, m & 1);
+            }
+        }
+    }
+
+    private MOS6502Tables()
+    {
+    }
+
+    private static int nz(int value)
+    {
+        return MOS6502.ZNTABLE[value];
+    }
+
+    private static short entry(int result, int flags)
+    {
+        return (short) (flags << SHIFT_8BITS | (result & BYTE_MASK));
+    }
+
+    private static short adc(int a, int m, int c)
+    {
+        int sum = a + m + c;
+        int flags = nz(sum & BYTE_MASK);
+        if (sum > BYTE_MASK)
+        {
+            flags |= MOS6502.C_FLAG;
+        }
+        if ((~(a ^ m) & (a ^ sum) & MOS6502.N_FLAG) != 0)
+        {
+            flags |= MOS6502.V_FLAG;
+        }
+
+        return entry(sum, flags);
+    }
+
+    /*
+     * Decimal ADC of the NMOS 6502: Z comes from the binary sum, N and V from
+     * the sum before the high nibble is adjusted.
+     */
+    private static short adcDecimal(int a, int m, int c)
+    {
+        int low = (a & LOW_NIBBLE) + (m & LOW_NIBBLE) + c;
+        if (low >= 0x0A)
+        {
+            low = ((low + 0x06) & LOW_NIBBLE) + 0x10;
+        }
+        int sum = (a & HIGH_NIBBLE) + (m & HIGH_NIBBLE) + low;
+
+        int flags = ((a + m + c) & BYTE_MASK) == 0 ? MOS6502.Z_FLAG : 0;
+        flags |= sum & MOS6502.N_FLAG;
+        if ((~(a ^ m) & (a ^ sum) & MOS6502.N_FLAG) != 0)
+        {
+            flags |= MOS6502.V_FLAG;
+        }
+        if (sum >= 0xA0)
+        {
+            sum += 0x60;
+        }
+        if (sum > BYTE_MASK)
+        {
+            flags |= MOS6502.C_FLAG;
+        }
+
+        return entry(sum, flags);
+    }
+
+    /*
+     * Decimal SBC of the NMOS 6502: the flags are the ones of the binary
+     * subtraction, only the result is adjusted.
+     */
+    private static short sbcDecimal(int a, int m, int c)
+    {
+        int flags = adc(a, m ^ BYTE_MASK, c) >> SHIFT_8BITS & BYTE_MASK;
+
+        int low = (a & LOW_NIBBLE) - (m & LOW_NIBBLE) + c - 1;
+        if (low < 0)
+        {
+            low = ((low - 0x06) & LOW_NIBBLE) - 0x10;
+        }
+        int difference = (a & HIGH_NIBBLE) - (m & HIGH_NIBBLE) + low;
+        if (difference < 0)
+        {
+            difference -= 0x60;
+        }
+
+        return entry(difference, flags);
+    }
+
+    private static short shift(int result, int carry)
+    {
+        return entry(result, nz(result & BYTE_MASK) | carry);
+    }
+
+}
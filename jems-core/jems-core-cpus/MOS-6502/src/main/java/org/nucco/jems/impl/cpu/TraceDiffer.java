@@ -0,0 +1,116 @@
+package org.nucco.jems.impl.cpu;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Runs a {@link MOS6502} in lockstep with a golden binary trace, as recorded
+ * by {@link MOS6502#setTracer}, and stops at the first action where the
+ * cycles, pc, instruction bytes or registers differ. The trace is mapped in
+ * windows and read once, front to back, so traces larger than the memory are
+ * compared at the speed of the disk or of the CPU.
+ */
+public final class TraceDiffer
+{
+
+    public static final int DEFAULT_CONTEXT = 8;
+
+    private static final int WINDOW_SIZE = 1 << 28; // bytes mapped at once, a multiple of the record size
+
+    private final MOS6502 cpu;
+    private int contextSize = DEFAULT_CONTEXT;
+    private long compared;
+
+    /**
+     * @param cpu
+     *            the CPU to check, in the state of the first record
+     */
+    public TraceDiffer(MOS6502 cpu)
+    {
+        this.cpu = cpu;
+    }
+
+    /**
+     * @param records
+     *            the number of golden records to show before and after a
+     *            mismatch
+     */
+    public void setContext(int records)
+    {
+        this.contextSize = records;
+    }
+
+    /**
+     * @return the number of records found matching by the last comparison
+     */
+    public long getCompared()
+    {
+        return compared;
+    }
+
+    /**
+     * Compare the CPU with the records of a golden trace, stepping it once
+     * per record. As in a traced run, the interrupts are taken before reading
+     * the records, taking an interrupt not being an action. A partial record
+     * at the end of the file is ignored.
+     * 
+     * @param golden
+     *            the golden trace
+     * @return the first mismatch, null if every record matched
+     * @throws IOException
+     *             if reading the trace failed
+     */
+    public TraceMismatch compare(FileChannel golden) throws IOException
+    {
+        compared = 0;
+        long size = golden.size() - golden.size() % MOS6502.TRACE_RECORD_SIZE;
+        for (long start = 0; start < size; start += WINDOW_SIZE)
+        {
+            int length = (int) Math.min(WINDOW_SIZE, size - start);
+            MappedByteBuffer window = golden.map(FileChannel.MapMode.READ_ONLY, start, length);
+            window.order(ByteOrder.LITTLE_ENDIAN);
+            for (int offset = 0; offset < length; offset += MOS6502.TRACE_RECORD_SIZE)
+            {
+                while (cpu.pending != 0 && cpu.interrupt())
+                {
+                    // the record is the one of the first instruction of the handler
+                }
+                long head = cpu.traceHead();
+                long state = cpu.traceState();
+                if (head != window.getLong(offset) || state != window.getLong(offset + 8))
+                {
+                    return mismatch(golden, size, window.getLong(offset), window.getLong(offset + 8), head, state);
+                }
+                compared++;
+                cpu.step();
+            }
+        }
+        return null;
+    }
+
+    /*
+     * Read the golden records around the mismatch.
+     */
+    private TraceMismatch mismatch(FileChannel golden, long size, long expectedHead, long expectedState,
+        long actualHead, long actualState) throws IOException
+    {
+        long index = compared;
+        long first = Math.max(0, index - contextSize);
+        long last = Math.min(size / MOS6502.TRACE_RECORD_SIZE, index + contextSize + 1);
+        ByteBuffer records = ByteBuffer.allocate((int) (last - first) * MOS6502.TRACE_RECORD_SIZE);
+        records.order(ByteOrder.LITTLE_ENDIAN);
+        while (records.hasRemaining())
+        {
+            golden.read(records, first * MOS6502.TRACE_RECORD_SIZE + records.position());
+        }
+        records.flip();
+        long[] context = new long[records.remaining() / 8];
+        records.asLongBuffer().get(context);
+        return new TraceMismatch(index, new long[] { expectedHead, expectedState },
+            new long[] { actualHead, actualState }, first, context);
+    }
+
+}
@@ -0,0 +1,255 @@
+package org.nucco.jems.impl.cpu;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+import org.nucco.jems.util.Util;
+
+/**
+ * Renders the binary trace of a {@link MOS6502} into text lines in the layout
+ * of the nestest reference log, disassembled:
+ * 
+ * <pre>
+ * C000  4C F5 C5  JMP $C5F5                       A:00 X:00 Y:00 P:24 SP:FD CYC:7
+ * </pre>
+ * 
+ * The trace holds no memory contents, so the operands are shown as written,
+ * not resolved. Lines are built in a reusable byte array and written to the
+ * channel when it is full: formatting does not allocate.
+ */
+public final class TraceFormatter
+{
+
+    public static final int BUFFER_SIZE = 0x10000;
+
+    static final int LINE_SIZE = 128; // longest line, rounded up
+    private static final int OPERAND_COLUMN = 16;
+    private static final int REGISTERS_COLUMN = 48;
+    private static final int BYTE_MASK = 0xFF;
+    private static final long CYCLES_MASK = 0xFFFFFFFFFFFFL;
+
+    private static final byte[][] MNEMONICS = new byte[0x100][];
+    private static final byte[] MODES = new byte[0x100];
+    private static final byte[] REGISTERS = " A:   X:   Y:   P:   SP:   CYC:".getBytes();
+
+    static
+    {
+        for (int opcode = 0; opcode < 0x100; opcode++)
+        {
+            Instruction instruction = MOS6502Instructions.TABLE[opcode];
+            MNEMONICS[opcode] = instruction.mnemonic.getBytes();
+            MODES[opcode] = instruction.mode;
+        }
+    }
+
+    private final WritableByteChannel output;
+    private final byte[] text = new byte[BUFFER_SIZE];
+    private final ByteBuffer textBuffer = ByteBuffer.wrap(text);
+    private final ByteBuffer input = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private int length; // of the pending text
+
+    /**
+     * @param output
+     *            the channel where to write the lines
+     */
+    public TraceFormatter(WritableByteChannel output)
+    {
+        this.output = output;
+    }
+
+    /**
+     * Format the records of a channel until its end.
+     * 
+     * @param channel
+     *            the binary trace
+     * @return the number of records formatted
+     * @throws IOException
+     *             if reading or writing failed
+     */
+    public long format(ReadableByteChannel channel) throws IOException
+    {
+        long count = 0;
+        input.clear();
+        while (channel.read(input) >= 0)
+        {
+            input.flip();
+            count += format(input);
+            input.compact();
+        }
+        input.flip();
+        count += format(input);
+        flush();
+        return count;
+    }
+
+    /**
+     * Format the whole records of a buffer, in little endian, from its
+     * position. The position is left at the first partial record.
+     * 
+     * @param records
+     *            the binary trace
+     * @return the number of records formatted
+     * @throws IOException
+     *             if writing failed
+     */
+    public int format(ByteBuffer records) throws IOException
+    {
+        int count = 0;
+        int position = records.position();
+        ByteOrder order = records.order();
+        records.order(ByteOrder.LITTLE_ENDIAN);
+        while (records.limit() - position >= MOS6502.TRACE_RECORD_SIZE)
+        {
+            if (length > BUFFER_SIZE - LINE_SIZE)
+            {
+                write();
+            }
+            length = format(records.getLong(position), records.getLong(position + 8), text, length);
+            position += MOS6502.TRACE_RECORD_SIZE;
+            count++;
+        }
+        records.position(position);
+        records.order(order);
+        return count;
+    }
+
+    /**
+     * Write the pending text to the channel.
+     * 
+     * @throws IOException
+     *             if writing failed
+     */
+    public void flush() throws IOException
+    {
+        write();
+    }
+
+    /*
+     * Format a record given as its two little endian longs.
+     * 
+     * @return the offset after the line
+     */
+    static int format(long first, long second, byte[] line, int offset)
+    {
+        int start = offset;
+        int pc = (int) (first >>> 48);
+        int opcode = (int) second & BYTE_MASK;
+        int low = (int) (second >>> 8) & BYTE_MASK;
+        int high = (int) (second >>> 16) & BYTE_MASK;
+        byte mode = MODES[opcode];
+        int size = Instruction.LENGTHS[mode];
+
+        offset = Util.hex((short) pc, line, offset);
+        Arrays.fill(line, offset, start + OPERAND_COLUMN, (byte) ' ');
+        offset = Util.hex((byte) opcode, line, offset + 2);
+        if (size > 1)
+        {
+            offset = Util.hex((byte) low, line, offset + 1);
+        }
+        if (size > 2)
+        {
+            Util.hex((byte) high, line, offset + 1);
+        }
+
+        offset = start + OPERAND_COLUMN;
+        byte[] mnemonic = MNEMONICS[opcode];
+        System.arraycopy(mnemonic, 0, line, offset, mnemonic.length);
+        offset += mnemonic.length;
+        int end = start + REGISTERS_COLUMN;
+        Arrays.fill(line, offset, end, (byte) ' ');
+        operand(mode, pc, low, high, line, offset + 1);
+
+        System.arraycopy(REGISTERS, 0, line, end - 1, REGISTERS.length);
+        Util.hex((byte) (second >>> 24), line, end + 2);
+        Util.hex((byte) (second >>> 32), line, end + 7);
+        Util.hex((byte) (second >>> 40), line, end + 12);
+        Util.hex((byte) (second >>> 56), line, end + 17);
+        Util.hex((byte) (second >>> 48), line, end + 23);
+        offset = Util.decimal(first & CYCLES_MASK, line, end + REGISTERS.length - 1);
+        line[offset++] = '\n';
+        return offset;
+    }
+
+    /*
+     * Write the operand of an instruction as an assembler would.
+     */
+    private static void operand(byte mode, int pc, int low, int high, byte[] line, int offset)
+    {
+        switch (mode)
+        {
+            case Instruction.IMMEDIATE:
+                line[offset++] = '#';
+                line[offset++] = '$';
+                Util.hex((byte) low, line, offset);
+                break;
+            case Instruction.ZERO_PAGE:
+            case Instruction.ZERO_PAGE_X:
+            case Instruction.ZERO_PAGE_Y:
+                line[offset++] = '$';
+                offset = Util.hex((byte) low, line, offset);
+                index(mode == Instruction.ZERO_PAGE_X ? 'X' : mode == Instruction.ZERO_PAGE_Y ? 'Y' : 0, line, offset);
+                break;
+            case Instruction.ABSOLUTE:
+            case Instruction.ABSOLUTE_X:
+            case Instruction.ABSOLUTE_Y:
+                line[offset++] = '$';
+                offset = Util.hex((short) (low | high << 8), line, offset);
+                index(mode == Instruction.ABSOLUTE_X ? 'X' : mode == Instruction.ABSOLUTE_Y ? 'Y' : 0, line, offset);
+                break;
+            case Instruction.INDIRECT:
+                line[offset++] = '(';
+                line[offset++] = '$';
+                offset = Util.hex((short) (low | high << 8), line, offset);
+                line[offset] = ')';
+                break;
+            case Instruction.INDIRECT_X:
+                line[offset++] = '(';
+                line[offset++] = '$';
+                offset = Util.hex((byte) low, line, offset);
+                offset = index('X', line, offset);
+                line[offset] = ')';
+                break;
+            case Instruction.INDIRECT_Y:
+                line[offset++] = '(';
+                line[offset++] = '$';
+                offset = Util.hex((byte) low, line, offset);
+                line[offset++] = ')';
+                index('Y', line, offset);
+                break;
+            case Instruction.ACCUMULATOR:
+                line[offset] = 'A';
+                break;
+            case Instruction.RELATIVE:
+                line[offset++] = '$';
+                Util.hex((short) (pc + 2 + (byte) low), line, offset);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static int index(int register, byte[] line, int offset)
+    {
+        if (register != 0)
+        {
+            line[offset++] = ',';
+            line[offset++] = (byte) register;
+        }
+        return offset;
+    }
+
+    private void write() throws IOException
+    {
+        textBuffer.limit(length).position(0);
+        while (textBuffer.hasRemaining())
+        {
+            output.write(textBuffer);
+        }
+        length = 0;
+    }
+
+}
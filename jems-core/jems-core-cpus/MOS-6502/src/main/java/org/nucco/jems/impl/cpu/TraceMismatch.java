@@ -0,0 +1,97 @@
+package org.nucco.jems.impl.cpu;
+
+/**
+ * The first action where a {@link MOS6502} departs from a golden trace, with
+ * the records of the golden trace around it.
+ */
+public final class TraceMismatch
+{
+
+    private static final int RECORD_LONGS = 2;
+
+    private final long index;
+    private final long[] expected;
+    private final long[] actual;
+    private final long contextStart;
+    private final long[] context;
+
+    TraceMismatch(long index, long[] expected, long[] actual, long contextStart, long[] context)
+    {
+        this.index = index;
+        this.expected = expected;
+        this.actual = actual;
+        this.contextStart = contextStart;
+        this.context = context;
+    }
+
+    /**
+     * @return the index of the record of the mismatch in the golden trace
+     */
+    public long getIndex()
+    {
+        return index;
+    }
+
+    /**
+     * @return the pc the golden trace expected
+     */
+    public int getExpectedPc()
+    {
+        return (int) (expected[0] >>> 48);
+    }
+
+    /**
+     * @return the pc of the CPU
+     */
+    public int getActualPc()
+    {
+        return (int) (actual[0] >>> 48);
+    }
+
+    /**
+     * @return the number of records of context around the mismatch
+     */
+    public int getContextSize()
+    {
+        return context.length / RECORD_LONGS;
+    }
+
+    /**
+     * Render the context, the expected record and the actual one in the text
+     * layout of {@link TraceFormatter}: the golden records before the mismatch,
+     * the expected and actual records marked with "-" and "+", then the golden
+     * records after it.
+     */
+    @Override
+    public String toString()
+    {
+        byte[] line = new byte[TraceFormatter.LINE_SIZE];
+        StringBuilder result = new StringBuilder();
+        result.append("Mismatch at record ").append(index).append(":\n");
+        for (int i = 0; i < context.length; i += RECORD_LONGS)
+        {
+            long record = contextStart + i / RECORD_LONGS;
+            if (record == index)
+            {
+                append(result, "- ", expected, line);
+                append(result, "+ ", actual, line);
+            }
+            else
+            {
+                append(result, "  ", new long[] { context[i], context[i + 1] }, line);
+            }
+        }
+        return result.toString();
+    }
+
+    private static void append(StringBuilder result, String prefix, long[] record, byte[] line)
+    {
+        int length = TraceFormatter.format(record[0], record[1], line, 0);
+        result.append(prefix);
+        for (int i = 0; i < length; i++)
+        {
+            result.append((char) line[i]);
+        }
+    }
+
+}
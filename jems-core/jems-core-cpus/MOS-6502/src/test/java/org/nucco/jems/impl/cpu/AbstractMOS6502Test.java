@@ -12,7 +12,7 @@ import org.nucco.jems.api.memory.Memory;
 public abstract class AbstractMOS6502Test
 {
 
-    private IMocksControl control;
+    protected IMocksControl control;
     protected Memory memory;
     protected MOS6502 cpu;
 
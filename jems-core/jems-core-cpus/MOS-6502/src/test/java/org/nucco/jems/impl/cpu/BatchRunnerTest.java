@@ -0,0 +1,152 @@
+package org.nucco.jems.impl.cpu;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.nucco.jems.api.memory.Memory;
+import org.nucco.jems.impl.memory.RAM;
+
+public class BatchRunnerTest
+{
+
+    private static final int ORIGIN = 0x0200;
+    private static final int HALT = 0x020A;
+
+    private BatchRunner runner;
+
+    @Before
+    public void setUp()
+    {
+        runner = new BatchRunner(4, MOS6502.Engine.THREADED, 100);
+    }
+
+    @After
+    public void tearDown()
+    {
+        runner.shutdown();
+    }
+
+    /*
+     * LDX #count; loop: DEX; BNE loop; LDA #value; STA $0300; halt: JMP halt
+     */
+    private static byte[] program(int count, int value)
+    {
+        return new byte[] { (byte) 0xA2, (byte) count, (byte) 0xCA, (byte) 0xD0, (byte) 0xFD, (byte) 0xA9,
+            (byte) value, (byte) 0x8D, 0x00, 0x03, 0x4C, (byte) HALT, (byte) (HALT >> 8) };
+    }
+
+    @Test
+    public void test_Batch()
+    {
+        List<BatchJob> jobs = new ArrayList<BatchJob>();
+        for (int i = 0; i < 200; i++)
+        {
+            jobs.add(new BatchJob(i, program(i, i), ORIGIN, ORIGIN, 100000, BatchJob.haltAt(HALT)));
+        }
+
+        boolean[] done = new boolean[jobs.size()];
+        for (Iterator<BatchResult> results = runner.run(jobs); results.hasNext();)
+        {
+            BatchResult result = results.next();
+            int id = result.getJob().getId();
+            Assert.assertFalse(done[id]);
+            done[id] = true;
+            Assert.assertEquals(BatchResult.Status.HALTED, result.getStatus());
+            Assert.assertEquals(id, result.getMemory().readByte(0x0300));
+            ByteBuffer state = ByteBuffer.wrap(result.getState());
+            Assert.assertEquals(result.getCycles(), state.getLong());
+            Assert.assertEquals(HALT, state.getShort());
+            Assert.assertEquals(id, state.get() & 0xFF);
+            Assert.assertEquals(0, state.get());
+        }
+        for (boolean d : done)
+        {
+            Assert.assertTrue(d);
+        }
+    }
+
+    @Test
+    public void test_Timeout()
+    {
+        // LDX #0, the loop runs 256 times
+        BatchJob job = new BatchJob(0, program(0, 1), ORIGIN, ORIGIN, 1000, BatchJob.haltAt(HALT));
+        BatchResult result = runner.runAll(Collections.singletonList(job)).get(0);
+        Assert.assertEquals(BatchResult.Status.TIMEOUT, result.getStatus());
+        Assert.assertTrue(result.getCycles() >= 1000 && result.getCycles() < 1010);
+        Assert.assertEquals(0, result.getMemory().readByte(0x0300));
+    }
+
+    @Test
+    public void test_EntryState()
+    {
+        // start on the LDA, with the cycles counted from 500
+        MOS6502 cpu = new MOS6502(new RAM());
+        cpu.setPc(ORIGIN + 5);
+        cpu.run(500);
+        cpu.setPc(ORIGIN + 5);
+        ByteBuffer state = ByteBuffer.allocate(cpu.getStateSize());
+        cpu.saveState(state);
+        long start = cpu.getCycles();
+
+        BatchJob job = new BatchJob(7, program(1, 0x42), ORIGIN, state.array(), 100, BatchJob.haltAt(HALT));
+        BatchResult result = runner.runAll(Collections.singletonList(job)).get(0);
+        Assert.assertEquals(BatchResult.Status.HALTED, result.getStatus());
+        Assert.assertEquals(0x42, result.getMemory().readByte(0x0300));
+        Assert.assertEquals(start + result.getCycles(), ByteBuffer.wrap(result.getState()).getLong());
+    }
+
+    @Test
+    public void test_Failure()
+    {
+        BatchJob job = new BatchJob(0, program(1, 1), ORIGIN, ORIGIN, 100, new BatchJob.HaltCondition()
+        {
+            @Override
+            public boolean isHalted(MOS6502 cpu, Memory memory)
+            {
+                throw new IllegalStateException("halt");
+            }
+        });
+        BatchResult result = runner.runAll(Collections.singletonList(job)).get(0);
+        Assert.assertEquals(BatchResult.Status.FAILED, result.getStatus());
+        Assert.assertEquals("halt", result.getError().getMessage());
+    }
+
+    @Test(timeout = 10000)
+    public void test_Failure_Error()
+    {
+        // an error in a job must not kill its worker before the result
+        List<BatchJob> jobs = new ArrayList<BatchJob>();
+        for (int i = 0; i < 4; i++)
+        {
+            jobs.add(new BatchJob(i, program(1, 1), ORIGIN, ORIGIN, 100, new BatchJob.HaltCondition()
+            {
+                @Override
+                public boolean isHalted(MOS6502 cpu, Memory memory)
+                {
+                    throw new AssertionError("halt");
+                }
+            }));
+        }
+        List<BatchResult> results = runner.runAll(jobs);
+        Assert.assertEquals(4, results.size());
+        for (BatchResult result : results)
+        {
+            Assert.assertEquals(BatchResult.Status.FAILED, result.getStatus());
+            Assert.assertTrue(result.getError() instanceof AssertionError);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_Budget()
+    {
+        new BatchJob(0, program(1, 1), ORIGIN, ORIGIN, 0, null);
+    }
+
+}
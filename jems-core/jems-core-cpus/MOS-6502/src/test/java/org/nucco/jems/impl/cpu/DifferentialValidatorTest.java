@@ -0,0 +1,127 @@
+package org.nucco.jems.impl.cpu;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.nucco.jems.impl.memory.AbstractMemory;
+import org.nucco.jems.impl.memory.CopyOnWriteMemory;
+import org.nucco.jems.impl.memory.PagedMemory;
+
+public class DifferentialValidatorTest
+{
+
+    // loop: LDA $0400,X; ADC #$11; STA $0300,X; INX; JMP loop
+    private static final byte[] PROGRAM = { (byte) 0xBD, 0x00, 0x04, 0x69, 0x11, (byte) 0x9D, 0x00, 0x03,
+        (byte) 0xE8, 0x4C, 0x00, 0x02 };
+
+    private CopyOnWriteMemory referenceMemory;
+    private CopyOnWriteMemory candidateMemory;
+
+    @Before
+    public void setUp()
+    {
+        referenceMemory = new CopyOnWriteMemory();
+        referenceMemory.writeBlock(0x0200, PROGRAM, 0, PROGRAM.length);
+        for (int i = 0; i < 0x100; i++)
+        {
+            referenceMemory.writeByte(0x0400 + i, (short) (i * 13));
+        }
+        candidateMemory = referenceMemory.fork();
+    }
+
+    private DifferentialValidator validator(MOS6502.Engine engine, long interval)
+    {
+        MOS6502 reference = new MOS6502(referenceMemory);
+        reference.setPc(0x0200);
+        MOS6502 candidate = new MOS6502(candidateMemory);
+        candidate.setEngine(engine);
+        candidate.setPc(0x0200);
+        return new DifferentialValidator(reference, referenceMemory, candidate, candidateMemory, interval);
+    }
+
+    @Test
+    public void test_Agree()
+    {
+        for (MOS6502.Engine engine : MOS6502.Engine.values())
+        {
+            setUp();
+            DifferentialValidator validator = validator(engine, 1);
+            validator.run(10000);
+            Assert.assertFalse(engine.name(), validator.isDiverged());
+            Assert.assertEquals(10000 / 16 * 5, validator.getChecks());
+
+            validator = validator(engine, 1000);
+            validator.run(10000);
+            Assert.assertNull(validator.getDivergence());
+            Assert.assertEquals(10, validator.getChecks());
+        }
+    }
+
+    @Test
+    public void test_StateDivergence()
+    {
+        candidateMemory.writeByte(0x0480, (short) 0x00);
+        DifferentialValidator validator = validator(MOS6502.Engine.THREADED, 1);
+        validator.run(10000);
+        Assert.assertTrue(validator.isDiverged());
+        Assert.assertTrue(validator.getDivergence(), validator.getDivergence().contains("state byte"));
+        Assert.assertEquals(0x81 * 16 + 4, validator.getCycles()); // X starts at FF
+    }
+
+    @Test
+    public void test_WriteDivergence()
+    {
+        candidateMemory.writeByte(0x0206, (short) 0x01); // STA $0301,X
+        DifferentialValidator validator = validator(MOS6502.Engine.PREDECODED, 100);
+        validator.run(10000);
+        Assert.assertEquals("At cycle 100, address 0300: reference 12, candidate 00", validator.getDivergence());
+        validator.run(10000);
+        Assert.assertEquals(100, validator.getCycles());
+    }
+
+    @Test
+    public void test_IOPage()
+    {
+        final int[] reads = new int[1];
+        PagedMemory[] buses = new PagedMemory[2];
+        for (int i = 0; i < buses.length; i++)
+        {
+            byte[] ram = new byte[0x10000];
+            referenceMemory.readBlock(0, ram, 0, ram.length);
+            buses[i] = new PagedMemory();
+            buses[i].mapRAM(0x00, PagedMemory.PAGES, ram, 0);
+            buses[i].map(0x03, 0x01, new AbstractMemory()
+            {
+
+                @Override
+                public short readByte(int address)
+                {
+                    reads[0]++;
+                    return 0;
+                }
+
+                @Override
+                public void writeByte(int address, short value)
+                {
+                }
+
+            });
+        }
+        MOS6502 reference = new MOS6502(buses[0]);
+        reference.setPc(0x0200);
+        MOS6502 candidate = new MOS6502(buses[1]);
+        candidate.setEngine(MOS6502.Engine.THREADED);
+        candidate.setPc(0x0200);
+        DifferentialValidator validator = new DifferentialValidator(reference, buses[0], candidate, buses[1], 1);
+        validator.run(10000);
+        Assert.assertNull(validator.getDivergence());
+        Assert.assertEquals(0, reads[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_Interval()
+    {
+        validator(MOS6502.Engine.SWITCH, 0);
+    }
+
+}
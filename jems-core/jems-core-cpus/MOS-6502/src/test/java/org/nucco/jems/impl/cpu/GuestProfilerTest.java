@@ -0,0 +1,137 @@
+package org.nucco.jems.impl.cpu;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.nucco.jems.impl.memory.RAM;
+
+public class GuestProfilerTest
+{
+
+    private RAM memory;
+    private MOS6502 cpu;
+    private GuestProfiler profiler;
+
+    private void load(int address, int... program)
+    {
+        for (int i = 0; i < program.length; i++)
+        {
+            memory.writeByte(address + i, (short) program[i]);
+        }
+    }
+
+    @Before
+    public void setUp()
+    {
+        Assume.assumeTrue(MOS6502.PROFILING);
+        memory = new RAM();
+        // main: JSR outer; JMP main
+        load(0x0200, 0x20, 0x00, 0x03, 0x4C, 0x00, 0x02);
+        // outer: JSR inner; LDX #$10; loop: DEX; BNE loop; RTS
+        load(0x0300, 0x20, 0x00, 0x04, 0xA2, 0x10, 0xCA, 0xD0, 0xFD, 0x60);
+        // inner: LDY #$40; loop: DEY; BNE loop; RTS
+        load(0x0400, 0xA0, 0x40, 0x88, 0xD0, 0xFD, 0x60);
+        cpu = new MOS6502(memory);
+        cpu.setPc(0x0200);
+        profiler = new GuestProfiler(1000000);
+        cpu.setSampler(profiler);
+    }
+
+    private String[] sampleSteps(int steps) throws IOException
+    {
+        for (int i = 0; i < steps; i++)
+        {
+            profiler.request();
+            cpu.step();
+        }
+        StringBuilder output = new StringBuilder();
+        profiler.writeCollapsed(output);
+        return output.toString().split("\n");
+    }
+
+    private static long count(String[] lines, String stack)
+    {
+        for (String line : lines)
+        {
+            if (line.startsWith(stack + " "))
+            {
+                return Long.parseLong(line.substring(stack.length() + 1));
+            }
+        }
+        return 0;
+    }
+
+    @Test
+    public void test_ShadowStack() throws IOException
+    {
+        // a lap: JSR, JSR, LDY, 64 DEY and BNE, RTS, LDX, 16 DEX and BNE, RTS, JMP
+        int lap = 1 + 1 + 1 + 2 * 64 + 1 + 1 + 2 * 16 + 1 + 1;
+        String[] lines = sampleSteps(3 * lap);
+        Assert.assertEquals(3 * lap, profiler.getSamples());
+        Assert.assertEquals(0, profiler.getDropped());
+        Assert.assertEquals(3 * 64, count(lines, "6502;$0300;$0400;$0403"));
+        Assert.assertEquals(3 * 64, count(lines, "6502;$0300;$0400;$0402"));
+        Assert.assertEquals(3 * 16, count(lines, "6502;$0300;$0306"));
+        Assert.assertEquals(3, count(lines, "6502;$0200")); // after the JMP
+        Assert.assertEquals(3, count(lines, "6502;$0300;$0303")); // after the RTS of inner
+    }
+
+    @Test
+    public void test_Symbols() throws IOException
+    {
+        Assert.assertEquals(3, profiler.loadSymbols(new StringReader("outer = $0300\n; comment\nal C:0400 .inner\n"
+            + "0200 main\n")));
+        String[] lines = sampleSteps(4);
+        Assert.assertEquals(1, count(lines, "6502;outer;outer"));
+        Assert.assertEquals(1, count(lines, "6502;outer;inner;inner"));
+        Assert.assertEquals(1, count(lines, "6502;outer;inner;inner+2"));
+        Assert.assertEquals(1, count(lines, "6502;outer;inner;inner+3"));
+    }
+
+    @Test
+    public void test_Symbols_HexLetters() throws IOException
+    {
+        // labels made of hexadecimal letters, a bare address after its label
+        Assert.assertEquals(2, profiler.loadSymbols(new StringReader("dead = $0300 ; outer\nbeef $0400\ncafe 0200\n")));
+        String[] lines = sampleSteps(4);
+        Assert.assertEquals(1, count(lines, "6502;dead;dead"));
+        Assert.assertEquals(1, count(lines, "6502;dead;beef;beef"));
+    }
+
+    @Test
+    public void test_Interrupt() throws IOException
+    {
+        // handler: NOP; RTI
+        load(0x0500, 0xEA, 0x40);
+        load(0xFFFA, 0x00, 0x05);
+        cpu.run(2000);
+        cpu.setNmi(true);
+        String[] lines = sampleSteps(2); // the interrupt, then the NOP
+        Assert.assertEquals(1, lines.length);
+        Assert.assertTrue(lines[0], lines[0].matches("6502;\\$0300(;\\$0400)?;\\$0500;\\$0501 1"));
+    }
+
+    @Test
+    public void test_Background() throws IOException
+    {
+        profiler = new GuestProfiler(100000);
+        cpu.setSampler(profiler);
+        profiler.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (profiler.getSamples() < 10 && System.currentTimeMillis() < deadline)
+        {
+            cpu.run(100000);
+        }
+        profiler.stop();
+        Assert.assertTrue(profiler.getSamples() >= 10);
+        StringBuilder output = new StringBuilder();
+        profiler.writeCollapsed(output);
+        // the stacks are sorted, a few samples may land in main before outer
+        Assert.assertTrue(output.toString(), output.toString().contains("6502;$0300"));
+    }
+
+}
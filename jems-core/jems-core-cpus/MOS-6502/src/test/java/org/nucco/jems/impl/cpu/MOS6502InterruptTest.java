@@ -0,0 +1,216 @@
+package org.nucco.jems.impl.cpu;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.nucco.jems.impl.memory.AbstractMemory;
+import org.nucco.jems.impl.memory.RAM;
+
+/**
+ * Check the IRQ and NMI lines with every engine.
+ */
+public class MOS6502InterruptTest
+{
+
+    private static final int LOOP = 0x0200; // loop: INX; JMP loop
+    private static final int UNMASK = 0x0210; // CLI; loop: INX; JMP loop
+    private static final int IRQ_HANDLER = 0x0300; // INC $10; RTI
+    private static final int NMI_HANDLER = 0x0380; // INC $11; RTI
+
+    private static void load(AbstractMemory memory, int address, int... program)
+    {
+        for (int i = 0; i < program.length; i++)
+        {
+            memory.writeByte(address + i, (short) program[i]);
+        }
+    }
+
+    private static void loadHandlers(AbstractMemory memory)
+    {
+        load(memory, LOOP, 0xE8, 0x4C, 0x00, 0x02);
+        load(memory, UNMASK, 0x58, 0xE8, 0x4C, 0x11, 0x02);
+        load(memory, IRQ_HANDLER, 0xE6, 0x10, 0x40);
+        load(memory, NMI_HANDLER, 0xE6, 0x11, 0x40);
+        load(memory, 0xFFFA, NMI_HANDLER & 0xFF, NMI_HANDLER >> 8);
+        load(memory, 0xFFFE, IRQ_HANDLER & 0xFF, IRQ_HANDLER >> 8);
+    }
+
+    private static MOS6502 cpu(RAM memory, MOS6502.Engine engine, int pc)
+    {
+        loadHandlers(memory);
+        MOS6502 cpu = new MOS6502(memory);
+        cpu.setEngine(engine);
+        cpu.setPc(pc);
+        return cpu;
+    }
+
+    @Test
+    public void test_IRQ()
+    {
+        for (MOS6502.Engine engine : MOS6502.Engine.values())
+        {
+            RAM memory = new RAM();
+            MOS6502 cpu = cpu(memory, engine, UNMASK);
+            cpu.setIrq(true);
+            cpu.run(2);
+            cpu.step();
+            Assert.assertEquals(engine.name(), IRQ_HANDLER, cpu.getPc());
+            Assert.assertEquals(2 + 7, cpu.getCycles());
+            Assert.assertEquals(0xFC, cpu.getSp());
+            Assert.assertEquals(0x02, memory.readByte(0x01FF));
+            Assert.assertEquals(0x11, memory.readByte(0x01FE));
+            Assert.assertEquals(0xEB, memory.readByte(0x01FD)); // B clear, I clear
+            Assert.assertEquals(MOS6502.I_FLAG, cpu.getSr() & MOS6502.I_FLAG);
+        }
+    }
+
+    @Test
+    public void test_IRQ_Masked()
+    {
+        for (MOS6502.Engine engine : MOS6502.Engine.values())
+        {
+            RAM memory = new RAM();
+            MOS6502 cpu = cpu(memory, engine, LOOP);
+            cpu.setIrq(true);
+            cpu.run(100);
+            Assert.assertEquals(engine.name(), 0, memory.readByte(0x10));
+            Assert.assertEquals((0xFF + 20) & 0xFF, cpu.getX());
+        }
+    }
+
+    @Test
+    public void test_IRQ_LevelTriggered()
+    {
+        for (MOS6502.Engine engine : MOS6502.Engine.values())
+        {
+            // CLI, then the handler runs again as long as the line is asserted:
+            // the INC ends at cycles 14, 32 and 50
+            RAM memory = new RAM();
+            MOS6502 cpu = cpu(memory, engine, UNMASK);
+            cpu.setIrq(true);
+            cpu.run(50);
+            Assert.assertEquals(engine.name(), 3, memory.readByte(0x10));
+            Assert.assertEquals(0xFF, cpu.getX());
+
+            cpu.run(6); // RTI
+            cpu.setIrq(false);
+            cpu.run(100);
+            Assert.assertEquals(3, memory.readByte(0x10));
+            Assert.assertEquals((0xFF + 20) & 0xFF, cpu.getX());
+        }
+    }
+
+    @Test
+    public void test_NMI()
+    {
+        for (MOS6502.Engine engine : MOS6502.Engine.values())
+        {
+            RAM memory = new RAM();
+            MOS6502 cpu = cpu(memory, engine, LOOP);
+            cpu.setNmi(true);
+            cpu.run(100);
+            Assert.assertEquals(engine.name(), 1, memory.readByte(0x11));
+
+            cpu.setNmi(true);
+            cpu.run(100);
+            Assert.assertEquals(1, memory.readByte(0x11));
+
+            cpu.setNmi(false);
+            cpu.setNmi(true);
+            cpu.step();
+            Assert.assertEquals(NMI_HANDLER, cpu.getPc());
+            Assert.assertEquals(0, memory.readByte(0x10));
+        }
+    }
+
+    @Test
+    public void test_IRQ_RaisedByDevice()
+    {
+        // CLI; LDA #$01; STA $D000; loop: INX; JMP loop
+        // handler: LDA #$00; STA $D000; INC $10; RTI
+        final MOS6502[] cpu = new MOS6502[1];
+        final byte[] bytes = new byte[RAM.SIZE];
+        AbstractMemory memory = new AbstractMemory()
+        {
+            @Override
+            public short readByte(int address)
+            {
+                return (short) (bytes[address & SHORT_MASK] & BYTE_MASK);
+            }
+
+            @Override
+            public void writeByte(int address, short value)
+            {
+                bytes[address & SHORT_MASK] = (byte) value;
+                if (address == 0xD000)
+                {
+                    cpu[0].setIrq(value != 0);
+                }
+            }
+        };
+        loadHandlers(memory);
+        load(memory, 0x0220, 0x58, 0xA9, 0x01, 0x8D, 0x00, 0xD0, 0xE8, 0x4C, 0x26, 0x02);
+        load(memory, IRQ_HANDLER, 0xA9, 0x00, 0x8D, 0x00, 0xD0, 0xE6, 0x10, 0x40);
+        cpu[0] = new MOS6502(memory);
+        cpu[0].setPc(0x0220);
+        cpu[0].run(1000);
+        Assert.assertEquals(1, memory.readByte(0x10));
+        Assert.assertEquals(0x0226, memory.readByte(0x01FE) | memory.readByte(0x01FF) << 8);
+    }
+
+    @Test
+    public void test_Preempt()
+    {
+        // LDA #$01; STA $D000; loop: INX; JMP loop, the write preempting
+        for (MOS6502.Engine engine : MOS6502.Engine.values())
+        {
+            final MOS6502[] cpu = new MOS6502[1];
+            final byte[] bytes = new byte[RAM.SIZE];
+            AbstractMemory memory = new AbstractMemory()
+            {
+                @Override
+                public short readByte(int address)
+                {
+                    return (short) (bytes[address & SHORT_MASK] & BYTE_MASK);
+                }
+
+                @Override
+                public void writeByte(int address, short value)
+                {
+                    bytes[address & SHORT_MASK] = (byte) value;
+                    if (address == 0xD000)
+                    {
+                        cpu[0].preempt();
+                    }
+                }
+            };
+            load(memory, 0x0220, 0xA9, 0x01, 0x8D, 0x00, 0xD0, 0xE8, 0x4C, 0x25, 0x02);
+            cpu[0] = new MOS6502(memory);
+            cpu[0].setEngine(engine);
+            cpu[0].setPc(0x0220);
+            Assert.assertEquals(engine.name(), 2 + 4, cpu[0].run(1000));
+            Assert.assertEquals(0x0225, cpu[0].getPc());
+            Assert.assertEquals(1000, cpu[0].run(1000));
+        }
+    }
+
+    @Test
+    public void test_State()
+    {
+        RAM memory = new RAM();
+        MOS6502 cpu = cpu(memory, MOS6502.Engine.SWITCH, LOOP);
+        cpu.setNmi(true);
+        ByteBuffer state = ByteBuffer.allocate(cpu.getStateSize());
+        cpu.saveState(state);
+
+        MOS6502 restored = new MOS6502(memory);
+        state.flip();
+        restored.loadState(state);
+        restored.step();
+        Assert.assertEquals(NMI_HANDLER, restored.getPc());
+        restored.setNmi(true);
+        Assert.assertEquals(0, restored.pending);
+    }
+
+}
@@ -0,0 +1,195 @@
+package org.nucco.jems.impl.cpu;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.nucco.jems.api.memory.Memory;
+import org.nucco.jems.impl.memory.Memories;
+import org.nucco.jems.impl.memory.RAM;
+
+/**
+ * Check the lanes against as many {@link MOS6502} running the same code on the
+ * same data.
+ */
+public class MOS6502LockstepTest
+{
+
+    private static final int ORIGIN = 0x0200;
+    private static final int HALT = 0x0214;
+
+    // $0200: CLD; LDA $10; AND #$07; TAX; BEQ done; loop: JSR $0300; DEX;
+    // BNE loop; SED; ADC #$19; CLD; done: STA $20; halt: JMP halt
+    private static final int[] PROGRAM = { 0xD8, 0xA5, 0x10, 0x29, 0x07, 0xAA, 0xF0, 0x0A, 0x20, 0x00, 0x03, 0xCA,
+        0xD0, 0xFA, 0xF8, 0x69, 0x19, 0xD8, 0x85, 0x20, 0x4C, 0x14, 0x02 };
+
+    // $0300: ASL A; BCC +2; EOR #$A5; PHA; PLA; STA ($30),Y; INY; RTS
+    private static final int[] SUBROUTINE = { 0x0A, 0x90, 0x02, 0x49, 0xA5, 0x48, 0x68, 0x91, 0x30, 0xC8, 0x60 };
+
+    private static void load(Memory memory, int address, int... bytes)
+    {
+        for (int i = 0; i < bytes.length; i++)
+        {
+            memory.writeByte(address + i, (short) bytes[i]);
+        }
+    }
+
+    private static byte[] bytes(int... values)
+    {
+        byte[] result = new byte[values.length];
+        for (int i = 0; i < values.length; i++)
+        {
+            result[i] = (byte) values[i];
+        }
+        return result;
+    }
+
+    private static void assertSame(MOS6502 expected, MOS6502Lockstep lockstep, int lane)
+    {
+        ByteBuffer state = ByteBuffer.allocate(MOS6502.STATE_SIZE);
+        expected.saveState(state);
+        ByteBuffer actual = ByteBuffer.allocate(MOS6502.STATE_SIZE);
+        lockstep.saveState(lane, actual);
+        Assert.assertArrayEquals("lane " + lane, state.array(), actual.array());
+    }
+
+    private static void assertSame(Memory expected, Memory actual)
+    {
+        byte[] expectedBytes = new byte[MOS6502Lockstep.MEMORY_SIZE];
+        byte[] actualBytes = new byte[MOS6502Lockstep.MEMORY_SIZE];
+        Memories.readBlock(expected, 0, expectedBytes, 0, expectedBytes.length);
+        Memories.readBlock(actual, 0, actualBytes, 0, actualBytes.length);
+        Assert.assertArrayEquals(expectedBytes, actualBytes);
+    }
+
+    @Test
+    public void test_Program()
+    {
+        int lanes = 32;
+        MOS6502Lockstep lockstep = new MOS6502Lockstep(lanes);
+        lockstep.setHalt(HALT);
+        lockstep.writeAll(ORIGIN, bytes(PROGRAM), 0, PROGRAM.length);
+        lockstep.writeAll(0x0300, bytes(SUBROUTINE), 0, SUBROUTINE.length);
+        for (int lane = 0; lane < lanes; lane++)
+        {
+            Memory memory = lockstep.getMemory(lane);
+            load(memory, 0x0010, lane * 37);
+            load(memory, 0x0030, 0x00, 0x04);
+            lockstep.setPc(lane, ORIGIN);
+        }
+        lockstep.run(100000);
+
+        for (int lane = 0; lane < lanes; lane++)
+        {
+            RAM memory = new RAM();
+            load(memory, ORIGIN, PROGRAM);
+            load(memory, 0x0300, SUBROUTINE);
+            load(memory, 0x0010, lane * 37);
+            load(memory, 0x0030, 0x00, 0x04);
+            MOS6502 cpu = new MOS6502(memory);
+            cpu.setPc(ORIGIN);
+            while (cpu.getPc() != HALT)
+            {
+                cpu.step();
+            }
+
+            Assert.assertTrue(lockstep.isHalted(lane));
+            assertSame(cpu, lockstep, lane);
+            assertSame(memory, lockstep.getMemory(lane));
+        }
+        Assert.assertTrue(lockstep.getGroupSteps() < lockstep.getLaneSteps() / 4);
+    }
+
+    @Test
+    public void test_SelfModifyingCode()
+    {
+        // $0200: LDA $10; STA $0206; LDA #$00; STA $20; halt: JMP halt
+        byte[] program = bytes(0xA5, 0x10, 0x8D, 0x06, 0x02, 0xA9, 0x00, 0x85, 0x20, 0x4C, 0x09, 0x02);
+        MOS6502Lockstep lockstep = new MOS6502Lockstep(4);
+        lockstep.setHalt(0x0209);
+        lockstep.writeAll(ORIGIN, program, 0, program.length);
+        for (int lane = 0; lane < 4; lane++)
+        {
+            load(lockstep.getMemory(lane), 0x0010, lane + 1);
+            lockstep.setPc(lane, ORIGIN);
+        }
+        lockstep.run(1000);
+        for (int lane = 0; lane < 4; lane++)
+        {
+            Assert.assertTrue(lockstep.isHalted(lane));
+            Assert.assertEquals(lane + 1, lockstep.getMemory(lane).readByte(0x0020));
+            Assert.assertEquals(3 + 4 + 2 + 3, lockstep.getCycles(lane));
+        }
+        Assert.assertEquals(4, lockstep.getGroupSteps());
+    }
+
+    @Test
+    public void test_Budget()
+    {
+        // $0200: INX; JMP $0200, each lane starting one instruction apart
+        MOS6502Lockstep lockstep = new MOS6502Lockstep(2);
+        for (int lane = 0; lane < 2; lane++)
+        {
+            load(lockstep.getMemory(lane), ORIGIN, 0xE8, 0x4C, 0x00, 0x02);
+            lockstep.setPc(lane, ORIGIN + lane);
+        }
+        lockstep.run(101);
+        Assert.assertEquals(102, lockstep.getCycles(0));
+        Assert.assertEquals(103, lockstep.getCycles(1));
+        Assert.assertEquals(0x14, lockstep.getX(0));
+        Assert.assertEquals(0x13, lockstep.getX(1));
+        Assert.assertEquals(41 + 41, lockstep.getLaneSteps());
+        Assert.assertFalse(lockstep.isHalted(0));
+    }
+
+    @Test
+    public void test_RandomCode()
+    {
+        int lanes = 8;
+        for (long seed = 1; seed <= 4; seed++)
+        {
+            Random random = new Random(seed);
+            short[] legal = new short[0x100];
+            int count = 0;
+            for (short opcode = 0; opcode < 0x100; opcode++)
+            {
+                if (MOS6502Instructions.isLegal(opcode))
+                {
+                    legal[count++] = opcode;
+                }
+            }
+
+            MOS6502Lockstep lockstep = new MOS6502Lockstep(lanes);
+            RAM[] memories = new RAM[lanes];
+            byte[] code = new byte[0x100];
+            for (int i = 0; i < code.length; i++)
+            {
+                code[i] = (byte) legal[random.nextInt(count)];
+            }
+            for (int lane = 0; lane < lanes; lane++)
+            {
+                memories[lane] = new RAM();
+                for (int address = 0; address < MOS6502Lockstep.MEMORY_SIZE; address++)
+                {
+                    memories[lane].writeByte(address, legal[random.nextInt(count)]);
+                }
+                memories[lane].writeBlock(ORIGIN, code, 0, code.length);
+                load(memories[lane], 0xFFFE, ORIGIN & 0xFF, ORIGIN >> 8);
+                lockstep.getMemory(lane).writeBlock(0, memories[lane].getBytes(), 0, RAM.SIZE);
+                lockstep.setPc(lane, ORIGIN);
+            }
+            lockstep.run(5000);
+
+            for (int lane = 0; lane < lanes; lane++)
+            {
+                MOS6502 cpu = new MOS6502(memories[lane]);
+                cpu.setPc(ORIGIN);
+                cpu.run(5000);
+                assertSame(cpu, lockstep, lane);
+                assertSame(memories[lane], lockstep.getMemory(lane));
+            }
+        }
+    }
+
+}
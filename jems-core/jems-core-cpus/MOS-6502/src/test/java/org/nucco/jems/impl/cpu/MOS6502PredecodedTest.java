@@ -0,0 +1,77 @@
+package org.nucco.jems.impl.cpu;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.nucco.jems.impl.memory.RAM;
+
+/**
+ * Run every instruction test against the engine running from the decode cache,
+ * and check the cache itself on a plain RAM.
+ */
+public class MOS6502PredecodedTest extends MOS6502Test
+{
+
+    @Override
+    @Before
+    public void setUp()
+    {
+        super.setUp();
+        cpu.setEngine(MOS6502.Engine.PREDECODED);
+    }
+
+    private MOS6502 ramCpu(RAM memory, int address, int... program)
+    {
+        for (int i = 0; i < program.length; i++)
+        {
+            memory.writeByte(address + i, (short) program[i]);
+        }
+        MOS6502 result = new MOS6502(memory);
+        result.setEngine(MOS6502.Engine.PREDECODED);
+
+        return result;
+    }
+
+    @Test
+    public void test_DecodeCache_Hits()
+    {
+        // $0000: INX; STX $0300; JMP $0000
+        MOS6502 loop = ramCpu(new RAM(), 0x0000, 0xE8, 0x8E, 0x00, 0x03, 0x4C, 0x00, 0x00);
+        loop.run(9 * 10);
+        Assert.assertEquals(3, loop.getDecodeCacheMisses());
+        Assert.assertEquals(27, loop.getDecodeCacheHits());
+        Assert.assertEquals(0, loop.getDecodeCacheInvalidations());
+        Assert.assertEquals(0x09, loop.getX());
+    }
+
+    @Test
+    public void test_DecodeCache_SelfModifyingCode()
+    {
+        // $0000: INC $0004; LDA #$00; STA $0300; JMP $0000
+        RAM memory = new RAM();
+        MOS6502 loop = ramCpu(memory, 0x0000, 0xEE, 0x04, 0x00, 0xA9, 0x00, 0x8D, 0x00, 0x03, 0x4C, 0x00, 0x00);
+        loop.run(15 * 3);
+        Assert.assertEquals(0x03, loop.getA());
+        Assert.assertEquals(0x03, memory.readByte(0x0300));
+        Assert.assertEquals(2, loop.getDecodeCacheInvalidations());
+        Assert.assertEquals(4 + 2, loop.getDecodeCacheMisses());
+    }
+
+    @Test
+    public void test_DecodeCache_Invalidate()
+    {
+        // $0000: LDA #$01; JMP $0000
+        RAM memory = new RAM();
+        MOS6502 loop = ramCpu(memory, 0x0000, 0xA9, 0x01, 0x4C, 0x00, 0x00);
+        loop.run(5);
+        Assert.assertEquals(0x01, loop.getA());
+
+        memory.writeByte(0x0001, (short) 0x02);
+        loop.run(5);
+        Assert.assertEquals(0x01, loop.getA());
+        loop.invalidateDecodeCache();
+        loop.run(5);
+        Assert.assertEquals(0x02, loop.getA());
+    }
+
+}
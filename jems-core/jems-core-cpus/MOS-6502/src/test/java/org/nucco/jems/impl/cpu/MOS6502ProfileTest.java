@@ -0,0 +1,116 @@
+package org.nucco.jems.impl.cpu;
+
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.nucco.jems.impl.memory.RAM;
+
+public class MOS6502ProfileTest
+{
+
+    private RAM memory;
+
+    @Before
+    public void setUp()
+    {
+        Assume.assumeTrue(MOS6502.PROFILING);
+        // $0200: LDX #$00; loop: INX; BNE loop; JMP $0200
+        memory = new RAM();
+        int[] program = { 0xA2, 0x00, 0xE8, 0xD0, 0xFD, 0x4C, 0x00, 0x02 };
+        for (int i = 0; i < program.length; i++)
+        {
+            memory.writeByte(0x0200 + i, (short) program[i]);
+        }
+    }
+
+    private MOS6502 cpu(MOS6502.Engine engine, MOS6502Profile profile)
+    {
+        MOS6502 cpu = new MOS6502(memory);
+        cpu.setEngine(engine);
+        cpu.setPc(0x0200);
+        cpu.setProfile(profile);
+        return cpu;
+    }
+
+    @Test
+    public void test_Count()
+    {
+        // a lap: LDX, 256 INX, 255 taken BNE, one not taken, JMP
+        int lap = 2 + 256 * 2 + 255 * 3 + 2 + 3;
+        for (MOS6502.Engine engine : MOS6502.Engine.values())
+        {
+            MOS6502Profile profile = new MOS6502Profile();
+            MOS6502 cpu = cpu(engine, profile);
+            cpu.step();
+            cpu.run(2 * lap - 2);
+
+            Assert.assertEquals(engine.name(), 2 * 256, profile.getOpcodeCount(0xE8));
+            Assert.assertEquals(2 * 256 * 2, profile.getOpcodeCycles(0xE8));
+            Assert.assertEquals(2 * 256, profile.getOpcodeCount(0xD0));
+            Assert.assertEquals(2 * (255 * 3 + 2), profile.getOpcodeCycles(0xD0));
+            Assert.assertEquals(2, profile.getPcCount(0x0200));
+            Assert.assertEquals(2 * 3, profile.getPcCycles(0x0205));
+            Assert.assertEquals(2 * (1 + 256 + 256 + 1), profile.getSamples());
+        }
+    }
+
+    @Test
+    public void test_Sampling()
+    {
+        MOS6502Profile profile = new MOS6502Profile(16);
+        MOS6502 cpu = cpu(MOS6502.Engine.THREADED, profile);
+        cpu.run(1000000);
+        long actions = profile.getSamples() * profile.getInterval();
+        Assert.assertTrue(actions > 1000000 / 3 - 16 && actions < 1000000 / 2);
+        Assert.assertTrue(profile.getPcCount(0x0202) > 0);
+
+        profile.clear();
+        Assert.assertEquals(0, profile.getSamples());
+        cpu.setProfile(null);
+        cpu.run(1000);
+        Assert.assertEquals(0, profile.getSamples());
+    }
+
+    @Test
+    public void test_Sampling_Loop()
+    {
+        // $0200: INX; INY; DEX; JMP $0200, a period dividing the interval
+        int[] program = { 0xE8, 0xC8, 0xCA, 0x4C, 0x00, 0x02 };
+        for (int i = 0; i < program.length; i++)
+        {
+            memory.writeByte(0x0200 + i, (short) program[i]);
+        }
+        for (MOS6502.Engine engine : MOS6502.Engine.values())
+        {
+            MOS6502Profile profile = new MOS6502Profile(64);
+            cpu(engine, profile).run(1000000);
+            long samples = profile.getSamples();
+            for (int pc : new int[] { 0x0200, 0x0201, 0x0202, 0x0203 })
+            {
+                double share = (double) profile.getPcCount(pc) / samples;
+                Assert.assertTrue(engine.name() + " " + pc + " " + share, share > 0.2 && share < 0.3);
+            }
+        }
+    }
+
+    @Test
+    public void test_Report() throws IOException
+    {
+        MOS6502Profile profile = new MOS6502Profile();
+        cpu(MOS6502.Engine.SWITCH, profile).run(10000);
+        StringBuilder report = new StringBuilder();
+        profile.report(report, 2);
+        String[] lines = report.toString().split("\n");
+        Assert.assertEquals(6, lines.length);
+        Assert.assertTrue(lines[0].startsWith("opcode"));
+        Assert.assertTrue(lines[1], lines[1].startsWith("D0 BNE"));
+        Assert.assertTrue(lines[2], lines[2].startsWith("E8 INX"));
+        Assert.assertTrue(lines[3].startsWith("pc"));
+        Assert.assertTrue(lines[4], lines[4].startsWith("0203"));
+        Assert.assertTrue(lines[5], lines[5].startsWith("0202"));
+    }
+
+}
@@ -0,0 +1,226 @@
+package org.nucco.jems.impl.cpu;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.nucco.jems.impl.memory.CopyOnWriteMemory;
+import org.nucco.jems.impl.memory.RAM;
+import org.nucco.jems.impl.state.Snapshot;
+import org.nucco.jems.impl.trace.TraceRecorder;
+
+public class MOS6502RAMTest
+{
+
+    private RAM memory;
+    private MOS6502 cpu;
+
+    @Before
+    public void setUp()
+    {
+        memory = new RAM();
+        cpu = new MOS6502(memory);
+    }
+
+    private void load(int address, int... program)
+    {
+        for (int i = 0; i < program.length; i++)
+        {
+            memory.writeByte(address + i, (short) program[i]);
+        }
+    }
+
+    @Test
+    public void test_RAM_readWrite()
+    {
+        memory.writeByte(0x1234, (short) 0xAB);
+        Assert.assertEquals(0xAB, memory.readByte(0x1234));
+        Assert.assertEquals((byte) 0xAB, memory.getBytes()[0x1234]);
+        memory.writeByte(0x1FFFF, (short) 0x12);
+        Assert.assertEquals(0x12, memory.readByte(0xFFFF));
+    }
+
+    @Test
+    public void test_LoadStore()
+    {
+        // LDA #$42; STA $0300; LDX $0300; INX; STX $10; LDY $10; DEY
+        load(0x0000, 0xA9, 0x42, 0x8D, 0x00, 0x03, 0xAE, 0x00, 0x03, 0xE8, 0x86, 0x10, 0xA4, 0x10, 0x88);
+        Assert.assertEquals(2 + 4 + 4 + 2 + 3 + 3 + 2, cpu.run(20));
+        Assert.assertEquals(0x42, cpu.getA());
+        Assert.assertEquals(0x43, cpu.getX());
+        Assert.assertEquals(0x42, cpu.getY());
+        Assert.assertEquals(0x42, memory.readByte(0x0300));
+        Assert.assertEquals(0x43, memory.readByte(0x0010));
+        Assert.assertEquals(0x000E, cpu.getPc());
+    }
+
+    @Test
+    public void test_JSR_Stack()
+    {
+        // JSR $0010; ... $0010: PHA; PLA
+        load(0x0000, 0x20, 0x10, 0x00);
+        load(0x0010, 0x48, 0x68);
+        cpu.setA((short) 0x37);
+        cpu.step();
+        Assert.assertEquals(0x0010, cpu.getPc());
+        Assert.assertEquals(0x00, memory.readByte(0x01FF));
+        Assert.assertEquals(0x02, memory.readByte(0x01FE));
+        cpu.step();
+        Assert.assertEquals(0x37, memory.readByte(0x01FD));
+        Assert.assertEquals(0xFC, cpu.getSp());
+    }
+
+    @Test
+    public void test_LazyFlags()
+    {
+        // LDA #$00; PHP; LDA #$80; PHP; PLP
+        load(0x0000, 0xA9, 0x00, 0x08, 0xA9, 0x80, 0x08, 0x28);
+        Assert.assertEquals(0xFF, cpu.getSr());
+        cpu.run(2 + 3 + 2 + 3);
+        Assert.assertEquals(0x7F, memory.readByte(0x01FF));
+        Assert.assertEquals(0xFD, memory.readByte(0x01FE));
+        Assert.assertEquals(0xFD, cpu.getSr());
+        cpu.setSR((short) 0x02);
+        Assert.assertEquals(0x02, cpu.getSr());
+        cpu.step();
+        Assert.assertEquals(0xFD, cpu.getSr());
+    }
+
+    @Test
+    public void test_Snapshot()
+    {
+        // LDX #$10; loop: TXA; STA $0300,X; LDA #$80; DEX; BNE loop
+        load(0x0000, 0xA2, 0x10, 0x8A, 0x9D, 0x00, 0x03, 0xA9, 0x80, 0xCA, 0xD0, 0xF7);
+        Snapshot snapshot = new Snapshot(cpu, memory);
+        ByteBuffer buffer = ByteBuffer.allocate(snapshot.getSize());
+        cpu.run(30);
+        snapshot.save(buffer);
+        short a = cpu.getA();
+        short x = cpu.getX();
+        short sr = cpu.getSr();
+        int pc = cpu.getPc();
+        long cycles = cpu.getCycles();
+
+        cpu.run(300);
+        Assert.assertEquals(0x01, memory.readByte(0x0301));
+        buffer.flip();
+        snapshot.restore(buffer);
+        Assert.assertEquals(a, cpu.getA());
+        Assert.assertEquals(x, cpu.getX());
+        Assert.assertEquals(sr, cpu.getSr());
+        Assert.assertEquals(pc, cpu.getPc());
+        Assert.assertEquals(cycles, cpu.getCycles());
+        Assert.assertEquals(0x00, memory.readByte(0x0301));
+        Assert.assertEquals(0x10, memory.readByte(0x0310));
+    }
+
+    @Test
+    public void test_Snapshot_DropsDecodedInstructions()
+    {
+        // LDA #$02, changed into LDA #$01 behind the CPU after the snapshot
+        load(0x0000, 0xA9, 0x02);
+        cpu.setEngine(MOS6502.Engine.PREDECODED);
+        Snapshot snapshot = new Snapshot(cpu, memory);
+        ByteBuffer buffer = ByteBuffer.allocate(snapshot.getSize());
+        snapshot.save(buffer);
+        memory.writeByte(0x0001, (short) 0x01);
+        cpu.step();
+        Assert.assertEquals(0x01, cpu.getA());
+
+        buffer.flip();
+        snapshot.restore(buffer);
+        cpu.step();
+        Assert.assertEquals(0x02, cpu.getA());
+    }
+
+    @Test
+    public void test_Fork()
+    {
+        // LDX #$10; loop: TXA; STA $0300,X; LDA #$80; DEX; BNE loop
+        CopyOnWriteMemory parent = new CopyOnWriteMemory();
+        parent.writeBlock(0x0000, new byte[] { (byte) 0xA2, 0x10, (byte) 0x8A, (byte) 0x9D, 0x00, 0x03,
+            (byte) 0xA9, (byte) 0x80, (byte) 0xCA, (byte) 0xD0, (byte) 0xF7 }, 0, 11);
+        MOS6502 original = new MOS6502(parent);
+        original.setEngine(MOS6502.Engine.PREDECODED);
+        original.run(30);
+
+        CopyOnWriteMemory child = parent.fork();
+        MOS6502 clone = original.fork(child);
+        Assert.assertEquals(MOS6502.Engine.PREDECODED, clone.getEngine());
+        Assert.assertEquals(original.getSr(), clone.getSr());
+        clone.run(300);
+        Assert.assertEquals(0x01, child.readByte(0x0301));
+        Assert.assertEquals(0x00, parent.readByte(0x0301));
+        Assert.assertEquals(2, child.getCopiedPages()); // the data and the stack of the BRK after the loop
+
+        original.run(300);
+        Assert.assertEquals(clone.getCycles(), original.getCycles());
+        Assert.assertEquals(clone.getPc(), original.getPc());
+        Assert.assertEquals(0x01, parent.readByte(0x0301));
+    }
+
+    @Test
+    public void test_DirtyPages()
+    {
+        // STA $0300; INC $4000; PHA
+        load(0x0000, 0x8D, 0x00, 0x03, 0xEE, 0x00, 0x40, 0x48);
+        memory.clearDirtyPages();
+        cpu.run(4 + 6 + 3);
+        long[] dirty = new long[4];
+        memory.getDirtyPages(dirty);
+        Assert.assertArrayEquals(new long[] { 0x0A, 1L, 0, 0 }, dirty);
+    }
+
+    @Test
+    public void test_Trace() throws IOException
+    {
+        // LDX #$03; loop: DEX; BNE loop
+        for (MOS6502.Engine engine : MOS6502.Engine.values())
+        {
+            setUp();
+            load(0x0000, 0xA2, 0x03, 0xCA, 0xD0, 0xFD);
+            cpu.setEngine(engine);
+            File file = File.createTempFile("trace", ".bin");
+            RandomAccessFile output = new RandomAccessFile(file, "rw");
+            try
+            {
+                TraceRecorder tracer = new TraceRecorder(output.getChannel(), MOS6502.TRACE_RECORD_SIZE, 2);
+                cpu.setTracer(tracer);
+                cpu.step();
+                cpu.run(2 + 3 + 2 + 3 + 2);
+                tracer.close();
+                Assert.assertEquals(6 * MOS6502.TRACE_RECORD_SIZE, output.length());
+
+                ByteBuffer trace = ByteBuffer.allocate((int) output.length()).order(ByteOrder.LITTLE_ENDIAN);
+                output.getChannel().read(trace, 0);
+                trace.flip();
+                int[] pcs = { 0x0000, 0x0002, 0x0003, 0x0002, 0x0003, 0x0002 };
+                int[] cycles = { 0, 2, 4, 7, 9, 12 };
+                // only the operand bytes of the instruction are read
+                int[] operands = { 0x03, 0x00, 0xFD, 0x00, 0xFD, 0x00 };
+                for (int i = 0; i < pcs.length; i++)
+                {
+                    long first = trace.getLong();
+                    long second = trace.getLong();
+                    Assert.assertEquals(engine.name(), cycles[i], first & 0xFFFFFFFFFFFFL);
+                    Assert.assertEquals(pcs[i], first >>> 48);
+                    Assert.assertEquals(memory.readByte(pcs[i]), second & 0xFF);
+                    Assert.assertEquals(operands[i], (second >>> 8) & 0xFFFF);
+                    Assert.assertEquals(i == 0 ? 0xFF : 3 - i / 2, (second >>> 32) & 0xFF);
+                }
+                Assert.assertEquals(0, cpu.getX());
+            }
+            finally
+            {
+                output.close();
+                file.delete();
+            }
+        }
+    }
+
+}
@@ -21,7 +21,7 @@ public class MOS6502Test extends AbstractMOS6502Test
         MOS6502State expected = new MOS6502State((short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0xFC, (short) 0xFF, (int) 0xA554);
         EasyMock.expect(memory.readByte(0x0000)).andReturn((short) 0x00);
         memory.writeByte(0x01FF, (short) 0x00);
-        memory.writeByte(0x01FE, (short) 0x01);
+        memory.writeByte(0x01FE, (short) 0x02);
         memory.writeByte(0x01FD, (short) 0xFF);
         EasyMock.expect(memory.readByte(0xFFFE)).andReturn((short) 0x54);
         EasyMock.expect(memory.readByte(0xFFFF)).andReturn((short) 0xA5);
@@ -82,7 +82,7 @@ public class MOS6502Test extends AbstractMOS6502Test
         MOS6502State expected = new MOS6502State((short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0xFE, (short) 0x58, (int) 0x0001);
         cpu.setSR((short) 0x58);
         EasyMock.expect(memory.readByte(0x0000)).andReturn((short) 0x08);
-        memory.writeByte(0x01FF, (short) 0x58);
+        memory.writeByte(0x01FF, (short) 0x78);
         test((short) 0x08, (byte) 3, expected);
     }
 
@@ -344,8 +344,8 @@ public class MOS6502Test extends AbstractMOS6502Test
     @Test
     public void test_PLP()
     {
-        MOS6502State expected = new MOS6502State((short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0x59, (short) 0x67, (int) 0x0001);
-        cpu.setSP((short) 0x58);
+        MOS6502State expected = new MOS6502State((short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0x58, (short) 0x67, (int) 0x0001);
+        cpu.setSP((short) 0x57);
         EasyMock.expect(memory.readByte(0x0000)).andReturn((short) 0x28);
         EasyMock.expect(memory.readByte(0x0158)).andReturn((short) 0x67);
         test((short) 0x28, (byte) 4, expected);
@@ -764,8 +764,8 @@ public class MOS6502Test extends AbstractMOS6502Test
     public void test_PLA_Positive()
     {
         Assert.assertEquals(4, MOS6502.CYCLES[0x68]);
-        MOS6502State expected = new MOS6502State((short) 0x08, (short) 0xFF, (short) 0xFF, (short) 0x59, (short) 0x7D, (int) 0x0001);
-        cpu.setSP((short) 0x58);
+        MOS6502State expected = new MOS6502State((short) 0x08, (short) 0xFF, (short) 0xFF, (short) 0x58, (short) 0x7D, (int) 0x0001);
+        cpu.setSP((short) 0x57);
         EasyMock.expect(memory.readByte(0x0000)).andReturn((short) 0x68);
         EasyMock.expect(memory.readByte(0x0158)).andReturn((short) 0x08);
         test((short) 0x68, (byte) 4, expected);
@@ -775,8 +775,8 @@ public class MOS6502Test extends AbstractMOS6502Test
     public void test_PLA_Zero()
     {
         Assert.assertEquals(4, MOS6502.CYCLES[0x68]);
-        MOS6502State expected = new MOS6502State((short) 0x00, (short) 0xFF, (short) 0xFF, (short) 0x59, (short) 0x7F, (int) 0x0001);
-        cpu.setSP((short) 0x58);
+        MOS6502State expected = new MOS6502State((short) 0x00, (short) 0xFF, (short) 0xFF, (short) 0x58, (short) 0x7F, (int) 0x0001);
+        cpu.setSP((short) 0x57);
         EasyMock.expect(memory.readByte(0x0000)).andReturn((short) 0x68);
         EasyMock.expect(memory.readByte(0x0158)).andReturn((short) 0x00);
         test((short) 0x68, (byte) 4, expected);
@@ -786,8 +786,8 @@ public class MOS6502Test extends AbstractMOS6502Test
     public void test_PLA_Negative()
     {
         Assert.assertEquals(4, MOS6502.CYCLES[0x68]);
-        MOS6502State expected = new MOS6502State((short) 0x98, (short) 0xFF, (short) 0xFF, (short) 0x59, (short) 0xFD, (int) 0x0001);
-        cpu.setSP((short) 0x58);
+        MOS6502State expected = new MOS6502State((short) 0x98, (short) 0xFF, (short) 0xFF, (short) 0x58, (short) 0xFD, (int) 0x0001);
+        cpu.setSP((short) 0x57);
         EasyMock.expect(memory.readByte(0x0000)).andReturn((short) 0x68);
         EasyMock.expect(memory.readByte(0x0158)).andReturn((short) 0x98);
         test((short) 0x68, (byte) 4, expected);
@@ -1857,12 +1857,341 @@ public class MOS6502Test extends AbstractMOS6502Test
     @Test
     public void test_RTS()
     {
-        MOS6502State expected = new MOS6502State((short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0xC9, (short) 0xFF, (int) 0xF1E5);
-        cpu.setSP((short) 0xC7);
+        MOS6502State expected = new MOS6502State((short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0xC8, (short) 0xFF, (int) 0xF1E5);
+        cpu.setSP((short) 0xC6);
         EasyMock.expect(memory.readByte(0x0000)).andReturn((short) 0x60);
         EasyMock.expect(memory.readByte(0x01C7)).andReturn((short) 0xE4);
         EasyMock.expect(memory.readByte(0x01C8)).andReturn((short) 0xF1);
         test((short) 0x60, (byte) 6, expected);
     }
 
+    @Test
+    public void test_run()
+    {
+        EasyMock.expect(memory.readByte(0x0000)).andReturn((short) 0xEA);
+        EasyMock.expect(memory.readByte(0x0001)).andReturn((short) 0xEA);
+        control.replay();
+        Assert.assertEquals(4, cpu.run(4));
+        control.verify();
+        Assert.assertEquals(4, cpu.getCycles());
+        Assert.assertEquals(0x0002, cpu.getPc());
+    }
+
+    @Test
+    public void test_run_Overshoot()
+    {
+        EasyMock.expect(memory.readByte(0x0000)).andReturn((short) 0xEA);
+        EasyMock.expect(memory.readByte(0x0001)).andReturn((short) 0xEA);
+        control.replay();
+        Assert.assertEquals(4, cpu.run(3));
+        control.verify();
+        Assert.assertEquals(4, cpu.getCycles());
+    }
+
+    @Test
+    public void test_LDA_AbsoluteX_PageCross()
+    {
+        cpu.setX((short) 0x20);
+        EasyMock.expect(memory.readByte(0x0000)).andReturn((short) 0xBD);
+        EasyMock.expect(memory.readByte(0x0001)).andReturn((short) 0xF0);
+        EasyMock.expect(memory.readByte(0x0002)).andReturn((short) 0x57);
+        EasyMock.expect(memory.readByte(0x5810)).andReturn((short) 0x10);
+        control.replay();
+        cpu.step();
+        control.verify();
+        Assert.assertEquals(5, cpu.getCycles());
+    }
+
+    @Test
+    public void test_LDA_IndirectY_PageCross()
+    {
+        cpu.setY((short) 0x20);
+        EasyMock.expect(memory.readByte(0x0000)).andReturn((short) 0xB1);
+        EasyMock.expect(memory.readByte(0x0001)).andReturn((short) 0x21);
+        EasyMock.expect(memory.readByte(0x0021)).andReturn((short) 0xF0);
+        EasyMock.expect(memory.readByte(0x0022)).andReturn((short) 0x78);
+        EasyMock.expect(memory.readByte(0x7910)).andReturn((short) 0x10);
+        control.replay();
+        cpu.step();
+        control.verify();
+        Assert.assertEquals(6, cpu.getCycles());
+    }
+
+    @Test
+    public void test_STA_AbsoluteX_PageCross()
+    {
+        cpu.setX((short) 0x20);
+        EasyMock.expect(memory.readByte(0x0000)).andReturn((short) 0x9D);
+        EasyMock.expect(memory.readByte(0x0001)).andReturn((short) 0xF0);
+        EasyMock.expect(memory.readByte(0x0002)).andReturn((short) 0x57);
+        memory.writeByte(0x5810, (short) 0xFF);
+        control.replay();
+        cpu.step();
+        control.verify();
+        Assert.assertEquals(5, cpu.getCycles());
+    }
+
+    @Test
+    public void test_ADC_Immediate_Overflow()
+    {
+        MOS6502State expected = new MOS6502State((short) 0xA0, (short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0xC0, (int) 0x0002);
+        cpu.setA((short) 0x50);
+        cpu.setSR((short) 0x00);
+        test_Immediate_read((short) 0x69, (byte) 2, expected, (short) 0x50);
+    }
+
+    @Test
+    public void test_ADC_Immediate_CarryZero()
+    {
+        MOS6502State expected = new MOS6502State((short) 0x00, (short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0x03, (int) 0x0002);
+        cpu.setA((short) 0xFF);
+        cpu.setSR((short) 0x01);
+        test_Immediate_read((short) 0x69, (byte) 2, expected, (short) 0x00);
+    }
+
+    @Test
+    public void test_ADC_Immediate_Decimal()
+    {
+        MOS6502State expected = new MOS6502State((short) 0x05, (short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0xC9, (int) 0x0002);
+        cpu.setA((short) 0x58);
+        cpu.setSR((short) 0x09);
+        test_Immediate_read((short) 0x69, (byte) 2, expected, (short) 0x46);
+    }
+
+    @Test
+    public void test_ADC_ZeroPage()
+    {
+        MOS6502State expected = new MOS6502State((short) 0x35, (short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0x00, (int) 0x0002);
+        cpu.setA((short) 0x12);
+        cpu.setSR((short) 0x00);
+        test_ZeroPage_read((short) 0x65, (byte) 3, expected, (short) 0x23);
+    }
+
+    @Test
+    public void test_SBC_Immediate_Borrow()
+    {
+        MOS6502State expected = new MOS6502State((short) 0x60, (short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0x00, (int) 0x0002);
+        cpu.setA((short) 0x50);
+        cpu.setSR((short) 0x01);
+        test_Immediate_read((short) 0xE9, (byte) 2, expected, (short) 0xF0);
+    }
+
+    @Test
+    public void test_SBC_Immediate_Decimal()
+    {
+        MOS6502State expected = new MOS6502State((short) 0x34, (short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0x09, (int) 0x0002);
+        cpu.setA((short) 0x46);
+        cpu.setSR((short) 0x09);
+        test_Immediate_read((short) 0xE9, (byte) 2, expected, (short) 0x12);
+    }
+
+    @Test
+    public void test_SBC_AbsoluteY()
+    {
+        MOS6502State expected = new MOS6502State((short) 0x0F, (short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0x01, (int) 0x0003);
+        cpu.setA((short) 0x10);
+        cpu.setSR((short) 0x00);
+        test_AbsoluteY_read((short) 0xF9, (byte) 4, expected, (short) 0x00);
+    }
+
+    @Test
+    public void test_CMP_Immediate_Equal()
+    {
+        MOS6502State expected = new MOS6502State((short) 0x40, (short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0x7F, (int) 0x0002);
+        cpu.setA((short) 0x40);
+        test_Immediate_read((short) 0xC9, (byte) 2, expected, (short) 0x40);
+    }
+
+    @Test
+    public void test_CMP_IndirectX_Greater()
+    {
+        MOS6502State expected = new MOS6502State((short) 0x40, (short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0x01, (int) 0x0002);
+        cpu.setA((short) 0x40);
+        cpu.setSR((short) 0x00);
+        test_IndirectX_read((short) 0xC1, (byte) 6, expected, (short) 0x3F);
+    }
+
+    @Test
+    public void test_CPX_ZeroPage_Less()
+    {
+        MOS6502State expected = new MOS6502State((short) 0xFF, (short) 0x10, (short) 0xFF, (short) 0xFF, (short) 0xFC, (int) 0x0002);
+        cpu.setX((short) 0x10);
+        test_ZeroPage_read((short) 0xE4, (byte) 3, expected, (short) 0x20);
+    }
+
+    @Test
+    public void test_CPY_Absolute_Greater()
+    {
+        MOS6502State expected = new MOS6502State((short) 0xFF, (short) 0xFF, (short) 0x30, (short) 0xFF, (short) 0x7D, (int) 0x0003);
+        cpu.setY((short) 0x30);
+        test_Absolute_read((short) 0xCC, (byte) 4, expected, (short) 0x20);
+    }
+
+    @Test
+    public void test_ASL_Accumulator()
+    {
+        MOS6502State expected = new MOS6502State((short) 0x02, (short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0x01, (int) 0x0001);
+        cpu.setA((short) 0x81);
+        cpu.setSR((short) 0x00);
+        EasyMock.expect(memory.readByte(0x0000)).andReturn((short) 0x0A);
+        test((short) 0x0A, (byte) 2, expected);
+    }
+
+    @Test
+    public void test_LSR_ZeroPage()
+    {
+        MOS6502State expected = new MOS6502State((short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0x03, (int) 0x0002);
+        cpu.setSR((short) 0x00);
+        EasyMock.expect(memory.readByte(0x0000)).andReturn((short) 0x46);
+        EasyMock.expect(memory.readByte(0x0001)).andReturn((short) 0x57);
+        EasyMock.expect(memory.readByte(0x0057)).andReturn((short) 0x01);
+        memory.writeByte(0x0057, (short) 0x00);
+        test((short) 0x46, (byte) 5, expected);
+    }
+
+    @Test
+    public void test_ROL_Accumulator()
+    {
+        MOS6502State expected = new MOS6502State((short) 0x81, (short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0x80, (int) 0x0001);
+        cpu.setA((short) 0x40);
+        cpu.setSR((short) 0x01);
+        EasyMock.expect(memory.readByte(0x0000)).andReturn((short) 0x2A);
+        test((short) 0x2A, (byte) 2, expected);
+    }
+
+    @Test
+    public void test_ROR_Absolute()
+    {
+        MOS6502State expected = new MOS6502State((short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0x80, (int) 0x0003);
+        cpu.setSR((short) 0x01);
+        EasyMock.expect(memory.readByte(0x0000)).andReturn((short) 0x6E);
+        EasyMock.expect(memory.readByte(0x0001)).andReturn((short) 0xF0);
+        EasyMock.expect(memory.readByte(0x0002)).andReturn((short) 0x57);
+        EasyMock.expect(memory.readByte(0x57F0)).andReturn((short) 0x02);
+        memory.writeByte(0x57F0, (short) 0x81);
+        test((short) 0x6E, (byte) 6, expected);
+    }
+
+    @Test
+    public void test_BNE_Taken()
+    {
+        MOS6502State expected = new MOS6502State((short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0x00, (int) 0x0012);
+        cpu.setSR((short) 0x00);
+        test_Immediate_read((short) 0xD0, (byte) 2, expected, (short) 0x10);
+        Assert.assertEquals(3, cpu.getCycles());
+    }
+
+    @Test
+    public void test_BEQ_NotTaken()
+    {
+        MOS6502State expected = new MOS6502State((short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0x00, (int) 0x0002);
+        cpu.setSR((short) 0x00);
+        test_Immediate_read((short) 0xF0, (byte) 2, expected, (short) 0x10);
+        Assert.assertEquals(2, cpu.getCycles());
+    }
+
+    @Test
+    public void test_BMI_Taken_PageCross()
+    {
+        MOS6502State expected = new MOS6502State((short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0x80, (int) 0xFFF2);
+        cpu.setSR((short) 0x80);
+        test_Immediate_read((short) 0x30, (byte) 2, expected, (short) 0xF0);
+        Assert.assertEquals(4, cpu.getCycles());
+    }
+
+    @Test
+    public void test_BCS_Taken()
+    {
+        MOS6502State expected = new MOS6502State((short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0x01, (int) 0x0006);
+        cpu.setSR((short) 0x01);
+        test_Immediate_read((short) 0xB0, (byte) 2, expected, (short) 0x04);
+    }
+
+    @Test
+    public void test_BVC_NotTaken()
+    {
+        MOS6502State expected = new MOS6502State((short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0x40, (int) 0x0002);
+        cpu.setSR((short) 0x40);
+        test_Immediate_read((short) 0x50, (byte) 2, expected, (short) 0x04);
+    }
+
+    @Test
+    public void test_CLC()
+    {
+        MOS6502State expected = new MOS6502State((short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0xFE, (int) 0x0001);
+        EasyMock.expect(memory.readByte(0x0000)).andReturn((short) 0x18);
+        test((short) 0x18, (byte) 2, expected);
+    }
+
+    @Test
+    public void test_CLD()
+    {
+        MOS6502State expected = new MOS6502State((short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0xF7, (int) 0x0001);
+        EasyMock.expect(memory.readByte(0x0000)).andReturn((short) 0xD8);
+        test((short) 0xD8, (byte) 2, expected);
+    }
+
+    @Test
+    public void test_CLI()
+    {
+        MOS6502State expected = new MOS6502State((short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0xFB, (int) 0x0001);
+        EasyMock.expect(memory.readByte(0x0000)).andReturn((short) 0x58);
+        test((short) 0x58, (byte) 2, expected);
+    }
+
+    @Test
+    public void test_CLV()
+    {
+        MOS6502State expected = new MOS6502State((short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0xBF, (int) 0x0001);
+        EasyMock.expect(memory.readByte(0x0000)).andReturn((short) 0xB8);
+        test((short) 0xB8, (byte) 2, expected);
+    }
+
+    @Test
+    public void test_SEC()
+    {
+        MOS6502State expected = new MOS6502State((short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0x01, (int) 0x0001);
+        cpu.setSR((short) 0x00);
+        EasyMock.expect(memory.readByte(0x0000)).andReturn((short) 0x38);
+        test((short) 0x38, (byte) 2, expected);
+    }
+
+    @Test
+    public void test_SED()
+    {
+        MOS6502State expected = new MOS6502State((short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0x08, (int) 0x0001);
+        cpu.setSR((short) 0x00);
+        EasyMock.expect(memory.readByte(0x0000)).andReturn((short) 0xF8);
+        test((short) 0xF8, (byte) 2, expected);
+    }
+
+    @Test
+    public void test_SEI()
+    {
+        MOS6502State expected = new MOS6502State((short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0x04, (int) 0x0001);
+        cpu.setSR((short) 0x00);
+        EasyMock.expect(memory.readByte(0x0000)).andReturn((short) 0x78);
+        test((short) 0x78, (byte) 2, expected);
+    }
+
+    @Test
+    public void test_RTI()
+    {
+        MOS6502State expected = new MOS6502State((short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0xC9, (short) 0x43, (int) 0x1234);
+        cpu.setSP((short) 0xC6);
+        EasyMock.expect(memory.readByte(0x0000)).andReturn((short) 0x40);
+        EasyMock.expect(memory.readByte(0x01C7)).andReturn((short) 0x43);
+        EasyMock.expect(memory.readByte(0x01C8)).andReturn((short) 0x34);
+        EasyMock.expect(memory.readByte(0x01C9)).andReturn((short) 0x12);
+        test((short) 0x40, (byte) 6, expected);
+    }
+
+    @Test
+    public void test_BIT_ZeroPage_ClearsFlags()
+    {
+        MOS6502State expected = new MOS6502State((short) 0x01, (short) 0xFF, (short) 0xFF, (short) 0xFF, (short) 0x3D, (int) 0x0002);
+        cpu.setA((short) 0x01);
+        test_ZeroPage_read((short) 0x24, (byte) 3, expected, (short) 0x01);
+    }
+
 }
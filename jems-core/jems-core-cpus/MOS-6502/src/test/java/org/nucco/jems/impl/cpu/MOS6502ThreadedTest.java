@@ -0,0 +1,19 @@
+package org.nucco.jems.impl.cpu;
+
+import org.junit.Before;
+
+/**
+ * Run every instruction test against the table dispatched engine.
+ */
+public class MOS6502ThreadedTest extends MOS6502Test
+{
+
+    @Override
+    @Before
+    public void setUp()
+    {
+        super.setUp();
+        cpu.setEngine(MOS6502.Engine.THREADED);
+    }
+
+}
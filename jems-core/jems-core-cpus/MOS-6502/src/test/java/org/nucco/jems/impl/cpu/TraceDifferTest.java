@@ -0,0 +1,166 @@
+package org.nucco.jems.impl.cpu;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.nucco.jems.impl.memory.AbstractMemory;
+import org.nucco.jems.impl.memory.RAM;
+import org.nucco.jems.impl.trace.TraceRecorder;
+
+public class TraceDifferTest
+{
+
+    // LDX #$00; loop: TXA; STA $0300,X; ADC $0300,X; INX; BNE loop; BRK
+    private static final int[] PROGRAM = { 0xA2, 0x00, 0x8A, 0x9D, 0x00, 0x03, 0x7D, 0x00, 0x03, 0xE8, 0xD0, 0xF7,
+        0x00 };
+
+    private File file;
+    private RandomAccessFile golden;
+
+    private static MOS6502 cpu(MOS6502.Engine engine)
+    {
+        RAM memory = new RAM();
+        for (int i = 0; i < PROGRAM.length; i++)
+        {
+            memory.writeByte(0x0200 + i, (short) PROGRAM[i]);
+        }
+        MOS6502 cpu = new MOS6502(memory);
+        cpu.setEngine(engine);
+        cpu.setPc(0x0200);
+        return cpu;
+    }
+
+    /*
+     * A CPU whose IRQ line is driven by the byte written at $D000.
+     */
+    private static MOS6502 interruptedCpu(MOS6502.Engine engine)
+    {
+        // CLI; LDA #$01; STA $D000; loop: INX; JMP loop
+        // handler: LDA #$00; STA $D000; INC $10; RTI
+        int[] program = { 0x58, 0xA9, 0x01, 0x8D, 0x00, 0xD0, 0xE8, 0x4C, 0x06, 0x02 };
+        int[] handler = { 0xA9, 0x00, 0x8D, 0x00, 0xD0, 0xE6, 0x10, 0x40 };
+        final MOS6502[] cpu = new MOS6502[1];
+        final byte[] bytes = new byte[RAM.SIZE];
+        AbstractMemory memory = new AbstractMemory()
+        {
+            @Override
+            public short readByte(int address)
+            {
+                return (short) (bytes[address & SHORT_MASK] & BYTE_MASK);
+            }
+
+            @Override
+            public void writeByte(int address, short value)
+            {
+                bytes[address & SHORT_MASK] = (byte) value;
+                if (address == 0xD000)
+                {
+                    cpu[0].setIrq(value != 0);
+                }
+            }
+        };
+        for (int i = 0; i < program.length; i++)
+        {
+            memory.writeByte(0x0200 + i, (short) program[i]);
+        }
+        for (int i = 0; i < handler.length; i++)
+        {
+            memory.writeByte(0x0300 + i, (short) handler[i]);
+        }
+        memory.writeByte(0xFFFE, (short) 0x00);
+        memory.writeByte(0xFFFF, (short) 0x03);
+        cpu[0] = new MOS6502(memory);
+        cpu[0].setEngine(engine);
+        cpu[0].setPc(0x0200);
+        return cpu[0];
+    }
+
+    @Before
+    public void setUp() throws IOException
+    {
+        file = File.createTempFile("golden", ".bin");
+        golden = new RandomAccessFile(file, "rw");
+        MOS6502 cpu = cpu(MOS6502.Engine.SWITCH);
+        TraceRecorder tracer = new TraceRecorder(golden.getChannel(), MOS6502.TRACE_RECORD_SIZE, 256);
+        cpu.setTracer(tracer);
+        cpu.run(5000);
+        tracer.close();
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        golden.close();
+        file.delete();
+    }
+
+    @Test
+    public void test_Match() throws IOException
+    {
+        long records = golden.length() / MOS6502.TRACE_RECORD_SIZE;
+        for (MOS6502.Engine engine : MOS6502.Engine.values())
+        {
+            TraceDiffer differ = new TraceDiffer(cpu(engine));
+            Assert.assertNull(engine.name(), differ.compare(golden.getChannel()));
+            Assert.assertEquals(records, differ.getCompared());
+        }
+    }
+
+    @Test
+    public void test_Mismatch() throws IOException
+    {
+        // ADC becomes EOR: the accumulator departs after the first EOR
+        MOS6502 cpu = cpu(MOS6502.Engine.PREDECODED);
+        cpu.memory.writeByte(0x0206, (short) 0x5D);
+        TraceDiffer differ = new TraceDiffer(cpu);
+        differ.setContext(2);
+
+        TraceMismatch mismatch = differ.compare(golden.getChannel());
+        Assert.assertNotNull(mismatch);
+        Assert.assertEquals(3, mismatch.getIndex()); // the opcode of the ADC differs
+        Assert.assertEquals(0x0206, mismatch.getExpectedPc());
+        Assert.assertEquals(0x0206, mismatch.getActualPc());
+        Assert.assertEquals(5, mismatch.getContextSize());
+        String[] lines = mismatch.toString().split("\n");
+        Assert.assertEquals(7, lines.length);
+        Assert.assertTrue(lines[3].startsWith("- 0206  7D 00 03  ADC $0300,X"));
+        Assert.assertTrue(lines[4].startsWith("+ 0206  5D 00 03  EOR $0300,X"));
+        Assert.assertTrue(lines[5].startsWith("  0209  E8        INX"));
+    }
+
+    @Test
+    public void test_Interrupt() throws IOException
+    {
+        golden.setLength(0);
+        MOS6502 reference = interruptedCpu(MOS6502.Engine.SWITCH);
+        TraceRecorder tracer = new TraceRecorder(golden.getChannel(), MOS6502.TRACE_RECORD_SIZE, 256);
+        reference.setTracer(tracer);
+        reference.run(1000);
+        tracer.close();
+        Assert.assertEquals(1, reference.memory.readByte(0x10));
+
+        long records = golden.length() / MOS6502.TRACE_RECORD_SIZE;
+        for (MOS6502.Engine engine : MOS6502.Engine.values())
+        {
+            TraceDiffer differ = new TraceDiffer(interruptedCpu(engine));
+            Assert.assertNull(engine.name(), differ.compare(golden.getChannel()));
+            Assert.assertEquals(records, differ.getCompared());
+        }
+    }
+
+    @Test
+    public void test_PartialRecord() throws IOException
+    {
+        long records = golden.length() / MOS6502.TRACE_RECORD_SIZE;
+        golden.setLength(golden.length() - 3);
+        TraceDiffer differ = new TraceDiffer(cpu(MOS6502.Engine.THREADED));
+        Assert.assertNull(differ.compare(golden.getChannel()));
+        Assert.assertEquals(records - 1, differ.getCompared());
+    }
+
+}
@@ -0,0 +1,82 @@
+package org.nucco.jems.impl.cpu;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TraceFormatterTest
+{
+
+    private static final String REFERENCE = "A:00 X:01 Y:02 P:24 SP:FD CYC:7";
+
+    private static byte[] record(int pc, int opcode, int low, int high)
+    {
+        ByteBuffer record = ByteBuffer.allocate(MOS6502.TRACE_RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        record.putLong(7 | (long) pc << 48);
+        record.put((byte) opcode).put((byte) low).put((byte) high);
+        record.put((byte) 0x00).put((byte) 0x01).put((byte) 0x02).put((byte) 0xFD).put((byte) 0x24);
+        return record.array();
+    }
+
+    private static String format(byte[]... records) throws IOException
+    {
+        ByteArrayOutputStream trace = new ByteArrayOutputStream();
+        for (byte[] record : records)
+        {
+            trace.write(record);
+        }
+        trace.write(new byte[] { 1, 2, 3 }); // partial record at the end, ignored
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        TraceFormatter formatter = new TraceFormatter(Channels.newChannel(text));
+        long count = formatter.format(Channels.newChannel(new ByteArrayInputStream(trace.toByteArray())));
+        Assert.assertEquals(records.length, count);
+        return text.toString("US-ASCII");
+    }
+
+    private static String line(String code)
+    {
+        StringBuilder line = new StringBuilder(code);
+        while (line.length() < 48)
+        {
+            line.append(' ');
+        }
+        return line.append(REFERENCE).append('\n').toString();
+    }
+
+    @Test
+    public void test_Modes() throws IOException
+    {
+        Assert.assertEquals(line("C000  4C F5 C5  JMP $C5F5"), format(record(0xC000, 0x4C, 0xF5, 0xC5)));
+        Assert.assertEquals(line("C5F5  A2 00     LDX #$00"), format(record(0xC5F5, 0xA2, 0x00, 0xEA)));
+        Assert.assertEquals(line("0010  B5 80     LDA $80,X"), format(record(0x0010, 0xB5, 0x80, 0x00)));
+        Assert.assertEquals(line("0010  B6 80     LDX $80,Y"), format(record(0x0010, 0xB6, 0x80, 0x00)));
+        Assert.assertEquals(line("0010  BD 34 12  LDA $1234,X"), format(record(0x0010, 0xBD, 0x34, 0x12)));
+        Assert.assertEquals(line("0010  6C FE 01  JMP ($01FE)"), format(record(0x0010, 0x6C, 0xFE, 0x01)));
+        Assert.assertEquals(line("0010  A1 40     LDA ($40,X)"), format(record(0x0010, 0xA1, 0x40, 0x00)));
+        Assert.assertEquals(line("0010  B1 40     LDA ($40),Y"), format(record(0x0010, 0xB1, 0x40, 0x00)));
+        Assert.assertEquals(line("0010  0A        ASL A"), format(record(0x0010, 0x0A, 0x00, 0x00)));
+        Assert.assertEquals(line("0010  D0 FC     BNE $000E"), format(record(0x0010, 0xD0, 0xFC, 0x00)));
+        Assert.assertEquals(line("0010  EA        NOP"), format(record(0x0010, 0xEA, 0x00, 0x00)));
+        Assert.assertEquals(line("0010  02        ???"), format(record(0x0010, 0x02, 0x00, 0x00)));
+    }
+
+    @Test
+    public void test_Stream() throws IOException
+    {
+        byte[][] records = new byte[10000][];
+        for (int i = 0; i < records.length; i++)
+        {
+            records[i] = record(i, 0xE8, 0x00, 0x00);
+        }
+        String text = format(records);
+        Assert.assertEquals(records.length * line("0000  E8        INX").length(), text.length());
+        Assert.assertTrue(text.endsWith(line("270F  E8        INX")));
+    }
+
+}